@@ -8,10 +8,12 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.david.api.composite.order.dto.OrderAggregateCreateDto;
@@ -92,21 +94,37 @@ public interface OrderCompositeService {
     value = "/order-composite",
     consumes = "application/json",
     produces = "application/json")
+  @ResponseStatus(HttpStatus.CREATED)
   @Operation(
     summary = "Create a new composite order",
-    description = "Creates a new composite order based on the provided order details.",
+    description = "Reserves the stock of the ordered products and creates the order and its shipment. If a step fails, the completed ones are undone.",
     responses = {
       @ApiResponse(
         responseCode = "201",
         description = "Successfully created the composite order",
-        content = @Content(schema = @Schema(hidden = true))
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = OrderAggregateDto.class)
+        )
       ),
       @ApiResponse(
         responseCode = "400",
         description = "Invalid input data"
+      ),
+      @ApiResponse(
+        responseCode = "404",
+        description = "An ordered product does not exist"
+      ),
+      @ApiResponse(
+        responseCode = "409",
+        description = "Insufficient stock for an ordered product"
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "The order was rejected by a downstream service"
       )
     }
   )
-  Mono<Void> createCompositeOrder(@Valid @RequestBody OrderAggregateCreateDto orderAggregateCreateDto) throws Exception;
+  Mono<OrderAggregateDto> createCompositeOrder(@Valid @RequestBody OrderAggregateCreateDto orderAggregateCreateDto) throws Exception;
 
 }
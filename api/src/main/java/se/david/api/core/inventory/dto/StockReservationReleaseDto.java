@@ -0,0 +1,5 @@
+package se.david.api.core.inventory.dto;
+
+// The payload of a RELEASE_RESERVATION event
+public record StockReservationReleaseDto(String reservationId) {
+}
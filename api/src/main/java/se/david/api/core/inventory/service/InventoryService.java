@@ -38,6 +38,90 @@ public interface InventoryService {
   )
   Flux<InventoryDto> getInventoryStocks();
 
+  @GetMapping(
+    value = "/inventories/page",
+    produces = "application/json")
+  @Operation(
+    summary = "Get a page of inventory stocks",
+    description = "Retrieves up to limit inventory stocks ordered by product ID, starting after the given product ID. Pass the product ID of the last inventory stock in a page as afterId to fetch the next page.",
+    parameters = {
+      @Parameter(
+        name = "afterId",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "Only inventory stocks with a product ID greater than this value are returned, defaults to 0",
+        schema = @Schema(type = "integer")
+      ),
+      @Parameter(
+        name = "limit",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "The maximum number of inventory stocks to return, between 1 and 1000, defaults to 100",
+        schema = @Schema(type = "integer")
+      )
+    },
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the page of inventory stocks",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = InventoryDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Invalid afterId or limit"
+      )
+    }
+  )
+  Flux<InventoryDto> getInventoryStocksPage(
+    @RequestParam(value = "afterId", required = false, defaultValue = "0") int afterId,
+    @RequestParam(value = "limit", required = false, defaultValue = "100") int limit);
+
+  @GetMapping(
+    value = "/inventories/stream",
+    produces = "application/x-ndjson")
+  @Operation(
+    summary = "Stream all inventory stocks",
+    description = "Streams all inventory stocks ordered by product ID as newline delimited JSON, one inventory stock per line, without loading them all into memory first.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully started streaming the inventory stocks",
+        content = @Content(
+          mediaType = "application/x-ndjson",
+          schema = @Schema(implementation = InventoryDto.class)
+        )
+      )
+    }
+  )
+  Flux<InventoryDto> streamInventoryStocks();
+
+  @PostMapping(
+    value = "/inventories/batch",
+    consumes = "application/json",
+    produces = "application/json")
+  @Operation(
+    summary = "Get inventory stocks by a batch of product IDs",
+    description = "Retrieves inventory stocks for a JSON array of product IDs sent in the request body, so the batch is not limited by the URL length. Ids without a match are left out of the response.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the inventory stocks for the specified product IDs",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = InventoryDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Too many ids in one batch"
+      )
+    }
+  )
+  Flux<InventoryDto> getInventoryStocksBatch(@RequestBody List<Integer> productIds);
+
   @GetMapping(
     value = "/inventories/{productId}",
     produces = "application/json")
@@ -150,6 +234,43 @@ public interface InventoryService {
   )
   Mono<Void> reduceStocks(@Valid @RequestBody List<InventoryStockAdjustmentRequestDto> inventoryReduceDtos);
 
+  @PutMapping(
+    value = "/inventories/reservations/{reservationId}",
+    consumes = "application/json",
+    produces = "application/json")
+  @Operation(
+    summary = "Reserve stock under a reservation ID",
+    description = "Reduces the stock of all the specified inventory items or of none of them, like reduceStock, and records the reservation under the given ID. Sending the same reservation again answers like the first time without reducing the stock twice. A reservation can be released by its ID with a RELEASE_RESERVATION event, also before it has arrived, in which case it is refused when it arrives.",
+    parameters = {
+      @Parameter(
+        name = "reservationId",
+        in = ParameterIn.PATH,
+        required = true,
+        description = "The ID of the reservation, chosen by the caller, at most 36 characters",
+        schema = @Schema(type = "string")
+      )
+    },
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully reserved the stock of the inventory items, now or by an earlier request with the same reservation ID"
+      ),
+      @ApiResponse(
+        responseCode = "404",
+        description = "Inventory item not found"
+      ),
+      @ApiResponse(
+        responseCode = "409",
+        description = "Insufficient stock for at least one of the inventory items"
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Invalid stock adjustment details, or the reservation ID was released or its reservation refused before"
+      )
+    }
+  )
+  Mono<Void> reserveStocks(@PathVariable String reservationId, @Valid @RequestBody List<InventoryStockAdjustmentRequestDto> reservations);
+
   @DeleteMapping(
     value = "/inventories/{productId}",
     produces = "application/json")
@@ -3,10 +3,17 @@ package se.david.api.core.order.dto;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 
 import java.util.List;
 
+// Creating an order with an idempotencyKey that an order already has answers with that order instead of a new one
 public record OrderCreateDto(
   @Positive int userId,
-  @NotEmpty @Valid List<OrderItemCreateDto> orderItems) {
+  @NotEmpty @Valid List<OrderItemCreateDto> orderItems,
+  @Size(max = 36) String idempotencyKey) {
+
+  public OrderCreateDto(int userId, List<OrderItemCreateDto> orderItems) {
+    this(userId, orderItems, null);
+  }
 }
@@ -15,6 +15,8 @@ import se.david.api.core.order.dto.OrderCreateDto;
 import se.david.api.core.order.dto.OrderDto;
 import se.david.api.core.order.dto.OrderUpdateDto;
 
+import java.util.List;
+
 @Tag(name = "Order Service", description = "REST API for managing orders.")
 public interface OrderService {
 
@@ -37,6 +39,66 @@ public interface OrderService {
   )
   Flux<OrderDto> getOrders();
 
+  @GetMapping(
+    value = "/orders/page",
+    produces = "application/json")
+  @Operation(
+    summary = "Get a page of orders",
+    description = "Retrieves up to limit orders ordered by order ID, starting after the given order ID. Pass the order ID of the last order in a page as afterId to fetch the next page.",
+    parameters = {
+      @Parameter(
+        name = "afterId",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "Only orders with a order ID greater than this value are returned, defaults to 0",
+        schema = @Schema(type = "integer")
+      ),
+      @Parameter(
+        name = "limit",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "The maximum number of orders to return, between 1 and 1000, defaults to 100",
+        schema = @Schema(type = "integer")
+      )
+    },
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the page of orders",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = OrderDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Invalid afterId or limit"
+      )
+    }
+  )
+  Flux<OrderDto> getOrdersPage(
+    @RequestParam(value = "afterId", required = false, defaultValue = "0") int afterId,
+    @RequestParam(value = "limit", required = false, defaultValue = "100") int limit);
+
+  @GetMapping(
+    value = "/orders/stream",
+    produces = "application/x-ndjson")
+  @Operation(
+    summary = "Stream all orders",
+    description = "Streams all orders ordered by order ID as newline delimited JSON, one order per line, without loading them all into memory first.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully started streaming the orders",
+        content = @Content(
+          mediaType = "application/x-ndjson",
+          schema = @Schema(implementation = OrderDto.class)
+        )
+      )
+    }
+  )
+  Flux<OrderDto> streamOrders();
+
   @GetMapping(
     value = "/orders/user/{userId}",
     produces = "application/json")
@@ -101,6 +163,30 @@ public interface OrderService {
   )
   Mono<OrderDto> getOrder(@PathVariable int orderId);
 
+  @PostMapping(
+    value = "/orders/batch",
+    consumes = "application/json",
+    produces = "application/json")
+  @Operation(
+    summary = "Get orders by a batch of IDs",
+    description = "Retrieves the orders for a JSON array of order IDs sent in the request body, so the batch is not limited by the URL length. Ids without an order are left out of the response.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the orders for the specified IDs",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = OrderDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Too many ids in one batch"
+      )
+    }
+  )
+  Flux<OrderDto> getOrdersBatch(@RequestBody List<Integer> orderIds);
+
   @PostMapping(
     value = "/orders",
     consumes = "application/json",
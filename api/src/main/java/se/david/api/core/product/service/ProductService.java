@@ -39,6 +39,66 @@ public interface ProductService {
   )
   Flux<ProductDto> getProducts();
 
+  @GetMapping(
+    value = "/products/page",
+    produces = "application/json")
+  @Operation(
+    summary = "Get a page of products",
+    description = "Retrieves up to limit products ordered by product ID, starting after the given product ID. Pass the product ID of the last product in a page as afterId to fetch the next page.",
+    parameters = {
+      @Parameter(
+        name = "afterId",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "Only products with a product ID greater than this value are returned, defaults to 0",
+        schema = @Schema(type = "integer")
+      ),
+      @Parameter(
+        name = "limit",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "The maximum number of products to return, between 1 and 1000, defaults to 100",
+        schema = @Schema(type = "integer")
+      )
+    },
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the page of products",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = ProductDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Invalid afterId or limit"
+      )
+    }
+  )
+  Flux<ProductDto> getProductsPage(
+    @RequestParam(value = "afterId", required = false, defaultValue = "0") int afterId,
+    @RequestParam(value = "limit", required = false, defaultValue = "100") int limit);
+
+  @GetMapping(
+    value = "/products/stream",
+    produces = "application/x-ndjson")
+  @Operation(
+    summary = "Stream all products",
+    description = "Streams all products ordered by product ID as newline delimited JSON, one product per line, without loading them all into memory first.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully started streaming the products",
+        content = @Content(
+          mediaType = "application/x-ndjson",
+          schema = @Schema(implementation = ProductDto.class)
+        )
+      )
+    }
+  )
+  Flux<ProductDto> streamProducts();
+
   @GetMapping(
     value = "/products/byIds",
     produces = "application/json")
@@ -71,6 +131,30 @@ public interface ProductService {
   )
   Flux<ProductDto> getProductsByIds(@RequestParam List<Integer> ids);
 
+  @PostMapping(
+    value = "/products/batch",
+    consumes = "application/json",
+    produces = "application/json")
+  @Operation(
+    summary = "Get products by a batch of product IDs",
+    description = "Retrieves products for a JSON array of product IDs sent in the request body, so the batch is not limited by the URL length. Ids without a match are left out of the response.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the products for the specified product IDs",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = ProductDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Too many ids in one batch"
+      )
+    }
+  )
+  Flux<ProductDto> getProductsBatch(@RequestBody List<Integer> ids);
+
   @GetMapping(
     value = "/products/{productId}",
     produces = "application/json")
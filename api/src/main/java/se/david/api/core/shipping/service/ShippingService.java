@@ -39,6 +39,66 @@ public interface ShippingService {
   )
   Flux<ShippingDto> getShipments();
 
+  @GetMapping(
+    value = "/shipments/page",
+    produces = "application/json")
+  @Operation(
+    summary = "Get a page of shipments",
+    description = "Retrieves up to limit shipments ordered by order ID, starting after the given order ID. Pass the order ID of the last shipment in a page as afterId to fetch the next page.",
+    parameters = {
+      @Parameter(
+        name = "afterId",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "Only shipments with a order ID greater than this value are returned, defaults to 0",
+        schema = @Schema(type = "integer")
+      ),
+      @Parameter(
+        name = "limit",
+        in = ParameterIn.QUERY,
+        required = false,
+        description = "The maximum number of shipments to return, between 1 and 1000, defaults to 100",
+        schema = @Schema(type = "integer")
+      )
+    },
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the page of shipments",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = ShippingDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Invalid afterId or limit"
+      )
+    }
+  )
+  Flux<ShippingDto> getShipmentsPage(
+    @RequestParam(value = "afterId", required = false, defaultValue = "0") int afterId,
+    @RequestParam(value = "limit", required = false, defaultValue = "100") int limit);
+
+  @GetMapping(
+    value = "/shipments/stream",
+    produces = "application/x-ndjson")
+  @Operation(
+    summary = "Stream all shipments",
+    description = "Streams all shipments ordered by order ID as newline delimited JSON, one shipment per line, without loading them all into memory first.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully started streaming the shipments",
+        content = @Content(
+          mediaType = "application/x-ndjson",
+          schema = @Schema(implementation = ShippingDto.class)
+        )
+      )
+    }
+  )
+  Flux<ShippingDto> streamShipments();
+
   @GetMapping(
     value = "/shipments/byOrdersIds",
     produces = "application/json")
@@ -71,6 +131,30 @@ public interface ShippingService {
   )
   Flux<ShippingDto> getShipmentsByOrderIds(@RequestParam List<Integer> orderIds);
 
+  @PostMapping(
+    value = "/shipments/batch",
+    consumes = "application/json",
+    produces = "application/json")
+  @Operation(
+    summary = "Get shipments by a batch of order IDs",
+    description = "Retrieves shipments for a JSON array of order IDs sent in the request body, so the batch is not limited by the URL length. Ids without a match are left out of the response.",
+    responses = {
+      @ApiResponse(
+        responseCode = "200",
+        description = "Successfully retrieved the shipments for the specified order IDs",
+        content = @Content(
+          mediaType = "application/json",
+          schema = @Schema(implementation = ShippingDto.class, type = "array")
+        )
+      ),
+      @ApiResponse(
+        responseCode = "422",
+        description = "Too many ids in one batch"
+      )
+    }
+  )
+  Flux<ShippingDto> getShipmentsBatch(@RequestBody List<Integer> orderIds);
+
   @GetMapping(
     value = "/shipments/order/{orderId}",
     produces = "application/json")
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
 
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.UUID;
 
 import static java.time.ZonedDateTime.now;
 
@@ -13,39 +14,61 @@ public class Event<K, T> {
   public enum Type {
     CREATE,
     UPDATE,
+    DELETE,
 
     INCREASE_STOCK,
-    REDUCE_STOCKS
+    REDUCE_STOCKS,
+    // Undo the stock reservation or the order created with an idempotency key, also if it has not arrived yet
+    RELEASE_RESERVATION,
+    CANCEL_ORDER
   }
 
+  // Unique per published event, consumers use it to recognize a redelivered event. Null for events from older producers
+  private final String eventId;
   private final Type eventType;
   private final K key;
   private final T data;
   private final List<T> dataList;
   private final ZonedDateTime eventCreatedAt;
+  // Set when the sender waits for an EventResult, which the consumer publishes with the same correlation id
+  private final String correlationId;
 
   public Event() {
+    this.eventId = null;
     this.eventType = null;
     this.key = null;
     this.data = null;
     this.dataList = null;
     this.eventCreatedAt = null;
+    this.correlationId = null;
   }
 
   public Event(Type eventType, K key, T data) {
+    this(eventType, key, data, null);
+  }
+
+  public Event(Type eventType, K key, T data, String correlationId) {
+    this.eventId = UUID.randomUUID().toString();
     this.eventType = eventType;
     this.key = key;
     this.data = data;
     this.dataList = null;   // Only data is used
     this.eventCreatedAt = now();
+    this.correlationId = correlationId;
   }
 
   public Event(Type eventType, K key, List<T> dataList) {
+    this.eventId = UUID.randomUUID().toString();
     this.eventType = eventType;
     this.key = key;
     this.data = null;
     this.dataList = dataList;
     this.eventCreatedAt = now();
+    this.correlationId = null;
+  }
+
+  public String getEventId() {
+    return eventId;
   }
 
   public Type getEventType() {
@@ -69,6 +92,10 @@ public class Event<K, T> {
     return eventCreatedAt;
   }
 
+  public String getCorrelationId() {
+    return correlationId;
+  }
+
   public boolean isDataList() {
     return dataList != null;
   }
@@ -0,0 +1,15 @@
+package se.david.api.event;
+
+// Outcome of an event that carried a correlation id. status follows the HTTP status codes the same operation gets
+// over the API: 200 with the resulting entity as data, or an error status with a message.
+public record EventResult(String correlationId, int status, Object data, String message) {
+  public static final int OK = 200;
+
+  public static EventResult success(String correlationId, Object data) {
+    return new EventResult(correlationId, OK, data, null);
+  }
+
+  public static EventResult failure(String correlationId, int status, String message) {
+    return new EventResult(correlationId, status, null, message);
+  }
+}
@@ -0,0 +1,63 @@
+package se.david.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.scheduler.Schedulers;
+import se.david.api.composite.order.dto.OrderAggregateDto;
+import se.david.microservices.composite.order.service.aggregate.OrderAggregateAssembler;
+import se.david.microservices.composite.order.service.cache.ProductCache;
+import se.david.microservices.composite.order.service.impl.OrderCompositeServiceImpl;
+import se.david.microservices.composite.order.service.integration.DownstreamWebClients;
+import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
+import se.david.microservices.composite.order.service.readmodel.OrderReadModel;
+import se.david.microservices.composite.order.service.resilience.DownstreamResilience;
+import se.david.util.http.ServiceUtil;
+
+import java.io.IOException;
+import java.util.List;
+
+// The composite read paths end to end, from the WebClient calls through the OrderAggregateAssembler,
+// with the downstream services answered from memory. The read model is disabled, so every aggregate is built per call.
+@State(Scope.Benchmark)
+public class CompositeAggregationBenchmark {
+
+  @Param({"1", "10", "50"})
+  private int itemsPerOrder;
+
+  @Param({"100"})
+  private int ordersPerUser;
+
+  private OrderCompositeServiceImpl compositeService;
+
+  @Setup
+  public void setUp() throws IOException {
+    ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+    DownstreamStubs downstreams = new DownstreamStubs(mapper, ordersPerUser, itemsPerOrder);
+    ProductCache productCache = new ProductCache(new SimpleMeterRegistry(), 10_000, 300);
+    StandardEnvironment environment = new StandardEnvironment();
+    DownstreamResilience resilience = new DownstreamResilience(new SimpleMeterRegistry(), environment);
+    OrderCompositeIntegration integration = new OrderCompositeIntegration(Schedulers.immediate(), null,
+      new DownstreamWebClients(downstreams.webClientBuilder(), environment), mapper, productCache, null, resilience);
+    ServiceUtil serviceUtil = new ServiceUtil("7000");
+    OrderAggregateAssembler assembler = new OrderAggregateAssembler();
+    OrderReadModel readModel = new OrderReadModel(integration, assembler, serviceUtil, mapper, new SimpleMeterRegistry(), false, "", 16, 100);
+    compositeService = new OrderCompositeServiceImpl(serviceUtil, integration, null, assembler, readModel, 100, 4);
+  }
+
+  @Benchmark
+  public OrderAggregateDto getCompositeOrder() {
+    return compositeService.getCompositeOrder(1).block();
+  }
+
+  @Benchmark
+  public List<OrderAggregateDto> getCompositeOrdersByUser() {
+    return compositeService.getCompositeOrdersByUser(Fixtures.USER_ID).collectList().block();
+  }
+}
@@ -0,0 +1,166 @@
+package se.david.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import se.david.microservices.composite.order.service.aggregate.OrderAggregateAssembler;
+import se.david.microservices.composite.order.service.cache.ProductCache;
+import se.david.microservices.composite.order.service.impl.OrderCompositeServiceImpl;
+import se.david.microservices.composite.order.service.integration.DownstreamWebClients;
+import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
+import se.david.microservices.composite.order.service.readmodel.OrderReadModel;
+import se.david.microservices.composite.order.service.resilience.DownstreamResilience;
+import se.david.util.http.ServiceUtil;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bursts of concurrent GET /order-composite/{id} aggregations over real connections to one local server that stands in
+// for order-, shipping- and product-service (h2c and HTTP/1.1, like the core services). Every aggregation makes three
+// requests; the product cache is off so none of them is skipped.
+//
+// connectionsOpened shows the connection reuse: with http11 a burst opens up to maxConnections connections and the
+// rest of the requests wait for one, with h2c they are multiplexed over a few. The sample mode times whole bursts;
+// the latency of the single aggregations within them is printed at the end of the trial.
+//
+// ./gradlew :benchmarks:jmh -Pjmh.includes=ConnectionPool
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark {
+
+  @Param({"http11", "h2c"})
+  private String protocol;
+
+  @Param({"1000"})
+  private int concurrentAggregations;
+
+  @Param({"100"})
+  private int maxConnections;
+
+  @Param({"10"})
+  private int itemsPerOrder;
+
+  private final AtomicLong connectionsOpened = new AtomicLong();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private DisposableServer server;
+  private DownstreamWebClients webClients;
+  private OrderCompositeServiceImpl compositeService;
+  private Timer aggregationLatency;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Connections {
+    public long connectionsOpened;
+    public long aggregations;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      connectionsOpened = 0;
+      aggregations = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+    DownstreamStubs downstreams = new DownstreamStubs(mapper, 1, itemsPerOrder);
+
+    server = HttpServer.create()
+      .host("127.0.0.1")
+      .port(0)
+      .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+      .doOnConnection(connection -> connectionsOpened.incrementAndGet())
+      .handle((request, response) -> {
+        byte[] body = downstreams.body(request.path().isEmpty() ? "/" : "/" + request.path());
+        if(body == null) {
+          return response.status(HttpStatus.NOT_FOUND.value()).send();
+        }
+        return request.receive().then()
+          .then(response
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .sendByteArray(Mono.just(body))
+            .then());
+      })
+      .bindNow();
+
+    // Sends the requests for http://order, http://shipping and http://product to the local server, like the
+    // load balancer does for the instances it picks
+    WebClient.Builder webClientBuilder = WebClient.builder()
+      .filter((request, next) -> next.exchange(ClientRequest.from(request)
+        .url(UriComponentsBuilder.fromUri(request.url()).host(server.host()).port(server.port()).build(true).toUri())
+        .build()));
+
+    StandardEnvironment environment = new StandardEnvironment();
+    environment.getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+      "app.http.h2c", String.valueOf(protocol.equals("h2c")),
+      "app.http.maxConnections", String.valueOf(maxConnections),
+      "app.http.pendingAcquireMaxCount", String.valueOf(concurrentAggregations * 3),
+      // Only the transport is measured, the bulkheads would reject most of a burst
+      "app.resilience.enabled", "false")));
+
+    webClients = new DownstreamWebClients(webClientBuilder, environment);
+    ProductCache productCache = new ProductCache(meterRegistry, 0, 300);
+    DownstreamResilience resilience = new DownstreamResilience(meterRegistry, environment);
+    OrderCompositeIntegration integration = new OrderCompositeIntegration(Schedulers.immediate(), null, webClients, mapper, productCache, null, resilience);
+    ServiceUtil serviceUtil = new ServiceUtil("7000");
+    OrderAggregateAssembler assembler = new OrderAggregateAssembler();
+    OrderReadModel readModel = new OrderReadModel(integration, assembler, serviceUtil, mapper, meterRegistry, false, "", 16, 100);
+    compositeService = new OrderCompositeServiceImpl(serviceUtil, integration, null, assembler, readModel, 100, 4);
+
+    aggregationLatency = Timer.builder("aggregation.latency")
+      .publishPercentiles(0.5, 0.99, 0.999)
+      .register(meterRegistry);
+  }
+
+  @TearDown
+  public void tearDown() {
+    StringBuilder percentiles = new StringBuilder();
+    for(ValueAtPercentile value : aggregationLatency.takeSnapshot().percentileValues()) {
+      percentiles.append(String.format(" p%s=%.1fms", value.percentile() * 100, value.value(TimeUnit.MILLISECONDS)));
+    }
+    System.out.printf("%n%s, %d concurrent aggregations: %d connections opened, single aggregation latency%s%n",
+      protocol, concurrentAggregations, connectionsOpened.get(), percentiles);
+
+    webClients.destroy();
+    server.disposeNow();
+  }
+
+  @Benchmark
+  public void concurrentAggregations(Connections connections) {
+    long openedBefore = connectionsOpened.get();
+    Flux.range(0, concurrentAggregations)
+      .flatMap(i -> {
+        long startNanos = System.nanoTime();
+        return compositeService.getCompositeOrder(1)
+          .doOnSuccess(aggregate -> aggregationLatency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+      }, concurrentAggregations)
+      .blockLast();
+    connections.connectionsOpened += connectionsOpened.get() - openedBefore;
+    connections.aggregations += concurrentAggregations;
+  }
+}
@@ -0,0 +1,89 @@
+package se.david.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Mono;
+import se.david.util.messaging.EventDeduplicator;
+import se.david.util.messaging.ProcessedEventStore;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Per-message overhead the EventDeduplicator adds to a consumer batch. The store answers from memory without any
+// ids, so the numbers are the cost of the in-memory layer alone; a cache miss adds one database lookup per batch.
+@State(Scope.Benchmark)
+public class DeduplicationBenchmark {
+  private static final int BATCH_SIZE = 100;
+  private static final int CACHE_SIZE = 100_000;
+
+  private static final ProcessedEventStore EMPTY_STORE = new ProcessedEventStore() {
+    @Override
+    public Mono<Set<String>> findProcessed(Collection<String> eventIds) {
+      return Mono.just(Set.of());
+    }
+
+    @Override
+    public Mono<Void> markProcessed(Collection<String> eventIds) {
+      return Mono.empty();
+    }
+  };
+
+  private EventDeduplicator deduplicator;
+  private List<String> processedBatch;
+  private String[] freshIds;
+  private int nextFresh;
+
+  @Setup
+  public void setUp() {
+    deduplicator = new EventDeduplicator(EMPTY_STORE, CACHE_SIZE, Duration.ofHours(1), new SimpleMeterRegistry());
+    // Fills the cache, the last batch of ids stands in for a redelivered batch
+    String[] cachedIds = ids(CACHE_SIZE);
+    for(int from = 0; from < CACHE_SIZE; from += BATCH_SIZE) {
+      deduplicator.markProcessed(Arrays.asList(cachedIds).subList(from, from + BATCH_SIZE)).block();
+    }
+    processedBatch = Arrays.asList(cachedIds).subList(CACHE_SIZE - BATCH_SIZE, CACHE_SIZE);
+    freshIds = ids(10 * CACHE_SIZE);
+  }
+
+  // A redelivered batch, answered from memory
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public Set<String> findProcessedCacheHit() {
+    return deduplicator.findProcessed(processedBatch).block();
+  }
+
+  // A new batch: misses the cache, is looked up in the store and is then marked as processed, evicting the oldest ids
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public Set<String> findAndMarkNewBatch() {
+    List<String> batch = nextFreshBatch();
+    Set<String> processed = deduplicator.findProcessed(batch).block();
+    deduplicator.markProcessed(batch).block();
+    return processed;
+  }
+
+  private List<String> nextFreshBatch() {
+    if(nextFresh + BATCH_SIZE > freshIds.length) {
+      nextFresh = 0;
+    }
+    List<String> batch = Arrays.asList(freshIds).subList(nextFresh, nextFresh + BATCH_SIZE);
+    nextFresh += BATCH_SIZE;
+    return batch;
+  }
+
+  private static String[] ids(int count) {
+    String[] ids = new String[count];
+    for(int i = 0; i < count; i++) {
+      ids[i] = UUID.randomUUID().toString();
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,73 @@
+package se.david.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.UncheckedIOException;
+
+// In-memory stand-ins for order-, shipping- and product-service. The responses are serialized once up front,
+// so a request costs the WebClient decoding and the composite's own work, but no network and no downstream.
+final class DownstreamStubs {
+  private final byte[] order;
+  private final byte[] ordersByUser;
+  private final byte[] shipping;
+  private final byte[] shipments;
+  private final byte[] products;
+
+  DownstreamStubs(ObjectMapper mapper, int ordersPerUser, int itemsPerOrder) {
+    this.order = toJson(mapper, Fixtures.order(1, itemsPerOrder));
+    this.ordersByUser = toJson(mapper, Fixtures.orders(ordersPerUser, itemsPerOrder));
+    this.shipping = toJson(mapper, Fixtures.shipping(1));
+    this.shipments = toJson(mapper, Fixtures.shipments(ordersPerUser));
+    this.products = toJson(mapper, Fixtures.products(itemsPerOrder));
+  }
+
+  WebClient.Builder webClientBuilder() {
+    return WebClient.builder()
+      .exchangeFunction(request -> Mono.just(respond(request.url().getPath())));
+  }
+
+  // The response body for a request path, or null if the stubs have no answer for it
+  byte[] body(String path) {
+    if(path.startsWith("/orders/user/")) {
+      return ordersByUser;
+    } else if(path.startsWith("/orders/")) {
+      return order;
+    } else if(path.startsWith("/shipments/order/")) {
+      return shipping;
+    } else if(path.equals("/shipments/batch")) {
+      return shipments;
+    } else if(path.equals("/products/batch")) {
+      return products;
+    }
+    return null;
+  }
+
+  private ClientResponse respond(String path) {
+    byte[] body = body(path);
+    if(body == null) {
+      return ClientResponse.create(HttpStatus.NOT_FOUND).build();
+    }
+
+    return ClientResponse.create(HttpStatus.OK)
+      .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+      .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)))
+      .build();
+  }
+
+  private static byte[] toJson(ObjectMapper mapper, Object value) {
+    try {
+      return mapper.writeValueAsBytes(value);
+    } catch (JsonProcessingException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package se.david.benchmarks;
+
+import se.david.api.composite.order.dto.OrderAggregateDto;
+import se.david.api.composite.order.dto.OrderItemSummaryDto;
+import se.david.api.composite.order.dto.ProductSummaryDto;
+import se.david.api.composite.order.dto.ServiceAddressesDto;
+import se.david.api.composite.order.dto.ShippingSummaryDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.order.dto.OrderItemDto;
+import se.david.api.core.product.dto.ProductDto;
+import se.david.api.core.shipping.dto.ShippingDto;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Deterministic test data shared by the benchmarks. Order n has itemsPerOrder items for products 1..itemsPerOrder.
+final class Fixtures {
+  static final int USER_ID = 1;
+  private static final Date CREATED_AT = new Date(1_700_000_000_000L);
+
+  private Fixtures() {
+  }
+
+  static OrderDto order(int orderId, int itemsPerOrder) {
+    List<OrderItemDto> items = IntStream.rangeClosed(1, itemsPerOrder)
+      .mapToObj(productId -> new OrderItemDto(orderId * 1000 + productId, orderId, productId, 2, 100 * productId))
+      .toList();
+    int totalPrice = items.stream().mapToInt(item -> item.price() * item.quantity()).sum();
+    return new OrderDto(orderId, USER_ID, totalPrice, "PENDING", CREATED_AT, items, "order/127.0.0.1:7003");
+  }
+
+  static List<OrderDto> orders(int orderCount, int itemsPerOrder) {
+    return IntStream.rangeClosed(1, orderCount)
+      .mapToObj(orderId -> order(orderId, itemsPerOrder))
+      .toList();
+  }
+
+  static ShippingDto shipping(int orderId) {
+    return new ShippingDto(orderId, "Storgatan " + orderId + ", Stockholm", "SHIPPED", "shipping/127.0.0.1:7004");
+  }
+
+  static List<ShippingDto> shipments(int orderCount) {
+    return IntStream.rangeClosed(1, orderCount)
+      .mapToObj(Fixtures::shipping)
+      .toList();
+  }
+
+  static List<ProductDto> products(int productCount) {
+    return IntStream.rangeClosed(1, productCount)
+      .mapToObj(productId -> new ProductDto(productId, "Product " + productId, "Description of product " + productId, 100 * productId, "product/127.0.0.1:7001"))
+      .toList();
+  }
+
+  static OrderAggregateDto orderAggregate(int orderId, int itemsPerOrder) {
+    OrderDto order = order(orderId, itemsPerOrder);
+    List<OrderItemSummaryDto> items = order.orderItems().stream()
+      .map(item -> new OrderItemSummaryDto(item.id(), item.quantity(), item.price(),
+        new ProductSummaryDto(item.productId(), "Product " + item.productId(), "Description of product " + item.productId(), item.price())))
+      .toList();
+    ShippingDto shipping = shipping(orderId);
+    return new OrderAggregateDto(order.id(), order.userId(), order.totalPrice(), order.status(), order.createdAt(),
+      new ShippingSummaryDto(shipping.orderId(), shipping.shippingAddress(), shipping.status()),
+      items,
+      new ServiceAddressesDto("order-composite/127.0.0.1:7000", "product/127.0.0.1:7001", order.serviceAddress(), shipping.serviceAddress()));
+  }
+}
@@ -0,0 +1,105 @@
+package se.david.benchmarks;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.search.Search;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import se.david.util.scheduler.JdbcSchedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Bursts of simulated blocking JDBC calls on the two jdbcScheduler modes with the service defaults: 10 threads with
+// 100 queued tasks each, against a pool of 10 connections. A burst of 1000 calls stays below the 1010 tasks at which
+// boundedElastic starts rejecting, so both modes run every call and only their overhead and latency differ.
+//
+// The average and sample modes time the calls of a burst. The throughput in calls per second, the latency of the single
+// calls and the time they waited for a thread or a permit are printed at the end of the trial, with the
+// scheduler.permits.wait timer of the virtual mode.
+//
+// ./gradlew :benchmarks:jmh -Pjmh.includes=JdbcScheduler
+@State(Scope.Benchmark)
+public class JdbcSchedulerBenchmark {
+  private static final int THREAD_POOL_SIZE = 10;
+  private static final int TASK_QUEUE_SIZE = 100;
+  private static final int CONNECTION_POOL_SIZE = 10;
+  private static final int BURST_SIZE = 1000;
+
+  @Param({JdbcSchedulers.BOUNDED_ELASTIC, JdbcSchedulers.VIRTUAL})
+  private String mode;
+
+  @Param({"1"})
+  private int queryMillis;
+
+  private SimpleMeterRegistry meterRegistry;
+  private Scheduler scheduler;
+  private Timer callLatency;
+  private Timer waitTime;
+  private long calls;
+  private long burstNanos;
+
+  @Setup
+  public void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    scheduler = JdbcSchedulers.create(mode, THREAD_POOL_SIZE, TASK_QUEUE_SIZE, CONNECTION_POOL_SIZE, meterRegistry);
+    callLatency = Timer.builder("call.latency")
+      .publishPercentiles(0.5, 0.99, 0.999)
+      .register(meterRegistry);
+    waitTime = Timer.builder("call.wait")
+      .publishPercentiles(0.5, 0.99, 0.999)
+      .register(meterRegistry);
+  }
+
+  @TearDown
+  public void tearDown() {
+    System.out.printf("%n%s: %.0f calls/s, single call latency%s, wait for a thread or permit%s%n",
+      mode, calls / (burstNanos / 1e9), percentiles(callLatency), percentiles(waitTime));
+    Timer permitWait = Search.in(meterRegistry).name("scheduler.permits.wait").timer();
+    if(permitWait != null) {
+      System.out.printf("%s: scheduler.permits.wait mean=%.2fms max=%.2fms%n",
+        mode, permitWait.mean(TimeUnit.MILLISECONDS), permitWait.max(TimeUnit.MILLISECONDS));
+    }
+    scheduler.dispose();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST_SIZE)
+  public Long burst() {
+    long startNanos = System.nanoTime();
+    Long completed = Flux.range(0, BURST_SIZE)
+      .flatMap(i -> {
+        long submitNanos = System.nanoTime();
+        return Mono.fromCallable(() -> simulateQuery(submitNanos)).subscribeOn(scheduler);
+      }, BURST_SIZE)
+      .count()
+      .block(Duration.ofSeconds(30));
+    burstNanos += System.nanoTime() - startNanos;
+    calls += BURST_SIZE;
+    return completed;
+  }
+
+  private int simulateQuery(long submitNanos) throws InterruptedException {
+    waitTime.record(System.nanoTime() - submitNanos, TimeUnit.NANOSECONDS);
+    Thread.sleep(queryMillis);
+    callLatency.record(System.nanoTime() - submitNanos, TimeUnit.NANOSECONDS);
+    return 1;
+  }
+
+  private static String percentiles(Timer timer) {
+    StringBuilder percentiles = new StringBuilder();
+    for(ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+      percentiles.append(String.format(" p%s=%.1fms", value.percentile() * 100, value.value(TimeUnit.MILLISECONDS)));
+    }
+    return percentiles.toString();
+  }
+}
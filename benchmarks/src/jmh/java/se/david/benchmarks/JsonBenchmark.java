@@ -0,0 +1,59 @@
+package se.david.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.david.api.composite.order.dto.OrderAggregateDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.event.Event;
+
+import java.io.IOException;
+
+// Jackson (de)serialization of the composite response and of the events on the message bus
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+  private static final TypeReference<Event<Integer, OrderDto>> ORDER_EVENT_TYPE = new TypeReference<>() {
+  };
+
+  @Param({"1", "10", "50"})
+  private int itemsPerOrder;
+
+  private final ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+  private OrderAggregateDto orderAggregate;
+  private byte[] orderAggregateJson;
+  private Event<Integer, OrderDto> orderEvent;
+  private byte[] orderEventJson;
+
+  @Setup
+  public void setUp() throws IOException {
+    orderAggregate = Fixtures.orderAggregate(1, itemsPerOrder);
+    orderAggregateJson = mapper.writeValueAsBytes(orderAggregate);
+    orderEvent = new Event<>(Event.Type.CREATE, 1, Fixtures.order(1, itemsPerOrder));
+    orderEventJson = mapper.writeValueAsBytes(orderEvent);
+  }
+
+  @Benchmark
+  public byte[] serializeOrderAggregate() throws IOException {
+    return mapper.writeValueAsBytes(orderAggregate);
+  }
+
+  @Benchmark
+  public OrderAggregateDto deserializeOrderAggregate() throws IOException {
+    return mapper.readValue(orderAggregateJson, OrderAggregateDto.class);
+  }
+
+  @Benchmark
+  public byte[] serializeEvent() throws IOException {
+    return mapper.writeValueAsBytes(orderEvent);
+  }
+
+  @Benchmark
+  public Event<Integer, OrderDto> deserializeEvent() throws IOException {
+    return mapper.readValue(orderEventJson, ORDER_EVENT_TYPE);
+  }
+}
@@ -0,0 +1,93 @@
+package se.david.benchmarks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Flux;
+import se.david.util.security.CachingReactiveJwtDecoder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Verification of the bearer tokens of the gateway and the composite: parsing and checking the RS256 signature and
+// the claims with the Nimbus decoder on every request, against the CachingReactiveJwtDecoder in front of it. With one
+// token every request after the first is a hit; a thousand distinct tokens stand in for a thousand users.
+//
+// ./gradlew :benchmarks:jmh -Pjmh.includes=JwtDecoder
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JwtDecoderBenchmark {
+  private static final String ISSUER = "http://auth-server:9999";
+
+  @Param({"nimbus", "caching"})
+  private String decoder;
+
+  @Param({"1", "1000"})
+  private int distinctTokens;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private ReactiveJwtDecoder jwtDecoder;
+  private String[] tokens;
+  private int next;
+
+  @Setup
+  public void setUp() throws JOSEException {
+    RSAKey key = new RSAKeyGenerator(2048).keyID("benchmark").generate();
+    tokens = new String[distinctTokens];
+    for(int i = 0; i < distinctTokens; i++) {
+      JWTClaimsSet claims = new JWTClaimsSet.Builder()
+        .issuer(ISSUER)
+        .subject("user-" + i)
+        .claim("scope", "order:read order:write")
+        .issueTime(new Date())
+        .expirationTime(Date.from(Instant.now().plus(Duration.ofHours(1))))
+        .build();
+      SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+      jwt.sign(new RSASSASigner(key));
+      tokens[i] = jwt.serialize();
+    }
+
+    NimbusReactiveJwtDecoder nimbus = NimbusReactiveJwtDecoder.withJwkSource(jwt -> Flux.just(key.toPublicJWK())).build();
+    nimbus.setJwtValidator(JwtValidators.createDefaultWithIssuer(ISSUER));
+    jwtDecoder = decoder.equals("caching")
+      ? new CachingReactiveJwtDecoder(nimbus, meterRegistry, 10_000, Duration.ofMinutes(5))
+      : nimbus;
+  }
+
+  @TearDown
+  public void tearDown() {
+    FunctionCounter hits = meterRegistry.find("cache.gets").tag("result", "hit").functionCounter();
+    FunctionCounter misses = meterRegistry.find("cache.gets").tag("result", "miss").functionCounter();
+    if(hits != null && misses != null) {
+      System.out.printf("%n%s, %d distinct tokens: hit ratio %.4f%n",
+        decoder, distinctTokens, hits.count() / (hits.count() + misses.count()));
+    }
+  }
+
+  @Benchmark
+  public Jwt decode() {
+    String token = tokens[next];
+    next = (next + 1) % distinctTokens;
+    return jwtDecoder.decode(token).block();
+  }
+}
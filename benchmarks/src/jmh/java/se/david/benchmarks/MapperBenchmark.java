@@ -0,0 +1,77 @@
+package se.david.benchmarks;
+
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.david.api.core.inventory.dto.InventoryCreateDto;
+import se.david.api.core.inventory.dto.InventoryDto;
+import se.david.api.core.order.dto.OrderItemCreateDto;
+import se.david.api.core.order.dto.OrderItemDto;
+import se.david.api.core.product.dto.ProductCreateDto;
+import se.david.api.core.product.dto.ProductDto;
+import se.david.microservices.core.inventory.domain.entity.Inventory;
+import se.david.microservices.core.inventory.mapper.InventoryMapper;
+import se.david.microservices.core.order.domain.entity.Order;
+import se.david.microservices.core.order.domain.entity.OrderItem;
+import se.david.microservices.core.order.mapper.OrderItemMapper;
+import se.david.microservices.core.product.domain.entity.Product;
+import se.david.microservices.core.product.mapper.ProductMapper;
+
+// The MapStruct mappers of the core services, instantiated without Spring
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+  private final OrderItemMapper orderItemMapper = Mappers.getMapper(OrderItemMapper.class);
+  private final ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+  private final InventoryMapper inventoryMapper = Mappers.getMapper(InventoryMapper.class);
+
+  private OrderItem orderItem;
+  private OrderItemCreateDto orderItemCreateDto;
+  private Product product;
+  private ProductCreateDto productCreateDto;
+  private Inventory inventory;
+  private InventoryCreateDto inventoryCreateDto;
+
+  @Setup
+  public void setUp() {
+    Order order = new Order();
+    order.setId(1);
+    orderItem = new OrderItem(11, order, 101, 2, 500);
+    orderItemCreateDto = new OrderItemCreateDto(101, 2, 500);
+    product = new Product(101, "Laptop", "A laptop with a 14 inch screen", 12_000);
+    productCreateDto = new ProductCreateDto("Laptop", "A laptop with a 14 inch screen", 12_000);
+    inventory = new Inventory(101, 25);
+    inventoryCreateDto = new InventoryCreateDto(101, 25);
+  }
+
+  @Benchmark
+  public OrderItemDto orderItemEntityToDto() {
+    return orderItemMapper.entityToDto(orderItem);
+  }
+
+  @Benchmark
+  public OrderItem orderItemCreateDtoToEntity() {
+    return orderItemMapper.createDtoToEntity(orderItemCreateDto);
+  }
+
+  @Benchmark
+  public ProductDto productEntityToDto() {
+    return productMapper.entityToDto(product);
+  }
+
+  @Benchmark
+  public Product productCreateDtoToEntity() {
+    return productMapper.createDtoToEntity(productCreateDto);
+  }
+
+  @Benchmark
+  public InventoryDto inventoryEntityToDto() {
+    return inventoryMapper.entityToDto(inventory);
+  }
+
+  @Benchmark
+  public Inventory inventoryCreateDtoToEntity() {
+    return inventoryMapper.createDtoToEntity(inventoryCreateDto);
+  }
+}
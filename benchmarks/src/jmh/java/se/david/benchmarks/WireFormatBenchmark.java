@@ -0,0 +1,74 @@
+package se.david.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.event.Event;
+import se.david.util.messaging.CborMessageConverter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// REDUCE_STOCKS events as JSON, the way the services' ObjectMapper writes them today, against CBOR. The sizes in bytes
+// per event are printed once per fork.
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+  private static final TypeReference<Event<Integer, InventoryStockAdjustmentRequestDto>> REDUCE_STOCKS_TYPE = new TypeReference<>() {
+  };
+
+  @Param({"1", "10", "100"})
+  private int itemsPerEvent;
+
+  // Configured like the Spring Boot ObjectMapper the JSON message converter uses
+  private final ObjectMapper json = JsonMapper.builder()
+    .findAndAddModules()
+    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+    .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+    .build();
+  private final ObjectMapper cbor = new CborMessageConverter().getObjectMapper();
+
+  private Event<Integer, InventoryStockAdjustmentRequestDto> event;
+  private byte[] eventJson;
+  private byte[] eventCbor;
+
+  @Setup
+  public void setUp() throws IOException {
+    List<InventoryStockAdjustmentRequestDto> reductions = IntStream.rangeClosed(1, itemsPerEvent)
+      .mapToObj(productId -> new InventoryStockAdjustmentRequestDto(1000 + productId, 1 + productId % 5))
+      .toList();
+    event = new Event<>(Event.Type.REDUCE_STOCKS, null, reductions);
+    eventJson = json.writeValueAsBytes(event);
+    eventCbor = cbor.writeValueAsBytes(event);
+    System.out.printf("%nREDUCE_STOCKS event with %d items: %d bytes as JSON, %d bytes as CBOR%n",
+      itemsPerEvent, eventJson.length, eventCbor.length);
+  }
+
+  @Benchmark
+  public byte[] encodeJson() throws IOException {
+    return json.writeValueAsBytes(event);
+  }
+
+  @Benchmark
+  public Event<Integer, InventoryStockAdjustmentRequestDto> decodeJson() throws IOException {
+    return json.readValue(eventJson, REDUCE_STOCKS_TYPE);
+  }
+
+  @Benchmark
+  public byte[] encodeCbor() throws IOException {
+    return cbor.writeValueAsBytes(event);
+  }
+
+  @Benchmark
+  public Event<Integer, InventoryStockAdjustmentRequestDto> decodeCbor() throws IOException {
+    return cbor.readValue(eventCbor, REDUCE_STOCKS_TYPE);
+  }
+}
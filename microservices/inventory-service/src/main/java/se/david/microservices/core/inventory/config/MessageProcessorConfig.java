@@ -1,72 +1,64 @@
 package se.david.microservices.core.inventory.config;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.core.inventory.dto.InventoryDto;
 import se.david.api.core.inventory.service.InventoryService;
 import se.david.api.event.Event;
-import se.david.api.exceptions.EventProcessingException;
-import se.david.api.exceptions.InventoryOutOfStockException;
 import se.david.microservices.core.inventory.domain.entity.Inventory;
-import se.david.microservices.core.inventory.mapper.InventoryMapper;
+import se.david.microservices.core.inventory.service.InventoryEventBatchHandler;
+import se.david.util.messaging.BatchingEventProcessor;
+import se.david.util.messaging.EventBatchSettings;
+import se.david.util.messaging.EventDeduplicator;
+import se.david.util.messaging.EventResultPublisher;
+import se.david.util.messaging.ProcessedEventStore;
 
-import java.util.List;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.function.Function;
 
 @Configuration
 public class MessageProcessorConfig {
-  private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
-  private final InventoryService inventoryService;
-  private final InventoryMapper inventoryMapper;
+  private final InventoryEventBatchHandler batchHandler;
+  private final EventBatchSettings batchSettings;
+  private final MeterRegistry meterRegistry;
+  private final EventDeduplicator deduplicator;
+  private final EventResultPublisher<Integer, InventoryDto> resultPublisher;
 
   @Autowired
-  public MessageProcessorConfig(InventoryService inventoryService, InventoryMapper inventoryMapper) {
-    this.inventoryService = inventoryService;
-    this.inventoryMapper = inventoryMapper;
+  public MessageProcessorConfig(
+    InventoryEventBatchHandler batchHandler,
+    MeterRegistry meterRegistry,
+    ProcessedEventStore processedEventStore,
+    InventoryService inventoryService,
+    StreamBridge streamBridge,
+    @Value("${app.messageProcessor.batchSize:100}") int batchSize,
+    @Value("${app.messageProcessor.batchWaitMs:50}") long batchWaitMs,
+    @Value("${app.messageProcessor.concurrency:4}") int concurrency,
+    @Value("${app.deduplication.enabled:true}") boolean deduplicationEnabled,
+    @Value("${app.deduplication.cacheSize:100000}") int deduplicationCacheSize,
+    @Value("${app.deduplication.cacheWindowMinutes:60}") long deduplicationCacheWindowMinutes) {
+    this.batchHandler = batchHandler;
+    this.meterRegistry = meterRegistry;
+    this.batchSettings = new EventBatchSettings(batchSize, Duration.ofMillis(batchWaitMs), concurrency);
+    this.deduplicator = deduplicationEnabled
+      ? new EventDeduplicator(processedEventStore, deduplicationCacheSize, Duration.ofMinutes(deduplicationCacheWindowMinutes), meterRegistry)
+      : EventDeduplicator.disabled();
+    this.resultPublisher = new EventResultPublisher<>(
+      keys -> inventoryService.getInventoryStocksBatch(new ArrayList<>(keys)),
+      InventoryDto::productId,
+      result -> streamBridge.send("eventResults-out-0", result));
   }
 
   @Bean
-  public Consumer<Event<Integer, Inventory>> messageProcessor() {
-    return event -> {
-      LOG.info("Process message created at {}...", event.getEventCreatedAt());
-
-      switch(event.getEventType()) {
-        case INCREASE_STOCK:
-          InventoryStockAdjustmentRequestDto increaseRequest = inventoryMapper.entityToStockAdjustmentRequestDto(event.getData());
-
-          inventoryService.increaseStock(increaseRequest)
-            .doOnSuccess(unused -> LOG.info("Successfully increased stock for product ID {}", event.getKey()))
-            .doOnError(error -> LOG.error("Failed to increase stock for product ID {}: {}", event.getKey(), error.getMessage()))
-            .subscribe();
-          break;
-
-        case REDUCE_STOCKS:
-          List<InventoryStockAdjustmentRequestDto> adjustmentRequests = event.getDataList().stream()
-            .map(inventoryMapper::entityToStockAdjustmentRequestDto)
-            .collect(Collectors.toList());
-
-          inventoryService.reduceStocks(adjustmentRequests)
-            .doOnSuccess(unused -> LOG.info("Successfully reduced stock for provided products."))
-            .doOnError(error -> {
-              if(error instanceof InventoryOutOfStockException) {
-                LOG.warn("Stock reduction failed due to insufficient stock: {}", error.getMessage());
-              } else {
-                LOG.error("Failed to reduce stock: {}", error.getMessage());
-              }
-            })
-            .subscribe();
-          break;
-
-        default:
-          String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-          LOG.warn(errorMessage);
-          throw new EventProcessingException(errorMessage);
-      }
-      LOG.info("Message processing done!");
-    };
+  public Function<Flux<Message<Event<Integer, Inventory>>>, Mono<Void>> messageProcessor() {
+    return BatchingEventProcessor.create(batchSettings, meterRegistry, deduplicator, resultPublisher, batchHandler::apply);
   }
 }
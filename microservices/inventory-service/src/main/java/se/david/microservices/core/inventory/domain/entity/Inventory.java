@@ -1,6 +1,7 @@
 package se.david.microservices.core.inventory.domain.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -17,6 +18,10 @@ public class Inventory {
   private int productId;
   private int quantity;
 
+  // Only set in the payload of a RELEASE_RESERVATION event, never stored
+  @Transient
+  private String reservationId;
+
   public Inventory() {
   }
 
@@ -57,6 +62,14 @@ public class Inventory {
     this.quantity = quantity;
   }
 
+  public String getReservationId() {
+    return reservationId;
+  }
+
+  public void setReservationId(String reservationId) {
+    this.reservationId = reservationId;
+  }
+
   @Override
   public String toString() {
     return "Inventory{" +
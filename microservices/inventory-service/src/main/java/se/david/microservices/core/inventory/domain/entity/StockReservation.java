@@ -0,0 +1,69 @@
+package se.david.microservices.core.inventory.domain.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+// A stock reservation made under a reservation id chosen by the caller, kept until the TTL index on createdAt removes
+// it. A reservation that was released before it arrived is stored as RELEASED without lines, so it is refused when it
+// arrives.
+@Document(collection = "stock_reservations")
+public class StockReservation {
+  public static final String RESERVED = "RESERVED";
+  public static final String RELEASED = "RELEASED";
+  public static final String REFUSED = "REFUSED";
+
+  @Id
+  private String id;
+
+  private String status;
+  private List<Line> lines;
+  private Date createdAt;
+
+  public record Line(int productId, int quantity) {
+  }
+
+  public StockReservation() {
+  }
+
+  public StockReservation(String id, String status, List<Line> lines) {
+    this.id = id;
+    this.status = status;
+    this.lines = lines;
+    this.createdAt = new Date();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  public List<Line> getLines() {
+    return lines;
+  }
+
+  public void setLines(List<Line> lines) {
+    this.lines = lines;
+  }
+
+  public Date getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(Date createdAt) {
+    this.createdAt = createdAt;
+  }
+}
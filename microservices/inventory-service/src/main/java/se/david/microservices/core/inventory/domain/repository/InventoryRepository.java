@@ -1,11 +1,24 @@
 package se.david.microservices.core.inventory.domain.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.david.microservices.core.inventory.domain.entity.Inventory;
 
-public interface InventoryRepository extends ReactiveCrudRepository<Inventory, Integer> {
+import java.util.Collection;
+
+public interface InventoryRepository extends ReactiveCrudRepository<Inventory, Integer>, InventoryStockOperations {
   @Transactional(readOnly = true)
   Mono<Inventory> findByProductId(int productId);
+
+  @Transactional(readOnly = true)
+  Flux<Inventory> findByProductIdIn(Collection<Integer> productIds);
+
+  @Transactional(readOnly = true)
+  Flux<Inventory> findByProductIdGreaterThanOrderByProductIdAsc(int productId, Limit limit);
+
+  @Transactional(readOnly = true)
+  Flux<Inventory> findAllByOrderByProductIdAsc();
 }
@@ -0,0 +1,22 @@
+package se.david.microservices.core.inventory.domain.repository;
+
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.inventory.domain.entity.Inventory;
+
+import java.util.Map;
+
+// Stock adjustments done as one conditional atomic update on the server, without reading the document first
+public interface InventoryStockOperations {
+  // Subtracts quantity only if at least that much is in stock. Empty if the product is missing or the stock is too low.
+  Mono<Inventory> reserveStock(int productId, int quantity);
+
+  // Applies reserveStock to every product in one bulkWrite and emits how many of them had enough stock.
+  // Lines that did not match are simply not applied, so callers must run this in a transaction to get all-or-nothing.
+  Mono<Integer> reserveStocks(Map<Integer, Integer> quantitiesByProductId);
+
+  // Adds quantity to the stock. Empty if the product is missing.
+  Mono<Inventory> addStock(int productId, int quantity);
+
+  // Applies addStock to every product in one bulkWrite and emits how many of the products exist
+  Mono<Integer> addStocks(Map<Integer, Integer> quantitiesByProductId);
+}
@@ -0,0 +1,72 @@
+package se.david.microservices.core.inventory.domain.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.inventory.domain.entity.Inventory;
+
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class InventoryStockOperationsImpl implements InventoryStockOperations {
+  private static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+  private final ReactiveMongoTemplate mongoTemplate;
+
+  @Autowired
+  public InventoryStockOperationsImpl(ReactiveMongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  @Override
+  public Mono<Inventory> reserveStock(int productId, int quantity) {
+    return adjustStock(where("productId").is(productId).and("quantity").gte(quantity), -quantity);
+  }
+
+  @Override
+  public Mono<Integer> reserveStocks(Map<Integer, Integer> quantitiesByProductId) {
+    return Mono.defer(() -> {
+      ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.ORDERED, Inventory.class);
+      quantitiesByProductId.forEach((productId, quantity) -> bulkOperations.updateOne(
+        Query.query(where("productId").is(productId).and("quantity").gte(quantity)),
+        stockUpdate(-quantity)));
+      return bulkOperations.execute();
+    })
+      .map(BulkWriteResult::getMatchedCount);
+  }
+
+  @Override
+  public Mono<Inventory> addStock(int productId, int quantity) {
+    return adjustStock(where("productId").is(productId), quantity);
+  }
+
+  @Override
+  public Mono<Integer> addStocks(Map<Integer, Integer> quantitiesByProductId) {
+    return Mono.defer(() -> {
+      ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED, Inventory.class);
+      quantitiesByProductId.forEach((productId, quantity) -> bulkOperations.updateOne(
+        Query.query(where("productId").is(productId)),
+        stockUpdate(quantity)));
+      return bulkOperations.execute();
+    })
+      .map(BulkWriteResult::getMatchedCount);
+  }
+
+  // The version is bumped as well, so a concurrent read-modify-save of the same document still fails its optimistic lock
+  private Mono<Inventory> adjustStock(Criteria criteria, int delta) {
+    return mongoTemplate.findAndModify(Query.query(criteria), stockUpdate(delta), RETURN_NEW, Inventory.class);
+  }
+
+  private Update stockUpdate(int delta) {
+    return new Update()
+      .inc("quantity", delta)
+      .inc("version", 1);
+  }
+}
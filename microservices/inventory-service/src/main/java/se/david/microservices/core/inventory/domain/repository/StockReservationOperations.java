@@ -0,0 +1,16 @@
+package se.david.microservices.core.inventory.domain.repository;
+
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.inventory.domain.entity.StockReservation;
+
+// Changes of a stock reservation that must not race with another request for the same reservation id
+public interface StockReservationOperations {
+  // Creates the TTL index of the reservations, if it does not exist yet. Must not run inside a transaction.
+  Mono<Void> ensureTtlIndex();
+
+  // Fails with a DuplicateKeyException if a reservation with the same id exists
+  Mono<StockReservation> insert(StockReservation reservation);
+
+  // Emits the reservation as it was before the change. Empty if there is none with the id in fromStatus.
+  Mono<StockReservation> changeStatus(String reservationId, String fromStatus, String toStatus);
+}
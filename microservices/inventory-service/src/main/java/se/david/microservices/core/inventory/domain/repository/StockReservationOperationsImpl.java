@@ -0,0 +1,49 @@
+package se.david.microservices.core.inventory.domain.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.inventory.domain.entity.StockReservation;
+
+import java.time.Duration;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class StockReservationOperationsImpl implements StockReservationOperations {
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final Mono<String> ttlIndex;
+
+  @Autowired
+  public StockReservationOperationsImpl(
+    ReactiveMongoTemplate mongoTemplate,
+    @Value("${app.stockReservation.retentionHours:168}") long retentionHours) {
+    this.mongoTemplate = mongoTemplate;
+    // Created on first use like the index of the processed events, and tried again after a failure
+    this.ttlIndex = mongoTemplate.indexOps(StockReservation.class)
+      .ensureIndex(new Index().on("createdAt", Sort.Direction.ASC).expire(Duration.ofHours(retentionHours)))
+      .cache(index -> Duration.ofMillis(Long.MAX_VALUE), ex -> Duration.ZERO, () -> Duration.ZERO);
+  }
+
+  @Override
+  public Mono<Void> ensureTtlIndex() {
+    return ttlIndex.then();
+  }
+
+  @Override
+  public Mono<StockReservation> insert(StockReservation reservation) {
+    return mongoTemplate.insert(reservation);
+  }
+
+  @Override
+  public Mono<StockReservation> changeStatus(String reservationId, String fromStatus, String toStatus) {
+    return mongoTemplate.findAndModify(
+      Query.query(where("_id").is(reservationId).and("status").is(fromStatus)),
+      new Update().set("status", toStatus),
+      StockReservation.class);
+  }
+}
@@ -0,0 +1,7 @@
+package se.david.microservices.core.inventory.domain.repository;
+
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import se.david.microservices.core.inventory.domain.entity.StockReservation;
+
+public interface StockReservationRepository extends ReactiveCrudRepository<StockReservation, String>, StockReservationOperations {
+}
@@ -0,0 +1,124 @@
+package se.david.microservices.core.inventory.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.core.inventory.service.InventoryService;
+import se.david.api.event.Event;
+import se.david.api.exceptions.EventProcessingException;
+import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
+import se.david.api.exceptions.NotFoundException;
+import se.david.microservices.core.inventory.domain.entity.Inventory;
+import se.david.microservices.core.inventory.domain.repository.InventoryRepository;
+import se.david.microservices.core.inventory.mapper.InventoryMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Applies a batch of inventory events in their order. Consecutive INCREASE_STOCK events are summed per product and
+// written with one bulkWrite; every REDUCE_STOCKS event stays its own all-or-nothing reservation, and every
+// RELEASE_RESERVATION event gives the stock of a reservation made under a reservation id back. The steps are not
+// undone when a later one fails, so each step is reported to stepApplied as soon as it is written and the
+// BatchingEventProcessor does not apply its events again.
+@Component
+public class InventoryEventBatchHandler {
+  private static final Logger LOG = LoggerFactory.getLogger(InventoryEventBatchHandler.class);
+
+  private final InventoryRepository repository;
+  private final InventoryService inventoryService;
+  private final InventoryMapper mapper;
+  private final StockReservationEngine reservationEngine;
+
+  @Autowired
+  public InventoryEventBatchHandler(InventoryRepository repository, InventoryService inventoryService, InventoryMapper mapper, StockReservationEngine reservationEngine) {
+    this.repository = repository;
+    this.inventoryService = inventoryService;
+    this.mapper = mapper;
+    this.reservationEngine = reservationEngine;
+  }
+
+  public Mono<Void> apply(List<Event<Integer, Inventory>> events, Function<List<Event<Integer, Inventory>>, Mono<Void>> stepApplied) {
+    // Rejects the whole batch before anything is written, so it can safely be applied again event by event
+    events.forEach(this::validateEventType);
+
+    List<Mono<Void>> steps = new ArrayList<>();
+    List<Event<Integer, Inventory>> increaseEvents = new ArrayList<>();
+    for(Event<Integer, Inventory> event : events) {
+      if(event.getEventType() == Event.Type.INCREASE_STOCK) {
+        increaseEvents.add(event);
+      } else {
+        if(!increaseEvents.isEmpty()) {
+          steps.add(step(increaseStocks(increaseEvents), increaseEvents, stepApplied));
+          increaseEvents = new ArrayList<>();
+        }
+        steps.add(step(event.getEventType() == Event.Type.REDUCE_STOCKS ? reduceStocks(event) : releaseReservation(event), List.of(event), stepApplied));
+      }
+    }
+    if(!increaseEvents.isEmpty()) {
+      steps.add(step(increaseStocks(increaseEvents), increaseEvents, stepApplied));
+    }
+
+    return Flux.concat(steps).then();
+  }
+
+  private void validateEventType(Event<Integer, Inventory> event) {
+    if(event.getEventType() != Event.Type.INCREASE_STOCK && event.getEventType() != Event.Type.REDUCE_STOCKS
+      && event.getEventType() != Event.Type.RELEASE_RESERVATION) {
+      String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected an INCREASE_STOCK, REDUCE_STOCKS or RELEASE_RESERVATION event";
+      LOG.warn(errorMessage);
+      throw new EventProcessingException(errorMessage);
+    }
+    if(event.getEventType() == Event.Type.RELEASE_RESERVATION && (event.getData() == null || event.getData().getReservationId() == null)) {
+      String errorMessage = "RELEASE_RESERVATION event " + event.getEventId() + " has no reservationId";
+      LOG.warn(errorMessage);
+      throw new EventProcessingException(errorMessage);
+    }
+  }
+
+  private static Mono<Void> step(Mono<Void> write, List<Event<Integer, Inventory>> stepEvents,
+    Function<List<Event<Integer, Inventory>>, Mono<Void>> stepApplied) {
+    return write.then(Mono.defer(() -> stepApplied.apply(stepEvents)));
+  }
+
+  private Mono<Void> increaseStocks(List<Event<Integer, Inventory>> events) {
+    Map<Integer, Integer> quantitiesByProductId = new LinkedHashMap<>();
+    events.forEach(event -> quantitiesByProductId.merge(event.getData().getProductId(), event.getData().getQuantity(), Integer::sum));
+    return repository.addStocks(quantitiesByProductId)
+      .doOnNext(matched -> {
+        if(matched < quantitiesByProductId.size()) {
+          LOG.warn("Increased stock for {} of {} products, the others were not found: {}", matched, quantitiesByProductId.size(), quantitiesByProductId.keySet());
+        } else {
+          LOG.info("Successfully increased stock for product IDs {}", quantitiesByProductId.keySet());
+        }
+      })
+      .then();
+  }
+
+  private Mono<Void> releaseReservation(Event<Integer, Inventory> event) {
+    return reservationEngine.release(event.getData().getReservationId());
+  }
+
+  // A reservation that is refused is a normal outcome for the order and not a reason to dead-letter the event
+  private Mono<Void> reduceStocks(Event<Integer, Inventory> event) {
+    List<InventoryStockAdjustmentRequestDto> adjustmentRequests = event.getDataList().stream()
+      .map(mapper::entityToStockAdjustmentRequestDto)
+      .toList();
+
+    return Mono.defer(() -> inventoryService.reduceStocks(adjustmentRequests))
+      .doOnSuccess(unused -> LOG.info("Successfully reduced stock for provided products."))
+      .onErrorResume(error -> error instanceof InventoryOutOfStockException
+        || error instanceof InvalidInputException
+        || error instanceof NotFoundException, error -> {
+        LOG.warn("Stock reduction failed: {}", error.getMessage());
+        return Mono.empty();
+      });
+  }
+}
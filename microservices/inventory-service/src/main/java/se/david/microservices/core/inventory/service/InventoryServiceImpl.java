@@ -3,7 +3,8 @@ package se.david.microservices.core.inventory.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DuplicateKeyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
@@ -13,7 +14,6 @@ import se.david.api.core.inventory.dto.InventoryDto;
 import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
 import se.david.api.core.inventory.service.InventoryService;
 import se.david.api.exceptions.InvalidInputException;
-import se.david.api.exceptions.InventoryOutOfStockException;
 import se.david.api.exceptions.NotFoundException;
 import se.david.microservices.core.inventory.domain.entity.Inventory;
 import se.david.microservices.core.inventory.domain.repository.InventoryRepository;
@@ -26,15 +26,27 @@ import java.util.logging.Level;
 @RestController
 public class InventoryServiceImpl implements InventoryService {
   private static final Logger LOG = LoggerFactory.getLogger(InventoryServiceImpl.class);
+  private static final int MAX_PAGE_LIMIT = 1000;
+  private static final int MAX_BATCH_SIZE = 10_000;
+  private static final int MAX_RESERVATION_ID_LENGTH = 36;
   private final InventoryRepository repository;
   private final ServiceUtil serviceUtil;
   private final InventoryMapper mapper;
+  private final StockReservationEngine reservationEngine;
+  private final int batchChunkSize;
 
   @Autowired
-  public InventoryServiceImpl(InventoryRepository repository, ServiceUtil serviceUtil, InventoryMapper mapper) {
+  public InventoryServiceImpl(
+    InventoryRepository repository,
+    ServiceUtil serviceUtil,
+    InventoryMapper mapper,
+    StockReservationEngine reservationEngine,
+    @Value("${app.batchLookup.chunkSize:500}") int batchChunkSize) {
     this.repository = repository;
     this.serviceUtil = serviceUtil;
     this.mapper = mapper;
+    this.reservationEngine = reservationEngine;
+    this.batchChunkSize = batchChunkSize;
   }
 
   @Override
@@ -45,6 +57,54 @@ public class InventoryServiceImpl implements InventoryService {
       .log(LOG.getName(), Level.FINE);
   }
 
+  @Override
+  public Flux<InventoryDto> getInventoryStocksPage(int afterId, int limit) {
+    LOG.info("getInventoryStocksPage: Fetching up to {} inventory stocks after productId: {}", limit, afterId);
+    validatePageRequest(afterId, limit);
+
+    return repository.findByProductIdGreaterThanOrderByProductIdAsc(afterId, Limit.of(limit))
+      .map(this::mapToInventoryDtoWithServiceAddress)
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  // Backed by a Mongo cursor over the unique productId index, so documents are pulled in batches as they are consumed.
+  @Override
+  public Flux<InventoryDto> streamInventoryStocks() {
+    LOG.info("streamInventoryStocks: Streaming all inventory stocks");
+    return repository.findAllByOrderByProductIdAsc()
+      .map(this::mapToInventoryDtoWithServiceAddress)
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  // One $in query per chunk of batchChunkSize ids, each chunk streamed from its cursor before the next is queried
+  @Override
+  public Flux<InventoryDto> getInventoryStocksBatch(List<Integer> productIds) {
+    LOG.info("getInventoryStocksBatch: Fetching inventory stocks for a batch of {} productIds", productIds.size());
+    validateBatchSize(productIds);
+
+    return Flux.fromIterable(productIds)
+      .distinct()
+      .buffer(batchChunkSize)
+      .concatMap(repository::findByProductIdIn)
+      .map(this::mapToInventoryDtoWithServiceAddress)
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private void validateBatchSize(List<Integer> productIds) {
+    if(productIds.size() > MAX_BATCH_SIZE) {
+      throw new InvalidInputException("Too many ids: " + productIds.size() + ", at most " + MAX_BATCH_SIZE + " per batch");
+    }
+  }
+
+  private void validatePageRequest(int afterId, int limit) {
+    if(afterId < 0) {
+      throw new InvalidInputException("Invalid afterId: " + afterId);
+    }
+    if(limit < 1 || limit > MAX_PAGE_LIMIT) {
+      throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + MAX_PAGE_LIMIT);
+    }
+  }
+
   private InventoryDto mapToInventoryDtoWithServiceAddress(Inventory inventory) {
     return new InventoryDto(inventory.getProductId(), inventory.getQuantity(), serviceUtil.getServiceAddress());
   }
@@ -100,49 +160,30 @@ public class InventoryServiceImpl implements InventoryService {
   }
 
   @Override
-  @Transactional
   public Mono<InventoryDto> increaseStock(InventoryStockAdjustmentRequestDto inventoryIncreaseDto) {
-    return findInventoryByProductId(inventoryIncreaseDto.productId())
-      .flatMap(inventory -> {
-        adjustStock(inventory, inventoryIncreaseDto.quantity());
-        return repository.save(inventory)
-          .map(this::mapToInventoryDtoWithServiceAddress);
-      })
-      .onErrorMap(DuplicateKeyException.class, ex ->
-        new InvalidInputException("Duplicate key for productId: " + inventoryIncreaseDto.productId()))
+    return repository.addStock(inventoryIncreaseDto.productId(), inventoryIncreaseDto.quantity())
+      .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: " + inventoryIncreaseDto.productId())))
+      .map(this::mapToInventoryDtoWithServiceAddress)
       .log(LOG.getName(), Level.FINE);
   }
 
-  private void adjustStock(Inventory inventory, int adjustmentQuantity) {
-    inventory.setQuantity(inventory.getQuantity() + adjustmentQuantity);
-  }
-
   @Override
-  @Transactional
   public Mono<Void> reduceStocks(List<InventoryStockAdjustmentRequestDto> inventoryReduceDtos) {
-    return Flux.fromIterable(inventoryReduceDtos)
-      .flatMap(this::processStockReduction)
-      .then()
-      .onErrorMap(DuplicateKeyException.class, ex ->
-        new InvalidInputException("Duplicate key encountered during stock reduction"))
+    return reservationEngine.reserve(inventoryReduceDtos)
       .log(LOG.getName(), Level.FINE);
   }
 
-  private Mono<Void> processStockReduction(InventoryStockAdjustmentRequestDto reduceRequest) {
-    return findInventoryByProductId(reduceRequest.productId())
-      .flatMap(inventory -> {
-        ensureSufficientStock(inventory, reduceRequest.quantity());
-        adjustStock(inventory, -reduceRequest.quantity());
-        return repository.save(inventory).then();
-      })
-      .onErrorMap(DuplicateKeyException.class, ex ->
-        new InvalidInputException("Duplicate key for productId: " + reduceRequest.productId()))
+  @Override
+  public Mono<Void> reserveStocks(String reservationId, List<InventoryStockAdjustmentRequestDto> reservations) {
+    LOG.debug("reserveStocks: Reserving stock for {} items under reservationId: {}", reservations.size(), reservationId);
+    validateReservationId(reservationId);
+    return reservationEngine.reserve(reservationId, reservations)
       .log(LOG.getName(), Level.FINE);
   }
 
-  private void ensureSufficientStock(Inventory inventory, int quantityToReduce) {
-    if(inventory.getQuantity() < quantityToReduce) {
-      throw new InventoryOutOfStockException("Insufficient stock for productId: " + inventory.getProductId());
+  private void validateReservationId(String reservationId) {
+    if(reservationId == null || reservationId.isBlank() || reservationId.length() > MAX_RESERVATION_ID_LENGTH) {
+      throw new InvalidInputException("Invalid reservationId: " + reservationId);
     }
   }
 }
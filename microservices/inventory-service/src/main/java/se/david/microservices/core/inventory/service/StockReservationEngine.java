@@ -0,0 +1,228 @@
+package se.david.microservices.core.inventory.service;
+
+import com.mongodb.MongoException;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
+import se.david.api.exceptions.NotFoundException;
+import se.david.microservices.core.inventory.domain.entity.Inventory;
+import se.david.microservices.core.inventory.domain.entity.StockReservation;
+import se.david.microservices.core.inventory.domain.repository.InventoryRepository;
+import se.david.microservices.core.inventory.domain.repository.StockReservationRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Reserves all the lines of one order, or none of them.
+//   transactional - every line in one bulkWrite inside a multi-document transaction, aborted unless every line matched
+//   compensating  - line by line with conditional updates, releasing the reserved lines again when one fails.
+//                   Used when MongoDB runs standalone and has no transactions.
+//   auto          - transactional on a replica set or mongos, compensating otherwise
+//
+// A reservation with a reservation id is recorded under that id, in the same transaction as the stock when there are
+// transactions. Sending it again does not reserve the stock twice, and release() gives the stock back by the id, also
+// for a reservation whose request timed out at the caller. A release that arrives first leaves a RELEASED record, so
+// the reservation is refused when it arrives. Without transactions the record is written before the stock, and a
+// release that runs between the two can give back stock the refused reservation never took.
+@Component
+public class StockReservationEngine {
+  private static final Logger LOG = LoggerFactory.getLogger(StockReservationEngine.class);
+  public static final String AUTO = "auto";
+  public static final String TRANSACTIONAL = "transactional";
+  public static final String COMPENSATING = "compensating";
+  private final InventoryRepository repository;
+  private final StockReservationRepository reservations;
+  private final TransactionalOperator transactionalOperator;
+  private final Mono<Boolean> useTransactions;
+  private final int maxRetries;
+
+  @Autowired
+  public StockReservationEngine(
+    InventoryRepository repository,
+    StockReservationRepository reservations,
+    ReactiveMongoDatabaseFactory databaseFactory,
+    @Value("${app.stockReservation.mode:auto}") String mode,
+    @Value("${app.stockReservation.maxRetries:10}") int maxRetries) {
+    this.repository = repository;
+    this.reservations = reservations;
+    this.maxRetries = maxRetries;
+    // Not registered as a bean: that would turn every @Transactional in the service into a Mongo transaction
+    this.transactionalOperator = TransactionalOperator.create(new ReactiveMongoTransactionManager(databaseFactory));
+    this.useTransactions = switch(mode) {
+      case TRANSACTIONAL -> Mono.just(true);
+      case COMPENSATING -> Mono.just(false);
+      case AUTO -> supportsTransactions(databaseFactory);
+      default -> throw new IllegalArgumentException("Unknown stockReservation mode: " + mode + ", expected " + AUTO + ", " + TRANSACTIONAL + " or " + COMPENSATING);
+    };
+  }
+
+  // Transactions need a replica set member or a mongos. Asked once and then remembered, unless the server could not be reached.
+  private static Mono<Boolean> supportsTransactions(ReactiveMongoDatabaseFactory databaseFactory) {
+    return databaseFactory.getMongoDatabase()
+      .flatMap(database -> Mono.from(database.runCommand(new Document("hello", 1))))
+      .map(reply -> reply.containsKey("setName") || "isdbgrid".equals(reply.getString("msg")))
+      .doOnNext(supported -> LOG.info("Stock reservations use {}", supported ? "multi-document transactions" : "compensation"))
+      .cache(supported -> Duration.ofMillis(Long.MAX_VALUE), ex -> Duration.ZERO, () -> Duration.ZERO);
+  }
+
+  public Mono<Void> reserve(List<InventoryStockAdjustmentRequestDto> requests) {
+    Map<Integer, Integer> quantitiesByProductId = quantitiesByProductId(requests);
+
+    if(quantitiesByProductId.values().stream().anyMatch(quantity -> quantity < 1)) {
+      return Mono.error(new InvalidInputException("Stock reservation quantities must be positive"));
+    }
+    if(quantitiesByProductId.isEmpty()) {
+      return Mono.empty();
+    }
+    // A single document update is atomic on its own, no transaction needed
+    if(quantitiesByProductId.size() == 1) {
+      Map.Entry<Integer, Integer> line = quantitiesByProductId.entrySet().iterator().next();
+      return reserveLine(line.getKey(), line.getValue()).then();
+    }
+
+    return useTransactions.flatMap(transactional -> transactional
+      ? reserveInTransaction(Mono.empty(), quantitiesByProductId)
+      : reserveWithCompensation(quantitiesByProductId));
+  }
+
+  public Mono<Void> reserve(String reservationId, List<InventoryStockAdjustmentRequestDto> requests) {
+    Map<Integer, Integer> quantitiesByProductId = quantitiesByProductId(requests);
+
+    if(quantitiesByProductId.isEmpty() || quantitiesByProductId.values().stream().anyMatch(quantity -> quantity < 1)) {
+      return Mono.error(new InvalidInputException("Stock reservation quantities must be positive"));
+    }
+    StockReservation reservation = new StockReservation(reservationId, StockReservation.RESERVED, quantitiesByProductId.entrySet().stream()
+      .map(line -> new StockReservation.Line(line.getKey(), line.getValue()))
+      .toList());
+
+    return reservations.ensureTtlIndex()
+      .then(useTransactions)
+      .flatMap(transactional -> transactional
+        ? reserveInTransaction(reservations.insert(reservation).then(), quantitiesByProductId)
+        : reservations.insert(reservation).then(reserveWithCompensation(quantitiesByProductId)
+          .onErrorResume(ex -> reservations.changeStatus(reservationId, StockReservation.RESERVED, StockReservation.REFUSED)
+            .then(Mono.error(ex)))))
+      .onErrorResume(DuplicateKeyException.class, ex -> existingReservation(reservationId));
+  }
+
+  // The same reservation again answers like the first time, a released or refused one is refused
+  private Mono<Void> existingReservation(String reservationId) {
+    return reservations.findById(reservationId)
+      .flatMap(existing -> StockReservation.RESERVED.equals(existing.getStatus())
+        ? Mono.<Void>empty()
+        : Mono.<Void>error(new InvalidInputException("Stock reservation " + reservationId + " was " + existing.getStatus().toLowerCase())));
+  }
+
+  // Gives the stock of the reservation back once, or refuses the reservation if it has not arrived yet
+  public Mono<Void> release(String reservationId) {
+    return reservations.ensureTtlIndex()
+      .then(reservations.insert(new StockReservation(reservationId, StockReservation.RELEASED, List.of())))
+      .doOnNext(tombstone -> LOG.info("Released stock reservation {} before it arrived", reservationId))
+      .then()
+      .onErrorResume(DuplicateKeyException.class, ex -> useTransactions.flatMap(transactional -> {
+        Mono<Void> giveBack = reservations.changeStatus(reservationId, StockReservation.RESERVED, StockReservation.RELEASED)
+          .flatMap(reservation -> repository.addStocks(reservation.getLines().stream()
+            .collect(Collectors.toMap(StockReservation.Line::productId, StockReservation.Line::quantity, Integer::sum, LinkedHashMap::new))))
+          .doOnNext(matched -> LOG.info("Released stock reservation {}", reservationId))
+          .then();
+        return transactional ? giveBack.as(transactionalOperator::transactional) : giveBack;
+      }));
+  }
+
+  private static Map<Integer, Integer> quantitiesByProductId(List<InventoryStockAdjustmentRequestDto> requests) {
+    return requests.stream()
+      .collect(Collectors.toMap(InventoryStockAdjustmentRequestDto::productId, InventoryStockAdjustmentRequestDto::quantity, Integer::sum, LinkedHashMap::new));
+  }
+
+  // before runs in the same transaction, ahead of the stock updates
+  private Mono<Void> reserveInTransaction(Mono<Void> before, Map<Integer, Integer> quantitiesByProductId) {
+    return before.then(repository.reserveStocks(quantitiesByProductId))
+      .flatMap(matched -> matched == quantitiesByProductId.size()
+        ? Mono.<Void>empty()
+        : Mono.<Void>error(new UnmatchedReservationException()))
+      .as(transactionalOperator::transactional)
+      // Concurrent transactions on the same product abort with a write conflict, they are safe to run again
+      .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(5))
+        .maxBackoff(Duration.ofMillis(200))
+        .jitter(0.5)
+        .filter(StockReservationEngine::isTransientTransactionError))
+      .onErrorResume(UnmatchedReservationException.class, ex -> rejectReservation(quantitiesByProductId));
+  }
+
+  private static boolean isTransientTransactionError(Throwable error) {
+    for(Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if(cause instanceof MongoException mongoException && mongoException.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Only runs after the transaction was aborted, to report which line could not be reserved
+  private Mono<Void> rejectReservation(Map<Integer, Integer> quantitiesByProductId) {
+    return repository.findByProductIdIn(quantitiesByProductId.keySet())
+      .collectMap(Inventory::getProductId, Function.identity())
+      .flatMap(inventories -> {
+        for(Map.Entry<Integer, Integer> line : quantitiesByProductId.entrySet()) {
+          Inventory inventory = inventories.get(line.getKey());
+          if(inventory == null) {
+            return Mono.error(new NotFoundException("No product found for productId: " + line.getKey()));
+          }
+          if(inventory.getQuantity() < line.getValue()) {
+            return Mono.error(new InventoryOutOfStockException("Insufficient stock for productId: " + line.getKey()));
+          }
+        }
+        return Mono.error(new InventoryOutOfStockException("Insufficient stock for productIds: " + quantitiesByProductId.keySet()));
+      });
+  }
+
+  private Mono<Void> reserveWithCompensation(Map<Integer, Integer> quantitiesByProductId) {
+    return Mono.defer(() -> {
+      List<Map.Entry<Integer, Integer>> reserved = new ArrayList<>();
+      return Flux.fromIterable(quantitiesByProductId.entrySet())
+        .concatMap(line -> reserveLine(line.getKey(), line.getValue()).doOnNext(inventory -> reserved.add(line)))
+        .then()
+        .onErrorResume(ex -> release(reserved).then(Mono.error(ex)));
+    });
+  }
+
+  private Mono<Void> release(List<Map.Entry<Integer, Integer>> reserved) {
+    return Flux.fromIterable(reserved)
+      .concatMap(line -> repository.addStock(line.getKey(), line.getValue())
+        .doOnError(ex -> LOG.error("Failed to release {} reserved items of productId: {}", line.getValue(), line.getKey(), ex))
+        .onErrorResume(ex -> Mono.empty()))
+      .then();
+  }
+
+  // Only when nothing matched is the document read, to tell a missing product from insufficient stock
+  private Mono<Inventory> reserveLine(int productId, int quantity) {
+    return repository.reserveStock(productId, quantity)
+      .switchIfEmpty(Mono.defer(() -> repository.findByProductId(productId)
+        .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: " + productId)))
+        .flatMap(inventory -> Mono.<Inventory>error(new InventoryOutOfStockException("Insufficient stock for productId: " + productId)))));
+  }
+
+  private static class UnmatchedReservationException extends RuntimeException {
+    UnmatchedReservationException() {
+      super("Not every line of the reservation matched", null, false, false);
+    }
+  }
+}
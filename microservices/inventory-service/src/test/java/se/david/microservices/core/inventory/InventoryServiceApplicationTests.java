@@ -4,9 +4,12 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.cloud.stream.binder.test.InputDestination;
 import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
@@ -14,14 +17,28 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
 import se.david.api.core.inventory.dto.InventoryCreateDto;
 import se.david.api.core.inventory.dto.InventoryDto;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.core.inventory.service.InventoryService;
 import se.david.api.event.Event;
+import se.david.api.exceptions.InventoryOutOfStockException;
 import se.david.microservices.core.inventory.domain.entity.Inventory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doReturn;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT)
@@ -38,6 +55,7 @@ class InventoryServiceApplicationTests {
     registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
     registry.add("eureka.client.enabled", () -> "false");
     registry.add("spring.cloud.discovery.enabled", () -> "false");
+    registry.add("app.stockReservation.maxRetries", () -> "100");
   }
 
   @Autowired
@@ -46,6 +64,9 @@ class InventoryServiceApplicationTests {
   @Autowired
   private InputDestination inputDestination;
 
+  @SpyBean
+  private InventoryService inventoryService;
+
   @Test
   @DisplayName("create, get and delete an inventory stock record end to end against real MongoDB")
   void createGetDeleteInventoryStockHappyPath() {
@@ -116,6 +137,118 @@ class InventoryServiceApplicationTests {
         .jsonPath("$.quantity").isEqualTo(17));
   }
 
+  @Test
+  @DisplayName("messageProcessor applies INCREASE_STOCK and REDUCE_STOCKS events for one product in the order they were sent")
+  void messageConsumerAppliesMixedEventsInOrder() {
+    client.post().uri("/inventories")
+      .bodyValue(new InventoryCreateDto(3501, 0))
+      .exchange()
+      .expectStatus().isOk();
+
+    // The reduction only fits after both increases, so it fails if it is applied out of order
+    Event<Integer, Inventory> reduction = new Event<>(Event.Type.REDUCE_STOCKS, 3501, List.of(new Inventory(3501, 8)));
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.INCREASE_STOCK, 3501, new Inventory(3501, 5))).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.INCREASE_STOCK, 3501, new Inventory(3501, 5))).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(reduction).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.INCREASE_STOCK, 3501, new Inventory(3501, 1))).build(), "inventories");
+
+    await().untilAsserted(() ->
+      client.get().uri("/inventories/{productId}", 3501)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.quantity").isEqualTo(3));
+  }
+
+  @Test
+  @DisplayName("messageProcessor applies a redelivered INCREASE_STOCK event only once")
+  void messageConsumerIgnoresRedeliveredEvent() {
+    client.post().uri("/inventories")
+      .bodyValue(new InventoryCreateDto(3601, 0))
+      .exchange()
+      .expectStatus().isOk();
+
+    // Same event, so same event id, delivered twice
+    Event<Integer, Inventory> increase = new Event<>(Event.Type.INCREASE_STOCK, 3601, new Inventory(3601, 5));
+    inputDestination.send(MessageBuilder.withPayload(increase).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(increase).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.INCREASE_STOCK, 3601, new Inventory(3601, 1))).build(), "inventories");
+
+    await().untilAsserted(() ->
+      client.get().uri("/inventories/{productId}", 3601)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.quantity").isEqualTo(6));
+  }
+
+  @Test
+  @DisplayName("messageProcessor applies an INCREASE_STOCK event only once when a later REDUCE_STOCKS event of its batch fails")
+  void messageConsumerDoesNotReapplyIncreaseOfFailedBatch() {
+    client.post().uri("/inventories")
+      .bodyValue(new InventoryCreateDto(3701, 10))
+      .exchange()
+      .expectStatus().isOk();
+
+    // Not a refused reservation but an error of the database, so the batch is applied again event by event
+    List<InventoryStockAdjustmentRequestDto> failingReservation = List.of(new InventoryStockAdjustmentRequestDto(3701, 2));
+    doReturn(Mono.error(new DataAccessResourceFailureException("Connection reset")))
+      .when(inventoryService).reduceStocks(failingReservation);
+
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.INCREASE_STOCK, 3701, new Inventory(3701, 5))).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.REDUCE_STOCKS, 3701, List.of(new Inventory(3701, 2)))).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.INCREASE_STOCK, 3701, new Inventory(3701, 1))).build(), "inventories");
+
+    // Applying the first increase twice would go from 15 to 20 and 21, and never reach 16
+    await().untilAsserted(() ->
+      client.get().uri("/inventories/{productId}", 3701)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.quantity").isEqualTo(16));
+  }
+
+  @Test
+  @DisplayName("a reservation sent twice under one reservation id is reserved once and released once by a RELEASE_RESERVATION event")
+  void reservationByIdIsReservedAndReleasedOnce() {
+    createInventoryStock(3801, 10);
+    List<InventoryStockAdjustmentRequestDto> reservation = List.of(new InventoryStockAdjustmentRequestDto(3801, 4));
+
+    for(int i = 0; i < 2; i++) {
+      client.put().uri("/inventories/reservations/{reservationId}", "saga-3801")
+        .bodyValue(reservation)
+        .exchange()
+        .expectStatus().isOk();
+    }
+    assertEquals(6, inventoryService.getInventoryStock(3801).block().quantity());
+
+    // Two releases with their own event ids, followed by a reduction in the same lane, since they have no key either
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.RELEASE_RESERVATION, null, releaseOf("saga-3801"))).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.RELEASE_RESERVATION, null, releaseOf("saga-3801"))).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.REDUCE_STOCKS, null, List.of(new Inventory(3801, 1)))).build(), "inventories");
+
+    // Releasing twice would go from 6 to 10, 14 and 13, and never reach 9
+    await().untilAsserted(() -> assertEquals(9, inventoryService.getInventoryStock(3801).block().quantity()));
+  }
+
+  @Test
+  @DisplayName("a reservation whose RELEASE_RESERVATION event arrived first is refused and reserves nothing")
+  void reservationReleasedBeforeItArrivedIsRefused() {
+    createInventoryStock(3802, 10);
+
+    // The reduction is in the same lane as the release, so the release has been applied once it is
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.RELEASE_RESERVATION, null, releaseOf("saga-3802"))).build(), "inventories");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.REDUCE_STOCKS, null, List.of(new Inventory(3802, 1)))).build(), "inventories");
+    await().untilAsserted(() -> assertEquals(9, inventoryService.getInventoryStock(3802).block().quantity()));
+
+    client.put().uri("/inventories/reservations/{reservationId}", "saga-3802")
+      .bodyValue(List.of(new InventoryStockAdjustmentRequestDto(3802, 4)))
+      .exchange()
+      .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+    assertEquals(9, inventoryService.getInventoryStock(3802).block().quantity());
+  }
+
   @Test
   @DisplayName("messageProcessor consumes a REDUCE_STOCKS event and updates every item's quantity")
   void messageConsumerReduceStocksEventUpdatesEachQuantity() {
@@ -146,4 +279,146 @@ class InventoryServiceApplicationTests {
         .expectBody()
         .jsonPath("$.quantity").isEqualTo(0));
   }
+
+  @Test
+  @DisplayName("Concurrent reservations of one product never oversell it")
+  void concurrentReservationsNeverOversell() throws Exception {
+    int initialQuantity = 100;
+    int reservations = 300;
+    client.post().uri("/inventories")
+      .bodyValue(new InventoryCreateDto(5001, initialQuantity))
+      .exchange()
+      .expectStatus().isOk();
+
+    AtomicInteger reserved = new AtomicInteger();
+    AtomicInteger outOfStock = new AtomicInteger();
+    runConcurrently(reservations, () -> {
+      try {
+        inventoryService.reduceStocks(List.of(new InventoryStockAdjustmentRequestDto(5001, 1))).block();
+        reserved.incrementAndGet();
+      } catch (InventoryOutOfStockException ex) {
+        outOfStock.incrementAndGet();
+      }
+    });
+
+    assertEquals(initialQuantity, reserved.get());
+    assertEquals(reservations - initialQuantity, outOfStock.get());
+    assertEquals(0, inventoryService.getInventoryStock(5001).block().quantity());
+  }
+
+  @Test
+  @DisplayName("Concurrent increases and reservations of one product lose no updates")
+  void concurrentIncreasesAndReservationsLoseNoUpdates() throws Exception {
+    int initialQuantity = 1000;
+    int adjustments = 400;
+    client.post().uri("/inventories")
+      .bodyValue(new InventoryCreateDto(5002, initialQuantity))
+      .exchange()
+      .expectStatus().isOk();
+
+    AtomicInteger counter = new AtomicInteger();
+    runConcurrently(adjustments, () -> {
+      if(counter.getAndIncrement() % 2 == 0) {
+        inventoryService.increaseStock(new InventoryStockAdjustmentRequestDto(5002, 3)).block();
+      } else {
+        inventoryService.reduceStocks(List.of(new InventoryStockAdjustmentRequestDto(5002, 2))).block();
+      }
+    });
+
+    int expectedQuantity = initialQuantity + (adjustments / 2) * 3 - (adjustments / 2) * 2;
+    assertEquals(expectedQuantity, inventoryService.getInventoryStock(5002).block().quantity());
+  }
+
+  @Test
+  @DisplayName("reduceStocks with one line out of stock leaves every line of the order untouched")
+  void reduceStocksIsAllOrNothing() {
+    createInventoryStock(6001, 10);
+    createInventoryStock(6002, 10);
+    createInventoryStock(6003, 1);
+
+    List<InventoryStockAdjustmentRequestDto> order = List.of(
+      new InventoryStockAdjustmentRequestDto(6001, 2),
+      new InventoryStockAdjustmentRequestDto(6002, 3),
+      new InventoryStockAdjustmentRequestDto(6003, 5));
+
+    assertThrows(InventoryOutOfStockException.class, () -> inventoryService.reduceStocks(order).block());
+
+    assertEquals(10, inventoryService.getInventoryStock(6001).block().quantity());
+    assertEquals(10, inventoryService.getInventoryStock(6002).block().quantity());
+    assertEquals(1, inventoryService.getInventoryStock(6003).block().quantity());
+  }
+
+  @Test
+  @DisplayName("reduceStocks reserves every line of an order when all of them are in stock")
+  void reduceStocksReservesEveryLine() {
+    createInventoryStock(6101, 10);
+    createInventoryStock(6102, 10);
+    createInventoryStock(6103, 5);
+
+    inventoryService.reduceStocks(List.of(
+      new InventoryStockAdjustmentRequestDto(6101, 2),
+      new InventoryStockAdjustmentRequestDto(6102, 3),
+      new InventoryStockAdjustmentRequestDto(6103, 5))).block();
+
+    assertEquals(8, inventoryService.getInventoryStock(6101).block().quantity());
+    assertEquals(7, inventoryService.getInventoryStock(6102).block().quantity());
+    assertEquals(0, inventoryService.getInventoryStock(6103).block().quantity());
+  }
+
+  @Test
+  @DisplayName("Concurrent multi-line orders sharing products never oversell any of them")
+  void concurrentMultiLineOrdersNeverOversell() throws Exception {
+    createInventoryStock(6201, 50);
+    createInventoryStock(6202, 50);
+
+    AtomicInteger reserved = new AtomicInteger();
+    runConcurrently(100, () -> {
+      try {
+        inventoryService.reduceStocks(List.of(
+          new InventoryStockAdjustmentRequestDto(6201, 1),
+          new InventoryStockAdjustmentRequestDto(6202, 1))).block();
+        reserved.incrementAndGet();
+      } catch (InventoryOutOfStockException ex) {
+        // expected once the stock has run out
+      }
+    });
+
+    assertEquals(50, reserved.get());
+    assertEquals(0, inventoryService.getInventoryStock(6201).block().quantity());
+    assertEquals(0, inventoryService.getInventoryStock(6202).block().quantity());
+  }
+
+  private static Inventory releaseOf(String reservationId) {
+    Inventory release = new Inventory();
+    release.setReservationId(reservationId);
+    return release;
+  }
+
+  private void createInventoryStock(int productId, int quantity) {
+    client.post().uri("/inventories")
+      .bodyValue(new InventoryCreateDto(productId, quantity))
+      .exchange()
+      .expectStatus().isOk();
+  }
+
+  private void runConcurrently(int tasks, Runnable task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for(int i = 0; i < tasks; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          task.run();
+          return null;
+        }));
+      }
+      start.countDown();
+      for(Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
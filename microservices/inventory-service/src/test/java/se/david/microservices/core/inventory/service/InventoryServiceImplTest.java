@@ -11,7 +11,6 @@ import reactor.test.StepVerifier;
 import se.david.api.core.inventory.dto.InventoryCreateDto;
 import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
 import se.david.api.exceptions.InvalidInputException;
-import se.david.api.exceptions.InventoryOutOfStockException;
 import se.david.api.exceptions.NotFoundException;
 import se.david.microservices.core.inventory.domain.entity.Inventory;
 import se.david.microservices.core.inventory.domain.repository.InventoryRepository;
@@ -20,9 +19,9 @@ import se.david.util.http.ServiceUtil;
 
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -37,11 +36,14 @@ class InventoryServiceImplTest {
   @Mock
   private InventoryMapper mapper;
 
+  @Mock
+  private StockReservationEngine reservationEngine;
+
   private InventoryServiceImpl inventoryService;
 
   @BeforeEach
   void setUp() {
-    inventoryService = new InventoryServiceImpl(repository, serviceUtil, mapper);
+    inventoryService = new InventoryServiceImpl(repository, serviceUtil, mapper, reservationEngine, 500);
   }
 
   @Test
@@ -103,52 +105,43 @@ class InventoryServiceImplTest {
   }
 
   @Test
-  @DisplayName("increaseStock adds the adjustment quantity to the existing quantity")
+  @DisplayName("increaseStock adds the adjustment quantity with one atomic update and returns the new quantity")
   void increaseStockAddsToExistingQuantity() {
-    Inventory inventory = new Inventory(1, 10);
     InventoryStockAdjustmentRequestDto increaseDto = new InventoryStockAdjustmentRequestDto(1, 4);
-    when(repository.findByProductId(1)).thenReturn(Mono.just(inventory));
-    when(repository.save(inventory)).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    when(repository.addStock(1, 4)).thenReturn(Mono.just(new Inventory(1, 14)));
     when(serviceUtil.getServiceAddress()).thenReturn("addr");
 
     StepVerifier.create(inventoryService.increaseStock(increaseDto))
       .expectNextMatches(dto -> dto.quantity() == 14)
       .verifyComplete();
+
+    verify(repository, never()).findByProductId(anyInt());
+    verify(repository, never()).save(any());
   }
 
   @Test
-  @DisplayName("reduceStocks subtracts the requested quantity from each item when stock is sufficient")
-  void reduceStocksSufficientStockSubtractsFromEachItem() {
-    Inventory inv1 = new Inventory(1, 10);
-    Inventory inv2 = new Inventory(2, 5);
-    when(repository.findByProductId(1)).thenReturn(Mono.just(inv1));
-    when(repository.findByProductId(2)).thenReturn(Mono.just(inv2));
-    when(repository.save(any(Inventory.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+  @DisplayName("increaseStock emits NotFoundException when no stock record exists")
+  void increaseStockNotFoundEmitsNotFoundException() {
+    when(repository.addStock(1, 4)).thenReturn(Mono.empty());
 
+    StepVerifier.create(inventoryService.increaseStock(new InventoryStockAdjustmentRequestDto(1, 4)))
+      .expectError(NotFoundException.class)
+      .verify();
+  }
+
+  @Test
+  @DisplayName("reduceStocks hands every line of the request to the reservation engine")
+  void reduceStocksDelegatesToReservationEngine() {
     List<InventoryStockAdjustmentRequestDto> requests = List.of(
       new InventoryStockAdjustmentRequestDto(1, 4),
       new InventoryStockAdjustmentRequestDto(2, 5));
+    when(reservationEngine.reserve(requests)).thenReturn(Mono.empty());
 
     StepVerifier.create(inventoryService.reduceStocks(requests))
       .verifyComplete();
 
-    assertEquals(6, inv1.getQuantity());
-    assertEquals(0, inv2.getQuantity());
-  }
-
-  @Test
-  @DisplayName("reduceStocks emits InventoryOutOfStockException and saves nothing when stock is insufficient")
-  void reduceStocksInsufficientStockEmitsInventoryOutOfStockException() {
-    Inventory inventory = new Inventory(1, 2);
-    when(repository.findByProductId(1)).thenReturn(Mono.just(inventory));
-
-    List<InventoryStockAdjustmentRequestDto> requests = List.of(new InventoryStockAdjustmentRequestDto(1, 5));
-
-    StepVerifier.create(inventoryService.reduceStocks(requests))
-      .expectError(InventoryOutOfStockException.class)
-      .verify();
-
-    verify(repository, never()).save(any());
+    verify(reservationEngine).reserve(requests);
+    verifyNoInteractions(repository);
   }
 
   @Test
@@ -0,0 +1,188 @@
+package se.david.microservices.core.inventory.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
+import se.david.api.exceptions.NotFoundException;
+import se.david.microservices.core.inventory.domain.entity.Inventory;
+import se.david.microservices.core.inventory.domain.entity.StockReservation;
+import se.david.microservices.core.inventory.domain.repository.InventoryRepository;
+import se.david.microservices.core.inventory.domain.repository.StockReservationRepository;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockReservationEngineTest {
+
+  @Mock
+  private InventoryRepository repository;
+
+  @Mock
+  private StockReservationRepository reservations;
+
+  @Mock
+  private ReactiveMongoDatabaseFactory databaseFactory;
+
+  private StockReservationEngine engine;
+
+  @BeforeEach
+  void setUp() {
+    engine = new StockReservationEngine(repository, reservations, databaseFactory, StockReservationEngine.COMPENSATING, 3);
+  }
+
+  @Test
+  @DisplayName("A single line is reserved with one conditional update and no read")
+  void singleLineReservedWithOneUpdate() {
+    when(repository.reserveStock(1, 4)).thenReturn(Mono.just(new Inventory(1, 6)));
+
+    StepVerifier.create(engine.reserve(List.of(new InventoryStockAdjustmentRequestDto(1, 4))))
+      .verifyComplete();
+
+    verify(repository, never()).findByProductId(anyInt());
+    verify(repository, never()).reserveStocks(anyMap());
+  }
+
+  @Test
+  @DisplayName("Lines for the same product are merged into one reservation")
+  void duplicateLinesAreMerged() {
+    when(repository.reserveStock(1, 7)).thenReturn(Mono.just(new Inventory(1, 3)));
+
+    StepVerifier.create(engine.reserve(List.of(
+        new InventoryStockAdjustmentRequestDto(1, 4),
+        new InventoryStockAdjustmentRequestDto(1, 3))))
+      .verifyComplete();
+
+    verify(repository).reserveStock(1, 7);
+  }
+
+  @Test
+  @DisplayName("Without transactions, a line that is out of stock releases the lines reserved before it")
+  void outOfStockLineReleasesEarlierLines() {
+    when(repository.reserveStock(1, 4)).thenReturn(Mono.just(new Inventory(1, 6)));
+    when(repository.reserveStock(2, 5)).thenReturn(Mono.just(new Inventory(2, 0)));
+    when(repository.reserveStock(3, 9)).thenReturn(Mono.empty());
+    when(repository.findByProductId(3)).thenReturn(Mono.just(new Inventory(3, 2)));
+    when(repository.addStock(anyInt(), anyInt())).thenReturn(Mono.just(new Inventory()));
+
+    StepVerifier.create(engine.reserve(List.of(
+        new InventoryStockAdjustmentRequestDto(1, 4),
+        new InventoryStockAdjustmentRequestDto(2, 5),
+        new InventoryStockAdjustmentRequestDto(3, 9),
+        new InventoryStockAdjustmentRequestDto(4, 1))))
+      .expectError(InventoryOutOfStockException.class)
+      .verify();
+
+    verify(repository).addStock(1, 4);
+    verify(repository).addStock(2, 5);
+    verify(repository, never()).addStock(eq(3), anyInt());
+    verify(repository, never()).reserveStock(eq(4), anyInt());
+  }
+
+  @Test
+  @DisplayName("Without transactions, an unknown product emits NotFoundException after releasing the earlier lines")
+  void unknownProductReleasesEarlierLines() {
+    when(repository.reserveStock(1, 4)).thenReturn(Mono.just(new Inventory(1, 6)));
+    when(repository.reserveStock(2, 5)).thenReturn(Mono.empty());
+    when(repository.findByProductId(2)).thenReturn(Mono.empty());
+    when(repository.addStock(1, 4)).thenReturn(Mono.just(new Inventory(1, 10)));
+
+    StepVerifier.create(engine.reserve(List.of(
+        new InventoryStockAdjustmentRequestDto(1, 4),
+        new InventoryStockAdjustmentRequestDto(2, 5))))
+      .expectError(NotFoundException.class)
+      .verify();
+
+    verify(repository).addStock(1, 4);
+  }
+
+  @Test
+  @DisplayName("A reservation sent again under the same reservation id answers like the first time without reserving twice")
+  void repeatedReservationIsNotReservedTwice() {
+    when(reservations.ensureTtlIndex()).thenReturn(Mono.empty());
+    when(reservations.insert(any(StockReservation.class))).thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key")));
+    when(reservations.findById("saga-1")).thenReturn(Mono.just(reservation("saga-1", StockReservation.RESERVED)));
+
+    StepVerifier.create(engine.reserve("saga-1", List.of(new InventoryStockAdjustmentRequestDto(1, 4))))
+      .verifyComplete();
+
+    verify(repository, never()).reserveStock(anyInt(), anyInt());
+  }
+
+  @Test
+  @DisplayName("A reservation that was released before it arrived is refused and reserves nothing")
+  void reservationReleasedBeforeItArrivedIsRefused() {
+    when(reservations.ensureTtlIndex()).thenReturn(Mono.empty());
+    when(reservations.insert(any(StockReservation.class))).thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key")));
+    when(reservations.findById("saga-1")).thenReturn(Mono.just(reservation("saga-1", StockReservation.RELEASED)));
+
+    StepVerifier.create(engine.reserve("saga-1", List.of(new InventoryStockAdjustmentRequestDto(1, 4))))
+      .expectError(InvalidInputException.class)
+      .verify();
+
+    verify(repository, never()).reserveStock(anyInt(), anyInt());
+  }
+
+  @Test
+  @DisplayName("A reservation that is out of stock is recorded as refused")
+  void outOfStockReservationIsRecordedAsRefused() {
+    when(reservations.ensureTtlIndex()).thenReturn(Mono.empty());
+    when(reservations.insert(any(StockReservation.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+    when(repository.reserveStock(1, 4)).thenReturn(Mono.empty());
+    when(repository.findByProductId(1)).thenReturn(Mono.just(new Inventory(1, 2)));
+    when(reservations.changeStatus("saga-1", StockReservation.RESERVED, StockReservation.REFUSED)).thenReturn(Mono.just(reservation("saga-1", StockReservation.RESERVED)));
+
+    StepVerifier.create(engine.reserve("saga-1", List.of(new InventoryStockAdjustmentRequestDto(1, 4))))
+      .expectError(InventoryOutOfStockException.class)
+      .verify();
+
+    verify(reservations).changeStatus("saga-1", StockReservation.RESERVED, StockReservation.REFUSED);
+  }
+
+  @Test
+  @DisplayName("Releasing a reservation gives its stock back once, however often it is released")
+  void releaseGivesStockBackOnce() {
+    when(reservations.ensureTtlIndex()).thenReturn(Mono.empty());
+    when(reservations.insert(any(StockReservation.class))).thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key")));
+    when(reservations.changeStatus("saga-1", StockReservation.RESERVED, StockReservation.RELEASED))
+      .thenReturn(Mono.just(reservation("saga-1", StockReservation.RESERVED)), Mono.empty());
+    when(repository.addStocks(Map.of(1, 4))).thenReturn(Mono.just(1));
+
+    StepVerifier.create(engine.release("saga-1").then(engine.release("saga-1")))
+      .verifyComplete();
+
+    verify(repository, times(1)).addStocks(Map.of(1, 4));
+  }
+
+  @Test
+  @DisplayName("Releasing a reservation that has not arrived gives nothing back")
+  void releaseBeforeReservationGivesNothingBack() {
+    when(reservations.ensureTtlIndex()).thenReturn(Mono.empty());
+    when(reservations.insert(any(StockReservation.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+    StepVerifier.create(engine.release("saga-1"))
+      .verifyComplete();
+
+    verify(reservations, never()).changeStatus(any(), any(), any());
+    verify(repository, never()).addStocks(anyMap());
+  }
+
+  private static StockReservation reservation(String reservationId, String status) {
+    return new StockReservation(reservationId, status, List.of(new StockReservation.Line(1, 4)));
+  }
+}
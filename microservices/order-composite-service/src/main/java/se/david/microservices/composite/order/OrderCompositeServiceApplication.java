@@ -9,14 +9,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import se.david.util.loadbalancer.PowerOfTwoChoicesLoadBalancerConfiguration;
 
 @SpringBootApplication
 @ComponentScan("se.david")
+@LoadBalancerClients(defaultConfiguration = PowerOfTwoChoicesLoadBalancerConfiguration.class)
 public class OrderCompositeServiceApplication {
   private static final Logger LOG = LoggerFactory.getLogger(OrderCompositeServiceApplication.class);
 
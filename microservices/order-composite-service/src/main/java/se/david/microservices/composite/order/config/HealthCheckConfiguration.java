@@ -1,29 +1,43 @@
 package se.david.microservices.composite.order.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.health.CompositeReactiveHealthContributor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.ReactiveHealthContributor;
-import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Mono;
 import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
+import se.david.util.health.HealthSnapshot;
 
+import java.time.Duration;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
+// The health probes are answered from a HealthSnapshot of the core services, refreshed in the background
 @Configuration
 public class HealthCheckConfiguration {
   @Autowired
   OrderCompositeIntegration integration;
 
   @Bean
-  ReactiveHealthContributor coreServices() {
-    final Map<String, ReactiveHealthIndicator> registry = new LinkedHashMap<>();
+  HealthSnapshot coreServicesHealth(
+    @Value("${app.health.refreshIntervalMs:10000}") long refreshIntervalMs,
+    @Value("${app.health.timeoutMs:2000}") long timeoutMs,
+    @Value("${app.health.jitter:0.2}") double jitter,
+    @Value("${app.health.maxAgeMs:30000}") long maxAgeMs) {
+    final Map<String, Supplier<Mono<Health>>> checks = new LinkedHashMap<>();
 
-    registry.put("inventory", () -> integration.getInventoryHealth());
-    registry.put("shipping", () -> integration.getShippingHealth());
-    registry.put("order", () -> integration.getOrderHealth());
+    checks.put("inventory", () -> integration.getInventoryHealth());
+    checks.put("shipping", () -> integration.getShippingHealth());
+    checks.put("order", () -> integration.getOrderHealth());
 
-    return CompositeReactiveHealthContributor.fromMap(registry);
+    return new HealthSnapshot(checks, Duration.ofMillis(refreshIntervalMs), Duration.ofMillis(timeoutMs), jitter, Duration.ofMillis(maxAgeMs));
+  }
+
+  @Bean
+  ReactiveHealthContributor coreServices(HealthSnapshot coreServicesHealth) {
+    return coreServicesHealth.contributor();
   }
 }
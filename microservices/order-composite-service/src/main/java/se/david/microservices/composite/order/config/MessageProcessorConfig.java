@@ -0,0 +1,88 @@
+package se.david.microservices.composite.order.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.product.dto.ProductDto;
+import se.david.api.core.shipping.dto.ShippingDto;
+import se.david.api.event.Event;
+import se.david.api.event.EventResult;
+import se.david.microservices.composite.order.service.cache.ProductCache;
+import se.david.microservices.composite.order.service.correlation.EventResultCorrelator;
+import se.david.microservices.composite.order.service.readmodel.OrderReadModel;
+
+import java.util.function.Consumer;
+
+@Configuration
+public class MessageProcessorConfig {
+  private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
+  private final ProductCache productCache;
+  private final EventResultCorrelator eventResultCorrelator;
+  private final OrderReadModel readModel;
+
+  @Autowired
+  public MessageProcessorConfig(ProductCache productCache, EventResultCorrelator eventResultCorrelator, OrderReadModel readModel) {
+    this.productCache = productCache;
+    this.eventResultCorrelator = eventResultCorrelator;
+    this.readModel = readModel;
+  }
+
+  @Bean
+  public Consumer<Event<Integer, ProductDto>> productEventProcessor() {
+    return event -> {
+      LOG.debug("Process product event created at {}...", event.getEventCreatedAt());
+
+      switch(event.getEventType()) {
+        case UPDATE:
+        case DELETE:
+          productCache.invalidate(event.getKey());
+          readModel.productChanged(event.getKey()).block();
+          break;
+
+        default:
+          LOG.debug("Ignoring product event of type: {}", event.getEventType());
+      }
+    };
+  }
+
+  @Bean
+  public Consumer<EventResult> eventResultProcessor() {
+    return eventResultCorrelator::complete;
+  }
+
+  @Bean
+  public Consumer<Event<Integer, OrderDto>> orderChangeProcessor() {
+    return event -> {
+      LOG.debug("Process order change event for orderId: {}", event.getKey());
+
+      switch(event.getEventType()) {
+        case UPDATE:
+          readModel.orderChanged(event.getData()).block();
+          break;
+
+        case DELETE:
+          readModel.orderDeleted(event.getKey());
+          break;
+
+        default:
+          LOG.debug("Ignoring order change event of type: {}", event.getEventType());
+      }
+    };
+  }
+
+  @Bean
+  public Consumer<Event<Integer, ShippingDto>> shipmentChangeProcessor() {
+    return event -> {
+      LOG.debug("Process shipment change event for orderId: {}", event.getKey());
+
+      if(event.getEventType() == Event.Type.UPDATE) {
+        readModel.shippingChanged(event.getData()).block();
+      } else {
+        LOG.debug("Ignoring shipment change event of type: {}", event.getEventType());
+      }
+    };
+  }
+}
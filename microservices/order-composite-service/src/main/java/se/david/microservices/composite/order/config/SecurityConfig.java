@@ -1,12 +1,17 @@
 package se.david.microservices.composite.order.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.context.annotation.Profile;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import se.david.util.security.JwkSetRefresher;
+import se.david.util.security.ResourceServerJwtDecoders;
 
 import static org.springframework.http.HttpMethod.GET;
 import static org.springframework.http.HttpMethod.POST;
@@ -34,4 +39,14 @@ public class SecurityConfig {
 
     return http.build();
   }
+
+  @Bean
+  JwkSetRefresher jwkSetRefresher(Environment environment) {
+    return ResourceServerJwtDecoders.jwkSetRefresher(environment);
+  }
+
+  @Bean
+  ReactiveJwtDecoder jwtDecoder(JwkSetRefresher jwkSetRefresher, MeterRegistry meterRegistry, Environment environment) {
+    return ResourceServerJwtDecoders.jwtDecoder(jwkSetRefresher, meterRegistry, environment);
+  }
 }
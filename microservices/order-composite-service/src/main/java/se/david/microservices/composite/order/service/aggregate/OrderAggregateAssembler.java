@@ -0,0 +1,124 @@
+package se.david.microservices.composite.order.service.aggregate;
+
+import org.springframework.stereotype.Component;
+import se.david.api.composite.order.dto.*;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.order.dto.OrderItemDto;
+import se.david.api.core.product.dto.ProductDto;
+import se.david.api.core.shipping.dto.ShippingDto;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Joins an order with its shipment and products into an OrderAggregateDto, for the aggregates built per request as
+// well as those kept in the read model
+@Component
+public class OrderAggregateAssembler {
+
+  public OrderAggregateDto assemble(
+    OrderDto order,
+    ShippingDto shipping,
+    List<ProductDto> products,
+    String serviceAddress) {
+    OrderSummaryDto orderSummary = createOrderSummary(order);
+
+    ShippingSummaryDto shippingSummary = createShippingSummary(shipping);
+
+    Map<Integer, ProductDto> productMap = createProductMap(products);
+
+    List<OrderItemSummaryDto> orderItemSummaries = createOrderItemSummaries(order.orderItems(), productMap);
+
+    ServiceAddressesDto serviceAddresses = createServiceAddressesDto(
+      serviceAddress,
+      products,
+      order,
+      shipping
+    );
+
+    return new OrderAggregateDto(
+      orderSummary.id(),
+      orderSummary.userId(),
+      orderSummary.totalPrice(),
+      orderSummary.status(),
+      orderSummary.createdAt(),
+      shippingSummary,
+      orderItemSummaries,
+      serviceAddresses
+    );
+  }
+
+  private OrderSummaryDto createOrderSummary(OrderDto order) {
+    return new OrderSummaryDto(
+      order.id(),
+      order.userId(),
+      order.totalPrice(),
+      order.status(),
+      order.createdAt()
+    );
+  }
+
+  private ShippingSummaryDto createShippingSummary(ShippingDto shipping) {
+    return new ShippingSummaryDto(
+      shipping.orderId(),
+      shipping.shippingAddress(),
+      shipping.status()
+    );
+  }
+
+  private Map<Integer, ProductDto> createProductMap(List<ProductDto> products) {
+    return products.stream()
+      .collect(Collectors.toMap(ProductDto::id, product -> product));
+  }
+
+  private List<OrderItemSummaryDto> createOrderItemSummaries(
+    List<OrderItemDto> orderItems,
+    Map<Integer, ProductDto> productMap
+  ) {
+    return (orderItems == null) ? Collections.emptyList() :
+      orderItems.stream()
+        .map(oi -> createOrderItemSummary(oi, productMap))
+        .collect(Collectors.toList());
+  }
+
+  private OrderItemSummaryDto createOrderItemSummary(
+    OrderItemDto orderItem,
+    Map<Integer, ProductDto> productMap
+  ) {
+    ProductDto product = productMap.get(orderItem.productId());
+    ProductSummaryDto productSummary = createProductSummary(product);
+    int totalPrice = orderItem.quantity() * product.price();
+
+    return new OrderItemSummaryDto(
+      orderItem.id(),
+      orderItem.quantity(),
+      totalPrice,
+      productSummary
+    );
+  }
+
+  private ProductSummaryDto createProductSummary(ProductDto product) {
+    return new ProductSummaryDto(
+      product.id(),
+      product.name(),
+      product.description(),
+      product.price()
+    );
+  }
+
+  private ServiceAddressesDto createServiceAddressesDto(
+    String serviceAddress,
+    List<ProductDto> products,
+    OrderDto order,
+    ShippingDto shipping
+  ) {
+    String productAddress = !products.isEmpty() ? products.getFirst().serviceAddress() : "";
+    return new ServiceAddressesDto(
+      serviceAddress,
+      productAddress,
+      order.serviceAddress(),
+      shipping.serviceAddress()
+    );
+  }
+}
@@ -0,0 +1,57 @@
+package se.david.microservices.composite.order.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.david.api.core.product.dto.ProductDto;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+
+// Near-cache for product lookups. The catalogue changes rarely compared to how often products are
+// read while building order aggregates, so entries are kept until they are evicted by size or TTL,
+// or invalidated when a product is updated or deleted.
+@Component
+public class ProductCache {
+  private static final Logger LOG = LoggerFactory.getLogger(ProductCache.class);
+
+  private final Cache<Integer, ProductDto> cache;
+
+  @Autowired
+  public ProductCache(
+    MeterRegistry meterRegistry,
+    @Value("${app.productCache.maxSize:10000}") long maxSize,
+    @Value("${app.productCache.ttlSeconds:300}") long ttlSeconds) {
+    LOG.info("Creates a product cache with maxSize = {} and ttlSeconds = {}", maxSize, ttlSeconds);
+    this.cache = Caffeine.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+      .recordStats()
+      .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+  }
+
+  public ProductDto get(int productId) {
+    return cache.getIfPresent(productId);
+  }
+
+  public Map<Integer, ProductDto> getAllPresent(Collection<Integer> productIds) {
+    return cache.getAllPresent(productIds);
+  }
+
+  public void put(ProductDto product) {
+    cache.put(product.id(), product);
+  }
+
+  public void invalidate(int productId) {
+    LOG.debug("invalidate: Removing product with id: {} from the product cache", productId);
+    cache.invalidate(productId);
+  }
+}
@@ -0,0 +1,83 @@
+package se.david.microservices.composite.order.service.correlation;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.david.api.event.EventResult;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Matches the EventResults the core services publish to the events this instance sent. Every composite instance
+// receives every result, so results for correlation ids that are not pending here, or no longer, are dropped.
+@Component
+public class EventResultCorrelator {
+  private static final Logger LOG = LoggerFactory.getLogger(EventResultCorrelator.class);
+
+  private final Map<String, CompletableFuture<EventResult>> pendingResults = new ConcurrentHashMap<>();
+  private final Duration timeout;
+  private final MeterRegistry meterRegistry;
+
+  @Autowired
+  public EventResultCorrelator(
+    MeterRegistry meterRegistry,
+    @Value("${app.eventResults.timeoutMs:10000}") long timeoutMs) {
+    LOG.info("Creates an event result correlator with timeoutMs = {}", timeoutMs);
+    this.timeout = Duration.ofMillis(timeoutMs);
+    this.meterRegistry = meterRegistry;
+
+    Gauge.builder("event.results.pending", pendingResults, Map::size)
+      .description("Sent events that are waiting for their result")
+      .register(meterRegistry);
+  }
+
+  // The correlation id is registered before the event is sent, so a result that arrives before send completes
+  // is not lost
+  public Mono<EventResult> sendAndAwait(Function<String, Mono<?>> send) {
+    return Mono.defer(() -> {
+      String correlationId = UUID.randomUUID().toString();
+      CompletableFuture<EventResult> result = new CompletableFuture<>();
+      pendingResults.put(correlationId, result);
+      long startNanos = System.nanoTime();
+
+      return send.apply(correlationId)
+        .then(Mono.fromFuture(result, true))
+        .timeout(timeout, Mono.error(() -> new IllegalStateException(
+          "No result for event " + correlationId + " within " + timeout.toMillis() + " ms")))
+        .doOnSuccess(eventResult -> record(startNanos, eventResult.status() == EventResult.OK ? "success" : "failure"))
+        .doOnError(ex -> record(startNanos, "error"))
+        .doFinally(signal -> pendingResults.remove(correlationId));
+    });
+  }
+
+  public void complete(EventResult result) {
+    CompletableFuture<EventResult> pending = result.correlationId() == null ? null : pendingResults.remove(result.correlationId());
+    if(pending == null) {
+      LOG.trace("Drops the result for correlation id {}, it is not pending on this instance", result.correlationId());
+      return;
+    }
+    pending.complete(result);
+  }
+
+  int pendingCount() {
+    return pendingResults.size();
+  }
+
+  private void record(long startNanos, String outcome) {
+    Timer.builder("event.results.latency")
+      .description("Time from sending an event until its result arrived")
+      .tag("outcome", outcome)
+      .register(meterRegistry)
+      .record(Duration.ofNanos(System.nanoTime() - startNanos));
+  }
+}
@@ -3,6 +3,7 @@ package se.david.microservices.composite.order.service.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextImpl;
@@ -13,14 +14,14 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.david.api.composite.order.dto.*;
 import se.david.api.composite.order.service.OrderCompositeService;
-import se.david.api.core.order.dto.OrderCreateDto;
 import se.david.api.core.order.dto.OrderDto;
-import se.david.api.core.order.dto.OrderItemCreateDto;
 import se.david.api.core.order.dto.OrderItemDto;
 import se.david.api.core.product.dto.ProductDto;
-import se.david.api.core.shipping.dto.ShippingCreateDto;
 import se.david.api.core.shipping.dto.ShippingDto;
+import se.david.microservices.composite.order.service.aggregate.OrderAggregateAssembler;
 import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
+import se.david.microservices.composite.order.service.readmodel.OrderReadModel;
+import se.david.microservices.composite.order.service.saga.OrderCreationSaga;
 import se.david.util.http.ServiceUtil;
 
 import java.util.Collections;
@@ -35,11 +36,28 @@ public class OrderCompositeServiceImpl implements OrderCompositeService {
 
   private final ServiceUtil serviceUtil;
   private final OrderCompositeIntegration integration;
+  private final OrderCreationSaga orderCreationSaga;
+  private final OrderAggregateAssembler assembler;
+  private final OrderReadModel readModel;
+  private final int aggregationBatchSize;
+  private final int aggregationMaxConcurrency;
 
   @Autowired
-  public OrderCompositeServiceImpl(ServiceUtil serviceUtil, OrderCompositeIntegration integration) {
+  public OrderCompositeServiceImpl(
+    ServiceUtil serviceUtil,
+    OrderCompositeIntegration integration,
+    OrderCreationSaga orderCreationSaga,
+    OrderAggregateAssembler assembler,
+    OrderReadModel readModel,
+    @Value("${app.aggregation.batchSize:100}") int aggregationBatchSize,
+    @Value("${app.aggregation.maxConcurrency:4}") int aggregationMaxConcurrency) {
     this.serviceUtil = serviceUtil;
     this.integration = integration;
+    this.orderCreationSaga = orderCreationSaga;
+    this.assembler = assembler;
+    this.readModel = readModel;
+    this.aggregationBatchSize = aggregationBatchSize;
+    this.aggregationMaxConcurrency = aggregationMaxConcurrency;
   }
 
   @Override
@@ -47,8 +65,9 @@ public class OrderCompositeServiceImpl implements OrderCompositeService {
     LOG.debug("getCompositeOrders: Starting to retrieve order aggregates.");
 
     return getLogAuthorizationInfoMono()
-      .thenMany(integration.getOrders())
-      .flatMap(this::buildOrderAggregate)
+      .thenMany(Flux.defer(() -> readModel.isReady()
+        ? readModel.findAggregates()
+        : buildOrderAggregates(integration.streamOrders())))
       .doOnError(ex -> LOG.error("Error retrieving composite orders: {}", ex.toString()))
       .onErrorResume(e -> Flux.empty());
   }
@@ -59,11 +78,10 @@ public class OrderCompositeServiceImpl implements OrderCompositeService {
         getShippingForOrder(order.id()),
         getProductsForOrder(order.orderItems())
       )
-      .map(tuple -> createOrderAggregateDto(
+      .map(tuple -> assembler.assemble(
         tuple.getT1(), // order
         tuple.getT2(), // shipping
         tuple.getT3(), // products
-        order.orderItems(),
         serviceUtil.getServiceAddress()
       ))
       .doOnSuccess(agg -> LOG.debug("buildOrderAggregate: Created order aggregate DTO for orderId: {}", order.id()))
@@ -71,6 +89,54 @@ public class OrderCompositeServiceImpl implements OrderCompositeService {
   }
 
 
+  // Aggregates orders chunk by chunk: each chunk costs one shipments call and one products call,
+  // regardless of how many orders it holds. flatMapSequential keeps the original order of the orders.
+  private Flux<OrderAggregateDto> buildOrderAggregates(Flux<OrderDto> orders) {
+    return orders
+      .buffer(aggregationBatchSize)
+      .flatMapSequential(this::buildOrderAggregateBatch, aggregationMaxConcurrency);
+  }
+
+  private Flux<OrderAggregateDto> buildOrderAggregateBatch(List<OrderDto> orders) {
+    List<Integer> orderIds = orders.stream()
+      .map(OrderDto::id)
+      .collect(Collectors.toList());
+    List<OrderItemDto> orderItems = orders.stream()
+      .filter(order -> order.orderItems() != null)
+      .flatMap(order -> order.orderItems().stream())
+      .collect(Collectors.toList());
+    LOG.debug("buildOrderAggregateBatch: Building order aggregates for orderIds: {}", orderIds);
+
+    return Mono.zip(
+        getShipmentsForOrders(orderIds),
+        getProductsForOrder(orderItems)
+      )
+      .flatMapMany(tuple -> Flux.fromIterable(orders)
+        .filter(order -> hasShipping(order, tuple.getT1()))
+        .map(order -> assembler.assemble(
+          order,
+          tuple.getT1().get(order.id()), // shipping
+          tuple.getT2(), // products
+          serviceUtil.getServiceAddress()
+        )))
+      .doOnError(ex -> LOG.error("Error building order aggregates for orderIds: {}, error: {}", orderIds, ex.toString()));
+  }
+
+  private boolean hasShipping(OrderDto order, Map<Integer, ShippingDto> shipmentsByOrderId) {
+    if(!shipmentsByOrderId.containsKey(order.id())) {
+      LOG.warn("No shipping found for orderId: {}, skipping its order aggregate", order.id());
+      return false;
+    }
+    return true;
+  }
+
+  private Mono<Map<Integer, ShippingDto>> getShipmentsForOrders(List<Integer> orderIds) {
+    LOG.debug("getShipmentsForOrders: Retrieving shipments for orderIds {}", orderIds);
+    return integration.getShipmentsByOrderIds(orderIds)
+      .collectMap(ShippingDto::orderId)
+      .doOnError(e -> LOG.error("Error retrieving shipments for orderIds: {}", orderIds, e));
+  }
+
   private Mono<ShippingDto> getShippingForOrder(int orderId) {
     LOG.debug("getShippingForOrder: Retrieving shipping for orderId {}", orderId);
     return integration.getShippingByOrderId(orderId)
@@ -83,6 +149,9 @@ public class OrderCompositeServiceImpl implements OrderCompositeService {
       .distinct()
       .collect(Collectors.toList());
     LOG.debug("getProductsForOrder: Retrieving products for productIds: {}", productIds);
+    if(productIds.isEmpty()) {
+      return Mono.just(Collections.emptyList());
+    }
 
     return integration.getProductsByIds(productIds)
       .collectList()
@@ -94,8 +163,9 @@ public class OrderCompositeServiceImpl implements OrderCompositeService {
     LOG.debug("getCompositeOrdersByUser: Starting to retrieve order aggregates for userId: {}", userId);
 
     return getLogAuthorizationInfoMono()
-      .thenMany(integration.getOrdersByUser(userId))
-      .flatMap(this::buildOrderAggregate)
+      .thenMany(Flux.defer(() -> readModel.isReady()
+        ? readModel.findAggregatesByUser(userId)
+        : buildOrderAggregates(integration.getOrdersByUser(userId))))
       .doOnError(ex -> LOG.error("Error retrieving composite orders for userId: {}, error: {}", userId, ex.toString()))
       .onErrorResume(e -> Flux.empty());
   }
@@ -105,172 +175,27 @@ public class OrderCompositeServiceImpl implements OrderCompositeService {
     LOG.debug("getCompositeOrder: Starting to retrieve order for orderId: {}", orderId);
 
     return getLogAuthorizationInfoMono()
-      .then(integration.getOrder(orderId))
-      .flatMap(this::buildOrderAggregate)
+      .then(Mono.defer(() -> readModel.isReady() ? readModel.findAggregate(orderId) : Mono.<OrderAggregateDto>empty()))
+      // An order the read model has not seen yet, e.g. one that was just created, is built from the core services
+      .switchIfEmpty(Mono.defer(() -> integration.getOrder(orderId).flatMap(this::buildOrderAggregate)))
       .doOnError(ex -> LOG.error("Error retrieving composite order for orderId: {}, error: {}", orderId, ex.toString()))
       .onErrorResume(e -> Mono.empty());
   }
 
   @Override
-  public Mono<Void> createCompositeOrder(OrderAggregateCreateDto orderAggregateCreateDto) {
+  public Mono<OrderAggregateDto> createCompositeOrder(OrderAggregateCreateDto orderAggregateCreateDto) {
     LOG.debug("createCompositeOrder: Starting to create composite order for userId: {}", orderAggregateCreateDto.userId());
 
     return getLogAuthorizationInfoMono()
-      .then(getProductsForOrderItems(orderAggregateCreateDto.orderItemCreateDtos()))
-      .flatMap(products -> createOrderAndShipping(orderAggregateCreateDto, products))
+      .then(orderCreationSaga.execute(orderAggregateCreateDto))
+      .map(created -> assembler.assemble(
+        created.order(),
+        created.shipping(),
+        created.products(),
+        serviceUtil.getServiceAddress()
+      ))
       .doOnSuccess(orderAggregateDto -> LOG.info("Successfully created composite order for userId: {}", orderAggregateCreateDto.userId()))
-      .doOnError(ex -> LOG.error("Failed to create composite order for userId: {}, error: {}", orderAggregateCreateDto.userId(), ex.toString()))
-      .onErrorResume(this::handleOrderCreationError)
-      .then();
-  }
-
-  private Mono<Void> createOrderAndShipping(OrderAggregateCreateDto orderCreateDto, List<ProductDto> products) {
-    return createOrder(orderCreateDto, products)
-      .flatMap(order -> createShipping(order, orderCreateDto))
-      .doOnSuccess(aVoid -> LOG.debug("Successfully created order and shipping for userId: {}", orderCreateDto.userId()))
-      .doOnError(ex -> LOG.error("Error creating order or shipping for userId: {}, error: {}", orderCreateDto.userId(), ex.toString()))
-      .then();
-  }
-
-  private Mono<OrderDto> createOrder(OrderAggregateCreateDto orderAggregateCreateDto, List<ProductDto> products) {
-    LOG.debug("createOrder: Creating order for userId {}", orderAggregateCreateDto.userId());
-    Map<Integer, ProductDto> productMap = createProductMap(products);
-    List<OrderItemCreateDto> pricedOrderItems = orderAggregateCreateDto.orderItemCreateDtos().stream()
-      .map(item -> new OrderItemCreateDto(item.productId(), item.quantity(), productMap.get(item.productId()).price()))
-      .collect(Collectors.toList());
-    OrderCreateDto orderCreateDto = new OrderCreateDto(orderAggregateCreateDto.userId(), pricedOrderItems);
-    return integration.createOrder(orderCreateDto)
-      .doOnError(e -> LOG.error("Error creating order for userId {}", orderAggregateCreateDto.userId(), e));
-  }
-
-  private Mono<ShippingDto> createShipping(OrderDto order, OrderAggregateCreateDto orderAggregateCreateDto) {
-    LOG.debug("createShipping: Creating shipping for orderId {}", order.id());
-    ShippingCreateDto shippingCreateDto = new ShippingCreateDto(order.id(), orderAggregateCreateDto.shippingAddress());
-    return integration.createShippingOrder(shippingCreateDto)
-      .doOnError(e -> LOG.error("Error creating shipping for orderId {}", order.id(), e));
-  }
-
-  private Mono<Void> handleOrderCreationError(Throwable e) {
-    LOG.error("Error creating composite order", e);
-    return Mono.empty();
-  }
-
-  private Mono<List<ProductDto>> getProductsForOrderItems(List<OrderItemRequestDto> orderItems) {
-    List<Integer> productIds = orderItems.stream()
-      .map(OrderItemRequestDto::productId)
-      .distinct()
-      .collect(Collectors.toList());
-    LOG.debug("getProductsForOrderItems: Retrieving products for productIds: {}", productIds);
-
-    return integration.getProductsByIds(productIds)
-      .collectList()
-      .doOnError(e -> LOG.error("Error retrieving products for order items", e));
-  }
-
-  private OrderAggregateDto createOrderAggregateDto(
-    OrderDto order,
-    ShippingDto shipping,
-    List<ProductDto> products,
-    List<OrderItemDto> orderItems,
-    String serviceAddress) {
-    OrderSummaryDto orderSummary = createOrderSummary(order);
-
-    ShippingSummaryDto shippingSummary = createShippingSummary(shipping);
-
-    Map<Integer, ProductDto> productMap = createProductMap(products);
-
-    List<OrderItemSummaryDto> orderItemSummaries = createOrderItemSummaries(orderItems, productMap);
-
-    ServiceAddressesDto serviceAddresses = createServiceAddressesDto(
-      serviceAddress,
-      products,
-      order,
-      shipping
-    );
-
-    return new OrderAggregateDto(
-      orderSummary.id(),
-      orderSummary.userId(),
-      orderSummary.totalPrice(),
-      orderSummary.status(),
-      orderSummary.createdAt(),
-      shippingSummary,
-      orderItemSummaries,
-      serviceAddresses
-    );
-  }
-
-  private OrderSummaryDto createOrderSummary(OrderDto order) {
-    return new OrderSummaryDto(
-      order.id(),
-      order.userId(),
-      order.totalPrice(),
-      order.status(),
-      order.createdAt()
-    );
-  }
-
-  private ShippingSummaryDto createShippingSummary(ShippingDto shipping) {
-    return new ShippingSummaryDto(
-      shipping.orderId(),
-      shipping.shippingAddress(),
-      shipping.status()
-    );
-  }
-
-  private Map<Integer, ProductDto> createProductMap(List<ProductDto> products) {
-    return products.stream()
-      .collect(Collectors.toMap(ProductDto::id, product -> product));
-  }
-
-  private List<OrderItemSummaryDto> createOrderItemSummaries(
-    List<OrderItemDto> orderItems,
-    Map<Integer, ProductDto> productMap
-  ) {
-    return (orderItems == null) ? Collections.emptyList() :
-      orderItems.stream()
-        .map(oi -> createOrderItemSummary(oi, productMap))
-        .collect(Collectors.toList());
-  }
-
-  private OrderItemSummaryDto createOrderItemSummary(
-    OrderItemDto orderItem,
-    Map<Integer, ProductDto> productMap
-  ) {
-    ProductDto product = productMap.get(orderItem.productId());
-    ProductSummaryDto productSummary = createProductSummary(product);
-    int totalPrice = orderItem.quantity() * product.price();
-
-    return new OrderItemSummaryDto(
-      orderItem.id(),
-      orderItem.quantity(),
-      totalPrice,
-      productSummary
-    );
-  }
-
-  private ProductSummaryDto createProductSummary(ProductDto product) {
-    return new ProductSummaryDto(
-      product.id(),
-      product.name(),
-      product.description(),
-      product.price()
-    );
-  }
-
-  private ServiceAddressesDto createServiceAddressesDto(
-    String serviceAddress,
-    List<ProductDto> products,
-    OrderDto order,
-    ShippingDto shipping
-  ) {
-    String productAddress = !products.isEmpty() ? products.getFirst().serviceAddress() : "";
-    return new ServiceAddressesDto(
-      serviceAddress,
-      productAddress,
-      order.serviceAddress(),
-      shipping.serviceAddress()
-    );
+      .doOnError(ex -> LOG.error("Failed to create composite order for userId: {}, error: {}", orderAggregateCreateDto.userId(), ex.toString()));
   }
 
   private Mono<SecurityContext> getLogAuthorizationInfoMono() {
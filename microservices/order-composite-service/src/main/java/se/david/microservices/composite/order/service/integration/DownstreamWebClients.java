@@ -0,0 +1,90 @@
+package se.david.microservices.composite.order.service.integration;
+
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One WebClient per downstream service (product, inventory, order, shipping), each with its own connection pool, so
+// a slow service can only hold its own connections and every pool can be sized for its service. The WebClients are
+// built from the load balanced builder, so they still resolve the service names through the discovery client.
+//
+// With h2c the requests are multiplexed over a few HTTP/2 connections (prior knowledge, the core services enable h2c
+// on their servers) instead of holding one HTTP/1.1 connection each, so bursts of aggregations do not open new
+// connections. Every setting is read from app.http.<downstream>.<name> and falls back to app.http.<name>.
+@Component
+public class DownstreamWebClients implements DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(DownstreamWebClients.class);
+
+  private final WebClient.Builder webClientBuilder;
+  private final Environment environment;
+  private final Map<String, WebClient> webClients = new ConcurrentHashMap<>();
+  private final Map<String, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+
+  @Autowired
+  public DownstreamWebClients(WebClient.Builder webClientBuilder, Environment environment) {
+    this.webClientBuilder = webClientBuilder;
+    this.environment = environment;
+  }
+
+  public WebClient get(String downstream) {
+    return webClients.computeIfAbsent(downstream, this::create);
+  }
+
+  @Override
+  public void destroy() {
+    connectionProviders.values().forEach(ConnectionProvider::dispose);
+  }
+
+  private WebClient create(String downstream) {
+    int maxConnections = setting(downstream, "maxConnections", Integer.class, 100);
+    int pendingAcquireMaxCount = setting(downstream, "pendingAcquireMaxCount", Integer.class, 1000);
+    long pendingAcquireTimeoutMs = setting(downstream, "pendingAcquireTimeoutMs", Long.class, 2000L);
+    long maxIdleTimeMs = setting(downstream, "maxIdleTimeMs", Long.class, 30000L);
+    long maxLifeTimeMs = setting(downstream, "maxLifeTimeMs", Long.class, 300000L);
+    int connectTimeoutMs = setting(downstream, "connectTimeoutMs", Integer.class, 2000);
+    boolean h2c = setting(downstream, "h2c", Boolean.class, true);
+    LOG.info("Creates a WebClient for downstream {} with h2c = {}, maxConnections = {}, pendingAcquireMaxCount = {}, "
+        + "pendingAcquireTimeoutMs = {}, maxIdleTimeMs = {} and maxLifeTimeMs = {}",
+      downstream, h2c, maxConnections, pendingAcquireMaxCount, pendingAcquireTimeoutMs, maxIdleTimeMs, maxLifeTimeMs);
+
+    // metrics() publishes reactor.netty.connection.provider.* tagged with the pool name, e.g. the active and idle
+    // connections and the pending acquires
+    ConnectionProvider connectionProvider = ConnectionProvider.builder(downstream)
+      .maxConnections(maxConnections)
+      .pendingAcquireMaxCount(pendingAcquireMaxCount)
+      .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+      .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+      .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+      .evictInBackground(Duration.ofMillis(maxIdleTimeMs))
+      .metrics(true)
+      .build();
+    connectionProviders.put(downstream, connectionProvider);
+
+    HttpClient httpClient = HttpClient.create(connectionProvider)
+      .protocol(h2c ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+      .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+      .option(ChannelOption.SO_KEEPALIVE, true);
+
+    return webClientBuilder.clone()
+      .clientConnector(new ReactorClientHttpConnector(httpClient))
+      .build();
+  }
+
+  private <T> T setting(String downstream, String name, Class<T> type, T defaultValue) {
+    T value = environment.getProperty("app.http." + downstream + "." + name, type);
+    return value != null ? value : environment.getProperty("app.http." + name, type, defaultValue);
+  }
+}
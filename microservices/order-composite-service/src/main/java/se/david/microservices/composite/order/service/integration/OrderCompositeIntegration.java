@@ -6,10 +6,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.health.Health;
-import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.http.HttpStatus;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
@@ -19,6 +17,7 @@ import reactor.core.scheduler.Scheduler;
 import se.david.api.core.inventory.dto.InventoryCreateDto;
 import se.david.api.core.inventory.dto.InventoryDto;
 import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.core.inventory.dto.StockReservationReleaseDto;
 import se.david.api.core.inventory.service.InventoryService;
 import se.david.api.core.order.dto.OrderCreateDto;
 import se.david.api.core.order.dto.OrderDto;
@@ -32,12 +31,23 @@ import se.david.api.core.shipping.dto.ShippingCreateDto;
 import se.david.api.core.shipping.dto.ShippingDto;
 import se.david.api.core.shipping.service.ShippingService;
 import se.david.api.event.Event;
+import se.david.api.event.EventResult;
+import se.david.api.exceptions.BadRequestException;
 import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
 import se.david.api.exceptions.NotFoundException;
+import se.david.microservices.composite.order.service.cache.ProductCache;
+import se.david.microservices.composite.order.service.correlation.EventResultCorrelator;
+import se.david.microservices.composite.order.service.outbox.EventOutbox;
+import se.david.microservices.composite.order.service.resilience.DownstreamResilience;
+import se.david.microservices.composite.order.service.resilience.DownstreamResilience.CallType;
 import se.david.util.http.HttpErrorInfo;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -47,7 +57,7 @@ import static java.util.logging.Level.FINE;
 public class OrderCompositeIntegration implements ProductService, InventoryService, OrderService, ShippingService {
   private static final Logger LOG = LoggerFactory.getLogger(OrderCompositeIntegration.class);
 
-  private final WebClient webClient;
+  private final DownstreamWebClients webClients;
   private final ObjectMapper mapper;
 
   private static final String PRODUCT_SERVICE_URL = "http://product";
@@ -55,50 +65,102 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
   private static final String ORDER_SERVICE_URL = "http://order";
   private static final String SHIPPING_SERVICE_URL = "http://shipping";
 
-  private final StreamBridge streamBridge;
+  private static final String CANCELLED_STATUS = "CANCELLED";
+
+  private final EventOutbox outbox;
   private final Scheduler publishEventScheduler;
+  private final ProductCache productCache;
+  private final EventResultCorrelator eventResults;
+  private final DownstreamResilience resilience;
 
   @Autowired
   public OrderCompositeIntegration(
     @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
-    StreamBridge streamBridge,
-    WebClient.Builder webClientBuilder,
-    ObjectMapper mapper) {
+    EventOutbox outbox,
+    DownstreamWebClients webClients,
+    ObjectMapper mapper,
+    ProductCache productCache,
+    EventResultCorrelator eventResults,
+    DownstreamResilience resilience) {
     this.publishEventScheduler = publishEventScheduler;
-    this.streamBridge = streamBridge;
-    this.webClient = webClientBuilder.build();
+    this.outbox = outbox;
+    this.webClients = webClients;
     this.mapper = mapper;
+    this.productCache = productCache;
+    this.eventResults = eventResults;
+    this.resilience = resilience;
   }
 
   private <T> Flux<T> getFlux(String url, Class<T> responseType) {
-    return webClient.get()
-      .uri(url)
-      .retrieve()
-      .bodyToFlux(responseType)
+    return resilience.flux(downstreamOf(url), CallType.READ, () -> webClient(url).get()
+        .uri(url)
+        .retrieve()
+        .bodyToFlux(responseType))
       .doOnError(ex -> LOG.error("Error fetching from URL: {}", url, ex))
       .log(LOG.getName(), Level.FINE)
       .onErrorMap(WebClientResponseException.class, this::handleException);
   }
 
+  // Newline delimited JSON is decoded element by element as it arrives, instead of as one JSON array.
+  private <T> Flux<T> getNdjsonFlux(String url, Class<T> responseType) {
+    return resilience.flux(downstreamOf(url), CallType.STREAM, () -> webClient(url).get()
+        .uri(url)
+        .accept(MediaType.APPLICATION_NDJSON)
+        .retrieve()
+        .bodyToFlux(responseType))
+      .doOnError(ex -> LOG.error("Error streaming from URL: {}", url, ex))
+      .log(LOG.getName(), Level.FINE)
+      .onErrorMap(WebClientResponseException.class, this::handleException);
+  }
+
+  // The ids go in a JSON body, so a batch is not limited by the maximum URL length. A batch lookup does not change
+  // anything, so it is a read like a GET.
+  private <T> Flux<T> postFlux(String url, Object body, Class<T> responseType) {
+    return resilience.flux(downstreamOf(url), CallType.READ, () -> webClient(url).post()
+        .uri(url)
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(body)
+        .retrieve()
+        .bodyToFlux(responseType))
+      .doOnError(ex -> LOG.error("Error posting to URL: {}", url, ex))
+      .log(LOG.getName(), Level.FINE)
+      .onErrorMap(WebClientResponseException.class, this::handleException);
+  }
+
   private <T> Mono<T> getMono(String url, Class<T> responseType) {
-    return webClient.get()
-      .uri(url)
-      .retrieve()
-      .bodyToMono(responseType)
+    return resilience.mono(downstreamOf(url), CallType.READ, () -> webClient(url).get()
+        .uri(url)
+        .retrieve()
+        .bodyToMono(responseType))
       .doOnError(ex -> LOG.error("Error fetching from URL: {}", url, ex))
       .log(LOG.getName(), Level.FINE)
       .onErrorMap(WebClientResponseException.class, this::handleException);
   }
 
-  private <K, V, T> Mono<T> sendEventAndFetch(String bindingName, Event.Type eventType, K key, V payload, String fetchUrl, Class<T> responseType) {
-    return sendEvent(bindingName, eventType, key, payload)
-      .then(getMono(fetchUrl, responseType))
-      .subscribeOn(publishEventScheduler);
+  private <T> Mono<T> write(String url, Supplier<Mono<T>> request) {
+    return resilience.mono(downstreamOf(url), CallType.WRITE, request);
+  }
+
+  private WebClient webClient(String url) {
+    return webClients.get(downstreamOf(url));
+  }
+
+  // The downstream is the service name in the load balanced URL, e.g. http://shipping/shipments -> shipping
+  private static String downstreamOf(String url) {
+    return URI.create(url).getHost();
+  }
+
+  // The consumer answers the event with the entity it resulted in (see EventResultPublisher), so the response shows
+  // the state after the event without reading it back from the core service
+  private <K, V, T> Mono<T> sendEventAndAwaitResult(String bindingName, Event.Type eventType, K key, V payload, Class<T> responseType) {
+    return eventResults.sendAndAwait(correlationId -> appendEvent(bindingName, new Event<>(eventType, key, payload, correlationId)))
+      .doOnError(ex -> LOG.error("Failed to get the result of {} event for key: {}", eventType, key, ex))
+      .flatMap(result -> toResponse(result, responseType));
   }
 
   <K, V> Mono<Void> sendEvent(String bindingName, Event.Type eventType, K key, V payload) {
     Event<K, V> event = new Event<>(eventType, key, payload);
-    return Mono.fromRunnable(() -> sendMessage(bindingName, event))
+    return appendEvent(bindingName, event)
       .doOnError(ex -> LOG.error("Failed to send {} event for key: {}", eventType, key, ex)).then();
   }
 
@@ -108,31 +170,94 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
   // lets the compiler prove the List<T> match, so this correctly populates Event.dataList instead.
   <K, V> Mono<Void> sendListEvent(String bindingName, Event.Type eventType, K key, List<V> payloadList) {
     Event<K, V> event = new Event<>(eventType, key, payloadList);
-    return Mono.fromRunnable(() -> sendMessage(bindingName, event))
+    return appendEvent(bindingName, event)
       .doOnError(ex -> LOG.error("Failed to send {} event for key: {}", eventType, key, ex)).then();
   }
 
+  // Completes once the event is in the outbox; the OutboxRelay publishes it in the background
+  private Mono<Long> appendEvent(String bindingName, Event<?, ?> event) {
+    return Mono.fromCallable(() -> outbox.append(bindingName, event))
+      .subscribeOn(publishEventScheduler);
+  }
+
   @Override
   public Flux<InventoryDto> getInventoryStocks() {
     return getFlux(INVENTORY_SERVICE_URL + "/inventories", InventoryDto.class);
   }
 
+  @Override
+  public Flux<InventoryDto> getInventoryStocksPage(int afterId, int limit) {
+    return getFlux(INVENTORY_SERVICE_URL + "/inventories/page?afterId=" + afterId + "&limit=" + limit, InventoryDto.class);
+  }
+
+  @Override
+  public Flux<InventoryDto> streamInventoryStocks() {
+    return getNdjsonFlux(INVENTORY_SERVICE_URL + "/inventories/stream", InventoryDto.class);
+  }
+
+  @Override
+  public Flux<InventoryDto> getInventoryStocksBatch(List<Integer> productIds) {
+    return postFlux(INVENTORY_SERVICE_URL + "/inventories/batch", productIds, InventoryDto.class);
+  }
+
   @Override
   public Flux<OrderDto> getOrders() {
     return getFlux(ORDER_SERVICE_URL + "/orders", OrderDto.class);
   }
 
+  @Override
+  public Flux<OrderDto> getOrdersPage(int afterId, int limit) {
+    return getFlux(ORDER_SERVICE_URL + "/orders/page?afterId=" + afterId + "&limit=" + limit, OrderDto.class);
+  }
+
+  @Override
+  public Flux<OrderDto> streamOrders() {
+    return getNdjsonFlux(ORDER_SERVICE_URL + "/orders/stream", OrderDto.class);
+  }
+
   @Override
   public Flux<ProductDto> getProducts() {
     return getFlux(PRODUCT_SERVICE_URL + "/products", ProductDto.class);
   }
 
+  @Override
+  public Flux<ProductDto> getProductsPage(int afterId, int limit) {
+    return getFlux(PRODUCT_SERVICE_URL + "/products/page?afterId=" + afterId + "&limit=" + limit, ProductDto.class);
+  }
+
+  @Override
+  public Flux<ProductDto> streamProducts() {
+    return getNdjsonFlux(PRODUCT_SERVICE_URL + "/products/stream", ProductDto.class);
+  }
+
+  // Serves the cached products directly and only asks product-service for the ids that missed the cache.
   @Override
   public Flux<ProductDto> getProductsByIds(List<Integer> ids) {
-    String idsParam = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
-    String url = PRODUCT_SERVICE_URL + "/products/byIds?ids=" + idsParam;
+    return Flux.defer(() -> {
+      Map<Integer, ProductDto> cachedProducts = productCache.getAllPresent(ids);
+      List<Integer> missingIds = ids.stream()
+        .filter(id -> !cachedProducts.containsKey(id))
+        .distinct()
+        .collect(Collectors.toList());
+      LOG.debug("getProductsByIds: Found {} of {} products in the cache, fetching missing ids: {}", cachedProducts.size(), ids.size(), missingIds);
+
+      if(missingIds.isEmpty()) {
+        return Flux.fromIterable(cachedProducts.values());
+      }
+
+      return Flux.concat(
+        Flux.fromIterable(cachedProducts.values()),
+        fetchProductsByIds(missingIds).doOnNext(productCache::put));
+    });
+  }
 
-    return getFlux(url, ProductDto.class);
+  private Flux<ProductDto> fetchProductsByIds(List<Integer> ids) {
+    return getProductsBatch(ids);
+  }
+
+  @Override
+  public Flux<ProductDto> getProductsBatch(List<Integer> ids) {
+    return postFlux(PRODUCT_SERVICE_URL + "/products/batch", ids, ProductDto.class);
   }
 
   @Override
@@ -141,22 +266,24 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
   }
 
   @Override
-  public Flux<ShippingDto> getShipmentsByOrderIds(List<Integer> orderIds) {
-    String url = SHIPPING_SERVICE_URL + "/shipments";
-    StringBuilder urlBuilder = new StringBuilder(url + "/byOrdersIds?");
-
-    for(Integer orderId : orderIds) {
-      if(urlBuilder.length() > url.length() + "/byOrdersIds?".length()) {
-        urlBuilder.append("&");
-      }
-      urlBuilder.append("orderIds=").append(orderId);
-    }
+  public Flux<ShippingDto> getShipmentsPage(int afterId, int limit) {
+    return getFlux(SHIPPING_SERVICE_URL + "/shipments/page?afterId=" + afterId + "&limit=" + limit, ShippingDto.class);
+  }
 
-    url = urlBuilder.toString();
+  @Override
+  public Flux<ShippingDto> streamShipments() {
+    return getNdjsonFlux(SHIPPING_SERVICE_URL + "/shipments/stream", ShippingDto.class);
+  }
 
-    LOG.debug("getShipmentsByOrderIds: Fetching shipments by order IDs: {} from URL: {}", orderIds, url);
+  @Override
+  public Flux<ShippingDto> getShipmentsByOrderIds(List<Integer> orderIds) {
+    LOG.debug("getShipmentsByOrderIds: Fetching shipments for {} order IDs", orderIds.size());
+    return getShipmentsBatch(orderIds);
+  }
 
-    return getFlux(url, ShippingDto.class);
+  @Override
+  public Flux<ShippingDto> getShipmentsBatch(List<Integer> orderIds) {
+    return postFlux(SHIPPING_SERVICE_URL + "/shipments/batch", orderIds, ShippingDto.class);
   }
 
   @Override
@@ -166,28 +293,28 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
 
   @Override
   public Mono<ShippingDto> createShippingOrder(ShippingCreateDto shippingCreateDto) {
-    String url = SHIPPING_SERVICE_URL + "/orders/" + shippingCreateDto.orderId();
-    return sendEventAndFetch("shipments-out-0", Event.Type.CREATE, shippingCreateDto.orderId(), shippingCreateDto, url, ShippingDto.class);
+    return sendEventAndAwaitResult("shipments-out-0", Event.Type.CREATE, shippingCreateDto.orderId(), shippingCreateDto, ShippingDto.class);
   }
 
   @Override
   public Mono<ShippingDto> updateShippingStatusByOrderId(int orderId, String status) {
-    String url = SHIPPING_SERVICE_URL + "/shipments/order/" + orderId;
-    return sendEventAndFetch("shipments-out-0", Event.Type.UPDATE, orderId, status, url, ShippingDto.class);
+    return sendEventAndAwaitResult("shipments-out-0", Event.Type.UPDATE, orderId, new ShippingDto(orderId, null, status, null), ShippingDto.class);
   }
 
   @Override
   public Mono<ProductDto> getProduct(int productId) {
-    return getMono(PRODUCT_SERVICE_URL + "/products/" + productId, ProductDto.class);
+    return Mono.defer(() -> Mono.justOrEmpty(productCache.get(productId)))
+      .switchIfEmpty(Mono.defer(() -> getMono(PRODUCT_SERVICE_URL + "/products/" + productId, ProductDto.class)
+        .doOnNext(productCache::put)));
   }
 
   @Override
   public Mono<ProductDto> createProduct(ProductCreateDto productCreateDto) {
-    return webClient.post()
-      .uri(PRODUCT_SERVICE_URL + "/products")
-      .bodyValue(productCreateDto)
-      .retrieve()
-      .bodyToMono(ProductDto.class)
+    return write(PRODUCT_SERVICE_URL, () -> webClient(PRODUCT_SERVICE_URL).post()
+        .uri(PRODUCT_SERVICE_URL + "/products")
+        .bodyValue(productCreateDto)
+        .retrieve()
+        .bodyToMono(ProductDto.class))
       .doOnSuccess(productDto -> LOG.debug("createProduct: Created a product with id: {}", productDto.id()))
       .doOnError(ex -> LOG.error("Error creating product", ex))
       .log(LOG.getName(), Level.FINE);
@@ -195,12 +322,13 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
 
   @Override
   public Mono<ProductDto> updateProduct(int productId, ProductUpdateDto productUpdateDto) {
-    return webClient.put()
-      .uri(PRODUCT_SERVICE_URL + "/products/" + productId)
-      .bodyValue(productUpdateDto)
-      .retrieve()
-      .bodyToMono(Void.class)
-      .then(getProduct(productId))
+    return write(PRODUCT_SERVICE_URL, () -> webClient(PRODUCT_SERVICE_URL).put()
+        .uri(PRODUCT_SERVICE_URL + "/products/" + productId)
+        .bodyValue(productUpdateDto)
+        .retrieve()
+        .bodyToMono(Void.class))
+      .doOnSuccess(unused -> productCache.invalidate(productId))
+      .then(Mono.defer(() -> getProduct(productId)))
       .doOnSuccess(updatedProduct -> LOG.debug("updateProduct: Updated product with ID: {}", updatedProduct.id()))
       .doOnError(ex -> LOG.error("Error updating product with ID: {}", productId, ex))
       .log(LOG.getName(), Level.FINE);
@@ -208,10 +336,11 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
 
   @Override
   public Mono<Void> deleteProduct(int productId) {
-    return webClient.delete()
-      .uri(PRODUCT_SERVICE_URL + "/products/" + productId)
-      .retrieve()
-      .bodyToMono(Void.class)
+    return write(PRODUCT_SERVICE_URL, () -> webClient(PRODUCT_SERVICE_URL).delete()
+        .uri(PRODUCT_SERVICE_URL + "/products/" + productId)
+        .retrieve()
+        .bodyToMono(Void.class))
+      .doFinally(signal -> productCache.invalidate(productId))
       .doOnSuccess(unused -> LOG.debug("deleteProduct: Successfully deleted product with ID: {}", productId))
       .doOnError(ex -> LOG.error("Error deleting product with ID: {}", productId, ex))
       .log(LOG.getName(), Level.FINE);
@@ -227,29 +356,35 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
     return getMono(ORDER_SERVICE_URL + "/orders/" + orderId, OrderDto.class);
   }
 
+  @Override
+  public Flux<OrderDto> getOrdersBatch(List<Integer> orderIds) {
+    return postFlux(ORDER_SERVICE_URL + "/orders/batch", orderIds, OrderDto.class);
+  }
+
   @Override
   public Mono<OrderDto> createOrder(OrderCreateDto orderCreateDto) {
-    return webClient.post()
-      .uri(ORDER_SERVICE_URL + "/orders")
-      .bodyValue(orderCreateDto)
-      .retrieve()
-      .bodyToMono(OrderDto.class)
+    return write(ORDER_SERVICE_URL, () -> webClient(ORDER_SERVICE_URL).post()
+        .uri(ORDER_SERVICE_URL + "/orders")
+        .bodyValue(orderCreateDto)
+        .retrieve()
+        .bodyToMono(OrderDto.class))
       .doOnSuccess(orderDto -> LOG.debug("createOrder: Created an order with id: {}", orderDto.id()))
       .doOnError(ex -> LOG.error("Error creating order", ex))
-      .log(LOG.getName(), Level.FINE);
+      .log(LOG.getName(), Level.FINE)
+      .onErrorMap(WebClientResponseException.class, this::handleException);
   }
 
   @Override
   public Mono<OrderDto> updateOrder(int orderId, OrderUpdateDto orderUpdateDto) {
-    return sendEventAndFetch("orders-out-0", Event.Type.UPDATE, orderId, orderUpdateDto, ORDER_SERVICE_URL + "/orders/" + orderId, OrderDto.class);
+    return sendEventAndAwaitResult("orders-out-0", Event.Type.UPDATE, orderId, orderUpdateDto, OrderDto.class);
   }
 
   @Override
   public Mono<Void> deleteOrder(int orderId) {
-    return webClient.delete()
-      .uri(ORDER_SERVICE_URL + "/orders/" + orderId)
-      .retrieve()
-      .bodyToMono(Void.class)
+    return write(ORDER_SERVICE_URL, () -> webClient(ORDER_SERVICE_URL).delete()
+        .uri(ORDER_SERVICE_URL + "/orders/" + orderId)
+        .retrieve()
+        .bodyToMono(Void.class))
       .doOnSuccess(unused -> LOG.debug("deleteOrder: Successfully deleted order with ID: {}", orderId))
       .doOnError(ex -> LOG.error("Error deleting order with ID: {}", orderId, ex))
       .log(LOG.getName(), Level.FINE);
@@ -262,11 +397,11 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
 
   @Override
   public Mono<InventoryDto> createInventoryStock(InventoryCreateDto inventoryCreateDto) {
-    return webClient.post()
-      .uri(INVENTORY_SERVICE_URL + "/inventories")
-      .bodyValue(inventoryCreateDto)
-      .retrieve()
-      .bodyToMono(InventoryDto.class)
+    return write(INVENTORY_SERVICE_URL, () -> webClient(INVENTORY_SERVICE_URL).post()
+        .uri(INVENTORY_SERVICE_URL + "/inventories")
+        .bodyValue(inventoryCreateDto)
+        .retrieve()
+        .bodyToMono(InventoryDto.class))
       .doOnSuccess(createdInventoryDto -> LOG.debug("createInventoryStock: Created inventory stock with productId: {}", createdInventoryDto.productId()))
       .doOnError(ex -> LOG.error("Error creating inventory stock", ex))
       .log(LOG.getName(), Level.FINE);
@@ -274,17 +409,17 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
 
   @Override
   public Mono<Void> deleteInventoryStock(int productId) {
-    return webClient.delete()
-      .uri(INVENTORY_SERVICE_URL + "/inventories/" + productId)
-      .retrieve()
-      .bodyToMono(Void.class)
+    return write(INVENTORY_SERVICE_URL, () -> webClient(INVENTORY_SERVICE_URL).delete()
+        .uri(INVENTORY_SERVICE_URL + "/inventories/" + productId)
+        .retrieve()
+        .bodyToMono(Void.class))
       .doOnError(ex -> LOG.error("Error deleting inventory stock for productId: {}", productId, ex))
       .log(LOG.getName(), Level.FINE);
   }
 
   @Override
   public Mono<InventoryDto> increaseStock(InventoryStockAdjustmentRequestDto inventoryIncreaseDto) {
-    return sendEventAndFetch("inventories-out-0", Event.Type.INCREASE_STOCK, inventoryIncreaseDto.productId(), inventoryIncreaseDto, INVENTORY_SERVICE_URL + "/inventories/" + inventoryIncreaseDto.productId(), InventoryDto.class);
+    return sendEventAndAwaitResult("inventories-out-0", Event.Type.INCREASE_STOCK, inventoryIncreaseDto.productId(), inventoryIncreaseDto, InventoryDto.class);
   }
 
   @Override
@@ -293,6 +428,57 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
       "inventories-out-0", Event.Type.REDUCE_STOCKS, null, inventoryReduceDtos);
   }
 
+  // Reserves the stock of all items or none of them and answers once it is done, unlike the fire-and-forget
+  // reduceStocks(). Fails with InventoryOutOfStockException if any item has too little stock. Sending the same
+  // reservation id again does not reserve the stock twice.
+  @Override
+  public Mono<Void> reserveStocks(String reservationId, List<InventoryStockAdjustmentRequestDto> reservations) {
+    return write(INVENTORY_SERVICE_URL, () -> webClient(INVENTORY_SERVICE_URL).put()
+        .uri(INVENTORY_SERVICE_URL + "/inventories/reservations/{reservationId}", reservationId)
+        .bodyValue(reservations)
+        .retrieve()
+        .bodyToMono(Void.class))
+      .doOnSuccess(unused -> LOG.debug("reserveStocks: Reserved stock for {} items with reservationId: {}", reservations.size(), reservationId))
+      .doOnError(ex -> LOG.error("Error reserving stock for {} items with reservationId: {}", reservations.size(), reservationId, ex))
+      .log(LOG.getName(), Level.FINE)
+      .onErrorMap(WebClientResponseException.class, this::handleException);
+  }
+
+  // Gives the stock of the reservation back, or refuses the reservation if it has not arrived yet. Goes through the
+  // outbox, so it is retried until inventory-service has it.
+  public Mono<Void> releaseStocks(String reservationId) {
+    return sendEvent("inventories-out-0", Event.Type.RELEASE_RESERVATION, null, new StockReservationReleaseDto(reservationId));
+  }
+
+  // Creates the shipment with a request to shipping-service and answers with it, unlike the event based
+  // createShippingOrder(), which cannot tell whether the shipment was created.
+  public Mono<ShippingDto> createShipment(ShippingCreateDto shippingCreateDto) {
+    return write(SHIPPING_SERVICE_URL, () -> webClient(SHIPPING_SERVICE_URL).post()
+        .uri(SHIPPING_SERVICE_URL + "/shipments")
+        .bodyValue(shippingCreateDto)
+        .retrieve()
+        .bodyToMono(ShippingDto.class))
+      .doOnSuccess(shippingDto -> LOG.debug("createShipment: Created a shipment for orderId: {}", shippingCreateDto.orderId()))
+      .doOnError(ex -> LOG.error("Error creating shipment for orderId: {}", shippingCreateDto.orderId(), ex))
+      .log(LOG.getName(), Level.FINE)
+      .onErrorMap(WebClientResponseException.class, this::handleException);
+  }
+
+  public Mono<Void> cancelOrder(int orderId) {
+    return sendEvent("orders-out-0", Event.Type.UPDATE, orderId, new OrderUpdateDto(CANCELLED_STATUS));
+  }
+
+  // For an order whose id is not known, because the request that creates it failed without an answer. Cancels the
+  // order created with the idempotency key, or refuses it if it has not arrived yet.
+  public Mono<Void> cancelOrder(String idempotencyKey, int userId) {
+    return sendEvent("orders-out-0", Event.Type.CANCEL_ORDER, null, new OrderCreateDto(userId, List.of(), idempotencyKey));
+  }
+
+  // A no-op when the shipment was never created
+  public Mono<Void> cancelShipment(int orderId) {
+    return sendEvent("shipments-out-0", Event.Type.UPDATE, orderId, new ShippingDto(orderId, null, CANCELLED_STATUS, null));
+  }
+
   public Mono<Health> getInventoryHealth() {
     return getHealth(INVENTORY_SERVICE_URL);
   }
@@ -305,10 +491,11 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
     return getHealth(SHIPPING_SERVICE_URL);
   }
 
+  // Not through the resilience policies: the health check should see the downstream itself, not an open circuit breaker
   private Mono<Health> getHealth(String url) {
     url += "/actuator/health";
     LOG.debug("Will call the Health API on URL: {}", url);
-    return webClient.get()
+    return webClient(url).get()
       .uri(url)
       .retrieve()
       .bodyToMono(String.class)
@@ -317,14 +504,6 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
       .log(LOG.getName(), FINE);
   }
 
-  private void sendMessage(String bindingName, Event event) {
-    LOG.debug("Sending a {} message to {}", event.getEventType(), bindingName);
-    Message message = MessageBuilder.withPayload(event)
-      .setHeader("partitionKey", event.getKey())
-      .build();
-    streamBridge.send(bindingName, message);
-  }
-
   private Throwable handleException(Throwable ex) {
     if(!(ex instanceof WebClientResponseException wcre)) {
       LOG.warn("Got a unexpected error: {}, will rethrow it", ex.toString());
@@ -339,6 +518,9 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
       case UNPROCESSABLE_ENTITY:
         return new InvalidInputException(getErrorMessage(wcre));
 
+      case CONFLICT:
+        return new InventoryOutOfStockException(getErrorMessage(wcre));
+
       default:
         LOG.warn("Got an unexpected HTTP error: {}, will rethrow it", wcre.getStatusCode());
         LOG.warn("Error body: {}", wcre.getResponseBodyAsString());
@@ -346,6 +528,30 @@ public class OrderCompositeIntegration implements ProductService, InventoryServi
     }
   }
 
+  // Maps a failed EventResult to the same exceptions as a failed request in handleException()
+  private <T> Mono<T> toResponse(EventResult result, Class<T> responseType) {
+    switch(HttpStatus.valueOf(result.status())) {
+      case OK:
+        return Mono.just(mapper.convertValue(result.data(), responseType));
+
+      case NOT_FOUND:
+        return Mono.error(new NotFoundException(result.message()));
+
+      case UNPROCESSABLE_ENTITY:
+        return Mono.error(new InvalidInputException(result.message()));
+
+      case CONFLICT:
+        return Mono.error(new InventoryOutOfStockException(result.message()));
+
+      case BAD_REQUEST:
+        return Mono.error(new BadRequestException(result.message()));
+
+      default:
+        LOG.warn("Got an unexpected event result status: {}, message: {}", result.status(), result.message());
+        return Mono.error(new IllegalStateException(result.message()));
+    }
+  }
+
   private String getErrorMessage(WebClientResponseException ex) {
     try {
       return mapper.readValue(ex.getResponseBodyAsString(), HttpErrorInfo.class).getMessage();
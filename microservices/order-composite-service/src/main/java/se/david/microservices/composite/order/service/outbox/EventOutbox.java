@@ -0,0 +1,110 @@
+package se.david.microservices.composite.order.service.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.david.api.event.Event;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Events are first written to the local journal and then published by the OutboxRelay, so a write request only
+// waits for the disk and an event that was accepted is not lost if the broker is slow or down.
+@Component
+public class EventOutbox implements DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(EventOutbox.class);
+
+  private final OutboxJournal journal;
+  private final ObjectMapper mapper;
+  private final Duration publishTimeout;
+  private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> publishWaiters = new ConcurrentSkipListMap<>();
+
+  @Autowired
+  public EventOutbox(
+    ObjectMapper mapper,
+    MeterRegistry meterRegistry,
+    @Value("${app.outbox.directory:outbox}") String directory,
+    @Value("${app.outbox.fsync:true}") boolean fsync,
+    @Value("${app.outbox.compactThresholdBytes:16777216}") long compactThresholdBytes,
+    @Value("${app.outbox.publishTimeoutMs:10000}") long publishTimeoutMs) throws IOException {
+    LOG.info("Creates an event outbox in {} with fsync = {}", directory, fsync);
+    this.journal = new OutboxJournal(Path.of(directory), mapper, fsync, compactThresholdBytes);
+    this.mapper = mapper;
+    this.publishTimeout = Duration.ofMillis(publishTimeoutMs);
+
+    Gauge.builder("outbox.pending", journal, OutboxJournal::pendingCount)
+      .description("Events written to the outbox and not yet confirmed by the broker")
+      .register(meterRegistry);
+    Gauge.builder("outbox.lag", journal, EventOutbox::lagSeconds)
+      .description("Age of the oldest event that is not yet confirmed by the broker")
+      .baseUnit("seconds")
+      .register(meterRegistry);
+  }
+
+  // Blocks until the event is written to the journal and returns its sequence number
+  public long append(String bindingName, Event<?, ?> event) throws IOException {
+    OutboxEntry entry = journal.append(bindingName, event.getKey(), mapper.valueToTree(event));
+    LOG.debug("Appended a {} event for {} to the outbox with sequence {}", event.getEventType(), bindingName, entry.sequence());
+    return entry.sequence();
+  }
+
+  // Completes when the broker has confirmed the event with the given sequence number
+  public Mono<Void> awaitPublished(long sequence) {
+    return Mono.defer(() -> {
+      if(journal.isAcknowledged(sequence)) {
+        return Mono.empty();
+      }
+      CompletableFuture<Void> waiter = publishWaiters.computeIfAbsent(sequence, s -> new CompletableFuture<>());
+      // The relay may have acknowledged the event between the check above and registering the waiter
+      if(journal.isAcknowledged(sequence)) {
+        completeWaiters(sequence);
+      }
+      return Mono.fromFuture(waiter, true)
+        .timeout(publishTimeout, Mono.error(() -> new IllegalStateException(
+          "Event " + sequence + " was not published within " + publishTimeout.toMillis() + " ms, it is kept in the outbox")));
+    });
+  }
+
+  List<OutboxEntry> nextBatch(int maxSize, long waitMillis) throws InterruptedException {
+    return journal.nextBatch(maxSize, waitMillis);
+  }
+
+  void acknowledge(long sequence) throws IOException {
+    journal.acknowledge(sequence);
+    completeWaiters(sequence);
+  }
+
+  byte[] toBytes(OutboxEntry entry) throws IOException {
+    return mapper.writeValueAsBytes(entry.payload());
+  }
+
+  @Override
+  public void destroy() throws IOException {
+    journal.close();
+  }
+
+  private void completeWaiters(long sequence) {
+    Map.Entry<Long, CompletableFuture<Void>> waiter;
+    while((waiter = publishWaiters.headMap(sequence, true).pollFirstEntry()) != null) {
+      waiter.getValue().complete(null);
+    }
+  }
+
+  private static double lagSeconds(OutboxJournal journal) {
+    long oldest = journal.oldestPendingCreatedAt();
+    return oldest == 0 ? 0 : (System.currentTimeMillis() - oldest) / 1000.0;
+  }
+}
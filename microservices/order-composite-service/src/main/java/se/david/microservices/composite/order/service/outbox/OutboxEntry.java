@@ -0,0 +1,7 @@
+package se.david.microservices.composite.order.service.outbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+// One event waiting in the outbox. The payload is the serialized Event, so the relay can publish it as is.
+record OutboxEntry(long sequence, long createdAt, String bindingName, Object partitionKey, JsonNode payload) {
+}
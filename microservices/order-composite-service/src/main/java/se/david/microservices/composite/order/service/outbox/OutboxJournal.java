@@ -0,0 +1,181 @@
+package se.david.microservices.composite.order.service.outbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+// Append-only file log of the events that are waiting to be published, one JSON line per event. The sequence of
+// the last event the broker confirmed is kept in a separate file, so after a restart everything after it is
+// published again. Once all events are confirmed and the log has grown past compactThresholdBytes it is truncated.
+// A RandomAccessFile rather than a FileChannel, since a FileChannel is closed when a thread is interrupted while using it.
+class OutboxJournal implements Closeable {
+  private static final Logger LOG = LoggerFactory.getLogger(OutboxJournal.class);
+
+  private static final String JOURNAL_FILE = "outbox.journal";
+  private static final String ACK_FILE = "outbox.ack";
+
+  private final ObjectMapper mapper;
+  private final Path journalFile;
+  private final Path ackFile;
+  private final boolean fsync;
+  private final long compactThresholdBytes;
+  private final RandomAccessFile file;
+
+  // Guarded by this
+  private final Deque<OutboxEntry> pending = new ArrayDeque<>();
+  private long lastSequence;
+  private volatile long acknowledgedSequence;
+
+  // Guarded by syncLock
+  private final Object syncLock = new Object();
+  private long syncedSequence;
+
+  OutboxJournal(Path directory, ObjectMapper mapper, boolean fsync, long compactThresholdBytes) throws IOException {
+    this.mapper = mapper;
+    this.journalFile = directory.resolve(JOURNAL_FILE);
+    this.ackFile = directory.resolve(ACK_FILE);
+    this.fsync = fsync;
+    this.compactThresholdBytes = compactThresholdBytes;
+
+    Files.createDirectories(directory);
+    this.acknowledgedSequence = readAcknowledgedSequence();
+    this.lastSequence = acknowledgedSequence;
+    this.file = new RandomAccessFile(journalFile.toFile(), "rw");
+    recover();
+    this.syncedSequence = lastSequence;
+  }
+
+  OutboxEntry append(String bindingName, Object partitionKey, JsonNode payload) throws IOException {
+    OutboxEntry entry;
+    synchronized(this) {
+      entry = new OutboxEntry(lastSequence + 1, System.currentTimeMillis(), bindingName, partitionKey, payload);
+      file.write(toLine(entry));
+      lastSequence = entry.sequence();
+      pending.addLast(entry);
+      notifyAll();
+    }
+    if(fsync) {
+      sync(entry.sequence());
+    }
+    return entry;
+  }
+
+  // Waits up to waitMillis for an event to arrive if there is none pending
+  synchronized List<OutboxEntry> nextBatch(int maxSize, long waitMillis) throws InterruptedException {
+    if(pending.isEmpty() && waitMillis > 0) {
+      wait(waitMillis);
+    }
+    List<OutboxEntry> batch = new ArrayList<>(Math.min(maxSize, pending.size()));
+    for(OutboxEntry entry : pending) {
+      if(batch.size() == maxSize) {
+        break;
+      }
+      batch.add(entry);
+    }
+    return batch;
+  }
+
+  synchronized void acknowledge(long sequence) throws IOException {
+    while(!pending.isEmpty() && pending.peekFirst().sequence() <= sequence) {
+      pending.removeFirst();
+    }
+    writeAcknowledgedSequence(sequence);
+    acknowledgedSequence = sequence;
+
+    if(pending.isEmpty() && file.length() > compactThresholdBytes) {
+      LOG.debug("Compacts the outbox journal at sequence {}", sequence);
+      file.setLength(0);
+    }
+  }
+
+  boolean isAcknowledged(long sequence) {
+    return sequence <= acknowledgedSequence;
+  }
+
+  synchronized int pendingCount() {
+    return pending.size();
+  }
+
+  synchronized long oldestPendingCreatedAt() {
+    return pending.isEmpty() ? 0 : pending.peekFirst().createdAt();
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  // One fsync covers every line written before it, so appenders that arrive while a sync is running share the next one
+  private void sync(long sequence) throws IOException {
+    synchronized(syncLock) {
+      if(syncedSequence >= sequence) {
+        return;
+      }
+      long writtenSequence;
+      synchronized(this) {
+        writtenSequence = lastSequence;
+      }
+      file.getFD().sync();
+      syncedSequence = writtenSequence;
+    }
+  }
+
+  // Reloads the events after the acknowledged sequence. A line without its newline is the remains of a write that
+  // was interrupted by a crash; it was never confirmed to its caller and is cut off.
+  private void recover() throws IOException {
+    byte[] content = Files.readAllBytes(journalFile);
+    int start = 0;
+    for(int i = 0; i < content.length; i++) {
+      if(content[i] == '\n') {
+        OutboxEntry entry = mapper.readValue(content, start, i - start, OutboxEntry.class);
+        if(entry.sequence() > acknowledgedSequence) {
+          pending.addLast(entry);
+        }
+        lastSequence = Math.max(lastSequence, entry.sequence());
+        start = i + 1;
+      }
+    }
+    if(start < content.length) {
+      LOG.warn("Discards an incomplete last line of {} bytes in the outbox journal", content.length - start);
+    }
+    file.setLength(start);
+    file.seek(start);
+    LOG.info("Recovered the outbox journal with {} unpublished events", pending.size());
+  }
+
+  private byte[] toLine(OutboxEntry entry) throws IOException {
+    byte[] json = mapper.writeValueAsBytes(entry);
+    byte[] line = new byte[json.length + 1];
+    System.arraycopy(json, 0, line, 0, json.length);
+    line[json.length] = '\n';
+    return line;
+  }
+
+  private long readAcknowledgedSequence() throws IOException {
+    if(!Files.exists(ackFile)) {
+      return 0;
+    }
+    return Long.parseLong(Files.readString(ackFile, StandardCharsets.UTF_8).trim());
+  }
+
+  private void writeAcknowledgedSequence(long sequence) throws IOException {
+    Path tempFile = ackFile.resolveSibling(ACK_FILE + ".tmp");
+    Files.writeString(tempFile, Long.toString(sequence), StandardCharsets.UTF_8);
+    Files.move(tempFile, ackFile, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+}
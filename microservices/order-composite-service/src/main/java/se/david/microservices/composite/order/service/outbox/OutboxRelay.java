@@ -0,0 +1,210 @@
+package se.david.microservices.composite.order.service.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import se.david.util.messaging.CborMessageConverter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Publishes the events in the outbox in batches, in the order they were written. An event is acknowledged in the
+// journal once the broker has confirmed it; until then the batch is retried with an exponential backoff, so an
+// event can be delivered more than once but is never dropped.
+//
+// With app.outbox.publisherConfirms every message carries a CorrelationData that the Rabbit binder completes when the
+// broker confirms it (requires publisher-confirm-type=correlated and useConfirmHeader on the bindings). Without it a
+// message counts as published when StreamBridge.send returns true, which is what the Kafka binder does with sync=true.
+//
+// The journal keeps the events as JSON; they are encoded in the contentType of their binding when they are sent.
+@Component
+public class OutboxRelay implements SmartLifecycle {
+  private static final Logger LOG = LoggerFactory.getLogger(OutboxRelay.class);
+
+  private static final long POLL_INTERVAL_MS = 1000;
+
+  private final EventOutbox outbox;
+  private final StreamBridge streamBridge;
+  private final BindingServiceProperties bindingProperties;
+  private final CborMessageConverter cborConverter;
+  private final Map<String, MimeType> contentTypes = new ConcurrentHashMap<>();
+  private final int batchSize;
+  private final boolean publisherConfirms;
+  private final long confirmTimeoutMs;
+  private final long minBackoffMs;
+  private final long maxBackoffMs;
+  private final Counter publishedCounter;
+  private final Counter failureCounter;
+
+  private volatile boolean running;
+  private Thread thread;
+
+  @Autowired
+  public OutboxRelay(
+    EventOutbox outbox,
+    StreamBridge streamBridge,
+    BindingServiceProperties bindingProperties,
+    CborMessageConverter cborConverter,
+    MeterRegistry meterRegistry,
+    @Value("${app.outbox.batchSize:100}") int batchSize,
+    @Value("${app.outbox.publisherConfirms:true}") boolean publisherConfirms,
+    @Value("${app.outbox.confirmTimeoutMs:5000}") long confirmTimeoutMs,
+    @Value("${app.outbox.minBackoffMs:100}") long minBackoffMs,
+    @Value("${app.outbox.maxBackoffMs:30000}") long maxBackoffMs) {
+    this.outbox = outbox;
+    this.streamBridge = streamBridge;
+    this.bindingProperties = bindingProperties;
+    this.cborConverter = cborConverter;
+    this.batchSize = batchSize;
+    this.publisherConfirms = publisherConfirms;
+    this.confirmTimeoutMs = confirmTimeoutMs;
+    this.minBackoffMs = minBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    this.publishedCounter = Counter.builder("outbox.published").register(meterRegistry);
+    this.failureCounter = Counter.builder("outbox.publish.failures").register(meterRegistry);
+  }
+
+  @Override
+  public void start() {
+    LOG.info("Starts the outbox relay with batchSize = {} and publisherConfirms = {}", batchSize, publisherConfirms);
+    running = true;
+    thread = Thread.ofPlatform().name("outbox-relay").daemon().start(this::run);
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    synchronized(this) {
+      notifyAll();
+    }
+    try {
+      thread.join(POLL_INTERVAL_MS + confirmTimeoutMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void run() {
+    int failures = 0;
+    while(running) {
+      try {
+        List<OutboxEntry> batch = outbox.nextBatch(batchSize, POLL_INTERVAL_MS);
+        if(batch.isEmpty()) {
+          continue;
+        }
+
+        int published = publish(batch);
+        if(published > 0) {
+          outbox.acknowledge(batch.get(published - 1).sequence());
+          publishedCounter.increment(published);
+        }
+        if(published == batch.size()) {
+          failures = 0;
+        } else {
+          failureCounter.increment();
+          backoff(++failures);
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (Exception e) {
+        LOG.warn("Failed to publish events from the outbox: {}", e.toString());
+        failureCounter.increment();
+        try {
+          backoff(++failures);
+        } catch (InterruptedException ie) {
+          return;
+        }
+      }
+    }
+  }
+
+  private MimeType contentType(String bindingName) {
+    return contentTypes.computeIfAbsent(bindingName, name -> {
+      MimeType contentType = MimeType.valueOf(bindingProperties.getBindingProperties(name).getContentType());
+      // Anything else than CBOR is sent as the JSON the journal holds
+      return CborMessageConverter.isCbor(contentType) ? CborMessageConverter.APPLICATION_CBOR : MimeTypeUtils.APPLICATION_JSON;
+    });
+  }
+
+  private byte[] encode(OutboxEntry entry, MimeType contentType) throws IOException {
+    if(CborMessageConverter.isCbor(contentType)) {
+      return cborConverter.getObjectMapper().writeValueAsBytes(entry.payload());
+    }
+    return outbox.toBytes(entry);
+  }
+
+  // Returns how many events from the start of the batch were published
+  private int publish(List<OutboxEntry> batch) throws IOException, InterruptedException {
+    List<CorrelationData> confirms = new ArrayList<>(batch.size());
+    for(OutboxEntry entry : batch) {
+      MimeType contentType = contentType(entry.bindingName());
+      MessageBuilder<byte[]> message = MessageBuilder.withPayload(encode(entry, contentType))
+        .setHeader("partitionKey", entry.partitionKey())
+        .setHeader(MessageHeaders.CONTENT_TYPE, contentType.toString());
+      CorrelationData correlation = null;
+      if(publisherConfirms) {
+        correlation = new CorrelationData(Long.toString(entry.sequence()));
+        message.setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, correlation);
+      }
+      if(!streamBridge.send(entry.bindingName(), message.build())) {
+        LOG.warn("Could not send event {} to {}", entry.sequence(), entry.bindingName());
+        break;
+      }
+      confirms.add(correlation);
+    }
+
+    if(!publisherConfirms) {
+      return confirms.size();
+    }
+
+    // The confirms of one batch are awaited together, so a batch costs one broker round trip and not one per event
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+    int confirmed = 0;
+    for(CorrelationData correlation : confirms) {
+      long remaining = Math.max(0, deadline - System.nanoTime());
+      CorrelationData.Confirm confirm;
+      try {
+        confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+      } catch (ExecutionException | TimeoutException e) {
+        LOG.warn("No confirm from the broker for event {}: {}", correlation.getId(), e.toString());
+        break;
+      }
+      if(!confirm.isAck() || correlation.getReturned() != null) {
+        LOG.warn("The broker did not accept event {}: {}", correlation.getId(), confirm.getReason());
+        break;
+      }
+      confirmed++;
+    }
+    return confirmed;
+  }
+
+  private synchronized void backoff(int failures) throws InterruptedException {
+    if(running) {
+      wait(Math.min(maxBackoffMs, minBackoffMs << Math.min(failures - 1, 20)));
+    }
+  }
+}
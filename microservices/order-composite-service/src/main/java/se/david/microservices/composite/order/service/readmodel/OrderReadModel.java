@@ -0,0 +1,283 @@
+package se.david.microservices.composite.order.service.readmodel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import se.david.api.composite.order.dto.OrderAggregateDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.product.dto.ProductDto;
+import se.david.api.core.shipping.dto.ShippingDto;
+import se.david.microservices.composite.order.service.aggregate.OrderAggregateAssembler;
+import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
+import se.david.util.http.ServiceUtil;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+// Read model of the order aggregates, so the order-composite GET endpoints do not have to join order, shipping and
+// product data per request. The model follows the orderChanges and shipmentChanges events of the core services and
+// the product events, and rebuilds the aggregates they touch. Products are not stored, they come from the
+// ProductCache, which the product events invalidate first.
+//
+// The events are not queued while the service is down, so the model is rebuilt from the core services' list
+// endpoints at startup and serves requests only once that has finished. Orders and shipments that change while a
+// rebuild runs keep the state from their events instead of the older one from the rebuild.
+@Component
+public class OrderReadModel implements DisposableBean {
+  private static final Logger LOG = LoggerFactory.getLogger(OrderReadModel.class);
+
+  private final OrderCompositeIntegration integration;
+  private final OrderAggregateAssembler assembler;
+  private final ServiceUtil serviceUtil;
+  private final boolean enabled;
+  private final int rebuildBatchSize;
+  private final OrderReadModelStore store;
+
+  private final AtomicBoolean ready = new AtomicBoolean();
+  private final AtomicBoolean rebuilding = new AtomicBoolean();
+  private final Set<Integer> ordersChangedDuringRebuild = ConcurrentHashMap.newKeySet();
+  private final Set<Integer> shipmentsChangedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+  private final Counter hits;
+  private final Counter misses;
+
+  @Autowired
+  public OrderReadModel(
+    OrderCompositeIntegration integration,
+    OrderAggregateAssembler assembler,
+    ServiceUtil serviceUtil,
+    ObjectMapper mapper,
+    MeterRegistry meterRegistry,
+    @Value("${app.readModel.enabled:true}") boolean enabled,
+    @Value("${app.readModel.file:readmodel/order-aggregates.mv}") String file,
+    @Value("${app.readModel.cacheSizeMb:16}") int cacheSizeMb,
+    @Value("${app.readModel.rebuildBatchSize:100}") int rebuildBatchSize) throws IOException {
+    LOG.info("Creates an order read model in {} with enabled = {}, cacheSizeMb = {} and rebuildBatchSize = {}",
+      file.isBlank() ? "memory" : file, enabled, cacheSizeMb, rebuildBatchSize);
+    this.integration = integration;
+    this.assembler = assembler;
+    this.serviceUtil = serviceUtil;
+    this.enabled = enabled;
+    this.rebuildBatchSize = rebuildBatchSize;
+    this.store = new OrderReadModelStore(enabled ? file : "", cacheSizeMb, mapper);
+
+    this.hits = Counter.builder("readmodel.lookups").tag("result", "hit").register(meterRegistry);
+    this.misses = Counter.builder("readmodel.lookups").tag("result", "miss").register(meterRegistry);
+    Gauge.builder("readmodel.aggregates", store, OrderReadModelStore::aggregateCount)
+      .description("Order aggregates in the read model")
+      .register(meterRegistry);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean isReady() {
+    return enabled && ready.get();
+  }
+
+  public boolean isRebuilding() {
+    return rebuilding.get();
+  }
+
+  public long aggregateCount() {
+    return store.aggregateCount();
+  }
+
+  public Mono<OrderAggregateDto> findAggregate(int orderId) {
+    return Mono.fromCallable(() -> store.getAggregate(orderId))
+      .doOnNext(aggregate -> hits.increment())
+      .switchIfEmpty(Mono.fromRunnable(misses::increment));
+  }
+
+  public Flux<OrderAggregateDto> findAggregates() {
+    return Flux.fromStream(store::aggregates);
+  }
+
+  public Flux<OrderAggregateDto> findAggregatesByUser(int userId) {
+    return Flux.fromStream(() -> store.aggregates(Set.copyOf(store.orderIdsByUser(userId))));
+  }
+
+  public Mono<Void> orderChanged(OrderDto order) {
+    if(!enabled) {
+      return Mono.empty();
+    }
+    return Mono.defer(() -> {
+      markChanged(ordersChangedDuringRebuild, order.id());
+      store.putOrder(order);
+      return refresh(order.id());
+    });
+  }
+
+  public void orderDeleted(int orderId) {
+    if(!enabled) {
+      return;
+    }
+    markChanged(ordersChangedDuringRebuild, orderId);
+    store.removeOrder(orderId);
+  }
+
+  public Mono<Void> shippingChanged(ShippingDto shipping) {
+    if(!enabled) {
+      return Mono.empty();
+    }
+    return Mono.defer(() -> {
+      markChanged(shipmentsChangedDuringRebuild, shipping.orderId());
+      store.putShipping(shipping);
+      return refresh(shipping.orderId());
+    });
+  }
+
+  public Mono<Void> productChanged(int productId) {
+    if(!enabled) {
+      return Mono.empty();
+    }
+    return Flux.defer(() -> Flux.fromIterable(List.copyOf(store.orderIdsByProduct(productId))))
+      .concatMap(this::refresh)
+      .then();
+  }
+
+  // Replaces the model with the orders and shipments from the core services and drops the orders they no longer have
+  public Mono<Long> rebuild() {
+    if(!enabled) {
+      return Mono.error(new IllegalStateException("The order read model is disabled"));
+    }
+    return Mono.defer(() -> {
+      if(!rebuilding.compareAndSet(false, true)) {
+        return Mono.error(new IllegalStateException("The order read model is already being rebuilt"));
+      }
+      LOG.info("Rebuilds the order read model");
+      ordersChangedDuringRebuild.clear();
+      shipmentsChangedDuringRebuild.clear();
+      Set<Integer> rebuiltOrderIds = ConcurrentHashMap.newKeySet();
+      long startNanos = System.nanoTime();
+
+      return integration.streamOrders()
+        .buffer(rebuildBatchSize)
+        .concatMap(orders -> rebuildBatch(orders, rebuiltOrderIds))
+        .then(Mono.fromRunnable(() -> removeOrdersExcept(rebuiltOrderIds)))
+        .then(Mono.fromCallable(store::aggregateCount))
+        .doOnSuccess(count -> {
+          ready.set(true);
+          LOG.info("Rebuilt the order read model with {} aggregates in {} ms", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        })
+        .doOnError(ex -> LOG.warn("Failed to rebuild the order read model: {}", ex.toString()))
+        // Before the signal goes downstream, so a retry can start the next rebuild
+        .doOnTerminate(() -> rebuilding.set(false))
+        .doOnCancel(() -> rebuilding.set(false));
+    });
+  }
+
+  // The core services may still be starting, so the first rebuild is retried with a backoff
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildOnStartup() {
+    if(!enabled) {
+      return;
+    }
+    rebuild()
+      .retryWhen(Retry.backoff(10, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+      .subscribe(
+        count -> LOG.debug("The order read model is ready"),
+        ex -> LOG.error("Gave up rebuilding the order read model, the order aggregates are built per request", ex));
+  }
+
+  @Override
+  public void destroy() {
+    store.close();
+  }
+
+  private Mono<Void> rebuildBatch(List<OrderDto> orders, Set<Integer> rebuiltOrderIds) {
+    List<Integer> orderIds = orders.stream().map(OrderDto::id).toList();
+    List<Integer> productIds = orders.stream().flatMap(order -> OrderReadModelStore.productIds(order).stream()).distinct().toList();
+
+    return Mono.zip(
+        integration.getShipmentsBatch(orderIds).collectList(),
+        productIds.isEmpty() ? Mono.just(List.<ProductDto>of()) : integration.getProductsByIds(productIds).collectList())
+      .doOnNext(tuple -> {
+        for(OrderDto order : orders) {
+          rebuiltOrderIds.add(order.id());
+          if(!ordersChangedDuringRebuild.contains(order.id())) {
+            store.putOrder(order);
+          }
+        }
+        for(ShippingDto shipping : tuple.getT1()) {
+          if(!shipmentsChangedDuringRebuild.contains(shipping.orderId())) {
+            store.putShipping(shipping);
+          }
+        }
+        for(int orderId : orderIds) {
+          assembleAndStore(orderId, productIds, tuple.getT2());
+        }
+      })
+      .then();
+  }
+
+  private void removeOrdersExcept(Set<Integer> rebuiltOrderIds) {
+    for(int orderId : List.copyOf(store.orderIds())) {
+      if(!rebuiltOrderIds.contains(orderId) && !ordersChangedDuringRebuild.contains(orderId)) {
+        store.removeOrder(orderId);
+      }
+    }
+  }
+
+  private Mono<Void> refresh(int orderId) {
+    OrderDto order = store.getOrder(orderId);
+    if(order == null) {
+      return Mono.empty();
+    }
+    List<Integer> productIds = OrderReadModelStore.productIds(order);
+    return (productIds.isEmpty() ? Mono.just(List.<ProductDto>of()) : integration.getProductsByIds(productIds).collectList())
+      .doOnNext(products -> assembleAndStore(orderId, productIds, products))
+      .doOnError(ex -> LOG.warn("Failed to refresh the order aggregate for orderId: {}, error: {}", orderId, ex.toString()))
+      .onErrorResume(ex -> Mono.empty())
+      .then();
+  }
+
+  // The order and shipment are read again here, a newer event may have replaced them while the products were fetched.
+  // Like the aggregates built per request, an order without a shipment or with a product that no longer exists has none.
+  private synchronized void assembleAndStore(int orderId, Collection<Integer> fetchedProductIds, List<ProductDto> products) {
+    OrderDto order = store.getOrder(orderId);
+    ShippingDto shipping = store.getShipping(orderId);
+    if(order == null || shipping == null) {
+      store.removeAggregate(orderId);
+      return;
+    }
+    List<Integer> productIds = OrderReadModelStore.productIds(order);
+    if(!fetchedProductIds.containsAll(productIds)) {
+      // The items changed after the products were fetched, the refresh for that change stores the aggregate
+      return;
+    }
+    Set<Integer> foundProductIds = products.stream().map(ProductDto::id).collect(Collectors.toSet());
+    if(!foundProductIds.containsAll(productIds)) {
+      LOG.warn("A product of orderId: {} was not found, removes its order aggregate", orderId);
+      store.removeAggregate(orderId);
+      return;
+    }
+    store.putAggregate(assembler.assemble(order, shipping, products, serviceUtil.getServiceAddress()));
+  }
+
+  private void markChanged(Set<Integer> changedDuringRebuild, int id) {
+    if(rebuilding.get()) {
+      changedDuringRebuild.add(id);
+    }
+  }
+}
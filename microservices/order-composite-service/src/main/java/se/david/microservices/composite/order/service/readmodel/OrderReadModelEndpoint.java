@@ -0,0 +1,36 @@
+package se.david.microservices.composite.order.service.readmodel;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+// GET /actuator/readmodel shows the state of the order read model, POST /actuator/readmodel rebuilds it
+@Component
+@Endpoint(id = "readmodel")
+public class OrderReadModelEndpoint {
+  private final OrderReadModel readModel;
+
+  @Autowired
+  public OrderReadModelEndpoint(OrderReadModel readModel) {
+    this.readModel = readModel;
+  }
+
+  @ReadOperation
+  public Map<String, Object> status() {
+    return Map.of(
+      "enabled", readModel.isEnabled(),
+      "ready", readModel.isReady(),
+      "rebuilding", readModel.isRebuilding(),
+      "aggregates", readModel.aggregateCount());
+  }
+
+  @WriteOperation
+  public Mono<Map<String, Object>> rebuild() {
+    return readModel.rebuild().map(count -> Map.of("aggregates", count));
+  }
+}
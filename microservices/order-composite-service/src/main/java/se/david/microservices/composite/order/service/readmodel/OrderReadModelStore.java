@@ -0,0 +1,162 @@
+package se.david.microservices.composite.order.service.readmodel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import se.david.api.composite.order.dto.OrderAggregateDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.order.dto.OrderItemDto;
+import se.david.api.core.shipping.dto.ShippingDto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// The read model's storage: an MVStore file with the orders and shipments as the core services last published them,
+// and the OrderAggregateDto built from them, all as JSON keyed by order id. Only the pages in use are cached in memory
+// (cacheSizeMb), so the model can hold more orders than fit on the heap. Without a file the store is in memory only.
+//
+// The orders by user and by product are indexed in memory, the index is rebuilt from the orders when the store opens.
+class OrderReadModelStore implements Closeable {
+  private final MVStore store;
+  private final MVMap<Integer, byte[]> orders;
+  private final MVMap<Integer, byte[]> shipments;
+  private final MVMap<Integer, byte[]> aggregates;
+  private final ObjectMapper mapper;
+  private final Map<Integer, Set<Integer>> orderIdsByUser = new ConcurrentHashMap<>();
+  private final Map<Integer, Set<Integer>> orderIdsByProduct = new ConcurrentHashMap<>();
+
+  OrderReadModelStore(String file, int cacheSizeMb, ObjectMapper mapper) throws IOException {
+    MVStore.Builder builder = new MVStore.Builder().cacheSize(cacheSizeMb);
+    if(file != null && !file.isBlank()) {
+      Path path = Path.of(file).toAbsolutePath();
+      Files.createDirectories(path.getParent());
+      builder.fileName(path.toString());
+    }
+    this.store = builder.open();
+    this.orders = store.openMap("orders");
+    this.shipments = store.openMap("shipments");
+    this.aggregates = store.openMap("aggregates");
+    this.mapper = mapper;
+
+    for(byte[] order : orders.values()) {
+      index(read(order, OrderDto.class));
+    }
+  }
+
+  OrderDto getOrder(int orderId) {
+    return read(orders.get(orderId), OrderDto.class);
+  }
+
+  ShippingDto getShipping(int orderId) {
+    return read(shipments.get(orderId), ShippingDto.class);
+  }
+
+  OrderAggregateDto getAggregate(int orderId) {
+    return read(aggregates.get(orderId), OrderAggregateDto.class);
+  }
+
+  void putOrder(OrderDto order) {
+    OrderDto previous = read(orders.put(order.id(), write(order)), OrderDto.class);
+    if(previous != null) {
+      unindex(previous);
+    }
+    index(order);
+  }
+
+  void removeOrder(int orderId) {
+    OrderDto previous = read(orders.remove(orderId), OrderDto.class);
+    if(previous != null) {
+      unindex(previous);
+    }
+    aggregates.remove(orderId);
+  }
+
+  void putShipping(ShippingDto shipping) {
+    shipments.put(shipping.orderId(), write(shipping));
+  }
+
+  void putAggregate(OrderAggregateDto aggregate) {
+    aggregates.put(aggregate.orderId(), write(aggregate));
+  }
+
+  void removeAggregate(int orderId) {
+    aggregates.remove(orderId);
+  }
+
+  Set<Integer> orderIds() {
+    return orders.keySet();
+  }
+
+  Set<Integer> orderIdsByUser(int userId) {
+    return orderIdsByUser.getOrDefault(userId, Collections.emptySet());
+  }
+
+  Set<Integer> orderIdsByProduct(int productId) {
+    return orderIdsByProduct.getOrDefault(productId, Collections.emptySet());
+  }
+
+  // In order id order, each aggregate is decoded when the stream reaches it
+  Stream<OrderAggregateDto> aggregates() {
+    return aggregates.values().stream().map(value -> read(value, OrderAggregateDto.class));
+  }
+
+  Stream<OrderAggregateDto> aggregates(Set<Integer> orderIds) {
+    return orderIds.stream().sorted().map(this::getAggregate).filter(Objects::nonNull);
+  }
+
+  long aggregateCount() {
+    return aggregates.sizeAsLong();
+  }
+
+  @Override
+  public void close() {
+    store.close();
+  }
+
+  private void index(OrderDto order) {
+    orderIdsByUser.computeIfAbsent(order.userId(), userId -> ConcurrentHashMap.newKeySet()).add(order.id());
+    for(int productId : productIds(order)) {
+      orderIdsByProduct.computeIfAbsent(productId, id -> ConcurrentHashMap.newKeySet()).add(order.id());
+    }
+  }
+
+  private void unindex(OrderDto order) {
+    orderIdsByUser.getOrDefault(order.userId(), Collections.emptySet()).remove(order.id());
+    for(int productId : productIds(order)) {
+      orderIdsByProduct.getOrDefault(productId, Collections.emptySet()).remove(order.id());
+    }
+  }
+
+  static List<Integer> productIds(OrderDto order) {
+    return order.orderItems() == null ? List.of() : order.orderItems().stream().map(OrderItemDto::productId).distinct().toList();
+  }
+
+  private byte[] write(Object value) {
+    try {
+      return mapper.writeValueAsBytes(value);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private <T> T read(byte[] value, Class<T> type) {
+    if(value == null) {
+      return null;
+    }
+    try {
+      return mapper.readValue(value, type);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+}
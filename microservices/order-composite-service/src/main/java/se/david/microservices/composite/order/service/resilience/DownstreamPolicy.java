@@ -0,0 +1,44 @@
+package se.david.microservices.composite.order.service.resilience;
+
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+// The resilience settings of one downstream service. Every setting is read from app.resilience.<downstream>.<name>
+// and falls back to app.resilience.<name>, so the defaults are set once and a slow service can be tuned on its own.
+record DownstreamPolicy(
+  String downstream,
+  boolean enabled,
+  Duration responseTimeout,
+  int maxConcurrentCalls,
+  float failureRateThreshold,
+  Duration slowCallDuration,
+  int slidingWindowSize,
+  int minimumNumberOfCalls,
+  Duration openState,
+  boolean hedgeEnabled,
+  Duration hedgeMinDelay) {
+
+  static DownstreamPolicy of(Environment environment, String downstream) {
+    Settings settings = new Settings(environment, downstream);
+    return new DownstreamPolicy(
+      downstream,
+      settings.get("enabled", Boolean.class, true),
+      Duration.ofMillis(settings.get("responseTimeoutMs", Long.class, 5000L)),
+      settings.get("maxConcurrentCalls", Integer.class, 50),
+      settings.get("failureRateThreshold", Float.class, 50f),
+      Duration.ofMillis(settings.get("slowCallDurationMs", Long.class, 2000L)),
+      settings.get("slidingWindowSize", Integer.class, 20),
+      settings.get("minimumNumberOfCalls", Integer.class, 10),
+      Duration.ofMillis(settings.get("openStateMs", Long.class, 10000L)),
+      settings.get("hedgeEnabled", Boolean.class, false),
+      Duration.ofMillis(settings.get("hedgeMinDelayMs", Long.class, 50L)));
+  }
+
+  private record Settings(Environment environment, String downstream) {
+    <T> T get(String name, Class<T> type, T defaultValue) {
+      T value = environment.getProperty("app.resilience." + downstream + "." + name, type);
+      return value != null ? value : environment.getProperty("app.resilience." + name, type, defaultValue);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package se.david.microservices.composite.order.service.resilience;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Bulkhead, response timeout and circuit breaker per downstream service (product, inventory, order, shipping), so one
+// slow service can only use up its own share of the connections and fails fast once it keeps failing, instead of
+// stalling every aggregation that zips it with the others.
+//
+// Reads can also be hedged: when a read has not answered within the downstream's p95 latency, the same request is sent
+// again and the first answer wins. The load balancer picks the next instance for the second request.
+@Component
+public class DownstreamResilience {
+  private static final Logger LOG = LoggerFactory.getLogger(DownstreamResilience.class);
+
+  private static final double HEDGE_PERCENTILE = 0.95;
+  private static final long HEDGE_DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  public enum CallType {
+    // A bounded, idempotent request (GET or a batch lookup): timed as a whole and may be hedged
+    READ,
+    // A request that changes state: timed as a whole, never sent twice
+    WRITE,
+    // A stream of elements: the timeout applies to the wait for each element, not to the whole stream
+    STREAM
+  }
+
+  private final Environment environment;
+  private final MeterRegistry meterRegistry;
+  private final CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+  private final BulkheadRegistry bulkheads = BulkheadRegistry.ofDefaults();
+  private final Map<String, Downstream> downstreams = new ConcurrentHashMap<>();
+
+  @Autowired
+  public DownstreamResilience(MeterRegistry meterRegistry, Environment environment) {
+    this.environment = environment;
+    this.meterRegistry = meterRegistry;
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+    TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(meterRegistry);
+  }
+
+  public <T> Mono<T> mono(String downstream, CallType type, Supplier<Mono<T>> call) {
+    Downstream target = downstream(downstream);
+    if(!target.policy.enabled()) {
+      return Mono.defer(call);
+    }
+    Mono<T> response = type == CallType.READ && target.policy.hedgeEnabled()
+      ? hedged(target, monoAttempt(target, call))
+      : monoAttempt(target, call);
+    return protect(target, response);
+  }
+
+  public <T> Flux<T> flux(String downstream, CallType type, Supplier<Flux<T>> call) {
+    Downstream target = downstream(downstream);
+    if(!target.policy.enabled()) {
+      return Flux.defer(call);
+    }
+    if(type == CallType.STREAM) {
+      Duration timeout = target.policy.responseTimeout();
+      return protect(target, Flux.defer(call)
+        .timeout(Mono.delay(timeout), element -> Mono.delay(timeout))
+        .doOnError(TimeoutException.class, ex -> target.timeouts.increment()));
+    }
+    Flux<T> response = type == CallType.READ && target.policy.hedgeEnabled()
+      ? hedged(target, fluxAttempt(target, call))
+      : fluxAttempt(target, call);
+    return protect(target, response);
+  }
+
+  CircuitBreaker.State circuitBreakerState(String downstream) {
+    return downstream(downstream).circuitBreaker.getState();
+  }
+
+  // The bulkhead is outside the circuit breaker, so calls it rejects do not count as failures of the downstream
+  private <T> Mono<T> protect(Downstream target, Mono<T> response) {
+    return response
+      .transformDeferred(CircuitBreakerOperator.of(target.circuitBreaker))
+      .transformDeferred(BulkheadOperator.of(target.bulkhead));
+  }
+
+  private <T> Flux<T> protect(Downstream target, Flux<T> response) {
+    return response
+      .transformDeferred(CircuitBreakerOperator.of(target.circuitBreaker))
+      .transformDeferred(BulkheadOperator.of(target.bulkhead));
+  }
+
+  private <T> Mono<T> monoAttempt(Downstream target, Supplier<Mono<T>> call) {
+    return Mono.defer(() -> {
+      long startNanos = System.nanoTime();
+      return call.get()
+        .timeout(target.policy.responseTimeout())
+        .doOnError(TimeoutException.class, ex -> target.timeouts.increment())
+        .doOnSuccess(response -> target.latency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+    });
+  }
+
+  private <T> Flux<T> fluxAttempt(Downstream target, Supplier<Flux<T>> call) {
+    return Flux.defer(() -> {
+      long startNanos = System.nanoTime();
+      return call.get()
+        .timeout(target.policy.responseTimeout())
+        .doOnError(TimeoutException.class, ex -> target.timeouts.increment())
+        .doOnComplete(() -> target.latency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+    });
+  }
+
+  // The first attempt to signal wins and the other one is cancelled. An error of the first attempt before the hedge
+  // delay is not retried, hedging is only for slow answers.
+  private <T> Mono<T> hedged(Downstream target, Mono<T> attempt) {
+    return Mono.defer(() -> {
+      Duration delay = target.hedgeDelay();
+      if(delay == null) {
+        return attempt;
+      }
+      return Mono.firstWithSignal(
+        attempt,
+        Mono.delay(delay).then(attempt
+          .doOnSubscribe(subscription -> target.hedgesSent.increment())
+          .doOnSuccess(response -> target.hedgesWon.increment())));
+    });
+  }
+
+  private <T> Flux<T> hedged(Downstream target, Flux<T> attempt) {
+    return Flux.defer(() -> {
+      Duration delay = target.hedgeDelay();
+      if(delay == null) {
+        return attempt;
+      }
+      return Flux.firstWithSignal(
+        attempt,
+        Mono.delay(delay).thenMany(attempt
+          .doOnSubscribe(subscription -> target.hedgesSent.increment())
+          .doOnComplete(target.hedgesWon::increment)));
+    });
+  }
+
+  private Downstream downstream(String downstream) {
+    return downstreams.computeIfAbsent(downstream, name -> new Downstream(DownstreamPolicy.of(environment, name)));
+  }
+
+  // Client errors are answers, not failures of the downstream, so they do not open the circuit breaker
+  private static boolean isFailure(Throwable ex) {
+    return !(ex instanceof WebClientResponseException response && response.getStatusCode().is4xxClientError());
+  }
+
+  private final class Downstream {
+    private final DownstreamPolicy policy;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final Timer latency;
+    private final Counter timeouts;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+
+    private volatile Duration hedgeDelay;
+    private volatile long hedgeDelayNanos;
+
+    Downstream(DownstreamPolicy policy) {
+      LOG.info("Creates the resilience policy for downstream {}: {}", policy.downstream(), policy);
+      this.policy = policy;
+      this.circuitBreaker = circuitBreakers.circuitBreaker(policy.downstream(), CircuitBreakerConfig.custom()
+        .failureRateThreshold(policy.failureRateThreshold())
+        .slowCallDurationThreshold(policy.slowCallDuration())
+        .slidingWindowSize(policy.slidingWindowSize())
+        .minimumNumberOfCalls(policy.minimumNumberOfCalls())
+        .waitDurationInOpenState(policy.openState())
+        .automaticTransitionFromOpenToHalfOpenEnabled(true)
+        .recordException(DownstreamResilience::isFailure)
+        .build());
+      this.bulkhead = bulkheads.bulkhead(policy.downstream(), BulkheadConfig.custom()
+        .maxConcurrentCalls(policy.maxConcurrentCalls())
+        .maxWaitDuration(Duration.ZERO)
+        .build());
+      this.latency = Timer.builder("downstream.latency")
+        .description("Latency of the successful requests to a downstream service, the hedge delay is its p95")
+        .tag("downstream", policy.downstream())
+        .publishPercentiles(HEDGE_PERCENTILE)
+        .register(meterRegistry);
+      this.timeouts = Counter.builder("downstream.timeouts")
+        .tag("downstream", policy.downstream())
+        .register(meterRegistry);
+      this.hedgesSent = Counter.builder("downstream.hedges")
+        .tag("downstream", policy.downstream())
+        .tag("result", "sent")
+        .register(meterRegistry);
+      this.hedgesWon = Counter.builder("downstream.hedges")
+        .tag("downstream", policy.downstream())
+        .tag("result", "won")
+        .register(meterRegistry);
+    }
+
+    // The p95 is taken from the latency timer at most once a second. Null until the downstream has answered once.
+    Duration hedgeDelay() {
+      long now = System.nanoTime();
+      if(hedgeDelay == null || now - hedgeDelayNanos > HEDGE_DELAY_REFRESH_NANOS) {
+        hedgeDelay = p95Latency();
+        hedgeDelayNanos = now;
+      }
+      return hedgeDelay;
+    }
+
+    private Duration p95Latency() {
+      for(ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+        if(value.percentile() == HEDGE_PERCENTILE && latency.count() > 0) {
+          Duration p95 = Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+          return p95.compareTo(policy.hedgeMinDelay()) > 0 ? p95 : policy.hedgeMinDelay();
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package se.david.microservices.composite.order.service.saga;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import se.david.api.composite.order.dto.OrderAggregateCreateDto;
+import se.david.api.composite.order.dto.OrderItemRequestDto;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.core.order.dto.OrderCreateDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.order.dto.OrderItemCreateDto;
+import se.david.api.core.product.dto.ProductDto;
+import se.david.api.core.shipping.dto.ShippingCreateDto;
+import se.david.api.core.shipping.dto.ShippingDto;
+import se.david.api.exceptions.BadRequestException;
+import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
+import se.david.api.exceptions.NotFoundException;
+import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Creates an order in three steps: reserve the stock, create the order and create its shipment. Reserving the stock
+// does not depend on the order, so it runs while the products are fetched and the order is created; the shipment
+// needs the order id and comes last.
+//
+// Both parallel steps are always awaited, also when one of them fails, so the saga knows what it has to undo. If any
+// step fails, the completed ones are compensated: reserved stock is released, the order and its shipment are
+// cancelled. The compensations go through the outbox, so they are retried until the core services have them, and the
+// original error is passed on to the caller.
+//
+// The saga runs detached from the caller's subscription: a client that disconnects or times out cancels only its
+// wait for the result, while the saga runs to its end and compensates if a later step fails. Cancelling the steps
+// instead would leave the ones in flight with an unknown outcome and nothing to undo them.
+//
+// The stock reservation and the order carry the saga id as idempotency key. A step that fails without an answer of
+// the core service, e.g. it timed out or the connection was reset, may still have been done, so it is compensated by
+// that key: inventory-service and order-service undo what was done with it, or refuse it if it arrives later.
+//
+// Every step is timed in order.saga.step (tags step and outcome), the whole saga in order.saga (tag outcome).
+@Component
+public class OrderCreationSaga {
+  private static final Logger LOG = LoggerFactory.getLogger(OrderCreationSaga.class);
+
+  private final OrderCompositeIntegration integration;
+  private final MeterRegistry meterRegistry;
+
+  public record CreatedOrder(OrderDto order, ShippingDto shipping, List<ProductDto> products) {
+  }
+
+  @Autowired
+  public OrderCreationSaga(OrderCompositeIntegration integration, MeterRegistry meterRegistry) {
+    this.integration = integration;
+    this.meterRegistry = meterRegistry;
+  }
+
+  public Mono<CreatedOrder> execute(OrderAggregateCreateDto request) {
+    return Mono.defer(() -> Mono.fromFuture(run(request).toFuture(), true));
+  }
+
+  private Mono<CreatedOrder> run(OrderAggregateCreateDto request) {
+    return Mono.defer(() -> {
+      long startNanos = System.nanoTime();
+      SagaState state = new SagaState(UUID.randomUUID().toString(), reservations(request.orderItemCreateDtos()));
+
+      Mono<Void> reserveStock = timed("reserveStock", integration.reserveStocks(state.sagaId, state.reservations))
+        .doOnSuccess(unused -> state.stockReserved = true)
+        .doOnError(ex -> state.stockMaybeReserved = !isRefusal(ex));
+      Mono<Void> createOrder = timed("fetchProducts", fetchProducts(request.orderItemCreateDtos()))
+        .doOnNext(products -> state.products = products)
+        .flatMap(products -> timed("createOrder", integration.createOrder(orderCreateDto(request, products, state.sagaId)))
+          .doOnError(ex -> state.orderMaybeCreated = !isRefusal(ex)))
+        .doOnNext(order -> state.order = order)
+        .then();
+
+      return Mono.whenDelayError(reserveStock, createOrder)
+        .then(Mono.defer(() -> {
+          state.shipmentRequested = true;
+          return timed("createShipping", integration.createShipment(new ShippingCreateDto(state.order.id(), request.shippingAddress())));
+        }))
+        .map(shipping -> new CreatedOrder(state.order, shipping, state.products))
+        .doOnSuccess(created -> {
+          LOG.info("Created order {} for userId: {}", created.order().id(), request.userId());
+          recordSaga("completed", startNanos);
+        })
+        .onErrorResume(ex -> compensate(state, request.userId())
+          .doFinally(signal -> recordSaga("compensated", startNanos))
+          .then(Mono.error(firstError(ex))));
+    });
+  }
+
+  private Mono<Void> compensate(SagaState state, int userId) {
+    LOG.warn("Failed to create an order for userId: {}, compensates saga {}: stockReserved = {}, stockMaybeReserved = {}, orderId = {}, orderMaybeCreated = {}",
+      userId, state.sagaId, state.stockReserved, state.stockMaybeReserved, state.order != null ? state.order.id() : null, state.orderMaybeCreated);
+
+    Mono<Void> releaseStock = state.stockReserved || state.stockMaybeReserved
+      ? timed("releaseStock", integration.releaseStocks(state.sagaId))
+      : Mono.empty();
+    Mono<Void> cancelOrder;
+    if(state.order != null) {
+      cancelOrder = timed("cancelOrder", integration.cancelOrder(state.order.id()));
+    } else if(state.orderMaybeCreated) {
+      cancelOrder = timed("cancelOrder", integration.cancelOrder(state.sagaId, userId));
+    } else {
+      cancelOrder = Mono.empty();
+    }
+    Mono<Void> cancelShipment = state.shipmentRequested
+      ? timed("cancelShipping", integration.cancelShipment(state.order.id()))
+      : Mono.empty();
+
+    return Mono.whenDelayError(releaseStock, cancelOrder, cancelShipment)
+      .onErrorResume(ex -> {
+        LOG.error("Failed to compensate the failed order for userId: {}", userId, ex);
+        return Mono.empty();
+      });
+  }
+
+  private Mono<List<ProductDto>> fetchProducts(List<OrderItemRequestDto> items) {
+    List<Integer> productIds = items.stream()
+      .map(OrderItemRequestDto::productId)
+      .distinct()
+      .collect(Collectors.toList());
+
+    return integration.getProductsByIds(productIds)
+      .collectList()
+      .flatMap(products -> {
+        if(products.size() < productIds.size()) {
+          List<Integer> foundIds = products.stream().map(ProductDto::id).toList();
+          List<Integer> missingIds = productIds.stream().filter(id -> !foundIds.contains(id)).toList();
+          return Mono.error(new NotFoundException("No products found for productIds: " + missingIds));
+        }
+        return Mono.just(products);
+      });
+  }
+
+  private OrderCreateDto orderCreateDto(OrderAggregateCreateDto request, List<ProductDto> products, String idempotencyKey) {
+    Map<Integer, ProductDto> productMap = products.stream()
+      .collect(Collectors.toMap(ProductDto::id, Function.identity()));
+    List<OrderItemCreateDto> pricedOrderItems = request.orderItemCreateDtos().stream()
+      .map(item -> new OrderItemCreateDto(item.productId(), item.quantity(), productMap.get(item.productId()).price()))
+      .collect(Collectors.toList());
+    return new OrderCreateDto(request.userId(), pricedOrderItems, idempotencyKey);
+  }
+
+  // One reservation per product, also when the request has several items with the same product
+  private List<InventoryStockAdjustmentRequestDto> reservations(List<OrderItemRequestDto> items) {
+    Map<Integer, Integer> quantitiesByProductId = items.stream()
+      .collect(Collectors.toMap(OrderItemRequestDto::productId, OrderItemRequestDto::quantity, Integer::sum, LinkedHashMap::new));
+    return quantitiesByProductId.entrySet().stream()
+      .map(entry -> new InventoryStockAdjustmentRequestDto(entry.getKey(), entry.getValue()))
+      .toList();
+  }
+
+  // The core service answered that it did not do the step; any other error leaves the outcome unknown
+  private static boolean isRefusal(Throwable ex) {
+    return ex instanceof NotFoundException
+      || ex instanceof InvalidInputException
+      || ex instanceof InventoryOutOfStockException
+      || ex instanceof BadRequestException;
+  }
+
+  // Both parallel steps failing gives a composite error, the caller gets the first one
+  private Throwable firstError(Throwable ex) {
+    return Exceptions.unwrapMultiple(ex).getFirst();
+  }
+
+  private <T> Mono<T> timed(String step, Mono<T> mono) {
+    return Mono.defer(() -> {
+      long startNanos = System.nanoTime();
+      return mono.doFinally(signal -> recordStep(step, signal, startNanos));
+    });
+  }
+
+  private void recordStep(String step, SignalType signal, long startNanos) {
+    String outcome = switch(signal) {
+      case ON_COMPLETE -> "success";
+      case ON_ERROR -> "failure";
+      default -> "cancelled";
+    };
+    Timer.builder("order.saga.step")
+      .tag("step", step)
+      .tag("outcome", outcome)
+      .register(meterRegistry)
+      .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void recordSaga(String outcome, long startNanos) {
+    Timer.builder("order.saga")
+      .tag("outcome", outcome)
+      .register(meterRegistry)
+      .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  // What one execution has done so far, i.e. what a compensation has to undo
+  private static final class SagaState {
+    private final String sagaId;
+    private final List<InventoryStockAdjustmentRequestDto> reservations;
+    private volatile boolean stockReserved;
+    private volatile boolean stockMaybeReserved;
+    private volatile List<ProductDto> products;
+    private volatile OrderDto order;
+    private volatile boolean orderMaybeCreated;
+    private volatile boolean shipmentRequested;
+
+    private SagaState(String sagaId, List<InventoryStockAdjustmentRequestDto> reservations) {
+      this.sagaId = sagaId;
+      this.reservations = reservations;
+    }
+  }
+}
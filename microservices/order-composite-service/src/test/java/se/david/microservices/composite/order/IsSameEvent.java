@@ -37,6 +37,10 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
     LOG.trace("Convert the following json string to a map: {}", eventAsJson);
     Map mapEvent = convertJsonStringToMap(eventAsJson);
     mapEvent.remove("eventCreatedAt");
+    // Every event gets its own id, the published one must only have one
+    if (mapEvent.remove("eventId") == null) {
+      return false;
+    }
 
     Map mapExpectedEvent = getMapWithoutCreatedAt(expectedEvent);
 
@@ -58,6 +62,7 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
   private Map getMapWithoutCreatedAt(Event event) {
     Map mapEvent = convertObjectToMap(event);
     mapEvent.remove("eventCreatedAt");
+    mapEvent.remove("eventId");
     return mapEvent;
   }
 
@@ -7,6 +7,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
@@ -15,17 +16,27 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.david.api.composite.order.dto.OrderAggregateCreateDto;
 import se.david.api.composite.order.dto.OrderItemRequestDto;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
 import se.david.api.core.order.dto.OrderDto;
 import se.david.api.core.order.dto.OrderItemDto;
 import se.david.api.core.product.dto.ProductDto;
 import se.david.api.core.shipping.dto.ShippingDto;
+import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
 import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
 
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -41,6 +52,8 @@ class OrderCompositeServiceApplicationTests {
   @MockBean
   private OrderCompositeIntegration integration;
 
+  private static final Path OUTBOX_DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "outbox-" + UUID.randomUUID());
+
   @DynamicPropertySource
   static void testProperties(DynamicPropertyRegistry registry) {
     registry.add("eureka.client.enabled", () -> "false");
@@ -49,6 +62,11 @@ class OrderCompositeServiceApplicationTests {
     // (unreachable, in tests) issuer-uri at context startup: a jwk-set-uri, even a dummy one,
     // takes priority and is only ever resolved lazily on first token decode.
     registry.add("spring.security.oauth2.resourceserver.jwt.jwk-set-uri", () -> "http://localhost:0/jwks");
+    // A fresh outbox per context, so no events are replayed from an earlier run. The test binder sends no confirms.
+    registry.add("app.outbox.directory", OUTBOX_DIRECTORY::toString);
+    registry.add("app.outbox.publisherConfirms", () -> "false");
+    // The mocked downstream services have no orders to rebuild the read model from, every aggregate is built per request
+    registry.add("app.readModel.enabled", () -> "false");
   }
 
   @Test
@@ -94,26 +112,138 @@ class OrderCompositeServiceApplicationTests {
   }
 
   @Test
-  @DisplayName("POST /order-composite creates the order (with priced items) and its shipment via the downstream services")
+  @DisplayName("GET /order-composite/user/{userId} aggregates a chunk of orders with one shipments call and one de-duplicated products call")
+  void getCompositeOrdersByUserBatchesDownstreamCalls() {
+    int userId = 10;
+    OrderDto firstOrder = new OrderDto(1, userId, 1000, "PENDING", new Date(),
+      List.of(new OrderItemDto(1, 1, 101, 2, 500)),
+      "order-addr");
+    OrderDto secondOrder = new OrderDto(2, userId, 1400, "PENDING", new Date(),
+      List.of(
+        new OrderItemDto(2, 2, 101, 1, 500),
+        new OrderItemDto(3, 2, 102, 3, 300)),
+      "order-addr");
+    List<ProductDto> products = List.of(
+      new ProductDto(101, "Widget", "desc", 500, "product-addr"),
+      new ProductDto(102, "Gadget", "desc", 300, "product-addr"));
+
+    when(integration.getOrdersByUser(userId)).thenReturn(Flux.just(firstOrder, secondOrder));
+    when(integration.getShipmentsByOrderIds(List.of(1, 2))).thenReturn(Flux.just(
+      new ShippingDto(1, "123 Main St", "Dispatched", "shipping-addr"),
+      new ShippingDto(2, "123 Main St", "Pending", "shipping-addr")));
+    when(integration.getProductsByIds(List.of(101, 102))).thenReturn(Flux.fromIterable(products));
+
+    client.get().uri("/order-composite/user/{userId}", userId)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(2)
+      .jsonPath("$[0].orderId").isEqualTo(1)
+      .jsonPath("$[1].orderId").isEqualTo(2)
+      .jsonPath("$[1].shippingSummary.status").isEqualTo("Pending")
+      .jsonPath("$[1].orderItemsSummary.length()").isEqualTo(2);
+
+    verify(integration, times(1)).getShipmentsByOrderIds(List.of(1, 2));
+    verify(integration, times(1)).getProductsByIds(List.of(101, 102));
+    verify(integration, never()).getShippingByOrderId(anyInt());
+  }
+
+  @Test
+  @DisplayName("POST /order-composite reserves the stock, creates the order (with priced items) and its shipment and answers 201 with the aggregate")
   void createCompositeOrderCreatesOrderAndShipping() {
     OrderAggregateCreateDto createDto = new OrderAggregateCreateDto(10, "123 Main St",
       List.of(new OrderItemRequestDto(101, 2)));
 
     ProductDto product = new ProductDto(101, "Widget", "desc", 500, "product-addr");
-    OrderDto createdOrder = new OrderDto(1, 10, 1000, "PENDING", new Date(), List.of(), "order-addr");
+    OrderDto createdOrder = new OrderDto(1, 10, 1000, "PENDING", new Date(),
+      List.of(new OrderItemDto(1, 1, 101, 2, 500)), "order-addr");
     ShippingDto createdShipping = new ShippingDto(1, "123 Main St", "Dispatched", "shipping-addr");
 
+    when(integration.reserveStocks(anyString(), any())).thenReturn(Mono.empty());
     when(integration.getProductsByIds(List.of(101))).thenReturn(Flux.just(product));
     when(integration.createOrder(any())).thenReturn(Mono.just(createdOrder));
-    when(integration.createShippingOrder(any())).thenReturn(Mono.just(createdShipping));
+    when(integration.createShipment(any())).thenReturn(Mono.just(createdShipping));
 
     client.post().uri("/order-composite")
       .bodyValue(createDto)
       .exchange()
-      .expectStatus().isOk();
+      .expectStatus().isCreated()
+      .expectBody()
+      .jsonPath("$.orderId").isEqualTo(1)
+      .jsonPath("$.shippingSummary.status").isEqualTo("Dispatched")
+      .jsonPath("$.orderItemsSummary.length()").isEqualTo(1);
 
+    verify(integration).reserveStocks(anyString(), eq(List.of(new InventoryStockAdjustmentRequestDto(101, 2))));
     verify(integration).createOrder(argThat(order ->
-      order.userId() == 10 && order.orderItems().get(0).price() == 500));
-    verify(integration).createShippingOrder(argThat(shipping -> shipping.orderId() == 1));
+      order.userId() == 10 && order.orderItems().get(0).price() == 500 && order.idempotencyKey() != null));
+    verify(integration).createShipment(argThat(shipping -> shipping.orderId() == 1));
+    verify(integration, never()).releaseStocks(anyString());
+    verify(integration, never()).cancelOrder(anyInt());
+  }
+
+  @Test
+  @DisplayName("POST /order-composite answers 409 when the stock cannot be reserved and cancels the order created meanwhile")
+  void createCompositeOrderWithoutStockIsConflict() {
+    OrderAggregateCreateDto createDto = new OrderAggregateCreateDto(10, "123 Main St",
+      List.of(new OrderItemRequestDto(101, 2)));
+    OrderDto createdOrder = new OrderDto(1, 10, 1000, "PENDING", new Date(), List.of(), "order-addr");
+
+    when(integration.reserveStocks(anyString(), any())).thenReturn(Mono.error(new InventoryOutOfStockException("Insufficient stock for productId: 101")));
+    when(integration.getProductsByIds(List.of(101))).thenReturn(Flux.just(new ProductDto(101, "Widget", "desc", 500, "product-addr")));
+    when(integration.createOrder(any())).thenReturn(Mono.just(createdOrder));
+    when(integration.cancelOrder(1)).thenReturn(Mono.empty());
+
+    client.post().uri("/order-composite")
+      .bodyValue(createDto)
+      .exchange()
+      .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+
+    verify(integration).cancelOrder(1);
+    verify(integration, never()).releaseStocks(anyString());
+    verify(integration, never()).createShipment(any());
+  }
+
+  @Test
+  @DisplayName("POST /order-composite releases the stock and cancels the order and shipment when the shipment cannot be created")
+  void createCompositeOrderCompensatesFailedShipping() {
+    OrderAggregateCreateDto createDto = new OrderAggregateCreateDto(10, "123 Main St",
+      List.of(new OrderItemRequestDto(101, 2)));
+    OrderDto createdOrder = new OrderDto(1, 10, 1000, "PENDING", new Date(), List.of(), "order-addr");
+
+    when(integration.reserveStocks(anyString(), any())).thenReturn(Mono.empty());
+    when(integration.getProductsByIds(List.of(101))).thenReturn(Flux.just(new ProductDto(101, "Widget", "desc", 500, "product-addr")));
+    when(integration.createOrder(any())).thenReturn(Mono.just(createdOrder));
+    when(integration.createShipment(any())).thenReturn(Mono.error(new InvalidInputException("Invalid shipping address")));
+    when(integration.releaseStocks(anyString())).thenReturn(Mono.empty());
+    when(integration.cancelOrder(1)).thenReturn(Mono.empty());
+    when(integration.cancelShipment(1)).thenReturn(Mono.empty());
+
+    client.post().uri("/order-composite")
+      .bodyValue(createDto)
+      .exchange()
+      .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+    verify(integration).releaseStocks(anyString());
+    verify(integration).cancelOrder(1);
+    verify(integration).cancelShipment(1);
+  }
+
+  @Test
+  @DisplayName("POST /order-composite answers 404 for an unknown product and releases the reserved stock")
+  void createCompositeOrderWithUnknownProductIsNotFound() {
+    OrderAggregateCreateDto createDto = new OrderAggregateCreateDto(10, "123 Main St",
+      List.of(new OrderItemRequestDto(999, 1)));
+
+    when(integration.reserveStocks(anyString(), any())).thenReturn(Mono.empty());
+    when(integration.getProductsByIds(List.of(999))).thenReturn(Flux.empty());
+    when(integration.releaseStocks(anyString())).thenReturn(Mono.empty());
+
+    client.post().uri("/order-composite")
+      .bodyValue(createDto)
+      .exchange()
+      .expectStatus().isNotFound();
+
+    verify(integration).releaseStocks(anyString());
+    verify(integration, never()).createOrder(any());
   }
 }
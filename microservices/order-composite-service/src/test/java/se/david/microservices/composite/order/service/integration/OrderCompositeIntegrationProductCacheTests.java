@@ -0,0 +1,114 @@
+package se.david.microservices.composite.order.service.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import se.david.microservices.composite.order.service.cache.ProductCache;
+import se.david.microservices.composite.order.service.resilience.DownstreamResilience;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+class OrderCompositeIntegrationProductCacheTests {
+
+  private final List<String> requests = new ArrayList<>();
+  private ProductCache productCache;
+  private OrderCompositeIntegration integration;
+
+  @BeforeEach
+  void setUp() {
+    // Stands in for product-service: answers every products request with one product per requested id.
+    WebClient.Builder webClientBuilder = WebClient.builder()
+      .exchangeFunction(request -> {
+        MockClientHttpRequest httpRequest = new MockClientHttpRequest(request.method(), request.url());
+        return request.writeTo(httpRequest, ExchangeStrategies.withDefaults())
+          .then(Mono.defer(() -> httpRequest.getBodyAsString().defaultIfEmpty("")))
+          .map(body -> {
+            requests.add((request.method() + " " + request.url() + " " + body).trim());
+            return ClientResponse.create(HttpStatus.OK)
+              .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+              .body(productsJson(body))
+              .build();
+          });
+      });
+
+    productCache = new ProductCache(new SimpleMeterRegistry(), 100, 300);
+    MockEnvironment environment = new MockEnvironment();
+    DownstreamResilience resilience = new DownstreamResilience(new SimpleMeterRegistry(), environment);
+    integration = new OrderCompositeIntegration(Schedulers.immediate(), null, new DownstreamWebClients(webClientBuilder, environment),
+      new ObjectMapper(), productCache, null, resilience);
+  }
+
+  @Test
+  @DisplayName("getProductsByIds only fetches the ids that missed the product cache")
+  void getProductsByIdsFetchesOnlyMissingIds() {
+    StepVerifier.create(integration.getProductsByIds(List.of(1, 2)))
+      .expectNextCount(2)
+      .verifyComplete();
+
+    StepVerifier.create(integration.getProductsByIds(List.of(1, 2, 3)))
+      .expectNextCount(3)
+      .verifyComplete();
+
+    assertThat(requests, contains(
+      "POST http://product/products/batch [1,2]",
+      "POST http://product/products/batch [3]"));
+  }
+
+  @Test
+  @DisplayName("getProduct is served from the product cache until the product is invalidated")
+  void getProductServedFromCacheUntilInvalidated() {
+    StepVerifier.create(integration.getProductsByIds(List.of(1)))
+      .expectNextCount(1)
+      .verifyComplete();
+
+    StepVerifier.create(integration.getProduct(1))
+      .expectNextMatches(product -> product.id() == 1)
+      .verifyComplete();
+
+    productCache.invalidate(1);
+
+    StepVerifier.create(integration.getProduct(1))
+      .expectNextMatches(product -> product.id() == 1)
+      .verifyComplete();
+
+    assertThat(requests, contains(
+      "POST http://product/products/batch [1]",
+      "GET http://product/products/1"));
+  }
+
+  private static String productsJson(String requestBody) {
+    if(requestBody.isEmpty()) {
+      return productJson("1");
+    }
+    StringBuilder json = new StringBuilder("[");
+    String[] ids = requestBody.substring(1, requestBody.length() - 1).split(",");
+    for(int i = 0; i < ids.length; i++) {
+      if(i > 0) {
+        json.append(",");
+      }
+      json.append(productJson(ids[i]));
+    }
+    return json.append("]").toString();
+  }
+
+  private static String productJson(String id) {
+    return "{\"id\":" + id + ",\"name\":\"product-" + id + "\",\"description\":\"desc\",\"price\":100,\"serviceAddress\":\"product-addr\"}";
+  }
+}
@@ -1,29 +1,45 @@
 package se.david.microservices.composite.order.service.integration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.InputDestination;
 import org.springframework.cloud.stream.binder.test.OutputDestination;
 import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
-import reactor.core.publisher.Mono;
+import se.david.api.core.inventory.dto.InventoryDto;
 import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.core.order.dto.OrderDto;
 import se.david.api.core.order.dto.OrderUpdateDto;
 import se.david.api.core.shipping.dto.ShippingCreateDto;
+import se.david.api.core.shipping.dto.ShippingDto;
 import se.david.api.event.Event;
+import se.david.api.event.EventResult;
+import se.david.api.exceptions.NotFoundException;
 import se.david.microservices.composite.order.IsSameEvent;
+import se.david.util.messaging.CborMessageConverter;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT)
@@ -37,42 +53,77 @@ class OrderCompositeIntegrationStreamBridgeTests {
   @Autowired
   private OutputDestination outputDestination;
 
+  @Autowired
+  private InputDestination inputDestination;
+
+  @Autowired
+  private ObjectMapper mapper;
+
+  private static final Path OUTBOX_DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "outbox-" + UUID.randomUUID());
+
   @DynamicPropertySource
   static void testProperties(DynamicPropertyRegistry registry) {
     registry.add("eureka.client.enabled", () -> "false");
     registry.add("spring.cloud.discovery.enabled", () -> "false");
     registry.add("spring.security.oauth2.resourceserver.jwt.jwk-set-uri", () -> "http://localhost:0/jwks");
+    // A fresh outbox per context, so no events are replayed from an earlier run. The test binder sends no confirms.
+    registry.add("app.outbox.directory", OUTBOX_DIRECTORY::toString);
+    registry.add("app.outbox.publisherConfirms", () -> "false");
+    // The mocked downstream services have no orders to rebuild the read model from, every aggregate is built per request
+    registry.add("app.readModel.enabled", () -> "false");
   }
 
   @Test
-  @DisplayName("createShippingOrder publishes a CREATE event to the shipments-out-0/shipments destination")
-  void createShippingOrderPublishesCreateEventToShipmentsDestination() {
+  @DisplayName("createShippingOrder publishes a CREATE event to the shipments-out-0/shipments destination and answers with its result")
+  void createShippingOrderPublishesCreateEventToShipmentsDestination() throws Exception {
     ShippingCreateDto dto = new ShippingCreateDto(1, "123 Main St");
-    Event<Integer, ShippingCreateDto> expectedEvent = new Event<>(Event.Type.CREATE, 1, dto);
 
-    // The follow-up GET (fetching the created shipment back from shipping-service) fails here
-    // because there's no real shipping-service to reach - that's fine: sendEvent() runs first in
-    // the chain, so the message is already published by the time this settles either way.
-    integration.createShippingOrder(dto).onErrorResume(e -> Mono.empty()).block();
+    CompletableFuture<ShippingDto> response = integration.createShippingOrder(dto).toFuture();
 
     Message<byte[]> message = outputDestination.receive(2000, "shipments");
     assertThat(message, is(notNullValue()));
-    assertThat(new String(Objects.requireNonNull(message).getPayload()),
-      is(IsSameEvent.sameEventExceptCreatedAt(expectedEvent)));
+    String correlationId = correlationIdOf(message);
+    assertThat(payloadAsJson(message),
+      is(IsSameEvent.sameEventExceptCreatedAt(new Event<>(Event.Type.CREATE, 1, dto, correlationId))));
+
+    sendResult(EventResult.success(correlationId, new ShippingDto(1, "123 Main St", "PENDING", "shipping")));
+    ShippingDto shipping = response.get(2, SECONDS);
+    assertThat(shipping.orderId(), is(1));
+    assertThat(shipping.status(), is("PENDING"));
   }
 
   @Test
-  @DisplayName("updateOrder publishes an UPDATE event to the orders-out-0/orders destination")
-  void updateOrderPublishesUpdateEventToOrdersDestination() {
+  @DisplayName("updateOrder publishes an UPDATE event to the orders-out-0/orders destination and answers with its result")
+  void updateOrderPublishesUpdateEventToOrdersDestination() throws Exception {
     OrderUpdateDto dto = new OrderUpdateDto("SHIPPED");
-    Event<Integer, OrderUpdateDto> expectedEvent = new Event<>(Event.Type.UPDATE, 5, dto);
 
-    integration.updateOrder(5, dto).onErrorResume(e -> Mono.empty()).block();
+    CompletableFuture<OrderDto> response = integration.updateOrder(5, dto).toFuture();
 
     Message<byte[]> message = outputDestination.receive(2000, "orders");
     assertThat(message, is(notNullValue()));
-    assertThat(new String(Objects.requireNonNull(message).getPayload()),
-      is(IsSameEvent.sameEventExceptCreatedAt(expectedEvent)));
+    String correlationId = correlationIdOf(message);
+    assertThat(payloadAsJson(message),
+      is(IsSameEvent.sameEventExceptCreatedAt(new Event<>(Event.Type.UPDATE, 5, dto, correlationId))));
+
+    sendResult(EventResult.success(correlationId, new OrderDto(5, 1, 100, "SHIPPED", null, List.of(), "order")));
+    OrderDto order = response.get(2, SECONDS);
+    assertThat(order.id(), is(5));
+    assertThat(order.status(), is("SHIPPED"));
+  }
+
+  @Test
+  @DisplayName("increaseStock fails with NotFoundException when the result of its event is 404")
+  void increaseStockFailsWhenItsEventResultIsNotFound() {
+    InventoryStockAdjustmentRequestDto dto = new InventoryStockAdjustmentRequestDto(404, 1);
+
+    CompletableFuture<InventoryDto> response = integration.increaseStock(dto).toFuture();
+
+    Message<byte[]> message = outputDestination.receive(2000, "inventories");
+    assertThat(message, is(notNullValue()));
+    sendResult(EventResult.failure(correlationIdOf(message), 404, "No result found for key: 404"));
+
+    ExecutionException ex = assertThrows(ExecutionException.class, () -> response.get(2, SECONDS));
+    assertThat(ex.getCause(), is(instanceOf(NotFoundException.class)));
   }
 
   @Test
@@ -94,7 +145,37 @@ class OrderCompositeIntegrationStreamBridgeTests {
 
     Message<byte[]> message = outputDestination.receive(2000, "inventories");
     assertThat(message, is(notNullValue()));
-    assertThat(new String(Objects.requireNonNull(message).getPayload()),
+    assertThat(payloadAsJson(message),
       is(IsSameEvent.sameEventExceptCreatedAt(expectedEvent)));
   }
+
+  private String correlationIdOf(Message<byte[]> message) {
+    try {
+      String correlationId = new CborMessageConverter().getObjectMapper().readTree(message.getPayload()).path("correlationId").asText(null);
+      assertThat(correlationId, is(notNullValue()));
+      return correlationId;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void sendResult(EventResult result) {
+    try {
+      inputDestination.send(MessageBuilder.withPayload(mapper.writeValueAsBytes(result))
+        .setHeader(MessageHeaders.CONTENT_TYPE, "application/json")
+        .build(), "eventResults");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // The bindings send CBOR, the expected events are compared as JSON
+  private String payloadAsJson(Message<byte[]> message) {
+    assertThat(message.getHeaders().get(MessageHeaders.CONTENT_TYPE).toString(), is("application/cbor"));
+    try {
+      return new CborMessageConverter().getObjectMapper().readTree(message.getPayload()).toString();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
 }
@@ -0,0 +1,89 @@
+package se.david.microservices.composite.order.service.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+class OutboxJournalTests {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("Events that were not acknowledged are published again after a restart, in the same order")
+  void unacknowledgedEventsAreRecoveredAfterRestart() throws Exception {
+    try(OutboxJournal journal = new OutboxJournal(directory, mapper, true, 1024)) {
+      journal.append("orders-out-0", 1, TextNode.valueOf("first"));
+      journal.append("orders-out-0", 2, TextNode.valueOf("second"));
+      journal.append("shipments-out-0", 3, TextNode.valueOf("third"));
+      journal.acknowledge(1);
+    }
+
+    try(OutboxJournal journal = new OutboxJournal(directory, mapper, true, 1024)) {
+      List<OutboxEntry> batch = journal.nextBatch(10, 0);
+      assertThat(batch.stream().map(OutboxEntry::sequence).toList(), contains(2L, 3L));
+      assertThat(batch.stream().map(entry -> entry.payload().asText()).toList(), contains("second", "third"));
+      assertThat(batch.get(1).bindingName(), is("shipments-out-0"));
+      assertThat(batch.get(1).partitionKey(), is(3));
+
+      // Sequence numbers continue after the recovered events
+      assertThat(journal.append("orders-out-0", 4, TextNode.valueOf("fourth")).sequence(), is(4L));
+    }
+  }
+
+  @Test
+  @DisplayName("A line that was cut off by a crash is discarded and the journal stays usable")
+  void incompleteLastLineIsDiscarded() throws Exception {
+    try(OutboxJournal journal = new OutboxJournal(directory, mapper, false, 1024)) {
+      journal.append("orders-out-0", 1, TextNode.valueOf("first"));
+    }
+    Files.writeString(directory.resolve("outbox.journal"), "{\"sequence\":2,\"createdAt\":", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+    try(OutboxJournal journal = new OutboxJournal(directory, mapper, false, 1024)) {
+      journal.append("orders-out-0", 2, TextNode.valueOf("second"));
+    }
+
+    try(OutboxJournal journal = new OutboxJournal(directory, mapper, false, 1024)) {
+      assertThat(journal.nextBatch(10, 0).stream().map(entry -> entry.payload().asText()).toList(), contains("first", "second"));
+    }
+  }
+
+  @Test
+  @DisplayName("The journal is truncated once every event in it is acknowledged and it has grown past the threshold")
+  void journalIsCompactedWhenEverythingIsAcknowledged() throws IOException, InterruptedException {
+    Path journalFile = directory.resolve("outbox.journal");
+    try(OutboxJournal journal = new OutboxJournal(directory, mapper, false, 100)) {
+      long last = 0;
+      for(int i = 0; i < 10; i++) {
+        last = journal.append("orders-out-0", i, TextNode.valueOf("event " + i)).sequence();
+      }
+      journal.acknowledge(5);
+      assertThat(Files.size(journalFile) > 100, is(true));
+
+      journal.acknowledge(last);
+      assertThat(Files.size(journalFile), is(0L));
+      assertThat(journal.nextBatch(10, 0), is(empty()));
+      assertThat(journal.isAcknowledged(last), is(true));
+    }
+
+    try(OutboxJournal journal = new OutboxJournal(directory, mapper, false, 100)) {
+      assertThat(journal.append("orders-out-0", 11, TextNode.valueOf("event 11")).sequence(), is(11L));
+    }
+  }
+}
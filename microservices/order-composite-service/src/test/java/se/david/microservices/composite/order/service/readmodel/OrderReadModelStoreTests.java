@@ -0,0 +1,79 @@
+package se.david.microservices.composite.order.service.readmodel;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.david.api.composite.order.dto.OrderAggregateDto;
+import se.david.api.composite.order.dto.ShippingSummaryDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.order.dto.OrderItemDto;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class OrderReadModelStoreTests {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @TempDir
+  Path directory;
+
+  @Test
+  @DisplayName("Orders and aggregates are kept in the file and the indices are rebuilt when the store opens again")
+  void storeIsRecoveredAfterRestart() throws Exception {
+    String file = directory.resolve("order-aggregates.mv").toString();
+    try(OrderReadModelStore store = new OrderReadModelStore(file, 1, mapper)) {
+      store.putOrder(order(1, 10, 100, 101));
+      store.putOrder(order(2, 10, 101));
+      store.putAggregate(aggregate(1));
+      store.putAggregate(aggregate(2));
+    }
+
+    try(OrderReadModelStore store = new OrderReadModelStore(file, 1, mapper)) {
+      assertThat(store.getOrder(1).userId(), is(10));
+      assertThat(store.orderIdsByUser(10), is(Set.of(1, 2)));
+      assertThat(store.orderIdsByProduct(100), is(Set.of(1)));
+      assertThat(store.aggregates().map(OrderAggregateDto::orderId).toList(), contains(1, 2));
+    }
+  }
+
+  @Test
+  @DisplayName("Replacing an order moves it in the indices and removing it also removes its aggregate")
+  void replacedAndRemovedOrdersAreUnindexed() throws Exception {
+    try(OrderReadModelStore store = new OrderReadModelStore("", 1, mapper)) {
+      store.putOrder(order(1, 10, 100));
+      store.putAggregate(aggregate(1));
+
+      store.putOrder(order(1, 10, 200));
+      assertThat(store.orderIdsByProduct(100), is(empty()));
+      assertThat(store.orderIdsByProduct(200), is(Set.of(1)));
+
+      store.removeOrder(1);
+      assertThat(store.orderIdsByUser(10), is(empty()));
+      assertThat(store.getAggregate(1), is(nullValue()));
+      assertThat(store.aggregates(Set.of(1)).toList(), is(empty()));
+    }
+  }
+
+  private static OrderDto order(int orderId, int userId, int... productIds) {
+    List<OrderItemDto> items = Arrays.stream(productIds)
+      .mapToObj(productId -> new OrderItemDto(productId, orderId, productId, 1, 100))
+      .toList();
+    return new OrderDto(orderId, userId, 100 * items.size(), "CREATED", new Date(0), items, "order-addr");
+  }
+
+  private static OrderAggregateDto aggregate(int orderId) {
+    return new OrderAggregateDto(orderId, 10, 100, "CREATED", new Date(0),
+      new ShippingSummaryDto(orderId, "addr", "PENDING"), List.of(), null);
+  }
+}
@@ -0,0 +1,151 @@
+package se.david.microservices.composite.order.service.resilience;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.david.microservices.composite.order.service.resilience.DownstreamResilience.CallType;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class DownstreamResilienceTests {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  @DisplayName("A request that does not answer within the downstream's response timeout fails with a TimeoutException")
+  void slowRequestTimesOut() {
+    DownstreamResilience resilience = resilience(new MockEnvironment()
+      .withProperty("app.resilience.responseTimeoutMs", "5000")
+      .withProperty("app.resilience.shipping.responseTimeoutMs", "50"));
+
+    StepVerifier.create(resilience.mono("shipping", CallType.READ, Mono::never))
+      .expectError(TimeoutException.class)
+      .verify(Duration.ofSeconds(5));
+
+    assertThat(meterRegistry.get("downstream.timeouts").tag("downstream", "shipping").counter().count(), is(1.0));
+  }
+
+  @Test
+  @DisplayName("Server errors open the circuit breaker, which then rejects requests without sending them, client errors do not")
+  void serverErrorsOpenCircuitBreaker() {
+    DownstreamResilience resilience = resilience(new MockEnvironment()
+      .withProperty("app.resilience.slidingWindowSize", "4")
+      .withProperty("app.resilience.minimumNumberOfCalls", "4"));
+    AtomicInteger requests = new AtomicInteger();
+
+    for(int i = 0; i < 4; i++) {
+      StepVerifier.create(resilience.mono("order", CallType.READ, () -> {
+          requests.incrementAndGet();
+          return Mono.error(WebClientResponseException.create(HttpStatus.NOT_FOUND.value(), "Not Found", HttpHeaders.EMPTY, new byte[0], null));
+        }))
+        .expectError(WebClientResponseException.class)
+        .verify();
+    }
+    assertThat(resilience.circuitBreakerState("order"), is(CircuitBreaker.State.CLOSED));
+
+    // Two failures in the window of four are the default failureRateThreshold of 50%
+    for(int i = 0; i < 2; i++) {
+      StepVerifier.create(resilience.mono("order", CallType.READ, () -> {
+          requests.incrementAndGet();
+          return Mono.error(new IOException("Connection reset"));
+        }))
+        .expectError(IOException.class)
+        .verify();
+    }
+    assertThat(resilience.circuitBreakerState("order"), is(CircuitBreaker.State.OPEN));
+
+    StepVerifier.create(resilience.mono("order", CallType.READ, () -> {
+        requests.incrementAndGet();
+        return Mono.just("order");
+      }))
+      .expectError(CallNotPermittedException.class)
+      .verify();
+    assertThat(requests.get(), is(6));
+  }
+
+  @Test
+  @DisplayName("The bulkhead rejects requests to a downstream beyond maxConcurrentCalls")
+  void bulkheadRejectsExcessRequests() {
+    DownstreamResilience resilience = resilience(new MockEnvironment()
+      .withProperty("app.resilience.inventory.maxConcurrentCalls", "1"));
+
+    StepVerifier.create(resilience.mono("inventory", CallType.READ, Mono::never))
+      .expectSubscription()
+      .then(() -> StepVerifier.create(resilience.mono("inventory", CallType.READ, () -> Mono.just("stock")))
+        .expectError(BulkheadFullException.class)
+        .verify())
+      .thenCancel()
+      .verify();
+
+    StepVerifier.create(resilience.mono("product", CallType.READ, () -> Mono.just("product")))
+      .expectNext("product")
+      .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("A read that takes longer than the p95 latency is sent again and answered by the faster request")
+  void slowReadIsHedged() {
+    DownstreamResilience resilience = resilience(new MockEnvironment()
+      .withProperty("app.resilience.hedgeEnabled", "true")
+      .withProperty("app.resilience.hedgeMinDelayMs", "20"));
+    AtomicInteger requests = new AtomicInteger();
+
+    for(int i = 0; i < 20; i++) {
+      StepVerifier.create(resilience.mono("product", CallType.READ, () -> Mono.just("fast")))
+        .expectNext("fast")
+        .verifyComplete();
+    }
+
+    // The first request hangs, like a request to a stalled instance, the hedged one answers
+    StepVerifier.create(resilience.mono("product", CallType.READ,
+        () -> requests.incrementAndGet() == 1 ? Mono.never() : Mono.just("hedged")))
+      .expectNext("hedged")
+      .expectComplete()
+      .verify(Duration.ofSeconds(5));
+
+    assertThat(requests.get(), is(2));
+    assertThat(meterRegistry.get("downstream.hedges").tag("result", "won").counter().count(), is(1.0));
+  }
+
+  @Test
+  @DisplayName("Writes are never hedged")
+  void writesAreNotHedged() {
+    DownstreamResilience resilience = resilience(new MockEnvironment()
+      .withProperty("app.resilience.hedgeEnabled", "true")
+      .withProperty("app.resilience.hedgeMinDelayMs", "1")
+      .withProperty("app.resilience.responseTimeoutMs", "200"));
+    AtomicInteger requests = new AtomicInteger();
+
+    StepVerifier.create(resilience.mono("order", CallType.WRITE, () -> Mono.just("created")))
+      .expectNext("created")
+      .verifyComplete();
+
+    StepVerifier.create(resilience.mono("order", CallType.WRITE, () -> {
+        requests.incrementAndGet();
+        return Mono.never();
+      }))
+      .expectError(TimeoutException.class)
+      .verify(Duration.ofSeconds(5));
+
+    assertThat(requests.get(), is(1));
+  }
+
+  private DownstreamResilience resilience(MockEnvironment environment) {
+    return new DownstreamResilience(meterRegistry, environment);
+  }
+}
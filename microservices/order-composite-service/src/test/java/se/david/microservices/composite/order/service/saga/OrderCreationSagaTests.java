@@ -0,0 +1,108 @@
+package se.david.microservices.composite.order.service.saga;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import se.david.api.composite.order.dto.OrderAggregateCreateDto;
+import se.david.api.composite.order.dto.OrderItemRequestDto;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.core.order.dto.OrderCreateDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.product.dto.ProductDto;
+import se.david.api.core.shipping.dto.ShippingDto;
+import se.david.api.exceptions.InventoryOutOfStockException;
+import se.david.microservices.composite.order.service.integration.OrderCompositeIntegration;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderCreationSagaTests {
+  private static final int ORDER_ID = 42;
+
+  private final OrderCompositeIntegration integration = mock(OrderCompositeIntegration.class);
+  private final Sinks.One<ShippingDto> shipment = Sinks.one();
+  private OrderCreationSaga saga;
+
+  @BeforeEach
+  void setUp() {
+    when(integration.reserveStocks(anyString(), anyList())).thenReturn(Mono.empty());
+    when(integration.getProductsByIds(anyList())).thenReturn(Flux.just(new ProductDto(1, "product", "description", 100, null)));
+    when(integration.createOrder(any())).thenReturn(Mono.just(new OrderDto(ORDER_ID, 7, 200, "PENDING", new Date(), List.of(), null)));
+    when(integration.createShipment(any())).thenReturn(shipment.asMono());
+    when(integration.releaseStocks(anyString())).thenReturn(Mono.empty());
+    when(integration.cancelOrder(ORDER_ID)).thenReturn(Mono.empty());
+    when(integration.cancelOrder(anyString(), anyInt())).thenReturn(Mono.empty());
+    when(integration.cancelShipment(ORDER_ID)).thenReturn(Mono.empty());
+
+    saga = new OrderCreationSaga(integration, new SimpleMeterRegistry());
+  }
+
+  @Test
+  @DisplayName("a caller that cancels after the order was created does not stop the saga from compensating a later failure")
+  void cancelledCallerStillCompensates() {
+    Disposable caller = saga.execute(new OrderAggregateCreateDto(7, "Street 1", List.of(new OrderItemRequestDto(1, 2)))).subscribe();
+    verify(integration, timeout(5000)).createShipment(any());
+
+    caller.dispose();
+    shipment.tryEmitError(new IllegalStateException("shipping-service is down"));
+
+    verify(integration, timeout(5000)).releaseStocks(anyString());
+    verify(integration, timeout(5000)).cancelOrder(ORDER_ID);
+    verify(integration, timeout(5000)).cancelShipment(ORDER_ID);
+  }
+
+  @Test
+  @DisplayName("an order and a reservation that failed without an answer are compensated by the saga id they were sent with")
+  void uncertainStepsAreCompensatedByTheSagaId() {
+    when(integration.reserveStocks(anyString(), anyList())).thenReturn(Mono.error(new TimeoutException("inventory-service did not answer")));
+    when(integration.createOrder(any())).thenReturn(Mono.error(new TimeoutException("order-service did not answer")));
+
+    StepVerifier.create(saga.execute(new OrderAggregateCreateDto(7, "Street 1", List.of(new OrderItemRequestDto(1, 2)))))
+      .expectError(TimeoutException.class)
+      .verify();
+
+    ArgumentCaptor<String> reservationId = ArgumentCaptor.forClass(String.class);
+    verify(integration).reserveStocks(reservationId.capture(), eq(List.of(new InventoryStockAdjustmentRequestDto(1, 2))));
+    ArgumentCaptor<OrderCreateDto> order = ArgumentCaptor.forClass(OrderCreateDto.class);
+    verify(integration).createOrder(order.capture());
+    assertEquals(reservationId.getValue(), order.getValue().idempotencyKey());
+
+    verify(integration).releaseStocks(reservationId.getValue());
+    verify(integration).cancelOrder(reservationId.getValue(), 7);
+    verify(integration, never()).createShipment(any());
+  }
+
+  @Test
+  @DisplayName("a reservation the inventory refused is not released")
+  void refusedReservationIsNotReleased() {
+    when(integration.reserveStocks(anyString(), anyList())).thenReturn(Mono.error(new InventoryOutOfStockException("Insufficient stock for productId: 1")));
+
+    StepVerifier.create(saga.execute(new OrderAggregateCreateDto(7, "Street 1", List.of(new OrderItemRequestDto(1, 2)))))
+      .expectError(InventoryOutOfStockException.class)
+      .verify();
+
+    verify(integration).cancelOrder(ORDER_ID);
+    verify(integration, never()).releaseStocks(anyString());
+    verify(integration, never()).cancelOrder(anyString(), anyInt());
+  }
+}
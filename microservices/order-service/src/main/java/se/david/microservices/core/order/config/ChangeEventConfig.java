@@ -0,0 +1,17 @@
+package se.david.microservices.core.order.config;
+
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.util.messaging.EntityChangePublisher;
+
+@Configuration
+public class ChangeEventConfig {
+
+  // Every change of an order is published on the orderChanges destination, e.g. for the read model in order-composite
+  @Bean
+  public EntityChangePublisher<Integer, OrderDto> orderChangePublisher(StreamBridge streamBridge) {
+    return new EntityChangePublisher<>(OrderDto::id, message -> streamBridge.send("orderChanges-out-0", message));
+  }
+}
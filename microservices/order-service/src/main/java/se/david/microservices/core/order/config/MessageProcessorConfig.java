@@ -1,50 +1,85 @@
 package se.david.microservices.core.order.config;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import se.david.api.core.order.dto.OrderUpdateDto;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.core.order.dto.OrderDto;
 import se.david.api.core.order.service.OrderService;
 import se.david.api.event.Event;
-import se.david.api.exceptions.EventProcessingException;
 import se.david.microservices.core.order.domain.entity.Order;
+import se.david.microservices.core.order.service.OrderEventBatchHandler;
+import se.david.util.messaging.BatchingEventProcessor;
+import se.david.util.messaging.EntityChangePublisher;
+import se.david.util.messaging.EventBatchSettings;
+import se.david.util.messaging.EventDeduplicator;
+import se.david.util.messaging.EventResultPublisher;
+import se.david.util.messaging.ProcessedEventStore;
 
-import java.util.function.Consumer;
-
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Configuration
 public class MessageProcessorConfig {
-  private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
+  private final OrderEventBatchHandler batchHandler;
+  private final EventBatchSettings batchSettings;
+  private final MeterRegistry meterRegistry;
+  private final EventDeduplicator deduplicator;
+  private final EventResultPublisher<Integer, OrderDto> resultPublisher;
+  private final EntityChangePublisher<Integer, OrderDto> changePublisher;
   private final OrderService orderService;
 
   @Autowired
-  public MessageProcessorConfig(OrderService orderService) {
+  public MessageProcessorConfig(
+    OrderEventBatchHandler batchHandler,
+    MeterRegistry meterRegistry,
+    ProcessedEventStore processedEventStore,
+    OrderService orderService,
+    EntityChangePublisher<Integer, OrderDto> changePublisher,
+    StreamBridge streamBridge,
+    @Value("${app.messageProcessor.batchSize:100}") int batchSize,
+    @Value("${app.messageProcessor.batchWaitMs:50}") long batchWaitMs,
+    @Value("${app.messageProcessor.concurrency:4}") int concurrency,
+    @Value("${app.deduplication.enabled:true}") boolean deduplicationEnabled,
+    @Value("${app.deduplication.cacheSize:100000}") int deduplicationCacheSize,
+    @Value("${app.deduplication.cacheWindowMinutes:60}") long deduplicationCacheWindowMinutes) {
+    this.batchHandler = batchHandler;
     this.orderService = orderService;
-
+    this.changePublisher = changePublisher;
+    this.meterRegistry = meterRegistry;
+    this.batchSettings = new EventBatchSettings(batchSize, Duration.ofMillis(batchWaitMs), concurrency);
+    this.deduplicator = deduplicationEnabled
+      ? new EventDeduplicator(processedEventStore, deduplicationCacheSize, Duration.ofMinutes(deduplicationCacheWindowMinutes), meterRegistry)
+      : EventDeduplicator.disabled();
+    this.resultPublisher = new EventResultPublisher<>(
+      this::loadOrders,
+      OrderDto::id,
+      result -> streamBridge.send("eventResults-out-0", result));
   }
 
   @Bean
-  public Consumer<Event<Integer, Order>> messageProcessor() {
-    return event -> {
-      LOG.info("Process message created at {}...", event.getEventCreatedAt());
-
-      switch(event.getEventType()) {
-        case UPDATE:
-          orderService.updateOrder(event.getKey(), new OrderUpdateDto(event.getData().getStatus()))
-            .doOnSuccess(unused -> LOG.info("Successfully updated order for ID {}", event.getKey()))
-            .doOnError(error -> LOG.error("Failed to update order for ID {}: {}", event.getKey(), error.getMessage()))
-            .subscribe();
-          break;
+  public Function<Flux<Message<Event<Integer, Order>>>, Mono<Void>> messageProcessor() {
+    return BatchingEventProcessor.create(batchSettings, meterRegistry, deduplicator, resultPublisher, this::applyAndPublishChanges);
+  }
 
-        default:
-          String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-          LOG.warn(errorMessage);
-          throw new EventProcessingException(errorMessage);
-      }
+  // The orders the batch changed are loaded once and published for the copies in other services
+  private Mono<Void> applyAndPublishChanges(List<Event<Integer, Order>> events) {
+    Set<Integer> orderIds = events.stream().map(Event::getKey).filter(Objects::nonNull).collect(Collectors.toSet());
+    return batchHandler.apply(events)
+      .then(Mono.defer(() -> changePublisher.publishChanged(orderIds, loadOrders(orderIds))));
+  }
 
-      LOG.info("Message processing done!");
-    };
+  private Flux<OrderDto> loadOrders(Set<Integer> orderIds) {
+    return orderService.getOrdersBatch(new ArrayList<>(orderIds));
   }
 }
@@ -10,7 +10,7 @@ import java.util.List;
 @Table(name = "orders")
 public class Order {
   @Id
-  @GeneratedValue
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
   private int id;
 
   @Version
@@ -29,7 +29,11 @@ public class Order {
   @Column(nullable = false)
   private Date createdAt;
 
-  @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+  // Set by a caller that may send the same order again, e.g. the order creation saga of order-composite
+  @Column(unique = true, length = 36)
+  private String idempotencyKey;
+
+  @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
   private List<OrderItem> orderItems;
 
   public Order() {
@@ -97,6 +101,14 @@ public class Order {
     this.createdAt = createdAt;
   }
 
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  public void setIdempotencyKey(String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+  }
+
   public List<OrderItem> getOrderItems() {
     return orderItems;
   }
@@ -6,7 +6,7 @@ import jakarta.persistence.*;
 @Table(name = "order_items")
 public class OrderItem {
   @Id
-  @GeneratedValue
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
   private int id;
 
   @Version
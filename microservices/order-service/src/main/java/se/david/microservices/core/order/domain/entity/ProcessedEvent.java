@@ -0,0 +1,49 @@
+package se.david.microservices.core.order.domain.entity;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.util.Date;
+
+// Id of an event that has been applied. Always new when saved, so saving it is a plain insert without a select first
+@Entity
+@Table(name = "processed_events", indexes = @Index(name = "idx_processed_events_processed_at", columnList = "processedAt"))
+public class ProcessedEvent implements Persistable<String> {
+  @Id
+  @Column(length = 36)
+  private String id;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(nullable = false)
+  private Date processedAt;
+
+  public ProcessedEvent() {
+  }
+
+  public ProcessedEvent(String id, Date processedAt) {
+    this.id = id;
+    this.processedAt = processedAt;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public Date getProcessedAt() {
+    return processedAt;
+  }
+
+  public void setProcessedAt(Date processedAt) {
+    this.processedAt = processedAt;
+  }
+
+  @Override
+  public boolean isNew() {
+    return true;
+  }
+}
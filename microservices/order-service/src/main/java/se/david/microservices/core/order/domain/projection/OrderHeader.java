@@ -0,0 +1,13 @@
+package se.david.microservices.core.order.domain.projection;
+
+import java.util.Date;
+
+// The columns of an order without its items, read via a JPQL constructor expression so no managed entity is hydrated.
+public record OrderHeader(
+  int id,
+  int userId,
+  int totalPrice,
+  String status,
+  Date createdAt
+) {
+}
@@ -0,0 +1,81 @@
+package se.david.microservices.core.order.domain.r2dbc.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+// R2DBC mapping of the same "order_items" table the JPA OrderItem entity uses
+@Table("order_items")
+public class OrderItemRow {
+  @Id
+  private Integer id;
+
+  @Version
+  private Integer version;
+
+  private int orderId;
+
+  private int productId;
+
+  private int quantity;
+
+  private int price;
+
+  public OrderItemRow() {
+  }
+
+  public OrderItemRow(int orderId, int productId, int quantity, int price) {
+    this.orderId = orderId;
+    this.productId = productId;
+    this.quantity = quantity;
+    this.price = price;
+  }
+
+  public Integer getId() {
+    return id;
+  }
+
+  public void setId(Integer id) {
+    this.id = id;
+  }
+
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
+  public int getOrderId() {
+    return orderId;
+  }
+
+  public void setOrderId(int orderId) {
+    this.orderId = orderId;
+  }
+
+  public int getProductId() {
+    return productId;
+  }
+
+  public void setProductId(int productId) {
+    this.productId = productId;
+  }
+
+  public int getQuantity() {
+    return quantity;
+  }
+
+  public void setQuantity(int quantity) {
+    this.quantity = quantity;
+  }
+
+  public int getPrice() {
+    return price;
+  }
+
+  public void setPrice(int price) {
+    this.price = price;
+  }
+}
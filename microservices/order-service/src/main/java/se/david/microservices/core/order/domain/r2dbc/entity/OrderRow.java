@@ -0,0 +1,95 @@
+package se.david.microservices.core.order.domain.r2dbc.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+// R2DBC mapping of the same "orders" table the JPA Order entity uses
+@Table("orders")
+public class OrderRow {
+  @Id
+  private Integer id;
+
+  @Version
+  private Integer version;
+
+  private int userId;
+
+  private int totalPrice;
+
+  private String status;
+
+  private LocalDateTime createdAt;
+
+  private String idempotencyKey;
+
+  public OrderRow() {
+    this.status = "PENDING";
+    this.createdAt = LocalDateTime.now();
+  }
+
+  public OrderRow(int userId, int totalPrice, String idempotencyKey) {
+    this();
+    this.userId = userId;
+    this.totalPrice = totalPrice;
+    this.idempotencyKey = idempotencyKey;
+  }
+
+  public Integer getId() {
+    return id;
+  }
+
+  public void setId(Integer id) {
+    this.id = id;
+  }
+
+  public Integer getVersion() {
+    return version;
+  }
+
+  public void setVersion(Integer version) {
+    this.version = version;
+  }
+
+  public int getUserId() {
+    return userId;
+  }
+
+  public void setUserId(int userId) {
+    this.userId = userId;
+  }
+
+  public int getTotalPrice() {
+    return totalPrice;
+  }
+
+  public void setTotalPrice(int totalPrice) {
+    this.totalPrice = totalPrice;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  public void setCreatedAt(LocalDateTime createdAt) {
+    this.createdAt = createdAt;
+  }
+
+  public String getIdempotencyKey() {
+    return idempotencyKey;
+  }
+
+  public void setIdempotencyKey(String idempotencyKey) {
+    this.idempotencyKey = idempotencyKey;
+  }
+}
@@ -0,0 +1,47 @@
+package se.david.microservices.core.order.domain.r2dbc.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.domain.Persistable;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+// R2DBC mapping of the same "processed_events" table the JPA ProcessedEvent entity uses. Always new when saved,
+// a row is only written once
+@Table("processed_events")
+public class ProcessedEventRow implements Persistable<String> {
+  @Id
+  private String id;
+
+  private LocalDateTime processedAt;
+
+  public ProcessedEventRow() {
+  }
+
+  public ProcessedEventRow(String id, LocalDateTime processedAt) {
+    this.id = id;
+    this.processedAt = processedAt;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public LocalDateTime getProcessedAt() {
+    return processedAt;
+  }
+
+  public void setProcessedAt(LocalDateTime processedAt) {
+    this.processedAt = processedAt;
+  }
+
+  @Override
+  public boolean isNew() {
+    return true;
+  }
+}
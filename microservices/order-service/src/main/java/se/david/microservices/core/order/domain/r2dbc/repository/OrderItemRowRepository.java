@@ -0,0 +1,19 @@
+package se.david.microservices.core.order.domain.r2dbc.repository;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.order.domain.r2dbc.entity.OrderItemRow;
+
+import java.util.Collection;
+
+public interface OrderItemRowRepository extends ReactiveCrudRepository<OrderItemRow, Integer> {
+  Flux<OrderItemRow> findByOrderIdInOrderByOrderIdAscIdAsc(Collection<Integer> orderIds);
+
+  @Modifying
+  @Query("DELETE FROM order_items WHERE order_id = :orderId")
+  Mono<Integer> deleteByOrderId(@Param("orderId") int orderId);
+}
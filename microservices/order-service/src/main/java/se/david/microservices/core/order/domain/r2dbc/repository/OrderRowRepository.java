@@ -0,0 +1,28 @@
+package se.david.microservices.core.order.domain.r2dbc.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.order.domain.r2dbc.entity.OrderRow;
+
+import java.util.Collection;
+
+public interface OrderRowRepository extends ReactiveCrudRepository<OrderRow, Integer> {
+  Flux<OrderRow> findAllByOrderByIdAsc();
+
+  Flux<OrderRow> findByUserIdOrderByIdAsc(int userId);
+
+  Flux<OrderRow> findByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+  Flux<OrderRow> findByIdInOrderByIdAsc(Collection<Integer> ids);
+
+  Mono<OrderRow> findByIdempotencyKey(String idempotencyKey);
+
+  @Modifying
+  @Query("UPDATE orders SET status = :status, version = version + 1 WHERE id IN (:ids)")
+  Mono<Integer> updateStatusByIdIn(@Param("status") String status, @Param("ids") Collection<Integer> ids);
+}
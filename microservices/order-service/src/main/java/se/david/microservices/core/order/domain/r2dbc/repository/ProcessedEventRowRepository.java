@@ -0,0 +1,21 @@
+package se.david.microservices.core.order.domain.r2dbc.repository;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.order.domain.r2dbc.entity.ProcessedEventRow;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public interface ProcessedEventRowRepository extends ReactiveCrudRepository<ProcessedEventRow, String> {
+  @Query("SELECT id FROM processed_events WHERE id IN (:ids)")
+  Flux<String> findIdsByIdIn(@Param("ids") Collection<String> ids);
+
+  @Modifying
+  @Query("DELETE FROM processed_events WHERE processed_at < :before")
+  Mono<Integer> deleteByProcessedAtBefore(@Param("before") LocalDateTime before);
+}
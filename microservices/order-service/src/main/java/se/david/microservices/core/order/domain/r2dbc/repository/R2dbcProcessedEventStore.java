@@ -0,0 +1,65 @@
+package se.david.microservices.core.order.domain.r2dbc.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.order.domain.r2dbc.entity.ProcessedEventRow;
+import se.david.util.messaging.ProcessedEventStore;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// R2DBC version of the JpaProcessedEventStore, enabled with the "r2dbc" profile
+@Profile("r2dbc")
+@Component
+public class R2dbcProcessedEventStore implements ProcessedEventStore {
+  private static final Logger LOG = LoggerFactory.getLogger(R2dbcProcessedEventStore.class);
+  private static final long PURGE_INTERVAL_MILLIS = Duration.ofHours(1).toMillis();
+
+  private final ProcessedEventRowRepository repository;
+  private final Duration retention;
+  private final AtomicLong nextPurgeAt = new AtomicLong();
+
+  @Autowired
+  public R2dbcProcessedEventStore(
+    ProcessedEventRowRepository repository,
+    @Value("${app.deduplication.retentionHours:168}") long retentionHours) {
+    this.repository = repository;
+    this.retention = Duration.ofHours(retentionHours);
+  }
+
+  @Override
+  public Mono<Set<String>> findProcessed(Collection<String> eventIds) {
+    return repository.findIdsByIdIn(eventIds).collect(Collectors.toSet());
+  }
+
+  @Override
+  @Transactional
+  public Mono<Void> markProcessed(Collection<String> eventIds) {
+    return Mono.defer(() -> {
+      LocalDateTime now = LocalDateTime.now();
+      return repository.saveAll(eventIds.stream().map(eventId -> new ProcessedEventRow(eventId, now)).toList())
+        .then(purgeIfDue(now));
+    });
+  }
+
+  private Mono<Void> purgeIfDue(LocalDateTime now) {
+    long nowMillis = System.currentTimeMillis();
+    long due = nextPurgeAt.get();
+    if(nowMillis < due || !nextPurgeAt.compareAndSet(due, nowMillis + PURGE_INTERVAL_MILLIS)) {
+      return Mono.empty();
+    }
+    return repository.deleteByProcessedAtBefore(now.minus(retention))
+      .doOnNext(deleted -> LOG.debug("Purged {} processed event ids older than the retention", deleted))
+      .then();
+  }
+}
@@ -0,0 +1,70 @@
+package se.david.microservices.core.order.domain.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import se.david.microservices.core.order.domain.entity.ProcessedEvent;
+import se.david.util.messaging.ProcessedEventStore;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the processed event ids in the "processed_events" table. Ids older than the retention are deleted at most
+// once an hour, piggybacking on a markProcessed call.
+@Profile("!r2dbc")
+@Component
+public class JpaProcessedEventStore implements ProcessedEventStore {
+  private static final Logger LOG = LoggerFactory.getLogger(JpaProcessedEventStore.class);
+  private static final long PURGE_INTERVAL_MILLIS = Duration.ofHours(1).toMillis();
+
+  private final Scheduler jdbcScheduler;
+  private final ProcessedEventRepository repository;
+  private final long retentionMillis;
+  private final AtomicLong nextPurgeAt = new AtomicLong();
+
+  @Autowired
+  public JpaProcessedEventStore(
+    @Qualifier("jdbcScheduler") Scheduler jdbcScheduler,
+    ProcessedEventRepository repository,
+    @Value("${app.deduplication.retentionHours:168}") long retentionHours) {
+    this.jdbcScheduler = jdbcScheduler;
+    this.repository = repository;
+    this.retentionMillis = Duration.ofHours(retentionHours).toMillis();
+  }
+
+  @Override
+  public Mono<Set<String>> findProcessed(Collection<String> eventIds) {
+    return Mono.<Set<String>>fromCallable(() -> new HashSet<>(repository.findIdsByIdIn(eventIds)))
+      .subscribeOn(jdbcScheduler);
+  }
+
+  @Override
+  public Mono<Void> markProcessed(Collection<String> eventIds) {
+    return Mono.fromRunnable(() -> {
+        Date now = new Date();
+        repository.saveAll(eventIds.stream().map(eventId -> new ProcessedEvent(eventId, now)).toList());
+        purgeIfDue(now.getTime());
+      })
+      .subscribeOn(jdbcScheduler)
+      .then();
+  }
+
+  private void purgeIfDue(long now) {
+    long due = nextPurgeAt.get();
+    if(now < due || !nextPurgeAt.compareAndSet(due, now + PURGE_INTERVAL_MILLIS)) {
+      return;
+    }
+    int deleted = repository.deleteByProcessedAtBefore(new Date(now - retentionMillis));
+    LOG.debug("Purged {} processed event ids older than the retention", deleted);
+  }
+}
@@ -1,7 +1,15 @@
 package se.david.microservices.core.order.domain.repository;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import se.david.api.core.order.dto.OrderItemDto;
 import se.david.microservices.core.order.domain.entity.OrderItem;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface OrderItemRepository extends CrudRepository<OrderItem, Integer> {
+  @Query("select new se.david.api.core.order.dto.OrderItemDto(i.id, i.order.id, i.productId, i.quantity, i.price) from OrderItem i where i.order.id in :orderIds order by i.order.id, i.id")
+  List<OrderItemDto> findDtosByOrderIdIn(@Param("orderIds") Collection<Integer> orderIds);
 }
@@ -1,10 +1,47 @@
 package se.david.microservices.core.order.domain.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import se.david.microservices.core.order.domain.entity.Order;
+import se.david.microservices.core.order.domain.projection.OrderHeader;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface OrderRepository extends CrudRepository<Order, Integer> {
-  List<Order> findByUserId(Integer userId);
+  // Fetch-joins the items for the write paths, which need the managed entity together with its items.
+  @EntityGraph(attributePaths = "orderItems")
+  Optional<Order> findWithOrderItemsById(int id);
+
+  @EntityGraph(attributePaths = "orderItems")
+  Optional<Order> findWithOrderItemsByIdempotencyKey(String idempotencyKey);
+
+  // Header-only read paths: the items of the returned orders are loaded with a single
+  // OrderItemRepository.findDtosByOrderIdIn() query instead of one query per order.
+  @Query("select new se.david.microservices.core.order.domain.projection.OrderHeader(o.id, o.userId, o.totalPrice, o.status, o.createdAt) from Order o order by o.id")
+  List<OrderHeader> findAllHeaders();
+
+  @Query("select new se.david.microservices.core.order.domain.projection.OrderHeader(o.id, o.userId, o.totalPrice, o.status, o.createdAt) from Order o where o.userId = :userId order by o.id")
+  List<OrderHeader> findHeadersByUserId(@Param("userId") int userId);
+
+  @Query("select new se.david.microservices.core.order.domain.projection.OrderHeader(o.id, o.userId, o.totalPrice, o.status, o.createdAt) from Order o where o.id = :id")
+  Optional<OrderHeader> findHeaderById(@Param("id") int id);
+
+  @Query("select new se.david.microservices.core.order.domain.projection.OrderHeader(o.id, o.userId, o.totalPrice, o.status, o.createdAt) from Order o where o.id in :ids order by o.id")
+  List<OrderHeader> findHeadersByIdIn(@Param("ids") Collection<Integer> ids);
+
+  @Query("select new se.david.microservices.core.order.domain.projection.OrderHeader(o.id, o.userId, o.totalPrice, o.status, o.createdAt) from Order o where o.id > :afterId order by o.id")
+  List<OrderHeader> findHeadersByIdGreaterThan(@Param("afterId") int afterId, Pageable pageable);
+
+  // Bumps the version like a save would, so a concurrent read-modify-save of the same order fails its optimistic lock
+  @Modifying
+  @Transactional
+  @Query("update Order o set o.status = :status, o.version = o.version + 1 where o.id in :ids")
+  int updateStatusByIdIn(@Param("status") String status, @Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,22 @@
+package se.david.microservices.core.order.domain.repository;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import se.david.microservices.core.order.domain.entity.ProcessedEvent;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface ProcessedEventRepository extends CrudRepository<ProcessedEvent, String> {
+  @Query("select p.id from ProcessedEvent p where p.id in :ids")
+  List<String> findIdsByIdIn(@Param("ids") Collection<String> ids);
+
+  @Modifying
+  @Transactional
+  @Query("delete from ProcessedEvent p where p.processedAt < :before")
+  int deleteByProcessedAtBefore(@Param("before") Date before);
+}
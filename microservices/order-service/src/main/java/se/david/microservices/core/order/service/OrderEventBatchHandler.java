@@ -0,0 +1,76 @@
+package se.david.microservices.core.order.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.event.Event;
+import se.david.api.exceptions.EventProcessingException;
+import se.david.microservices.core.order.domain.entity.Order;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Applies a batch of order events. Only the last status per order counts, so the UPDATE events collapse into one
+// update statement per distinct status. A CANCEL_ORDER event has no key, it cancels the order created with the
+// idempotency key in its payload, one at a time after the status updates.
+@Component
+public class OrderEventBatchHandler {
+  private static final Logger LOG = LoggerFactory.getLogger(OrderEventBatchHandler.class);
+
+  private final OrderStatusBatchUpdater statusUpdater;
+
+  @Autowired
+  public OrderEventBatchHandler(OrderStatusBatchUpdater statusUpdater) {
+    this.statusUpdater = statusUpdater;
+  }
+
+  public Mono<Void> apply(List<Event<Integer, Order>> events) {
+    Map<Integer, String> statusByOrderId = new LinkedHashMap<>();
+    List<Order> cancellations = new ArrayList<>();
+    for(Event<Integer, Order> event : events) {
+      switch(event.getEventType()) {
+        case UPDATE -> statusByOrderId.put(event.getKey(), event.getData().getStatus());
+        case CANCEL_ORDER -> cancellations.add(validateCancellation(event.getData()));
+        default -> {
+          String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected an UPDATE or CANCEL_ORDER event";
+          LOG.warn(errorMessage);
+          throw new EventProcessingException(errorMessage);
+        }
+      }
+    }
+
+    return updateOrderStatuses(statusByOrderId)
+      .then(Flux.fromIterable(cancellations)
+        .concatMap(order -> statusUpdater.cancelOrderByIdempotencyKey(order.getIdempotencyKey(), order.getUserId()))
+        .then());
+  }
+
+  private static Order validateCancellation(Order order) {
+    if(order == null || order.getIdempotencyKey() == null) {
+      String errorMessage = "A CANCEL_ORDER event needs the idempotency key of the order";
+      LOG.warn(errorMessage);
+      throw new EventProcessingException(errorMessage);
+    }
+    return order;
+  }
+
+  private Mono<Void> updateOrderStatuses(Map<Integer, String> statusByOrderId) {
+    if(statusByOrderId.isEmpty()) {
+      return Mono.empty();
+    }
+    return statusUpdater.updateOrderStatuses(statusByOrderId)
+      .doOnNext(updated -> {
+        if(updated < statusByOrderId.size()) {
+          LOG.warn("Updated {} of {} orders, the others were not found: {}", updated, statusByOrderId.size(), statusByOrderId.keySet());
+        } else {
+          LOG.info("Successfully updated orders for IDs {}", statusByOrderId.keySet());
+        }
+      })
+      .then();
+  }
+}
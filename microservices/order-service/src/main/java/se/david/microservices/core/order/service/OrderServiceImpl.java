@@ -4,12 +4,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
 import se.david.api.core.order.dto.OrderCreateDto;
 import se.david.api.core.order.dto.OrderDto;
 import se.david.api.core.order.dto.OrderItemDto;
@@ -19,31 +23,47 @@ import se.david.api.exceptions.InvalidInputException;
 import se.david.api.exceptions.NotFoundException;
 import se.david.microservices.core.order.domain.entity.Order;
 import se.david.microservices.core.order.domain.entity.OrderItem;
+import se.david.microservices.core.order.domain.projection.OrderHeader;
+import se.david.microservices.core.order.domain.repository.OrderItemRepository;
 import se.david.microservices.core.order.domain.repository.OrderRepository;
 import se.david.microservices.core.order.mapper.OrderItemMapper;
 import se.david.microservices.core.order.mapper.OrderMapper;
 import se.david.util.http.ServiceUtil;
+import se.david.util.messaging.EntityChangePublisher;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
+@Profile("!r2dbc")
 @RestController
-public class OrderServiceImpl implements OrderService {
+public class OrderServiceImpl implements OrderService, OrderStatusBatchUpdater {
   private static final Logger LOG = LoggerFactory.getLogger(OrderServiceImpl.class);
+  private static final int MAX_PAGE_LIMIT = 1000;
+  private static final int STREAM_PAGE_SIZE = 500;
+  private static final int MAX_IN_LIST_SIZE = 1000;
+  private static final int MAX_BATCH_SIZE = 10_000;
   private final OrderRepository repository;
+  private final OrderItemRepository itemRepository;
   private final ServiceUtil serviceUtil;
   private final OrderMapper mapper;
   private final OrderItemMapper itemMapper;
   private final Scheduler jdbcScheduler;
+  private final EntityChangePublisher<Integer, OrderDto> changePublisher;
 
   @Autowired
-  public OrderServiceImpl(@Qualifier("jdbcScheduler") Scheduler jdbcScheduler, OrderRepository repository, ServiceUtil serviceUtil, OrderMapper mapper, OrderItemMapper itemMapper) {
+  public OrderServiceImpl(@Qualifier("jdbcScheduler") Scheduler jdbcScheduler, OrderRepository repository, OrderItemRepository itemRepository, ServiceUtil serviceUtil, OrderMapper mapper, OrderItemMapper itemMapper, EntityChangePublisher<Integer, OrderDto> changePublisher) {
     this.jdbcScheduler = jdbcScheduler;
     this.repository = repository;
+    this.itemRepository = itemRepository;
     this.serviceUtil = serviceUtil;
     this.mapper = mapper;
     this.itemMapper = itemMapper;
+    this.changePublisher = changePublisher;
   }
 
   @Transactional(readOnly = true)
@@ -54,13 +74,83 @@ public class OrderServiceImpl implements OrderService {
     return Mono.fromCallable(this::internalGetOrders)
       .flatMapMany(Flux::fromIterable)
       .subscribeOn(jdbcScheduler)
-      .map(this::mapToOrderDtoWithServiceAddress)
       .doOnError(ex -> LOG.error("Error fetching orders", ex))
       .log(LOG.getName(), Level.FINE);
   }
 
-  private List<Order> internalGetOrders() {
-    return (List<Order>) repository.findAll();
+  private List<OrderDto> internalGetOrders() {
+    return assembleOrderDtos(repository.findAllHeaders());
+  }
+
+  @Override
+  public Flux<OrderDto> getOrdersPage(int afterId, int limit) {
+    LOG.info("getOrdersPage: Fetching up to {} orders after orderId: {}", limit, afterId);
+    validatePageRequest(afterId, limit);
+
+    return Mono.fromCallable(() -> findOrdersPage(afterId, limit))
+      .flatMapMany(Flux::fromIterable)
+      .subscribeOn(jdbcScheduler)
+      .doOnError(ex -> LOG.error("Error fetching orders page after orderId: {}", afterId, ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  // Walks the table one keyset page at a time: only the current page is held in memory and the next
+  // page is not read until the previous one has been consumed.
+  @Override
+  public Flux<OrderDto> streamOrders() {
+    LOG.info("streamOrders: Streaming all orders");
+
+    return getOrdersStreamPage(0)
+      .expand(page -> page.size() < STREAM_PAGE_SIZE ? Mono.empty() : getOrdersStreamPage(page.getLast().id()))
+      .flatMapIterable(page -> page, 1)
+      .doOnError(ex -> LOG.error("Error streaming orders", ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private Mono<List<OrderDto>> getOrdersStreamPage(int afterId) {
+    return Mono.fromCallable(() -> findOrdersPage(afterId, STREAM_PAGE_SIZE))
+      .subscribeOn(jdbcScheduler);
+  }
+
+  private List<OrderDto> findOrdersPage(int afterId, int limit) {
+    return assembleOrderDtos(repository.findHeadersByIdGreaterThan(afterId, PageRequest.ofSize(limit)));
+  }
+
+  private void validatePageRequest(int afterId, int limit) {
+    if(afterId < 0) {
+      throw new InvalidInputException("Invalid afterId: " + afterId);
+    }
+    if(limit < 1 || limit > MAX_PAGE_LIMIT) {
+      throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + MAX_PAGE_LIMIT);
+    }
+  }
+
+  // The items of all the given orders are read with one IN query per MAX_IN_LIST_SIZE orders,
+  // instead of one query per order, and mapped straight into the DTOs.
+  private List<OrderDto> assembleOrderDtos(List<OrderHeader> headers) {
+    if(headers.isEmpty()) {
+      return List.of();
+    }
+
+    List<Integer> orderIds = headers.stream()
+      .map(OrderHeader::id)
+      .collect(Collectors.toList());
+    Map<Integer, List<OrderItemDto>> itemsByOrderId = findOrderItemsByOrderIds(orderIds);
+
+    return headers.stream()
+      .map(header -> new OrderDto(header.id(), header.userId(), header.totalPrice(), header.status(), header.createdAt(),
+        itemsByOrderId.getOrDefault(header.id(), List.of()), serviceUtil.getServiceAddress()))
+      .collect(Collectors.toList());
+  }
+
+  private Map<Integer, List<OrderItemDto>> findOrderItemsByOrderIds(List<Integer> orderIds) {
+    Map<Integer, List<OrderItemDto>> itemsByOrderId = new HashMap<>();
+    for(int from = 0; from < orderIds.size(); from += MAX_IN_LIST_SIZE) {
+      List<Integer> chunk = orderIds.subList(from, Math.min(from + MAX_IN_LIST_SIZE, orderIds.size()));
+      itemRepository.findDtosByOrderIdIn(chunk)
+        .forEach(item -> itemsByOrderId.computeIfAbsent(item.orderId(), orderId -> new ArrayList<>()).add(item));
+    }
+    return itemsByOrderId;
   }
 
   private OrderDto mapToOrderDtoWithServiceAddress(Order order) {
@@ -82,13 +172,12 @@ public class OrderServiceImpl implements OrderService {
     return Mono.fromCallable(() -> findOrdersByUserId(userId))
       .flatMapMany(Flux::fromIterable)
       .subscribeOn(jdbcScheduler)
-      .map(this::mapToOrderDtoWithServiceAddress)
       .doOnError(ex -> LOG.error("Error fetching orders for userId: {}", userId, ex))
       .log(LOG.getName(), Level.FINE);
   }
 
-  private List<Order> findOrdersByUserId(int userId) {
-    return repository.findByUserId(userId);
+  private List<OrderDto> findOrdersByUserId(int userId) {
+    return assembleOrderDtos(repository.findHeadersByUserId(userId));
   }
 
   private void validateUserId(int userId) {
@@ -103,15 +192,42 @@ public class OrderServiceImpl implements OrderService {
     LOG.debug("getOrder: Fetching order for orderId: {}", orderId);
     validateOrderId(orderId);
 
-    return Mono.fromCallable(() -> findOrderById(orderId))
+    return Mono.fromCallable(() -> findOrderDtoById(orderId))
       .subscribeOn(jdbcScheduler)
-      .map(this::mapToOrderDtoWithServiceAddress)
       .doOnError(ex -> LOG.error("Error fetching order for orderId: {}", orderId, ex))
       .log(LOG.getName(), Level.FINE);
   }
 
+  // One header query per MAX_IN_LIST_SIZE ids, whose items are then read with the same chunked IN query
+  @Override
+  public Flux<OrderDto> getOrdersBatch(List<Integer> orderIds) {
+    LOG.debug("getOrdersBatch: Fetching orders for a batch of {} orderIds", orderIds.size());
+    validateBatchSize(orderIds);
+
+    return Flux.fromIterable(orderIds)
+      .distinct()
+      .buffer(MAX_IN_LIST_SIZE)
+      .concatMap(chunk -> Mono.fromCallable(() -> assembleOrderDtos(repository.findHeadersByIdIn(chunk)))
+        .subscribeOn(jdbcScheduler))
+      .flatMapIterable(orders -> orders)
+      .doOnError(ex -> LOG.error("Error fetching a batch of orders", ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private void validateBatchSize(List<Integer> orderIds) {
+    if(orderIds.size() > MAX_BATCH_SIZE) {
+      throw new InvalidInputException("Too many ids: " + orderIds.size() + ", at most " + MAX_BATCH_SIZE + " per batch");
+    }
+  }
+
+  private OrderDto findOrderDtoById(int orderId) {
+    OrderHeader header = repository.findHeaderById(orderId)
+      .orElseThrow(() -> new NotFoundException("Order with id " + orderId + " not found"));
+    return assembleOrderDtos(List.of(header)).getFirst();
+  }
+
   private Order findOrderById(int orderId) {
-    return repository.findById(orderId)
+    return repository.findWithOrderItemsById(orderId)
       .orElseThrow(() -> new NotFoundException("Order with id " + orderId + " not found"));
   }
 
@@ -129,16 +245,28 @@ public class OrderServiceImpl implements OrderService {
     validateUserId(orderCreateDto.userId());
 
     return Mono.fromCallable(() -> internalCreateOrder(orderCreateDto))
+      .onErrorResume(DataIntegrityViolationException.class, ex -> orderCreateDto.idempotencyKey() == null
+        ? Mono.error(ex)
+        : Mono.fromCallable(() -> findOrderCreatedWith(orderCreateDto.idempotencyKey()).orElseThrow(() -> ex)))
       .subscribeOn(jdbcScheduler)
       .map(this::mapToOrderDtoWithServiceAddress)
       .onErrorMap(DuplicateKeyException.class, ex ->
         new InvalidInputException("Duplicate order for userId: " + orderCreateDto.userId()))
       .doOnSuccess(savedOrder -> LOG.debug("Successfully created order with id: {}", savedOrder.id()))
+      .doOnSuccess(changePublisher::publishChanged)
       .doOnError(ex -> LOG.error("Error creating order for userId: {}", orderCreateDto.userId(), ex))
       .log(LOG.getName(), Level.FINE);
   }
 
+  // An order that is sent again with the same idempotency key is not created twice, the first one is returned
   private Order internalCreateOrder(OrderCreateDto orderCreateDto) {
+    if(orderCreateDto.idempotencyKey() != null) {
+      Optional<Order> existing = findOrderCreatedWith(orderCreateDto.idempotencyKey());
+      if(existing.isPresent()) {
+        return existing.get();
+      }
+    }
+
     Order order = mapper.createDtoToEntity(orderCreateDto);
 
     List<OrderItem> orderItems = orderCreateDto.orderItems().stream()
@@ -152,6 +280,14 @@ public class OrderServiceImpl implements OrderService {
     return repository.save(order);
   }
 
+  private Optional<Order> findOrderCreatedWith(String idempotencyKey) {
+    Optional<Order> order = repository.findWithOrderItemsByIdempotencyKey(idempotencyKey);
+    if(order.isPresent() && CANCELLED_STATUS.equals(order.get().getStatus())) {
+      throw new InvalidInputException("The order with idempotency key " + idempotencyKey + " was cancelled");
+    }
+    return order;
+  }
+
 
   @Override
   public Mono<OrderDto> updateOrder(int orderId, OrderUpdateDto orderUpdateDto) {
@@ -165,11 +301,50 @@ public class OrderServiceImpl implements OrderService {
       .onErrorMap(IllegalArgumentException.class, ex ->
         new InvalidInputException("Invalid orderId: " + orderId))
       .doOnSuccess(updatedOrder -> LOG.debug("Successfully updated order with id: {}", updatedOrder.id()))
+      .doOnSuccess(changePublisher::publishChanged)
       .doOnError(ex -> LOG.error("Error updating order with id: {}", orderId, ex))
       .log(LOG.getName(), Level.FINE);
   }
 
 
+  @Override
+  public Mono<Integer> updateOrderStatuses(Map<Integer, String> statusByOrderId) {
+    LOG.debug("updateOrderStatuses: Updating the status of {} orders", statusByOrderId.size());
+
+    return Mono.fromCallable(() -> OrderStatusBatchUpdater.orderIdsByStatus(statusByOrderId).entrySet().stream()
+        .mapToInt(orderIds -> repository.updateStatusByIdIn(orderIds.getKey(), orderIds.getValue()))
+        .sum())
+      .subscribeOn(jdbcScheduler)
+      .doOnError(ex -> LOG.error("Error updating the status of orders: {}", statusByOrderId.keySet(), ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  // A cancel and a create with the same key that race both try to insert the key, the loser reads the winner's order
+  @Override
+  public Mono<Void> cancelOrderByIdempotencyKey(String idempotencyKey, int userId) {
+    LOG.debug("cancelOrderByIdempotencyKey: Cancelling the order with idempotency key: {}", idempotencyKey);
+
+    return Mono.fromCallable(() -> internalCancelOrder(idempotencyKey, userId))
+      .retryWhen(Retry.max(1).filter(DataIntegrityViolationException.class::isInstance))
+      .subscribeOn(jdbcScheduler)
+      .map(this::mapToOrderDtoWithServiceAddress)
+      .doOnSuccess(cancelledOrder -> LOG.info("Cancelled order with id: {} for idempotency key: {}", cancelledOrder.id(), idempotencyKey))
+      .doOnSuccess(changePublisher::publishChanged)
+      .doOnError(ex -> LOG.error("Error cancelling the order with idempotency key: {}", idempotencyKey, ex))
+      .then();
+  }
+
+  private Order internalCancelOrder(String idempotencyKey, int userId) {
+    Order order = repository.findWithOrderItemsByIdempotencyKey(idempotencyKey).orElseGet(() -> {
+      Order placeholder = new Order();
+      placeholder.setUserId(userId);
+      placeholder.setIdempotencyKey(idempotencyKey);
+      return placeholder;
+    });
+    order.setStatus(CANCELLED_STATUS);
+    return repository.save(order);
+  }
+
   private Order internalUpdateOrder(int orderId, OrderUpdateDto orderUpdateDto) {
     Order order = findOrderById(orderId);
 
@@ -185,6 +360,7 @@ public class OrderServiceImpl implements OrderService {
 
     return Mono.fromRunnable(() -> internalDeleteOrder(orderId))
       .subscribeOn(jdbcScheduler)
+      .doOnSuccess(unused -> changePublisher.publishDeleted(orderId))
       .doOnError(ex -> LOG.error("Error deleting order with id: {}", orderId, ex))
       .then();
   }
@@ -0,0 +1,26 @@
+package se.david.microservices.core.order.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Status changes from a batch of order events, written with one update statement per distinct status
+public interface OrderStatusBatchUpdater {
+  String CANCELLED_STATUS = "CANCELLED";
+
+  // Emits how many orders were updated; ids without an order are skipped
+  Mono<Integer> updateOrderStatuses(Map<Integer, String> statusByOrderId);
+
+  // Cancels the order created with the idempotency key. When it has not been created yet, a cancelled order without
+  // items takes the key, so the create that arrives later is refused.
+  Mono<Void> cancelOrderByIdempotencyKey(String idempotencyKey, int userId);
+
+  static Map<String, List<Integer>> orderIdsByStatus(Map<Integer, String> statusByOrderId) {
+    Map<String, List<Integer>> orderIdsByStatus = new LinkedHashMap<>();
+    statusByOrderId.forEach((orderId, status) -> orderIdsByStatus.computeIfAbsent(status, s -> new ArrayList<>()).add(orderId));
+    return orderIdsByStatus;
+  }
+}
@@ -0,0 +1,293 @@
+package se.david.microservices.core.order.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import se.david.api.core.order.dto.OrderCreateDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.order.dto.OrderItemDto;
+import se.david.api.core.order.dto.OrderUpdateDto;
+import se.david.api.core.order.service.OrderService;
+import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.NotFoundException;
+import se.david.microservices.core.order.domain.r2dbc.entity.OrderItemRow;
+import se.david.microservices.core.order.domain.r2dbc.entity.OrderRow;
+import se.david.microservices.core.order.domain.r2dbc.repository.OrderItemRowRepository;
+import se.david.microservices.core.order.domain.r2dbc.repository.OrderRowRepository;
+import se.david.util.http.ServiceUtil;
+import se.david.util.messaging.EntityChangePublisher;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+// Non-blocking OrderService on R2DBC, enabled with the "r2dbc" profile. Nothing here runs on the
+// jdbcScheduler: concurrency is bounded by the R2DBC connection pool instead of a thread pool.
+@Profile("r2dbc")
+@RestController
+public class ReactiveOrderServiceImpl implements OrderService, OrderStatusBatchUpdater {
+  private static final Logger LOG = LoggerFactory.getLogger(ReactiveOrderServiceImpl.class);
+  private static final int MAX_PAGE_LIMIT = 1000;
+  private static final int MAX_IN_LIST_SIZE = 1000;
+  private static final int MAX_BATCH_SIZE = 10_000;
+  private final OrderRowRepository repository;
+  private final OrderItemRowRepository itemRepository;
+  private final ServiceUtil serviceUtil;
+  private final EntityChangePublisher<Integer, OrderDto> changePublisher;
+  private final TransactionalOperator transactionalOperator;
+
+  @Autowired
+  public ReactiveOrderServiceImpl(OrderRowRepository repository, OrderItemRowRepository itemRepository, ServiceUtil serviceUtil, EntityChangePublisher<Integer, OrderDto> changePublisher, TransactionalOperator transactionalOperator) {
+    this.repository = repository;
+    this.itemRepository = itemRepository;
+    this.serviceUtil = serviceUtil;
+    this.changePublisher = changePublisher;
+    this.transactionalOperator = transactionalOperator;
+  }
+
+  @Override
+  public Flux<OrderDto> getOrders() {
+    LOG.info("getOrders: Fetching all orders");
+
+    return withOrderItems(repository.findAllByOrderByIdAsc())
+      .doOnError(ex -> LOG.error("Error fetching orders", ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  @Override
+  public Flux<OrderDto> getOrdersPage(int afterId, int limit) {
+    LOG.info("getOrdersPage: Fetching up to {} orders after orderId: {}", limit, afterId);
+    validatePageRequest(afterId, limit);
+
+    return withOrderItems(repository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.ofSize(limit)))
+      .doOnError(ex -> LOG.error("Error fetching orders page after orderId: {}", afterId, ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  // The driver streams the rows with backpressure, so no keyset paging is needed to bound memory here.
+  @Override
+  public Flux<OrderDto> streamOrders() {
+    LOG.info("streamOrders: Streaming all orders");
+
+    return withOrderItems(repository.findAllByOrderByIdAsc())
+      .doOnError(ex -> LOG.error("Error streaming orders", ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private void validatePageRequest(int afterId, int limit) {
+    if(afterId < 0) {
+      throw new InvalidInputException("Invalid afterId: " + afterId);
+    }
+    if(limit < 1 || limit > MAX_PAGE_LIMIT) {
+      throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + MAX_PAGE_LIMIT);
+    }
+  }
+
+  // Same read shape as the JPA implementation: one IN query for the items of up to MAX_IN_LIST_SIZE orders.
+  private Flux<OrderDto> withOrderItems(Flux<OrderRow> orders) {
+    return orders
+      .buffer(MAX_IN_LIST_SIZE)
+      .concatMap(this::assembleOrderDtos);
+  }
+
+  private Flux<OrderDto> assembleOrderDtos(List<OrderRow> orders) {
+    List<Integer> orderIds = orders.stream()
+      .map(OrderRow::getId)
+      .toList();
+
+    return itemRepository.findByOrderIdInOrderByOrderIdAscIdAsc(orderIds)
+      .collectMultimap(OrderItemRow::getOrderId, this::mapToOrderItemDto)
+      .flatMapIterable(itemsByOrderId -> orders.stream()
+        .map(order -> mapToOrderDto(order, itemsByOrderId))
+        .toList());
+  }
+
+  private OrderDto mapToOrderDto(OrderRow order, Map<Integer, Collection<OrderItemDto>> itemsByOrderId) {
+    return mapToOrderDto(order, new ArrayList<>(itemsByOrderId.getOrDefault(order.getId(), List.of())));
+  }
+
+  private OrderDto mapToOrderDto(OrderRow order, List<OrderItemDto> orderItems) {
+    Date createdAt = Date.from(order.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant());
+    return new OrderDto(order.getId(), order.getUserId(), order.getTotalPrice(), order.getStatus(), createdAt, orderItems, serviceUtil.getServiceAddress());
+  }
+
+  private OrderItemDto mapToOrderItemDto(OrderItemRow item) {
+    return new OrderItemDto(item.getId(), item.getOrderId(), item.getProductId(), item.getQuantity(), item.getPrice());
+  }
+
+  @Override
+  public Flux<OrderDto> getOrdersByUser(int userId) {
+    LOG.info("getOrdersByUser: Fetching all orders for userId: {}", userId);
+    validateUserId(userId);
+
+    return withOrderItems(repository.findByUserIdOrderByIdAsc(userId))
+      .doOnError(ex -> LOG.error("Error fetching orders for userId: {}", userId, ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private void validateUserId(int userId) {
+    if(userId < 1) {
+      throw new InvalidInputException("Invalid userId: " + userId);
+    }
+  }
+
+  @Override
+  public Mono<OrderDto> getOrder(int orderId) {
+    LOG.debug("getOrder: Fetching order for orderId: {}", orderId);
+    validateOrderId(orderId);
+
+    return findOrderById(orderId)
+      .flatMap(order -> assembleOrderDtos(List.of(order)).single())
+      .doOnError(ex -> LOG.error("Error fetching order for orderId: {}", orderId, ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  @Override
+  public Flux<OrderDto> getOrdersBatch(List<Integer> orderIds) {
+    LOG.debug("getOrdersBatch: Fetching orders for a batch of {} orderIds", orderIds.size());
+    validateBatchSize(orderIds);
+
+    return Flux.fromIterable(orderIds)
+      .distinct()
+      .buffer(MAX_IN_LIST_SIZE)
+      .concatMap(chunk -> withOrderItems(repository.findByIdInOrderByIdAsc(chunk)))
+      .doOnError(ex -> LOG.error("Error fetching a batch of orders", ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private void validateBatchSize(List<Integer> orderIds) {
+    if(orderIds.size() > MAX_BATCH_SIZE) {
+      throw new InvalidInputException("Too many ids: " + orderIds.size() + ", at most " + MAX_BATCH_SIZE + " per batch");
+    }
+  }
+
+  private Mono<OrderRow> findOrderById(int orderId) {
+    return repository.findById(orderId)
+      .switchIfEmpty(Mono.error(new NotFoundException("Order with id " + orderId + " not found")));
+  }
+
+  private void validateOrderId(int orderId) {
+    if(orderId < 1) {
+      throw new InvalidInputException("Invalid orderId: " + orderId);
+    }
+  }
+
+  // Only the inserts run in a transaction. When a create with the same idempotency key wins the race for the key,
+  // its order is read after the transaction has been rolled back, as a transaction that has already read the key
+  // would not see it.
+  @Override
+  public Mono<OrderDto> createOrder(OrderCreateDto orderCreateDto) {
+    LOG.debug("createOrder: Creating order for userId: {}", orderCreateDto.userId());
+
+    validateUserId(orderCreateDto.userId());
+
+    int totalPrice = orderCreateDto.orderItems().stream().mapToInt(item -> item.price() * item.quantity()).sum();
+    String idempotencyKey = orderCreateDto.idempotencyKey();
+
+    Mono<OrderDto> create = repository.save(new OrderRow(orderCreateDto.userId(), totalPrice, idempotencyKey))
+      .flatMap(order -> itemRepository.saveAll(orderCreateDto.orderItems().stream()
+          .map(item -> new OrderItemRow(order.getId(), item.productId(), item.quantity(), item.price()))
+          .toList())
+        .map(this::mapToOrderItemDto)
+        .collectList()
+        .map(orderItems -> mapToOrderDto(order, orderItems)))
+      .as(transactionalOperator::transactional);
+
+    // An order that is sent again with the same idempotency key is not created twice, the first one is returned
+    Mono<OrderDto> createOnce = idempotencyKey == null ? create : findOrderCreatedWith(idempotencyKey)
+      .switchIfEmpty(create)
+      .onErrorResume(DataIntegrityViolationException.class, ex -> findOrderCreatedWith(idempotencyKey).switchIfEmpty(Mono.error(ex)));
+
+    return createOnce
+      .onErrorMap(DuplicateKeyException.class, ex ->
+        new InvalidInputException("Duplicate order for userId: " + orderCreateDto.userId()))
+      .doOnSuccess(savedOrder -> LOG.debug("Successfully created order with id: {}", savedOrder.id()))
+      .doOnSuccess(changePublisher::publishChanged)
+      .doOnError(ex -> LOG.error("Error creating order for userId: {}", orderCreateDto.userId(), ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private Mono<OrderDto> findOrderCreatedWith(String idempotencyKey) {
+    return repository.findByIdempotencyKey(idempotencyKey)
+      .flatMap(order -> CANCELLED_STATUS.equals(order.getStatus())
+        ? Mono.error(new InvalidInputException("The order with idempotency key " + idempotencyKey + " was cancelled"))
+        : assembleOrderDtos(List.of(order)).single());
+  }
+
+  @Transactional
+  @Override
+  public Mono<OrderDto> updateOrder(int orderId, OrderUpdateDto orderUpdateDto) {
+    LOG.debug("updateOrder: Updating order with id: {}", orderId);
+
+    validateOrderId(orderId);
+
+    return findOrderById(orderId)
+      .flatMap(order -> {
+        order.setStatus(orderUpdateDto.status());
+        return repository.save(order);
+      })
+      .flatMap(order -> assembleOrderDtos(List.of(order)).single())
+      .doOnSuccess(updatedOrder -> LOG.debug("Successfully updated order with id: {}", updatedOrder.id()))
+      .doOnSuccess(changePublisher::publishChanged)
+      .doOnError(ex -> LOG.error("Error updating order with id: {}", orderId, ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  @Transactional
+  @Override
+  public Mono<Integer> updateOrderStatuses(Map<Integer, String> statusByOrderId) {
+    LOG.debug("updateOrderStatuses: Updating the status of {} orders", statusByOrderId.size());
+
+    return Flux.fromIterable(OrderStatusBatchUpdater.orderIdsByStatus(statusByOrderId).entrySet())
+      .concatMap(orderIds -> repository.updateStatusByIdIn(orderIds.getKey(), orderIds.getValue()))
+      .reduce(0, Integer::sum)
+      .doOnError(ex -> LOG.error("Error updating the status of orders: {}", statusByOrderId.keySet(), ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  // Not in one transaction: a cancel and a create with the same key that race both try to insert the key, and the
+  // loser must read the winner's order, which a transaction that has already read the table would not see.
+  @Override
+  public Mono<Void> cancelOrderByIdempotencyKey(String idempotencyKey, int userId) {
+    LOG.debug("cancelOrderByIdempotencyKey: Cancelling the order with idempotency key: {}", idempotencyKey);
+
+    return repository.findByIdempotencyKey(idempotencyKey)
+      .switchIfEmpty(Mono.fromSupplier(() -> new OrderRow(userId, 0, idempotencyKey)))
+      .flatMap(order -> {
+        order.setStatus(CANCELLED_STATUS);
+        return repository.save(order);
+      })
+      .retryWhen(Retry.max(1).filter(DataIntegrityViolationException.class::isInstance))
+      .flatMap(order -> assembleOrderDtos(List.of(order)).single())
+      .doOnSuccess(cancelledOrder -> LOG.info("Cancelled order with id: {} for idempotency key: {}", cancelledOrder.id(), idempotencyKey))
+      .doOnSuccess(changePublisher::publishChanged)
+      .doOnError(ex -> LOG.error("Error cancelling the order with idempotency key: {}", idempotencyKey, ex))
+      .then();
+  }
+
+  @Transactional
+  @Override
+  public Mono<Void> deleteOrder(int orderId) {
+    LOG.debug("deleteOrder: Deleting order with id: {}", orderId);
+    validateOrderId(orderId);
+
+    return findOrderById(orderId)
+      .flatMap(order -> itemRepository.deleteByOrderId(orderId).then(repository.delete(order)))
+      .doOnSuccess(unused -> changePublisher.publishDeleted(orderId))
+      .doOnError(ex -> LOG.error("Error deleting order with id: {}", orderId, ex));
+  }
+}
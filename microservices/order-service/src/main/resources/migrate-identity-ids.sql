@@ -0,0 +1,18 @@
+-- Tables created before the ids were generated by IDENTITY have no AUTO_INCREMENT on their id, which
+-- ddl-auto=update does not add. Adds it once, only to a table that lacks it; AUTO_INCREMENT then continues
+-- after the highest existing id. The foreign key of order_items on orders.id would refuse the change otherwise.
+SET FOREIGN_KEY_CHECKS = 0;
+
+SET @orders_id = IF((SELECT EXTRA FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'orders' AND COLUMN_NAME = 'id') NOT LIKE '%auto_increment%',
+  'ALTER TABLE orders MODIFY id INT NOT NULL AUTO_INCREMENT', 'DO 0');
+PREPARE migrate_orders_id FROM @orders_id;
+EXECUTE migrate_orders_id;
+DEALLOCATE PREPARE migrate_orders_id;
+
+SET @order_items_id = IF((SELECT EXTRA FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'order_items' AND COLUMN_NAME = 'id') NOT LIKE '%auto_increment%',
+  'ALTER TABLE order_items MODIFY id INT NOT NULL AUTO_INCREMENT', 'DO 0');
+PREPARE migrate_order_items_id FROM @order_items_id;
+EXECUTE migrate_order_items_id;
+DEALLOCATE PREPARE migrate_order_items_id;
+
+SET FOREIGN_KEY_CHECKS = 1;
@@ -0,0 +1,31 @@
+CREATE TABLE IF NOT EXISTS orders (
+  id INT NOT NULL AUTO_INCREMENT,
+  version INT NOT NULL,
+  user_id INT NOT NULL,
+  total_price INT NOT NULL,
+  status VARCHAR(255) NOT NULL,
+  created_at DATETIME(6) NOT NULL,
+  idempotency_key VARCHAR(36) NULL,
+  PRIMARY KEY (id),
+  KEY idx_orders_user_id (user_id),
+  UNIQUE KEY uk_orders_idempotency_key (idempotency_key)
+);
+
+CREATE TABLE IF NOT EXISTS order_items (
+  id INT NOT NULL AUTO_INCREMENT,
+  version INT NOT NULL,
+  order_id INT NOT NULL,
+  product_id INT NOT NULL,
+  quantity INT NOT NULL,
+  price INT NOT NULL,
+  PRIMARY KEY (id),
+  KEY idx_order_items_order_id (order_id),
+  CONSTRAINT fk_order_items_order FOREIGN KEY (order_id) REFERENCES orders (id)
+);
+
+CREATE TABLE IF NOT EXISTS processed_events (
+  id VARCHAR(36) NOT NULL,
+  processed_at DATETIME(6) NOT NULL,
+  PRIMARY KEY (id),
+  KEY idx_processed_events_processed_at (processed_at)
+);
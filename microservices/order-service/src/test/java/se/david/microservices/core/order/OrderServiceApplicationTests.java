@@ -1,11 +1,17 @@
 package se.david.microservices.core.order;
 
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -16,8 +22,11 @@ import se.david.api.core.order.dto.OrderCreateDto;
 import se.david.api.core.order.dto.OrderDto;
 import se.david.api.core.order.dto.OrderItemCreateDto;
 
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT)
@@ -37,11 +46,18 @@ class OrderServiceApplicationTests {
     registry.add("spring.datasource.password", mysql::getPassword);
     registry.add("eureka.client.enabled", () -> "false");
     registry.add("spring.cloud.discovery.enabled", () -> "false");
+    registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> "true");
   }
 
   @Autowired
   private WebTestClient client;
 
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private DataSource dataSource;
+
   @Test
   @DisplayName("POST /orders persists a totalPrice computed from the order items")
   void createOrderPersistsTotalPriceComputedFromItems() {
@@ -115,4 +131,90 @@ class OrderServiceApplicationTests {
       .exchange()
       .expectStatus().isNotFound();
   }
+
+  @Test
+  @DisplayName("GET /orders/user/{userId} issues the same number of SQL statements no matter how many orders the user has")
+  void getOrdersByUserStatementCountIsConstant() {
+    createOrders(3001, 2);
+    createOrders(3002, 20);
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    statistics.clear();
+    getOrdersByUser(3001, 2);
+    long fewOrdersStatementCount = statistics.getPrepareStatementCount();
+
+    statistics.clear();
+    getOrdersByUser(3002, 20);
+    long manyOrdersStatementCount = statistics.getPrepareStatementCount();
+
+    // One statement for the order headers and one for the items of all of them
+    assertEquals(2, fewOrdersStatementCount);
+    assertEquals(fewOrdersStatementCount, manyOrdersStatementCount);
+  }
+
+  @Test
+  @DisplayName("POST /orders/batch returns every known order in the body with one statement for the headers and one for the items")
+  void getOrdersBatchReadsHeadersAndItemsOnce() {
+    createOrders(3101, 3);
+    List<Integer> orderIds = client.get().uri("/orders/user/{userId}", 3101)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBodyList(OrderDto.class)
+      .returnResult()
+      .getResponseBody()
+      .stream()
+      .map(OrderDto::id)
+      .toList();
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    statistics.clear();
+    client.post().uri("/orders/batch")
+      .bodyValue(List.of(orderIds.get(0), orderIds.get(1), orderIds.get(1), orderIds.get(2), 999_999))
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(3)
+      .jsonPath("$[0].orderItems.length()").isEqualTo(2);
+
+    assertEquals(2, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  @DisplayName("migrate-identity-ids.sql makes the tables of the former id generator usable with IDENTITY ids")
+  void identityMigrationAddsAutoIncrementToOlderTables() {
+    createOrders(3201, 1);
+    new ResourceDatabasePopulator(new ByteArrayResource((
+      "SET FOREIGN_KEY_CHECKS = 0;" +
+      "ALTER TABLE orders MODIFY id INT NOT NULL;" +
+      "ALTER TABLE order_items MODIFY id INT NOT NULL;" +
+      "SET FOREIGN_KEY_CHECKS = 1;").getBytes(StandardCharsets.UTF_8)))
+      .execute(dataSource);
+
+    new ResourceDatabasePopulator(new ClassPathResource("migrate-identity-ids.sql")).execute(dataSource);
+    // A second run finds AUTO_INCREMENT and changes nothing
+    new ResourceDatabasePopulator(new ClassPathResource("migrate-identity-ids.sql")).execute(dataSource);
+
+    createOrders(3201, 2);
+    getOrdersByUser(3201, 3);
+  }
+
+  private void createOrders(int userId, int count) {
+    for(int i = 0; i < count; i++) {
+      client.post().uri("/orders")
+        .bodyValue(new OrderCreateDto(userId, List.of(
+          new OrderItemCreateDto(101, 1, 100),
+          new OrderItemCreateDto(102, 2, 200))))
+        .exchange()
+        .expectStatus().isOk();
+    }
+  }
+
+  private void getOrdersByUser(int userId, int expectedOrderCount) {
+    client.get().uri("/orders/user/{userId}", userId)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(expectedOrderCount)
+      .jsonPath("$[0].orderItems.length()").isEqualTo(2);
+  }
 }
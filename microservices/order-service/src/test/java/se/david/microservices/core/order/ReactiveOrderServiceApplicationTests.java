@@ -0,0 +1,167 @@
+package se.david.microservices.core.order;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import se.david.api.core.order.dto.OrderCreateDto;
+import se.david.api.core.order.dto.OrderDto;
+import se.david.api.core.order.dto.OrderItemCreateDto;
+import se.david.api.core.order.dto.OrderUpdateDto;
+import se.david.api.core.order.service.OrderService;
+import se.david.microservices.core.order.service.ReactiveOrderServiceImpl;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@Import(TestChannelBinderConfiguration.class)
+@ActiveProfiles("r2dbc")
+@Testcontainers
+class ReactiveOrderServiceApplicationTests {
+
+  @Container
+  @SuppressWarnings("resource")
+  static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+    .withDatabaseName("order_db");
+
+  @DynamicPropertySource
+  static void mysqlProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.r2dbc.url", () -> "r2dbc:mysql://" + mysql.getHost() + ":" + mysql.getMappedPort(3306) + "/order_db");
+    registry.add("spring.r2dbc.username", mysql::getUsername);
+    registry.add("spring.r2dbc.password", mysql::getPassword);
+    registry.add("eureka.client.enabled", () -> "false");
+    registry.add("spring.cloud.discovery.enabled", () -> "false");
+  }
+
+  @Autowired
+  private WebTestClient client;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Test
+  @DisplayName("The r2dbc profile replaces the JPA implementation of OrderService")
+  void r2dbcProfileUsesReactiveOrderService() {
+    assertInstanceOf(ReactiveOrderServiceImpl.class, orderService);
+  }
+
+  @Test
+  @DisplayName("POST /orders persists the order and its items and GET /orders/{id} reads them back")
+  void createAndGetOrder() {
+    OrderDto created = createOrder(new OrderCreateDto(1,
+      List.of(
+        new OrderItemCreateDto(101, 2, 500),
+        new OrderItemCreateDto(102, 3, 300))));
+
+    assertEquals(1900, created.totalPrice());
+    assertEquals(2, created.orderItems().size());
+
+    client.get().uri("/orders/{id}", created.id())
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.status").isEqualTo("PENDING")
+      .jsonPath("$.totalPrice").isEqualTo(1900)
+      .jsonPath("$.orderItems.length()").isEqualTo(2)
+      .jsonPath("$.orderItems[0].price").isEqualTo(500)
+      .jsonPath("$.orderItems[1].price").isEqualTo(300);
+  }
+
+  @Test
+  @DisplayName("GET /orders/user/{userId} returns every order of the user with its items")
+  void getOrdersByUser() {
+    for(int i = 0; i < 3; i++) {
+      createOrder(new OrderCreateDto(4001, List.of(
+        new OrderItemCreateDto(101, 1, 100),
+        new OrderItemCreateDto(102, 2, 200))));
+    }
+
+    client.get().uri("/orders/user/{userId}", 4001)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(3)
+      .jsonPath("$[2].orderItems.length()").isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("PUT /orders/{id} updates the status of the order")
+  void updateOrderStatus() {
+    OrderDto created = createOrder(new OrderCreateDto(5, List.of(new OrderItemCreateDto(501, 1, 50))));
+
+    client.put().uri("/orders/{id}", created.id())
+      .bodyValue(new OrderUpdateDto("SHIPPED"))
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.status").isEqualTo("SHIPPED")
+      .jsonPath("$.orderItems.length()").isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("DELETE /orders/{id} removes the order and GET /orders/{id} then returns 404")
+  void deleteOrder() {
+    OrderDto created = createOrder(new OrderCreateDto(2, List.of(new OrderItemCreateDto(201, 1, 250))));
+
+    client.delete().uri("/orders/{id}", created.id())
+      .exchange()
+      .expectStatus().isOk();
+
+    client.get().uri("/orders/{id}", created.id())
+      .exchange()
+      .expectStatus().isNotFound();
+  }
+
+  @Test
+  @DisplayName("Two creates that race with the same idempotency key both answer with the one order that was created")
+  void racingCreatesWithSameIdempotencyKeyCreateOneOrder() {
+    for(int round = 0; round < 10; round++) {
+      int userId = 6001 + round;
+      OrderCreateDto createDto = new OrderCreateDto(userId, List.of(new OrderItemCreateDto(601, 1, 60)), UUID.randomUUID().toString());
+
+      Tuple2<OrderDto, OrderDto> created = Mono.zip(
+          orderService.createOrder(createDto).subscribeOn(Schedulers.parallel()),
+          orderService.createOrder(createDto).subscribeOn(Schedulers.parallel()))
+        .block();
+
+      assert created != null;
+      assertEquals(created.getT1().id(), created.getT2().id());
+      assertEquals(1, created.getT2().orderItems().size());
+      client.get().uri("/orders/user/{userId}", userId)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(1);
+    }
+  }
+
+  private OrderDto createOrder(OrderCreateDto createDto) {
+    OrderDto created = client.post().uri("/orders")
+      .bodyValue(createDto)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody(OrderDto.class)
+      .returnResult()
+      .getResponseBody();
+
+    assert created != null;
+    return created;
+  }
+}
@@ -7,20 +7,28 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 import se.david.api.core.order.dto.OrderCreateDto;
+import se.david.api.core.order.dto.OrderDto;
 import se.david.api.core.order.dto.OrderItemCreateDto;
+import se.david.api.core.order.dto.OrderItemDto;
 import se.david.api.core.order.dto.OrderUpdateDto;
 import se.david.api.exceptions.InvalidInputException;
 import se.david.api.exceptions.NotFoundException;
 import se.david.microservices.core.order.domain.entity.Order;
 import se.david.microservices.core.order.domain.entity.OrderItem;
+import se.david.microservices.core.order.domain.projection.OrderHeader;
+import se.david.microservices.core.order.domain.repository.OrderItemRepository;
 import se.david.microservices.core.order.domain.repository.OrderRepository;
 import se.david.microservices.core.order.mapper.OrderItemMapper;
 import se.david.microservices.core.order.mapper.OrderMapper;
 import se.david.util.http.ServiceUtil;
+import se.david.util.messaging.EntityChangePublisher;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,6 +43,9 @@ class OrderServiceImplTest {
   @Mock
   private OrderRepository repository;
 
+  @Mock
+  private OrderItemRepository itemRepository;
+
   @Mock
   private ServiceUtil serviceUtil;
 
@@ -44,11 +55,14 @@ class OrderServiceImplTest {
   @Mock
   private OrderItemMapper itemMapper;
 
+  @Mock
+  private EntityChangePublisher<Integer, OrderDto> changePublisher;
+
   private OrderServiceImpl orderService;
 
   @BeforeEach
   void setUp() {
-    orderService = new OrderServiceImpl(Schedulers.immediate(), repository, serviceUtil, mapper, itemMapper);
+    orderService = new OrderServiceImpl(Schedulers.immediate(), repository, itemRepository, serviceUtil, mapper, itemMapper, changePublisher);
   }
 
   @Test
@@ -101,6 +115,51 @@ class OrderServiceImplTest {
     assertThat(mappedOrder.getOrderItems()).extracting(OrderItem::getOrder).containsOnly(mappedOrder);
   }
 
+  @Test
+  @DisplayName("createOrder returns the order created earlier with the same idempotency key instead of saving another")
+  void createOrderWithKnownIdempotencyKeyReturnsTheExistingOrder() {
+    OrderCreateDto createDto = new OrderCreateDto(1, List.of(new OrderItemCreateDto(101, 1, 100)), "saga-1");
+    Order existing = new Order(5, 1, 100, "PENDING", new Date(), List.of(new OrderItem(7, null, 101, 1, 100)));
+    when(repository.findWithOrderItemsByIdempotencyKey("saga-1")).thenReturn(Optional.of(existing));
+    when(serviceUtil.getServiceAddress()).thenReturn("addr");
+
+    StepVerifier.create(orderService.createOrder(createDto))
+      .expectNextMatches(dto -> dto.id() == 5)
+      .verifyComplete();
+
+    verify(repository, never()).save(any());
+  }
+
+  @Test
+  @DisplayName("createOrder is refused when the order with the idempotency key was cancelled before it arrived")
+  void createOrderWithCancelledIdempotencyKeyEmitsInvalidInputException() {
+    Order cancelled = new Order(5, 1, 0, "CANCELLED", new Date(), List.of());
+    when(repository.findWithOrderItemsByIdempotencyKey("saga-1")).thenReturn(Optional.of(cancelled));
+
+    StepVerifier.create(orderService.createOrder(new OrderCreateDto(1, List.of(new OrderItemCreateDto(101, 1, 100)), "saga-1")))
+      .expectError(InvalidInputException.class)
+      .verify();
+
+    verify(repository, never()).save(any());
+  }
+
+  @Test
+  @DisplayName("cancelOrderByIdempotencyKey saves a cancelled order with the key when the order has not been created yet")
+  void cancelOrderByUnknownIdempotencyKeySavesACancelledOrder() {
+    when(repository.findWithOrderItemsByIdempotencyKey("saga-1")).thenReturn(Optional.empty());
+    ArgumentCaptor<Order> savedOrderCaptor = ArgumentCaptor.forClass(Order.class);
+    when(repository.save(savedOrderCaptor.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+    when(serviceUtil.getServiceAddress()).thenReturn("addr");
+
+    StepVerifier.create(orderService.cancelOrderByIdempotencyKey("saga-1", 1))
+      .verifyComplete();
+
+    assertThat(savedOrderCaptor.getValue().getStatus()).isEqualTo("CANCELLED");
+    assertThat(savedOrderCaptor.getValue().getIdempotencyKey()).isEqualTo("saga-1");
+    assertThat(savedOrderCaptor.getValue().getOrderItems()).isEmpty();
+    verify(changePublisher).publishChanged(any(OrderDto.class));
+  }
+
   @Test
   @DisplayName("createOrder throws InvalidInputException for a non-positive userId")
   void createOrderInvalidUserIdThrowsInvalidInputException() {
@@ -112,21 +171,23 @@ class OrderServiceImplTest {
   }
 
   @Test
-  @DisplayName("getOrder returns the mapped DTO when the order exists")
+  @DisplayName("getOrder assembles the DTO from the order header and its items")
   void getOrderFoundMapsToDto() {
-    Order order = new Order();
-    when(repository.findById(1)).thenReturn(Optional.of(order));
+    when(repository.findHeaderById(1)).thenReturn(Optional.of(new OrderHeader(1, 10, 500, "PENDING", new Date())));
+    when(itemRepository.findDtosByOrderIdIn(List.of(1))).thenReturn(List.of(new OrderItemDto(7, 1, 101, 1, 500)));
     when(serviceUtil.getServiceAddress()).thenReturn("addr");
 
     StepVerifier.create(orderService.getOrder(1))
-      .expectNextMatches(dto -> dto.serviceAddress().equals("addr"))
+      .expectNextMatches(dto -> dto.serviceAddress().equals("addr") && dto.orderItems().size() == 1)
       .verifyComplete();
+
+    verify(repository, never()).findById(anyInt());
   }
 
   @Test
   @DisplayName("getOrder emits NotFoundException when the order does not exist")
   void getOrderNotFoundEmitsNotFoundException() {
-    when(repository.findById(1)).thenReturn(Optional.empty());
+    when(repository.findHeaderById(1)).thenReturn(Optional.empty());
 
     StepVerifier.create(orderService.getOrder(1))
       .expectError(NotFoundException.class)
@@ -144,7 +205,7 @@ class OrderServiceImplTest {
   @Test
   @DisplayName("updateOrder emits NotFoundException and never saves when the order does not exist")
   void updateOrderNotFoundEmitsNotFoundException() {
-    when(repository.findById(99)).thenReturn(Optional.empty());
+    when(repository.findWithOrderItemsById(99)).thenReturn(Optional.empty());
 
     StepVerifier.create(orderService.updateOrder(99, new OrderUpdateDto("SHIPPED")))
       .expectError(NotFoundException.class)
@@ -157,11 +218,55 @@ class OrderServiceImplTest {
   @DisplayName("deleteOrder deletes the entity when it exists")
   void deleteOrderFoundDeletesEntity() {
     Order order = new Order();
-    when(repository.findById(1)).thenReturn(Optional.of(order));
+    when(repository.findWithOrderItemsById(1)).thenReturn(Optional.of(order));
 
     StepVerifier.create(orderService.deleteOrder(1))
       .verifyComplete();
 
     verify(repository).delete(order);
+    verify(changePublisher).publishDeleted(1);
+  }
+
+  @Test
+  @DisplayName("streamOrders keeps reading keyset pages after the last seen id until a page comes back short")
+  void streamOrdersReadsKeysetPagesUntilShortPage() {
+    List<OrderHeader> firstPage = new ArrayList<>();
+    for(int id = 1; id <= 500; id++) {
+      firstPage.add(new OrderHeader(id, 1, 100, "PENDING", new Date()));
+    }
+    List<OrderHeader> lastPage = List.of(new OrderHeader(501, 1, 100, "PENDING", new Date()));
+
+    when(repository.findHeadersByIdGreaterThan(eq(0), any(Pageable.class))).thenReturn(firstPage);
+    when(repository.findHeadersByIdGreaterThan(eq(500), any(Pageable.class))).thenReturn(lastPage);
+    when(itemRepository.findDtosByOrderIdIn(any())).thenReturn(List.of());
+
+    StepVerifier.create(orderService.streamOrders())
+      .expectNextCount(501)
+      .verifyComplete();
+
+    verify(repository, times(2)).findHeadersByIdGreaterThan(anyInt(), any(Pageable.class));
+    // One items query per page, not one per order
+    verify(itemRepository, times(2)).findDtosByOrderIdIn(any());
+  }
+
+  @Test
+  @DisplayName("getOrdersBatch throws InvalidInputException for more ids than one batch may have")
+  void getOrdersBatchTooManyIdsThrowsInvalidInputException() {
+    List<Integer> orderIds = new ArrayList<>();
+    for(int id = 1; id <= 10_001; id++) {
+      orderIds.add(id);
+    }
+
+    assertThrows(InvalidInputException.class, () -> orderService.getOrdersBatch(orderIds));
+
+    verifyNoInteractions(repository);
+  }
+
+  @Test
+  @DisplayName("getOrdersPage throws InvalidInputException for a limit above the maximum page size")
+  void getOrdersPageLimitTooLargeThrowsInvalidInputException() {
+    assertThrows(InvalidInputException.class, () -> orderService.getOrdersPage(0, 1001));
+
+    verifyNoInteractions(repository);
   }
 }
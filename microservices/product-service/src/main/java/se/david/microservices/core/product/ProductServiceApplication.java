@@ -1,5 +1,6 @@
 package se.david.microservices.core.product;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.info.Info;
 import org.slf4j.Logger;
@@ -12,7 +13,7 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
+import se.david.util.scheduler.JdbcSchedulers;
 
 @SpringBootApplication
 @ComponentScan("se.david")
@@ -20,6 +21,8 @@ public class ProductServiceApplication {
   private static final Logger LOG = LoggerFactory.getLogger(ProductServiceApplication.class);
   private final Integer threadPoolSize;
   private final Integer taskQueueSize;
+  private final String jdbcSchedulerMode;
+  private final Integer connectionPoolSize;
 
   @Value("${api.common.version}")
   private String apiVersion;
@@ -42,15 +45,18 @@ public class ProductServiceApplication {
   @Autowired
   public ProductServiceApplication(
     @Value("${app.threadPoolSize:10}") Integer threadPoolSize,
-    @Value("${app.taskQueueSize:100}") Integer taskQueueSize) {
+    @Value("${app.taskQueueSize:100}") Integer taskQueueSize,
+    @Value("${app.jdbcScheduler.mode:boundedElastic}") String jdbcSchedulerMode,
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}") Integer connectionPoolSize) {
     this.threadPoolSize = threadPoolSize;
     this.taskQueueSize = taskQueueSize;
+    this.jdbcSchedulerMode = jdbcSchedulerMode;
+    this.connectionPoolSize = connectionPoolSize;
   }
 
   @Bean
-  public Scheduler jdbcScheduler() {
-    LOG.info("Creates a jdbcScheduler with thread pool size = {}", threadPoolSize);
-    return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "jdbc-pool");
+  public Scheduler jdbcScheduler(MeterRegistry meterRegistry) {
+    return JdbcSchedulers.create(jdbcSchedulerMode, threadPoolSize, taskQueueSize, connectionPoolSize, meterRegistry);
   }
 
   public static void main(String[] args) {
@@ -1,5 +1,6 @@
 package se.david.microservices.core.product.domain.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.repository.CrudRepository;
 import se.david.microservices.core.product.domain.entity.Product;
 
@@ -7,4 +8,6 @@ import java.util.List;
 
 public interface ProductRepository extends CrudRepository<Product, Integer> {
   List<Product> findByIdIn(List<Integer> ids);
+
+  List<Product> findByIdGreaterThanOrderByIdAsc(int id, Limit limit);
 }
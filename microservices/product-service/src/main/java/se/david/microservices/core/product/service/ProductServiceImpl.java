@@ -4,6 +4,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.data.domain.Limit;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -12,6 +17,7 @@ import se.david.api.core.product.dto.ProductCreateDto;
 import se.david.api.core.product.dto.ProductDto;
 import se.david.api.core.product.dto.ProductUpdateDto;
 import se.david.api.core.product.service.ProductService;
+import se.david.api.event.Event;
 import se.david.api.exceptions.InvalidInputException;
 import se.david.api.exceptions.NotFoundException;
 import se.david.microservices.core.product.domain.entity.Product;
@@ -24,18 +30,33 @@ import java.util.List;
 @RestController
 public class ProductServiceImpl implements ProductService {
   private static final Logger LOG = LoggerFactory.getLogger(ProductServiceImpl.class);
+  private static final int MAX_PAGE_LIMIT = 1000;
+  private static final int STREAM_PAGE_SIZE = 500;
+  private static final int MAX_BATCH_SIZE = 10_000;
   private final ProductRepository repository;
   private final ServiceUtil serviceUtil;
   private final ProductMapper mapper;
 
+  private final StreamBridge streamBridge;
+
   private final Scheduler jdbcScheduler;
 
+  private final int batchChunkSize;
+
   @Autowired
-  public ProductServiceImpl(@Qualifier("jdbcScheduler") Scheduler jdbcScheduler, ProductRepository repository, ServiceUtil serviceUtil, ProductMapper mapper) {
+  public ProductServiceImpl(
+    @Qualifier("jdbcScheduler") Scheduler jdbcScheduler,
+    ProductRepository repository,
+    ServiceUtil serviceUtil,
+    ProductMapper mapper,
+    StreamBridge streamBridge,
+    @Value("${app.batchLookup.chunkSize:500}") int batchChunkSize) {
     this.jdbcScheduler = jdbcScheduler;
     this.repository = repository;
     this.serviceUtil = serviceUtil;
     this.mapper = mapper;
+    this.streamBridge = streamBridge;
+    this.batchChunkSize = batchChunkSize;
   }
 
   @Override
@@ -53,6 +74,49 @@ public class ProductServiceImpl implements ProductService {
     return (List<Product>) repository.findAll();
   }
 
+  @Override
+  public Flux<ProductDto> getProductsPage(int afterId, int limit) {
+    LOG.info("Fetching up to {} products after ID: {}", limit, afterId);
+    validatePageRequest(afterId, limit);
+
+    return Mono.fromCallable(() -> internalGetProductsPage(afterId, limit))
+      .flatMapMany(Flux::fromIterable)
+      .subscribeOn(jdbcScheduler)
+      .map(this::mapToProductDtoWithServiceAddress)
+      .doOnError(e -> LOG.error("Failed to fetch products page after ID: {}", afterId, e));
+  }
+
+  // Walks the table one keyset page at a time: only the current page is held in memory and the next
+  // page is not read until the previous one has been consumed.
+  @Override
+  public Flux<ProductDto> streamProducts() {
+    LOG.info("Streaming all products");
+
+    return getProductsStreamPage(0)
+      .expand(page -> page.size() < STREAM_PAGE_SIZE ? Mono.empty() : getProductsStreamPage(page.getLast().getId()))
+      .flatMapIterable(page -> page, 1)
+      .map(this::mapToProductDtoWithServiceAddress)
+      .doOnError(e -> LOG.error("Failed to stream products", e));
+  }
+
+  private Mono<List<Product>> getProductsStreamPage(int afterId) {
+    return Mono.fromCallable(() -> internalGetProductsPage(afterId, STREAM_PAGE_SIZE))
+      .subscribeOn(jdbcScheduler);
+  }
+
+  private List<Product> internalGetProductsPage(int afterId, int limit) {
+    return repository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+  }
+
+  private void validatePageRequest(int afterId, int limit) {
+    if(afterId < 0) {
+      throw new InvalidInputException("Invalid afterId: " + afterId);
+    }
+    if(limit < 1 || limit > MAX_PAGE_LIMIT) {
+      throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + MAX_PAGE_LIMIT);
+    }
+  }
+
   private ProductDto mapToProductDtoWithServiceAddress(Product product) {
     return new ProductDto(product.getId(), product.getName(), product.getDescription(), product.getPrice(), serviceUtil.getServiceAddress());
   }
@@ -72,6 +136,28 @@ public class ProductServiceImpl implements ProductService {
     return repository.findByIdIn(ids);
   }
 
+  // One IN query per chunk of batchChunkSize ids, each chunk emitted as soon as it has been read
+  @Override
+  public Flux<ProductDto> getProductsBatch(List<Integer> ids) {
+    LOG.info("getProductsBatch: Fetching products for a batch of {} ids", ids.size());
+    validateBatchSize(ids);
+
+    return Flux.fromIterable(ids)
+      .distinct()
+      .buffer(batchChunkSize)
+      .concatMap(chunk -> Mono.fromCallable(() -> internalGetProductsByIds(chunk))
+        .subscribeOn(jdbcScheduler)
+        .flatMapIterable(products -> products))
+      .map(this::mapToProductDtoWithServiceAddress)
+      .doOnError(e -> LOG.error("Failed to fetch a batch of products", e));
+  }
+
+  private void validateBatchSize(List<Integer> ids) {
+    if(ids.size() > MAX_BATCH_SIZE) {
+      throw new InvalidInputException("Too many ids: " + ids.size() + ", at most " + MAX_BATCH_SIZE + " per batch");
+    }
+  }
+
   @Override
   public Mono<ProductDto> getProduct(int productId) {
     LOG.debug("Fetching product by ID: {}", productId);
@@ -119,6 +205,7 @@ public class ProductServiceImpl implements ProductService {
       .subscribeOn(jdbcScheduler)
       .map(mapper::entityToDto)
       .doOnSuccess(updatedProduct -> LOG.debug("Updated product with ID: {}", updatedProduct.id()))
+      .doOnSuccess(updatedProduct -> publishProductEvent(Event.Type.UPDATE, productId, updatedProduct))
       .doOnError(e -> LOG.error("Failed to update product with ID: {}", productId, e));
   }
 
@@ -136,6 +223,7 @@ public class ProductServiceImpl implements ProductService {
 
     return Mono.fromRunnable(() -> internalDeleteProduct(productId))
       .subscribeOn(jdbcScheduler)
+      .doOnSuccess(unused -> publishProductEvent(Event.Type.DELETE, productId, null))
       .doOnError(e -> LOG.error("Failed to delete product with ID: {}", productId, e))
       .then();
   }
@@ -145,4 +233,16 @@ public class ProductServiceImpl implements ProductService {
       .orElseThrow(() -> new NotFoundException("Product with ID " + productId + " not found"));
     repository.delete(product);
   }
+
+  // Lets consumers holding copies of the product, e.g. the product cache in order-composite, drop stale entries.
+  private void publishProductEvent(Event.Type eventType, int productId, ProductDto product) {
+    LOG.debug("Publishing a {} product event for product ID: {}", eventType, productId);
+    Event<Integer, ProductDto> event = new Event<>(eventType, productId, product);
+    Message<Event<Integer, ProductDto>> message = MessageBuilder.withPayload(event)
+      .setHeader("partitionKey", productId)
+      .build();
+    if(!streamBridge.send("products-out-0", message)) {
+      LOG.warn("Failed to publish a {} product event for product ID: {}", eventType, productId);
+    }
+  }
 }
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cloud.stream.function.StreamBridge;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 import se.david.api.core.product.dto.ProductCreateDto;
@@ -19,9 +20,11 @@ import se.david.util.http.ServiceUtil;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -36,13 +39,43 @@ class ProductServiceImplTest {
   @Mock
   private ProductMapper mapper;
 
+  @Mock
+  private StreamBridge streamBridge;
+
   private ProductServiceImpl productService;
 
   @BeforeEach
   void setUp() {
     // subscribeOn(Schedulers.immediate()) keeps everything on the test thread so StepVerifier can
     // assert without needing to also coordinate across a background thread pool.
-    productService = new ProductServiceImpl(Schedulers.immediate(), repository, serviceUtil, mapper);
+    productService = new ProductServiceImpl(Schedulers.immediate(), repository, serviceUtil, mapper, streamBridge, 2);
+  }
+
+  @Test
+  @DisplayName("getProductsBatch queries distinct ids in IN lists of at most the configured chunk size")
+  void getProductsBatchQueriesInChunks() {
+    when(repository.findByIdIn(any())).thenAnswer(invocation -> invocation.<List<Integer>>getArgument(0).stream()
+      .map(id -> new Product(id, "product-" + id, "desc", 100))
+      .toList());
+    when(serviceUtil.getServiceAddress()).thenReturn("addr");
+
+    StepVerifier.create(productService.getProductsBatch(List.of(1, 2, 3, 3, 4, 5)))
+      .expectNextCount(5)
+      .verifyComplete();
+
+    verify(repository).findByIdIn(List.of(1, 2));
+    verify(repository).findByIdIn(List.of(3, 4));
+    verify(repository).findByIdIn(List.of(5));
+  }
+
+  @Test
+  @DisplayName("getProductsBatch throws InvalidInputException when the batch is too large")
+  void getProductsBatchTooManyIdsThrowsInvalidInputException() {
+    List<Integer> ids = IntStream.rangeClosed(1, 10_001).boxed().toList();
+
+    assertThrows(InvalidInputException.class, () -> productService.getProductsBatch(ids));
+
+    verifyNoInteractions(repository);
   }
 
   @Test
@@ -134,7 +167,7 @@ class ProductServiceImplTest {
   }
 
   @Test
-  @DisplayName("deleteProduct deletes the entity when it exists")
+  @DisplayName("deleteProduct deletes the entity when it exists and publishes a DELETE product event")
   void deleteProductFoundDeletesEntity() {
     Product product = new Product(1, "name", "desc", 100);
     when(repository.findById(1)).thenReturn(Optional.of(product));
@@ -143,6 +176,7 @@ class ProductServiceImplTest {
       .verifyComplete();
 
     verify(repository).delete(product);
+    verify(streamBridge).send(eq("products-out-0"), any(Object.class));
   }
 
   @Test
@@ -0,0 +1,17 @@
+package se.david.microservices.core.shipping.config;
+
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.david.api.core.shipping.dto.ShippingDto;
+import se.david.util.messaging.EntityChangePublisher;
+
+@Configuration
+public class ChangeEventConfig {
+
+  // Every change of a shipment is published on the shipmentChanges destination, e.g. for the read model in order-composite
+  @Bean
+  public EntityChangePublisher<Integer, ShippingDto> shippingChangePublisher(StreamBridge streamBridge) {
+    return new EntityChangePublisher<>(ShippingDto::orderId, message -> streamBridge.send("shipmentChanges-out-0", message));
+  }
+}
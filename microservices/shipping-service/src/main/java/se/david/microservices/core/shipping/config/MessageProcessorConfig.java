@@ -1,62 +1,85 @@
 package se.david.microservices.core.shipping.config;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import se.david.api.core.shipping.dto.ShippingCreateDto;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.core.shipping.dto.ShippingDto;
 import se.david.api.core.shipping.service.ShippingService;
 import se.david.api.event.Event;
-import se.david.api.exceptions.EventProcessingException;
 import se.david.microservices.core.shipping.domain.entity.Shipping;
-import se.david.microservices.core.shipping.mapper.ShippingMapper;
+import se.david.microservices.core.shipping.service.ShippingEventBatchHandler;
+import se.david.util.messaging.BatchingEventProcessor;
+import se.david.util.messaging.EntityChangePublisher;
+import se.david.util.messaging.EventBatchSettings;
+import se.david.util.messaging.EventDeduplicator;
+import se.david.util.messaging.EventResultPublisher;
+import se.david.util.messaging.ProcessedEventStore;
 
-import java.util.function.Consumer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Configuration
 public class MessageProcessorConfig {
-  private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
+  private final ShippingEventBatchHandler batchHandler;
+  private final EventBatchSettings batchSettings;
+  private final MeterRegistry meterRegistry;
+  private final EventDeduplicator deduplicator;
+  private final EventResultPublisher<Integer, ShippingDto> resultPublisher;
+  private final EntityChangePublisher<Integer, ShippingDto> changePublisher;
   private final ShippingService shippingService;
-  private final ShippingMapper shippingMapper;
 
   @Autowired
-  public MessageProcessorConfig(ShippingService shippingService, ShippingMapper shippingMapper) {
+  public MessageProcessorConfig(
+    ShippingEventBatchHandler batchHandler,
+    MeterRegistry meterRegistry,
+    ProcessedEventStore processedEventStore,
+    ShippingService shippingService,
+    EntityChangePublisher<Integer, ShippingDto> changePublisher,
+    StreamBridge streamBridge,
+    @Value("${app.messageProcessor.batchSize:100}") int batchSize,
+    @Value("${app.messageProcessor.batchWaitMs:50}") long batchWaitMs,
+    @Value("${app.messageProcessor.concurrency:4}") int concurrency,
+    @Value("${app.deduplication.enabled:true}") boolean deduplicationEnabled,
+    @Value("${app.deduplication.cacheSize:100000}") int deduplicationCacheSize,
+    @Value("${app.deduplication.cacheWindowMinutes:60}") long deduplicationCacheWindowMinutes) {
+    this.batchHandler = batchHandler;
     this.shippingService = shippingService;
-    this.shippingMapper = shippingMapper;
+    this.changePublisher = changePublisher;
+    this.meterRegistry = meterRegistry;
+    this.batchSettings = new EventBatchSettings(batchSize, Duration.ofMillis(batchWaitMs), concurrency);
+    this.deduplicator = deduplicationEnabled
+      ? new EventDeduplicator(processedEventStore, deduplicationCacheSize, Duration.ofMinutes(deduplicationCacheWindowMinutes), meterRegistry)
+      : EventDeduplicator.disabled();
+    this.resultPublisher = new EventResultPublisher<>(
+      this::loadShipments,
+      ShippingDto::orderId,
+      result -> streamBridge.send("eventResults-out-0", result));
   }
 
-
   @Bean
-  public Consumer<Event<Integer, Shipping>> messageProcessor() {
-    return event -> {
-      LOG.info("Process message created at {}...", event.getEventCreatedAt());
-
-      switch(event.getEventType()) {
-        case CREATE:
-          ShippingCreateDto createDto = shippingMapper.entityToCreateDto(event.getData());
-
-          shippingService.createShippingOrder(createDto)
-            .doOnSuccess(unused -> LOG.info("Successfully created shipping for order ID {}", event.getData().getOrderId()))
-            .doOnError(error -> LOG.error("Failed to create shipping for order ID {}: {}", event.getData().getOrderId(), error.getMessage()))
-            .subscribe();
-          break;
-
-        case UPDATE:
-          shippingService.updateShippingStatusByOrderId(event.getData().getOrderId(), event.getData().getStatus())
-            .doOnSuccess(unused -> LOG.info("Successfully updated shipping status for order ID {}", event.getData().getOrderId()))
-            .doOnError(error -> LOG.error("Failed to update shipping status for order ID {}: {}", event.getData().getOrderId(), error.getMessage()))
-            .subscribe();
-          break;
-
-        default:
-          String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-          LOG.warn(errorMessage);
-          throw new EventProcessingException(errorMessage);
-      }
+  public Function<Flux<Message<Event<Integer, Shipping>>>, Mono<Void>> messageProcessor() {
+    return BatchingEventProcessor.create(batchSettings, meterRegistry, deduplicator, resultPublisher, this::applyAndPublishChanges);
+  }
 
-      LOG.info("Message processing done!");
-    };
+  // The shipments the batch changed are loaded once and published for the copies in other services
+  private Mono<Void> applyAndPublishChanges(List<Event<Integer, Shipping>> events) {
+    Set<Integer> orderIds = events.stream().map(Event::getKey).filter(Objects::nonNull).collect(Collectors.toSet());
+    return batchHandler.apply(events)
+      .then(Mono.defer(() -> changePublisher.publishChanged(orderIds, loadShipments(orderIds))));
+  }
 
+  private Flux<ShippingDto> loadShipments(Set<Integer> orderIds) {
+    return shippingService.getShipmentsBatch(new ArrayList<>(orderIds));
   }
 }
@@ -0,0 +1,39 @@
+package se.david.microservices.core.shipping.domain.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+// Id of an event that has been applied, kept until the TTL index on processedAt removes it
+@Document(collection = "processed_events")
+public class ProcessedEvent {
+  @Id
+  private String id;
+
+  private Date processedAt;
+
+  public ProcessedEvent() {
+  }
+
+  public ProcessedEvent(String id, Date processedAt) {
+    this.id = id;
+    this.processedAt = processedAt;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  public Date getProcessedAt() {
+    return processedAt;
+  }
+
+  public void setProcessedAt(Date processedAt) {
+    this.processedAt = processedAt;
+  }
+}
@@ -0,0 +1,63 @@
+package se.david.microservices.core.shipping.domain.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.shipping.domain.entity.ProcessedEvent;
+import se.david.util.messaging.ProcessedEventStore;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Keeps the processed event ids in the "processed_events" collection. A TTL index removes them after the retention,
+// which only has to outlast the time a message can spend in the broker before it is redelivered.
+@Component
+public class MongoProcessedEventStore implements ProcessedEventStore {
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final Mono<String> ttlIndex;
+
+  @Autowired
+  public MongoProcessedEventStore(
+    ReactiveMongoTemplate mongoTemplate,
+    @Value("${app.deduplication.retentionHours:168}") long retentionHours) {
+    this.mongoTemplate = mongoTemplate;
+    // Created on first use since auto index creation is not enabled in this service, and tried again after a failure
+    this.ttlIndex = mongoTemplate.indexOps(ProcessedEvent.class)
+      .ensureIndex(new Index().on("processedAt", Sort.Direction.ASC).expire(Duration.ofHours(retentionHours)))
+      .cache(index -> Duration.ofMillis(Long.MAX_VALUE), ex -> Duration.ZERO, () -> Duration.ZERO);
+  }
+
+  @Override
+  public Mono<Set<String>> findProcessed(Collection<String> eventIds) {
+    Query query = Query.query(where("_id").in(eventIds));
+    query.fields().include("_id");
+    return mongoTemplate.find(query, ProcessedEvent.class)
+      .map(ProcessedEvent::getId)
+      .collect(Collectors.toSet());
+  }
+
+  @Override
+  public Mono<Void> markProcessed(Collection<String> eventIds) {
+    return ttlIndex.then(Mono.defer(() -> {
+      Date now = new Date();
+      ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.UNORDERED, ProcessedEvent.class);
+      for(String eventId : eventIds) {
+        bulkOperations.upsert(Query.query(where("_id").is(eventId)), new Update().setOnInsert("processedAt", now));
+      }
+      return bulkOperations.execute();
+    })).then();
+  }
+}
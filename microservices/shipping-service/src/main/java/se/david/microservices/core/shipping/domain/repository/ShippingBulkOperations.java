@@ -0,0 +1,23 @@
+package se.david.microservices.core.shipping.domain.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.shipping.domain.entity.Shipping;
+
+import java.util.List;
+
+// Writes a batch of shipment changes with one bulkWrite instead of a read and a save per shipment
+public interface ShippingBulkOperations {
+  sealed interface ShippingWrite permits Create, StatusChange {
+  }
+
+  // Inserted unless its orderId already has a shipment, so a redelivered create leaves the existing one alone
+  record Create(Shipping shipping) implements ShippingWrite {
+  }
+
+  record StatusChange(int orderId, String status) implements ShippingWrite {
+  }
+
+  // Applies the writes in the given order
+  Mono<BulkWriteResult> bulkWrite(List<ShippingWrite> writes);
+}
@@ -0,0 +1,48 @@
+package se.david.microservices.core.shipping.domain.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import se.david.microservices.core.shipping.domain.entity.Shipping;
+
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ShippingBulkOperationsImpl implements ShippingBulkOperations {
+  private final ReactiveMongoTemplate mongoTemplate;
+
+  @Autowired
+  public ShippingBulkOperationsImpl(ReactiveMongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  @Override
+  public Mono<BulkWriteResult> bulkWrite(List<ShippingWrite> writes) {
+    return Mono.defer(() -> {
+      ReactiveBulkOperations bulkOperations = mongoTemplate.bulkOps(BulkMode.ORDERED, Shipping.class);
+      for(ShippingWrite write : writes) {
+        switch(write) {
+          case Create create -> bulkOperations.upsert(byOrderId(create.shipping().getOrderId()), new Update()
+            .setOnInsert("shippingAddress", create.shipping().getShippingAddress())
+            .setOnInsert("status", create.shipping().getStatus())
+            .setOnInsert("version", 0));
+          // The version is bumped as well, so a concurrent read-modify-save of the same document fails its optimistic lock
+          case StatusChange statusChange -> bulkOperations.updateOne(byOrderId(statusChange.orderId()), new Update()
+            .set("status", statusChange.status())
+            .inc("version", 1));
+        }
+      }
+      return bulkOperations.execute();
+    });
+  }
+
+  private Query byOrderId(int orderId) {
+    return Query.query(where("orderId").is(orderId));
+  }
+}
@@ -1,5 +1,6 @@
 package se.david.microservices.core.shipping.domain.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -7,8 +8,12 @@ import se.david.microservices.core.shipping.domain.entity.Shipping;
 
 import java.util.List;
 
-public interface ShippingRepository extends ReactiveCrudRepository<Shipping, Integer> {
+public interface ShippingRepository extends ReactiveCrudRepository<Shipping, Integer>, ShippingBulkOperations {
   Mono<Shipping> findByOrderId(Integer orderId);
 
   Flux<Shipping> findByOrderIdIn(List<Integer> orderId);
+
+  Flux<Shipping> findByOrderIdGreaterThanOrderByOrderIdAsc(Integer orderId, Limit limit);
+
+  Flux<Shipping> findAllByOrderByOrderIdAsc();
 }
@@ -0,0 +1,59 @@
+package se.david.microservices.core.shipping.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.david.api.event.Event;
+import se.david.api.exceptions.EventProcessingException;
+import se.david.microservices.core.shipping.domain.entity.Shipping;
+import se.david.microservices.core.shipping.domain.repository.ShippingBulkOperations.Create;
+import se.david.microservices.core.shipping.domain.repository.ShippingBulkOperations.ShippingWrite;
+import se.david.microservices.core.shipping.domain.repository.ShippingBulkOperations.StatusChange;
+import se.david.microservices.core.shipping.domain.repository.ShippingRepository;
+import se.david.microservices.core.shipping.mapper.ShippingMapper;
+
+import java.util.List;
+
+// Applies a batch of shipping events in their order with one bulkWrite
+@Component
+public class ShippingEventBatchHandler {
+  private static final Logger LOG = LoggerFactory.getLogger(ShippingEventBatchHandler.class);
+
+  private final ShippingRepository repository;
+  private final ShippingMapper mapper;
+
+  @Autowired
+  public ShippingEventBatchHandler(ShippingRepository repository, ShippingMapper mapper) {
+    this.repository = repository;
+    this.mapper = mapper;
+  }
+
+  public Mono<Void> apply(List<Event<Integer, Shipping>> events) {
+    List<ShippingWrite> writes = events.stream()
+      .map(this::toWrite)
+      .toList();
+
+    return repository.bulkWrite(writes)
+      .doOnNext(result -> LOG.info("Applied {} shipping events: {} shipments created, {} matched an existing shipment",
+        events.size(), result.getUpserts().size(), result.getMatchedCount()))
+      .then();
+  }
+
+  private ShippingWrite toWrite(Event<Integer, Shipping> event) {
+    switch(event.getEventType()) {
+      case CREATE:
+        // Through the create DTO, so the new shipment gets the same defaults as one created over the API
+        return new Create(mapper.createDtoToEntity(mapper.entityToCreateDto(event.getData())));
+
+      case UPDATE:
+        return new StatusChange(event.getData().getOrderId(), event.getData().getStatus());
+
+      default:
+        String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or UPDATE event";
+        LOG.warn(errorMessage);
+        throw new EventProcessingException(errorMessage);
+    }
+  }
+}
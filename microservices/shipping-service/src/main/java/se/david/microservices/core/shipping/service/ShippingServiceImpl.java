@@ -3,7 +3,9 @@ package se.david.microservices.core.shipping.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -16,6 +18,7 @@ import se.david.microservices.core.shipping.domain.entity.Shipping;
 import se.david.microservices.core.shipping.domain.repository.ShippingRepository;
 import se.david.microservices.core.shipping.mapper.ShippingMapper;
 import se.david.util.http.ServiceUtil;
+import se.david.util.messaging.EntityChangePublisher;
 
 import java.util.List;
 import java.util.logging.Level;
@@ -23,15 +26,21 @@ import java.util.logging.Level;
 @RestController
 public class ShippingServiceImpl implements ShippingService {
   private static final Logger LOG = LoggerFactory.getLogger(ShippingServiceImpl.class);
+  private static final int MAX_PAGE_LIMIT = 1000;
+  private static final int MAX_BATCH_SIZE = 10_000;
   private final ShippingRepository repository;
   private final ServiceUtil serviceUtil;
   private final ShippingMapper mapper;
+  private final int batchChunkSize;
+  private final EntityChangePublisher<Integer, ShippingDto> changePublisher;
 
   @Autowired
-  public ShippingServiceImpl(ShippingRepository repository, ServiceUtil serviceUtil, ShippingMapper mapper) {
+  public ShippingServiceImpl(ShippingRepository repository, ServiceUtil serviceUtil, ShippingMapper mapper, EntityChangePublisher<Integer, ShippingDto> changePublisher, @Value("${app.batchLookup.chunkSize:500}") int batchChunkSize) {
     this.repository = repository;
     this.serviceUtil = serviceUtil;
     this.mapper = mapper;
+    this.batchChunkSize = batchChunkSize;
+    this.changePublisher = changePublisher;
   }
 
   @Override
@@ -44,6 +53,37 @@ public class ShippingServiceImpl implements ShippingService {
       .log(LOG.getName(), Level.FINE);
   }
 
+  @Override
+  public Flux<ShippingDto> getShipmentsPage(int afterId, int limit) {
+    LOG.info("getShipmentsPage: Fetching up to {} shipments after orderId: {}", limit, afterId);
+    validatePageRequest(afterId, limit);
+
+    return repository.findByOrderIdGreaterThanOrderByOrderIdAsc(afterId, Limit.of(limit))
+      .map(this::mapToShippingDtoWithServiceAddress)
+      .doOnError(ex -> LOG.error("Error fetching shipments page after orderId: {}", afterId, ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  // Backed by a Mongo cursor over the unique orderId index, so documents are pulled in batches as they are consumed.
+  @Override
+  public Flux<ShippingDto> streamShipments() {
+    LOG.info("streamShipments: Streaming all shipments");
+
+    return repository.findAllByOrderByOrderIdAsc()
+      .map(this::mapToShippingDtoWithServiceAddress)
+      .doOnError(ex -> LOG.error("Error streaming shipments", ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private void validatePageRequest(int afterId, int limit) {
+    if(afterId < 0) {
+      throw new InvalidInputException("Invalid afterId: " + afterId);
+    }
+    if(limit < 1 || limit > MAX_PAGE_LIMIT) {
+      throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + MAX_PAGE_LIMIT);
+    }
+  }
+
   private ShippingDto mapToShippingDtoWithServiceAddress(Shipping shipping) {
     return new ShippingDto(shipping.getOrderId(), shipping.getShippingAddress(), shipping.getStatus(), serviceUtil.getServiceAddress());
   }
@@ -58,6 +98,27 @@ public class ShippingServiceImpl implements ShippingService {
       .log(LOG.getName(), Level.FINE);
   }
 
+  // One $in query per chunk of batchChunkSize ids, each chunk streamed from its cursor before the next is queried
+  @Override
+  public Flux<ShippingDto> getShipmentsBatch(List<Integer> orderIds) {
+    LOG.info("getShipmentsBatch: Fetching shipments for a batch of {} orderIds", orderIds.size());
+    validateBatchSize(orderIds);
+
+    return Flux.fromIterable(orderIds)
+      .distinct()
+      .buffer(batchChunkSize)
+      .concatMap(repository::findByOrderIdIn)
+      .map(this::mapToShippingDtoWithServiceAddress)
+      .doOnError(ex -> LOG.error("Error fetching a batch of shipments", ex))
+      .log(LOG.getName(), Level.FINE);
+  }
+
+  private void validateBatchSize(List<Integer> orderIds) {
+    if(orderIds.size() > MAX_BATCH_SIZE) {
+      throw new InvalidInputException("Too many ids: " + orderIds.size() + ", at most " + MAX_BATCH_SIZE + " per batch");
+    }
+  }
+
   @Override
   public Mono<ShippingDto> getShippingByOrderId(int orderId) {
     LOG.debug("getShipping: Search shipping for orderId: {}", orderId);
@@ -92,6 +153,7 @@ public class ShippingServiceImpl implements ShippingService {
       .onErrorMap(DuplicateKeyException.class, ex ->
         new InvalidInputException("Duplicate key for orderId: " + shippingCreateDto.orderId()))
       .doOnSuccess(savedShipping -> LOG.debug("Successfully created shipping for orderId: {}", savedShipping.orderId()))
+      .doOnSuccess(changePublisher::publishChanged)
       .doOnError(ex -> LOG.error("Error creating shipping for orderId: {}", shippingCreateDto.orderId(), ex))
       .log(LOG.getName(), Level.FINE);
   }
@@ -110,6 +172,7 @@ public class ShippingServiceImpl implements ShippingService {
       .onErrorMap(IllegalArgumentException.class, ex ->
         new InvalidInputException("Invalid orderId: " + orderId))
       .doOnSuccess(updatedShipping -> LOG.debug("Successfully updated shipping status for orderId: {}", updatedShipping.orderId()))
+      .doOnSuccess(changePublisher::publishChanged)
       .doOnError(ex -> LOG.error("Error updating shipping status for orderId: {}", orderId, ex))
       .log(LOG.getName(), Level.FINE);
   }
@@ -19,6 +19,8 @@ import se.david.api.core.shipping.dto.ShippingCreateDto;
 import se.david.api.event.Event;
 import se.david.microservices.core.shipping.domain.entity.Shipping;
 
+import java.util.List;
+
 import static org.awaitility.Awaitility.await;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 
@@ -36,6 +38,7 @@ class ShippingServiceApplicationTests {
     registry.add("spring.data.mongodb.uri", mongo::getReplicaSetUrl);
     registry.add("eureka.client.enabled", () -> "false");
     registry.add("spring.cloud.discovery.enabled", () -> "false");
+    registry.add("app.batchLookup.chunkSize", () -> "2");
   }
 
   @Autowired
@@ -90,6 +93,56 @@ class ShippingServiceApplicationTests {
       .jsonPath("$.status").isEqualTo("DELIVERED");
   }
 
+  @Test
+  @DisplayName("GET /shipments/page returns the shipments after the given orderId in orderId order, up to limit")
+  void getShipmentsPageReturnsKeysetPage() {
+    for(int orderId = 5001; orderId <= 5003; orderId++) {
+      client.post().uri("/shipments")
+        .bodyValue(new ShippingCreateDto(orderId, "10 Page St"))
+        .exchange()
+        .expectStatus().isOk();
+    }
+
+    client.get().uri("/shipments/page?afterId={afterId}&limit={limit}", 5001, 1)
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(1)
+      .jsonPath("$[0].orderId").isEqualTo(5002);
+
+    client.get().uri("/shipments/stream")
+      .accept(MediaType.APPLICATION_NDJSON)
+      .exchange()
+      .expectStatus().isOk()
+      .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON);
+  }
+
+  @Test
+  @DisplayName("GET /shipments/page returns 422 for a non-positive limit")
+  void getShipmentsPageInvalidLimitReturnsUnprocessableEntity() {
+    client.get().uri("/shipments/page?limit={limit}", 0)
+      .exchange()
+      .expectStatus().isEqualTo(422);
+  }
+
+  @Test
+  @DisplayName("POST /shipments/batch returns the shipments of every known orderId in the body, across IN-list chunks")
+  void getShipmentsBatchReturnsShipmentsAcrossChunks() {
+    for(int orderId = 6001; orderId <= 6005; orderId++) {
+      client.post().uri("/shipments")
+        .bodyValue(new ShippingCreateDto(orderId, "10 Batch St"))
+        .exchange()
+        .expectStatus().isOk();
+    }
+
+    client.post().uri("/shipments/batch")
+      .bodyValue(List.of(6001, 6002, 6003, 6003, 6004, 6005, 6999))
+      .exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(5);
+  }
+
   @Test
   @DisplayName("messageProcessor consumes a CREATE event and creates the shipment")
   void messageConsumerCreateEventCreatesShipment() {
@@ -124,4 +177,21 @@ class ShippingServiceApplicationTests {
         .expectBody()
         .jsonPath("$.status").isEqualTo("DELIVERED"));
   }
+
+  @Test
+  @DisplayName("messageProcessor applies a burst of events in order, and a redelivered CREATE leaves the shipment alone")
+  void messageConsumerAppliesBurstInOrder() {
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.CREATE, 5001, new Shipping(5001, "2 Test Way", "Dispatched"))).build(), "shipments");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.UPDATE, 5001, new Shipping(5001, "2 Test Way", "IN_TRANSIT"))).build(), "shipments");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.UPDATE, 5001, new Shipping(5001, "2 Test Way", "DELIVERED"))).build(), "shipments");
+    inputDestination.send(MessageBuilder.withPayload(new Event<>(Event.Type.CREATE, 5001, new Shipping(5001, "2 Test Way", "Dispatched"))).build(), "shipments");
+
+    await().untilAsserted(() ->
+      client.get().uri("/shipments/order/{orderId}", 5001)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.shippingAddress").isEqualTo("2 Test Way")
+        .jsonPath("$.status").isEqualTo("DELIVERED"));
+  }
 }
@@ -9,12 +9,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 import se.david.api.core.shipping.dto.ShippingCreateDto;
+import se.david.api.core.shipping.dto.ShippingDto;
 import se.david.api.exceptions.InvalidInputException;
 import se.david.api.exceptions.NotFoundException;
 import se.david.microservices.core.shipping.domain.entity.Shipping;
 import se.david.microservices.core.shipping.domain.repository.ShippingRepository;
 import se.david.microservices.core.shipping.mapper.ShippingMapper;
 import se.david.util.http.ServiceUtil;
+import se.david.util.messaging.EntityChangePublisher;
 
 import java.util.List;
 
@@ -33,11 +35,14 @@ class ShippingServiceImplTest {
   @Mock
   private ShippingMapper mapper;
 
+  @Mock
+  private EntityChangePublisher<Integer, ShippingDto> changePublisher;
+
   private ShippingServiceImpl shippingService;
 
   @BeforeEach
   void setUp() {
-    shippingService = new ShippingServiceImpl(repository, serviceUtil, mapper);
+    shippingService = new ShippingServiceImpl(repository, serviceUtil, mapper, changePublisher, 500);
   }
 
   @Test
@@ -95,6 +100,8 @@ class ShippingServiceImplTest {
     StepVerifier.create(shippingService.updateShippingStatusByOrderId(1, "DELIVERED"))
       .expectNextMatches(dto -> dto.status().equals("DELIVERED"))
       .verifyComplete();
+
+    verify(changePublisher).publishChanged(new ShippingDto(1, "123 Main St", "DELIVERED", "addr"));
   }
 
   @Test
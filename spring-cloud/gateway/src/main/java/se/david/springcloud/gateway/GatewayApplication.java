@@ -3,10 +3,13 @@ package se.david.springcloud.gateway;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.reactive.function.client.WebClient;
+import se.david.util.loadbalancer.PowerOfTwoChoicesLoadBalancerConfiguration;
 
 @SpringBootApplication
+@LoadBalancerClients(defaultConfiguration = PowerOfTwoChoicesLoadBalancerConfiguration.class)
 public class GatewayApplication {
 
   @Bean
@@ -3,20 +3,24 @@ package se.david.springcloud.gateway.config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.health.CompositeReactiveHealthContributor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.ReactiveHealthContributor;
-import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import se.david.util.health.HealthSnapshot;
 
+import java.time.Duration;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import static java.util.logging.Level.FINE;
 
+// The health probes of the gateway are answered from a HealthSnapshot, which checks the services in the background,
+// so the probes of every replica do not each call every service
 @Configuration
 public class HealthCheckConfiguration {
   private static final Logger LOG = LoggerFactory.getLogger(HealthCheckConfiguration.class);
@@ -29,17 +33,26 @@ public class HealthCheckConfiguration {
   }
 
   @Bean
-  ReactiveHealthContributor healthcheckMicroservices() {
-    final Map<String, ReactiveHealthIndicator> registry = new LinkedHashMap<>();
+  HealthSnapshot microservicesHealth(
+    @Value("${app.health.refreshIntervalMs:10000}") long refreshIntervalMs,
+    @Value("${app.health.timeoutMs:2000}") long timeoutMs,
+    @Value("${app.health.jitter:0.2}") double jitter,
+    @Value("${app.health.maxAgeMs:30000}") long maxAgeMs) {
+    final Map<String, Supplier<Mono<Health>>> checks = new LinkedHashMap<>();
 
-    registry.put("product", () -> getHealth("http://product"));
-    registry.put("inventory", () -> getHealth("http://inventory"));
-    registry.put("order", () -> getHealth("http://order"));
-    registry.put("shipping", () -> getHealth("http://shipping"));
-    registry.put("order-composite", () -> getHealth("http://order-composite"));
-    registry.put("auth-server", () -> getHealth("http://auth-server"));
+    checks.put("product", () -> getHealth("http://product"));
+    checks.put("inventory", () -> getHealth("http://inventory"));
+    checks.put("order", () -> getHealth("http://order"));
+    checks.put("shipping", () -> getHealth("http://shipping"));
+    checks.put("order-composite", () -> getHealth("http://order-composite"));
+    checks.put("auth-server", () -> getHealth("http://auth-server"));
 
-    return CompositeReactiveHealthContributor.fromMap(registry);
+    return new HealthSnapshot(checks, Duration.ofMillis(refreshIntervalMs), Duration.ofMillis(timeoutMs), jitter, Duration.ofMillis(maxAgeMs));
+  }
+
+  @Bean
+  ReactiveHealthContributor healthcheckMicroservices(HealthSnapshot microservicesHealth) {
+    return microservicesHealth.contributor();
   }
 
   private Mono<Health> getHealth(String baseUrl) {
@@ -1,13 +1,18 @@
 package se.david.springcloud.gateway.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import se.david.util.security.JwkSetRefresher;
+import se.david.util.security.ResourceServerJwtDecoders;
 
 @Configuration
 @EnableWebFluxSecurity
@@ -35,4 +40,14 @@ public class SecurityConfig {
 
     return http.build();
   }
+
+  @Bean
+  JwkSetRefresher jwkSetRefresher(Environment environment) {
+    return ResourceServerJwtDecoders.jwkSetRefresher(environment);
+  }
+
+  @Bean
+  ReactiveJwtDecoder jwtDecoder(JwkSetRefresher jwkSetRefresher, MeterRegistry meterRegistry, Environment environment) {
+    return ResourceServerJwtDecoders.jwtDecoder(jwkSetRefresher, meterRegistry, environment);
+  }
 }
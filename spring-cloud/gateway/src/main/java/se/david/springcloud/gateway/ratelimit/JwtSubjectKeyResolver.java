@@ -0,0 +1,34 @@
+package se.david.springcloud.gateway.ratelimit;
+
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+// Rate limits by the subject of the bearer token, the user, or the client for tokens of the client credentials grant,
+// and by the client id when a token has no subject. A request without a token has no key and is denied by the
+// RequestRateLimiter, but the routes that are rate limited require a token anyway.
+@Component
+public class JwtSubjectKeyResolver implements KeyResolver {
+
+  @Override
+  public Mono<String> resolve(ServerWebExchange exchange) {
+    return exchange.getPrincipal()
+      .filter(JwtAuthenticationToken.class::isInstance)
+      .map(principal -> ((JwtAuthenticationToken) principal).getToken())
+      .mapNotNull(JwtSubjectKeyResolver::keyOf);
+  }
+
+  static String keyOf(Jwt jwt) {
+    if(jwt.getSubject() != null) {
+      return "sub:" + jwt.getSubject();
+    }
+    String clientId = jwt.getClaimAsString("client_id");
+    if(clientId == null) {
+      clientId = jwt.getClaimAsString("azp");
+    }
+    return clientId != null ? "client:" + clientId : null;
+  }
+}
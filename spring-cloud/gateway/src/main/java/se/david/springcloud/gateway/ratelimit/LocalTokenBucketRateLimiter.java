@@ -0,0 +1,154 @@
+package se.david.springcloud.gateway.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// The RateLimiter of the RequestRateLimiter filters, with a token bucket per route and key in the gateway's memory
+// instead of in Redis. Every gateway instance limits on its own, so with n instances a client gets up to n times the
+// limit. The limits are set per route like those of the RedisRateLimiter, under local-rate-limiter:
+//
+//   - name: RequestRateLimiter
+//     args:
+//       local-rate-limiter.replenishRate: 50
+//       local-rate-limiter.burstCapacity: 100
+//
+// A bucket is one AtomicLong, the time at which it is full again (the theoretical arrival time of GCRA), which a
+// request moves forward by its tokens with a compare-and-set, so there are no locks. A bucket that has not been used
+// for IDLE_BUCKET_EXPIRY is full anyway and is dropped.
+@Component
+public class LocalTokenBucketRateLimiter extends AbstractRateLimiter<LocalTokenBucketRateLimiter.Config> {
+  private static final Logger LOG = LoggerFactory.getLogger(LocalTokenBucketRateLimiter.class);
+
+  public static final String CONFIGURATION_PROPERTY_NAME = "local-rate-limiter";
+  public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+  public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+  public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+  public static final String REQUESTED_TOKENS_HEADER = "X-RateLimit-Requested-Tokens";
+
+  private static final Duration IDLE_BUCKET_EXPIRY = Duration.ofMinutes(10);
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final Config defaultConfig;
+  private final LongSupplier nanoClock;
+  private final Cache<String, AtomicLong> buckets;
+
+  @Autowired
+  public LocalTokenBucketRateLimiter(
+    ConfigurationService configurationService,
+    @Value("${app.rateLimiter.replenishRate:50}") int replenishRate,
+    @Value("${app.rateLimiter.burstCapacity:100}") int burstCapacity,
+    @Value("${app.rateLimiter.maxBuckets:100000}") long maxBuckets) {
+    this(configurationService, new Config().setReplenishRate(replenishRate).setBurstCapacity(burstCapacity), maxBuckets, System::nanoTime);
+  }
+
+  LocalTokenBucketRateLimiter(ConfigurationService configurationService, Config defaultConfig, long maxBuckets, LongSupplier nanoClock) {
+    super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+    LOG.info("Creates a local rate limiter with replenishRate = {}, burstCapacity = {} and maxBuckets = {}",
+      defaultConfig.getReplenishRate(), defaultConfig.getBurstCapacity(), maxBuckets);
+    this.defaultConfig = defaultConfig;
+    this.nanoClock = nanoClock;
+    this.buckets = Caffeine.newBuilder()
+      .maximumSize(maxBuckets)
+      .expireAfterAccess(IDLE_BUCKET_EXPIRY)
+      .build();
+  }
+
+  @Override
+  public Mono<Response> isAllowed(String routeId, String id) {
+    Config config = getConfig().getOrDefault(routeId, defaultConfig);
+    return Mono.fromSupplier(() -> take(routeId + ":" + id, config));
+  }
+
+  Response take(String bucketKey, Config config) {
+    // At least one nanosecond, a replenishRate above one token per nanosecond would make it 0
+    long nanosPerToken = Math.max(1, NANOS_PER_SECOND / config.getReplenishRate());
+    long capacityNanos = nanosPerToken * config.getBurstCapacity();
+    long requestedNanos = nanosPerToken * config.getRequestedTokens();
+    AtomicLong fullAt = buckets.get(bucketKey, key -> new AtomicLong(nanoClock.getAsLong()));
+
+    while(true) {
+      long now = nanoClock.getAsLong();
+      long current = fullAt.get();
+      long missingNanos = Math.max(current - now, 0);
+      long next = now + missingNanos + requestedNanos;
+      if(next - now > capacityNanos) {
+        long remaining = (capacityNanos - missingNanos) / nanosPerToken;
+        long retryAfterSeconds = Math.max(1, (next - now - capacityNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+        Map<String, String> headers = headers(config, remaining);
+        headers.put(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return new Response(false, headers);
+      }
+      if(fullAt.compareAndSet(current, next)) {
+        return new Response(true, headers(config, (capacityNanos - (next - now)) / nanosPerToken));
+      }
+    }
+  }
+
+  private static Map<String, String> headers(Config config, long remaining) {
+    Map<String, String> headers = new HashMap<>();
+    headers.put(REMAINING_HEADER, Long.toString(remaining));
+    headers.put(REPLENISH_RATE_HEADER, Integer.toString(config.getReplenishRate()));
+    headers.put(BURST_CAPACITY_HEADER, Integer.toString(config.getBurstCapacity()));
+    headers.put(REQUESTED_TOKENS_HEADER, Integer.toString(config.getRequestedTokens()));
+    return headers;
+  }
+
+  @Validated
+  public static class Config {
+    @Min(1)
+    @Max(1_000_000_000)
+    private int replenishRate;
+
+    @Min(1)
+    private int burstCapacity = 1;
+
+    @Min(1)
+    private int requestedTokens = 1;
+
+    public int getReplenishRate() {
+      return replenishRate;
+    }
+
+    public Config setReplenishRate(int replenishRate) {
+      this.replenishRate = replenishRate;
+      return this;
+    }
+
+    public int getBurstCapacity() {
+      return burstCapacity;
+    }
+
+    public Config setBurstCapacity(int burstCapacity) {
+      this.burstCapacity = burstCapacity;
+      return this;
+    }
+
+    public int getRequestedTokens() {
+      return requestedTokens;
+    }
+
+    public Config setRequestedTokens(int requestedTokens) {
+      this.requestedTokens = requestedTokens;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package se.david.springcloud.gateway.ratelimit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter.Response;
+import org.springframework.http.HttpHeaders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class LocalTokenBucketRateLimiterTests {
+  private static final String ROUTE_ID = "order-composite-write";
+
+  private final AtomicLong clock = new AtomicLong(-TimeUnit.HOURS.toNanos(1));
+  private final LocalTokenBucketRateLimiter rateLimiter = new LocalTokenBucketRateLimiter(
+    null, new LocalTokenBucketRateLimiter.Config().setReplenishRate(10).setBurstCapacity(20), 1000, clock::get);
+
+  @Test
+  @DisplayName("a burst of burstCapacity requests is allowed, the next one is denied with the rate limit headers")
+  void burstThenDenied() {
+    for(int i = 0; i < 20; i++) {
+      Response response = isAllowed("sub:user-1");
+      assertThat(response.isAllowed(), is(true));
+      assertThat(response.getHeaders().get(LocalTokenBucketRateLimiter.REMAINING_HEADER), is(String.valueOf(19 - i)));
+    }
+
+    Response denied = isAllowed("sub:user-1");
+    assertThat(denied.isAllowed(), is(false));
+    assertThat(denied.getHeaders().get(LocalTokenBucketRateLimiter.REMAINING_HEADER), is("0"));
+    assertThat(denied.getHeaders().get(LocalTokenBucketRateLimiter.REPLENISH_RATE_HEADER), is("10"));
+    assertThat(denied.getHeaders().get(LocalTokenBucketRateLimiter.BURST_CAPACITY_HEADER), is("20"));
+    assertThat(denied.getHeaders().get(HttpHeaders.RETRY_AFTER), is("1"));
+  }
+
+  @Test
+  @DisplayName("the bucket refills at replenishRate, up to burstCapacity")
+  void refillsAtTheReplenishRate() {
+    drain("sub:user-1");
+
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+    assertThat(allowedOf("sub:user-1", 10), is(5));
+
+    clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+    assertThat(allowedOf("sub:user-1", 30), is(20));
+  }
+
+  @Test
+  @DisplayName("every user has its own bucket")
+  void bucketPerKey() {
+    drain("sub:user-1");
+
+    assertThat(isAllowed("sub:user-1").isAllowed(), is(false));
+    assertThat(isAllowed("sub:user-2").isAllowed(), is(true));
+    assertThat(rateLimiter.isAllowed("order-composite-read", "sub:user-1").block().isAllowed(), is(true));
+  }
+
+  @Test
+  @DisplayName("concurrent requests take exactly burstCapacity tokens")
+  void concurrentRequestsTakeExactlyTheBurst() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Integer>> allowed = new ArrayList<>();
+      for(int i = 0; i < 8; i++) {
+        allowed.add(executor.submit(() -> allowedOf("sub:user-1", 1000)));
+      }
+      int total = 0;
+      for(Future<Integer> future : allowed) {
+        total += future.get();
+      }
+      assertThat(total, is(20));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  @DisplayName("a replenishRate above one token per nanosecond is limited to it instead of failing")
+  void replenishRateAboveOnePerNanosecond() {
+    LocalTokenBucketRateLimiter fastRateLimiter = new LocalTokenBucketRateLimiter(
+      null, new LocalTokenBucketRateLimiter.Config().setReplenishRate(Integer.MAX_VALUE).setBurstCapacity(20), 1000, clock::get);
+
+    for(int i = 0; i < 20; i++) {
+      assertThat(fastRateLimiter.isAllowed(ROUTE_ID, "sub:user-1").block().isAllowed(), is(true));
+    }
+    Response denied = fastRateLimiter.isAllowed(ROUTE_ID, "sub:user-1").block();
+    assertThat(denied.isAllowed(), is(false));
+    assertThat(denied.getHeaders().get(LocalTokenBucketRateLimiter.REMAINING_HEADER), is("0"));
+
+    clock.incrementAndGet();
+    assertThat(fastRateLimiter.isAllowed(ROUTE_ID, "sub:user-1").block().isAllowed(), is(true));
+  }
+
+  private void drain(String key) {
+    allowedOf(key, 20);
+  }
+
+  private int allowedOf(String key, int requests) {
+    int allowed = 0;
+    for(int i = 0; i < requests; i++) {
+      if(isAllowed(key).isAllowed()) {
+        allowed++;
+      }
+    }
+    return allowed;
+  }
+
+  private Response isAllowed(String key) {
+    return rateLimiter.isAllowed(ROUTE_ID, key).block();
+  }
+}
@@ -0,0 +1,112 @@
+package se.david.util.health;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.CompositeReactiveHealthContributor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthContributor;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.context.SmartLifecycle;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+// The health of other services, checked in the background instead of on every health probe. Every service is checked
+// on its own, right after the start and then every refreshInterval plus or minus jitter, so the checks of the replicas
+// do not line up; a check that does not answer within timeout counts as DOWN.
+//
+// The health indicators answer from the last result and add when it was checked. A result older than maxAge is
+// reported as UNKNOWN, so the health does not stay UP when the checks stop.
+public class HealthSnapshot implements SmartLifecycle {
+  private static final Logger LOG = LoggerFactory.getLogger(HealthSnapshot.class);
+
+  private final Map<String, Supplier<Mono<Health>>> checks;
+  private final Duration refreshInterval;
+  private final Duration timeout;
+  private final double jitter;
+  private final Duration maxAge;
+  private final Clock clock;
+  private final Map<String, CheckedHealth> results = new ConcurrentHashMap<>();
+  private volatile Disposable.Composite refreshers;
+
+  public HealthSnapshot(Map<String, Supplier<Mono<Health>>> checks, Duration refreshInterval, Duration timeout, double jitter, Duration maxAge) {
+    this(checks, refreshInterval, timeout, jitter, maxAge, Clock.systemUTC());
+  }
+
+  HealthSnapshot(Map<String, Supplier<Mono<Health>>> checks, Duration refreshInterval, Duration timeout, double jitter, Duration maxAge, Clock clock) {
+    this.checks = new LinkedHashMap<>(checks);
+    this.refreshInterval = refreshInterval;
+    this.timeout = timeout;
+    this.jitter = jitter;
+    this.maxAge = maxAge;
+    this.clock = clock;
+  }
+
+  public ReactiveHealthContributor contributor() {
+    Map<String, ReactiveHealthIndicator> indicators = new LinkedHashMap<>();
+    checks.keySet().forEach(name -> indicators.put(name, () -> Mono.fromSupplier(() -> health(name))));
+    return CompositeReactiveHealthContributor.fromMap(indicators);
+  }
+
+  @Override
+  public void start() {
+    LOG.info("Starts checking the health of {} every {} with timeout = {}", checks.keySet(), refreshInterval, timeout);
+    Disposable.Composite started = Disposables.composite();
+    checks.keySet().forEach(name -> started.add(refresh(name)
+      .then(Mono.defer(() -> Mono.delay(nextDelay())))
+      .repeat()
+      .subscribe()));
+    refreshers = started;
+  }
+
+  @Override
+  public void stop() {
+    refreshers.dispose();
+    refreshers = null;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return refreshers != null;
+  }
+
+  Mono<Void> refresh(String name) {
+    return Mono.defer(() -> checks.get(name).get())
+      .timeout(timeout)
+      .onErrorResume(ex -> Mono.just(Health.down(ex).build()))
+      .doOnNext(health -> results.put(name, new CheckedHealth(health, clock.instant())))
+      .then();
+  }
+
+  Health health(String name) {
+    CheckedHealth checked = results.get(name);
+    if(checked == null) {
+      return Health.unknown().withDetail("reason", "not checked yet").build();
+    }
+    Duration age = Duration.between(checked.checkedAt(), clock.instant());
+    Health.Builder builder = age.compareTo(maxAge) > 0
+      ? Health.unknown().withDetail("reason", "last check is older than " + maxAge)
+      : Health.status(checked.health().getStatus()).withDetails(checked.health().getDetails());
+    return builder
+      .withDetail("checkedAt", checked.checkedAt().toString())
+      .withDetail("ageMs", age.toMillis())
+      .build();
+  }
+
+  private Duration nextDelay() {
+    double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+    return Duration.ofMillis(Math.max(1, (long) (refreshInterval.toMillis() * factor)));
+  }
+
+  private record CheckedHealth(Health health, Instant checkedAt) {
+  }
+}
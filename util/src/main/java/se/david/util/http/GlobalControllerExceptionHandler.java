@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.bind.support.WebExchangeBindException;
 import se.david.api.exceptions.BadRequestException;
 import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
 import se.david.api.exceptions.NotFoundException;
 
 import java.util.stream.Collectors;
@@ -37,6 +38,14 @@ public class GlobalControllerExceptionHandler {
     return createHttpErrorInfo(NOT_FOUND, request, ex);
   }
 
+  @ResponseStatus(CONFLICT)
+  @ExceptionHandler(InventoryOutOfStockException.class)
+  public @ResponseBody HttpErrorInfo handleInventoryOutOfStockException(
+    ServerHttpRequest request, InventoryOutOfStockException ex) {
+
+    return createHttpErrorInfo(CONFLICT, request, ex);
+  }
+
   @ResponseStatus(UNPROCESSABLE_ENTITY)
   @ExceptionHandler(InvalidInputException.class)
   public @ResponseBody HttpErrorInfo handleInvalidInputException(
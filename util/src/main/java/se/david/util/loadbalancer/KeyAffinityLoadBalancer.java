@@ -0,0 +1,111 @@
+package se.david.util.loadbalancer;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.RetryableRequestContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// Sends every request for the same id, the first numeric segment of the path like 42 in /orders/42, to the same
+// instance, so the id's entity stays in that instance's caches. The instance is picked by rendezvous hashing: every
+// instance gets a score from the hash of its id and the key, and the highest score wins. When an instance joins or
+// leaves only the keys it wins move, all other keys keep their instance.
+//
+// An instance that has failed within failureCooldown, and the instance a retry comes from, are passed over for the
+// next highest score. Requests without an id, and requests when every instance has failed, are balanced by the
+// power of two choices.
+public class KeyAffinityLoadBalancer extends PowerOfTwoChoicesLoadBalancer {
+  private final long failureCooldownNanos;
+
+  public KeyAffinityLoadBalancer(
+    ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+    String serviceId,
+    Duration decayTime,
+    Duration failureCooldown) {
+    super(serviceInstanceListSupplierProvider, serviceId, decayTime);
+    this.failureCooldownNanos = failureCooldown.toNanos();
+  }
+
+  KeyAffinityLoadBalancer(
+    ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+    String serviceId,
+    Duration decayTime,
+    Duration failureCooldown,
+    LongSupplier nanoClock,
+    Random random) {
+    super(serviceInstanceListSupplierProvider, serviceId, decayTime, nanoClock, random);
+    this.failureCooldownNanos = failureCooldown.toNanos();
+  }
+
+  @Override
+  protected Response<ServiceInstance> choose(Request<?> request, List<ServiceInstance> instances) {
+    String key = keyOf(request);
+    if(key == null || instances.isEmpty()) {
+      return super.choose(request, instances);
+    }
+    ServiceInstance previous = request.getContext() instanceof RetryableRequestContext context ? context.getPreviousServiceInstance() : null;
+    long failedSince = nanoTime() - failureCooldownNanos;
+    long keyHash = mix(hash(key));
+
+    ServiceInstance chosen = null;
+    long chosenScore = 0;
+    for(ServiceInstance instance : instances) {
+      if(previous != null && keyOf(instance).equals(keyOf(previous)) || hasFailedSince(instance, failedSince)) {
+        continue;
+      }
+      long score = score(instance, keyHash);
+      if(chosen == null || score > chosenScore) {
+        chosen = instance;
+        chosenScore = score;
+      }
+    }
+    return chosen != null ? new DefaultResponse(chosen) : super.choose(request, instances);
+  }
+
+  static long score(ServiceInstance instance, long keyHash) {
+    return mix(hash(keyOf(instance)) ^ keyHash);
+  }
+
+  static String keyOf(Request<?> request) {
+    if(!(request.getContext() instanceof RequestDataContext context)) {
+      return null;
+    }
+    RequestData clientRequest = context.getClientRequest();
+    if(clientRequest == null || clientRequest.getUrl() == null || clientRequest.getUrl().getPath() == null) {
+      return null;
+    }
+    for(String segment : clientRequest.getUrl().getPath().split("/")) {
+      if(!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)) {
+        return segment;
+      }
+    }
+    return null;
+  }
+
+  // 64 bit FNV-1a, String.hashCode() has too few bits and spreads short numeric keys badly
+  private static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for(byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  // The SplitMix64 finalizer, so a single changed bit of the key or the instance changes about half of the score
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+}
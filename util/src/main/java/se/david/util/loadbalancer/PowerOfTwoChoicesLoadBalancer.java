@@ -0,0 +1,192 @@
+package se.david.util.loadbalancer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Picks two instances at random and sends the request to the one with the lower cost, the peak EWMA of its latency
+// times the requests in flight to it plus one. An instance that pauses or is overloaded gets slow answers and a queue,
+// so it loses nearly every choice, but still gets a request now and then when it is paired with another slow one, or
+// once its EWMA has decayed, and so is found again when it recovers.
+//
+// The latencies and in-flight counts come from the requests of this service itself: the load balancer is also a
+// LoadBalancerLifecycle, which the @LoadBalanced WebClient and the gateway's lb:// routes call for every request.
+public class PowerOfTwoChoicesLoadBalancer implements ReactorServiceInstanceLoadBalancer,
+  LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+  private static final Logger LOG = LoggerFactory.getLogger(PowerOfTwoChoicesLoadBalancer.class);
+
+  // An instance that has not answered yet gets one request at a time, instead of every request because it looks free
+  private static final double UNKNOWN_LATENCY_PENALTY_NANOS = Duration.ofSeconds(10).toNanos();
+
+  private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+  private final String serviceId;
+  private final double decayNanos;
+  private final LongSupplier nanoClock;
+  private final Random random;
+  private final Map<String, InstanceStats> stats = new ConcurrentHashMap<>();
+
+  public PowerOfTwoChoicesLoadBalancer(
+    ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+    String serviceId,
+    Duration decayTime) {
+    this(serviceInstanceListSupplierProvider, serviceId, decayTime, System::nanoTime, null);
+  }
+
+  PowerOfTwoChoicesLoadBalancer(
+    ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+    String serviceId,
+    Duration decayTime,
+    LongSupplier nanoClock,
+    Random random) {
+    LOG.info("Creates a power of two choices load balancer for {} with decayTime = {}", serviceId, decayTime);
+    this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+    this.serviceId = serviceId;
+    this.decayNanos = decayTime.toNanos();
+    this.nanoClock = nanoClock;
+    this.random = random;
+  }
+
+  @Override
+  public Mono<Response<ServiceInstance>> choose(Request request) {
+    ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+    return supplier.get(request)
+      .next()
+      .map(instances -> choose(request, instances));
+  }
+
+  @Override
+  public boolean supports(Class requestContextClass, Class responseClass, Class serverTypeClass) {
+    return ServiceInstance.class.isAssignableFrom(serverTypeClass);
+  }
+
+  @Override
+  public void onStart(Request<Object> request) {
+  }
+
+  @Override
+  public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+    if(request.getContext() instanceof TimedRequestContext context) {
+      context.setRequestStartTime(nanoClock.getAsLong());
+    }
+    statsOf(lbResponse.getServer()).inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+    Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+    if(lbResponse == null || !lbResponse.hasServer() || completionContext.status() == CompletionContext.Status.DISCARD) {
+      return;
+    }
+    InstanceStats instanceStats = statsOf(lbResponse.getServer());
+    instanceStats.inFlight.decrementAndGet();
+    if(isFailure(completionContext)) {
+      instanceStats.failedNanos = nanoClock.getAsLong();
+    }
+    if(completionContext.getLoadBalancerRequest().getContext() instanceof TimedRequestContext context
+      && context.getRequestStartTime() > 0) {
+      long now = nanoClock.getAsLong();
+      instanceStats.record(now - context.getRequestStartTime(), now);
+    }
+  }
+
+  protected Response<ServiceInstance> choose(Request<?> request, List<ServiceInstance> instances) {
+    if(instances.isEmpty()) {
+      LOG.warn("No instances available for {}", serviceId);
+      return new EmptyResponse();
+    }
+    if(instances.size() == 1) {
+      return new DefaultResponse(instances.get(0));
+    }
+    Random randomSource = random != null ? random : ThreadLocalRandom.current();
+    int first = randomSource.nextInt(instances.size());
+    int second = randomSource.nextInt(instances.size() - 1);
+    if(second >= first) {
+      second++;
+    }
+    ServiceInstance firstInstance = instances.get(first);
+    ServiceInstance secondInstance = instances.get(second);
+    long now = nanoClock.getAsLong();
+    return new DefaultResponse(statsOf(firstInstance).cost(now) <= statsOf(secondInstance).cost(now) ? firstInstance : secondInstance);
+  }
+
+  protected boolean hasFailedSince(ServiceInstance instance, long sinceNanos) {
+    InstanceStats instanceStats = stats.get(keyOf(instance));
+    return instanceStats != null && instanceStats.failedNanos != 0 && instanceStats.failedNanos - sinceNanos > 0;
+  }
+
+  protected long nanoTime() {
+    return nanoClock.getAsLong();
+  }
+
+  protected String serviceId() {
+    return serviceId;
+  }
+
+  // A request that failed without an answer or with a server error
+  private static boolean isFailure(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+    if(completionContext.status() == CompletionContext.Status.FAILED) {
+      return true;
+    }
+    return completionContext.getClientResponse() instanceof ResponseData response
+      && response.getHttpStatus() != null && response.getHttpStatus().is5xxServerError();
+  }
+
+  private InstanceStats statsOf(ServiceInstance instance) {
+    return stats.computeIfAbsent(keyOf(instance), key -> new InstanceStats());
+  }
+
+  static String keyOf(ServiceInstance instance) {
+    return instance.getInstanceId() != null ? instance.getInstanceId() : instance.getHost() + ":" + instance.getPort();
+  }
+
+  // Peak EWMA: a latency above the average replaces it at once, lower ones are averaged in with a weight that grows
+  // with the time since the last answer. For the cost the average decays towards zero while there are no answers.
+  private final class InstanceStats {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double ewmaNanos;
+    private long updatedNanos;
+    private boolean answered;
+    private volatile long failedNanos;
+
+    synchronized void record(long latencyNanos, long now) {
+      double weight = weight(now);
+      ewmaNanos = latencyNanos > ewmaNanos ? latencyNanos : ewmaNanos * weight + latencyNanos * (1 - weight);
+      updatedNanos = now;
+      answered = true;
+    }
+
+    synchronized double cost(long now) {
+      int requests = inFlight.get();
+      if(!answered) {
+        return requests == 0 ? 0 : UNKNOWN_LATENCY_PENALTY_NANOS * requests;
+      }
+      return ewmaNanos * weight(now) * (requests + 1);
+    }
+
+    private double weight(long now) {
+      return Math.exp(-(now - updatedNanos) / decayNanos);
+    }
+  }
+}
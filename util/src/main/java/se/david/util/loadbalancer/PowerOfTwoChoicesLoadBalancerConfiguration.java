@@ -0,0 +1,44 @@
+package se.david.util.loadbalancer;
+
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+// Replaces the round robin load balancer of every load balanced client with the PowerOfTwoChoicesLoadBalancer:
+//
+//   @LoadBalancerClients(defaultConfiguration = PowerOfTwoChoicesLoadBalancerConfiguration.class)
+//
+// With app.loadBalancer.<serviceId>.keyAffinity=true (or app.loadBalancer.keyAffinity for every service) the service
+// gets the KeyAffinityLoadBalancer instead, which routes the requests for an id to the same instance.
+//
+// Deliberately not a @Configuration: the services scan se.david, and this must only be registered in the load
+// balancer's own context of each client.
+public class PowerOfTwoChoicesLoadBalancerConfiguration {
+
+  // The declared type is the load balancer itself, so the clients find it as a LoadBalancerLifecycle before it is created
+  @Bean
+  public PowerOfTwoChoicesLoadBalancer powerOfTwoChoicesLoadBalancer(Environment environment, LoadBalancerClientFactory loadBalancerClientFactory) {
+    String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+    long decayTimeMs = environment.getProperty("app.loadBalancer.decayTimeMs", Long.class, 10000L);
+    if(setting(environment, serviceId, "keyAffinity", Boolean.class, false)) {
+      long failureCooldownMs = setting(environment, serviceId, "failureCooldownMs", Long.class, 10000L);
+      return new KeyAffinityLoadBalancer(
+        loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+        serviceId,
+        Duration.ofMillis(decayTimeMs),
+        Duration.ofMillis(failureCooldownMs));
+    }
+    return new PowerOfTwoChoicesLoadBalancer(
+      loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+      serviceId,
+      Duration.ofMillis(decayTimeMs));
+  }
+
+  private static <T> T setting(Environment environment, String serviceId, String name, Class<T> type, T defaultValue) {
+    T value = environment.getProperty("app.loadBalancer." + serviceId + "." + name, type);
+    return value != null ? value : environment.getProperty("app.loadBalancer." + name, type, defaultValue);
+  }
+}
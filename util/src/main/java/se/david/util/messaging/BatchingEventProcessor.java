@@ -0,0 +1,165 @@
+package se.david.util.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+// Turns a handler for a batch of events into a reactive stream function. A KeyedLaneDispatcher splits the messages
+// into lanes by partition key, so events with the same key are applied in order while the lanes run concurrently.
+// Each lane buffers its events into batches of at most maxBatchSize, waiting at most maxBatchWait for a batch to fill,
+// and applies one batch at a time, which also makes the lane stop requesting messages while the repository is busy.
+//
+// A message is acknowledged only after the batch it belongs to has been applied, and a Kafka message only once the
+// messages received before it from the same partition are done as well. If a batch fails its events are applied
+// again one by one, so a single bad event does not take the rest of the batch with it, and an event that still
+// fails is rejected. Handlers should therefore validate the whole batch before they write anything. A handler
+// that writes a batch in several steps is a SteppedBatchHandler, which reports every written step; when the batch
+// fails later on, the events of those steps are acknowledged without being applied again.
+//
+// With an EventDeduplicator, events whose id has already been processed are acknowledged without being handed to the
+// handler again, and the ids of the applied events are recorded before their messages are acknowledged.
+//
+// With an EventResultPublisher, the events that carry a correlation id are answered once their batch has been applied,
+// or rejected. Redelivered events are answered as well, in case the first answer never reached the sender.
+public final class BatchingEventProcessor {
+  private static final Logger LOG = LoggerFactory.getLogger(BatchingEventProcessor.class);
+
+  private BatchingEventProcessor() {
+  }
+
+  public static <K, T> Function<Flux<Message<Event<K, T>>>, Mono<Void>> create(
+    EventBatchSettings settings,
+    MeterRegistry meterRegistry,
+    Function<List<Event<K, T>>, Mono<Void>> batchHandler) {
+    return create(settings, meterRegistry, EventDeduplicator.disabled(), batchHandler);
+  }
+
+  public static <K, T> Function<Flux<Message<Event<K, T>>>, Mono<Void>> create(
+    EventBatchSettings settings,
+    MeterRegistry meterRegistry,
+    EventDeduplicator deduplicator,
+    Function<List<Event<K, T>>, Mono<Void>> batchHandler) {
+    return create(settings, meterRegistry, deduplicator, EventResultPublisher.disabled(), batchHandler);
+  }
+
+  public static <K, T> Function<Flux<Message<Event<K, T>>>, Mono<Void>> create(
+    EventBatchSettings settings,
+    MeterRegistry meterRegistry,
+    EventDeduplicator deduplicator,
+    EventResultPublisher<K, ?> resultPublisher,
+    Function<List<Event<K, T>>, Mono<Void>> batchHandler) {
+    return create(settings, meterRegistry, deduplicator, resultPublisher, (events, stepApplied) -> batchHandler.apply(events));
+  }
+
+  public static <K, T> Function<Flux<Message<Event<K, T>>>, Mono<Void>> create(
+    EventBatchSettings settings,
+    MeterRegistry meterRegistry,
+    EventDeduplicator deduplicator,
+    EventResultPublisher<K, ?> resultPublisher,
+    SteppedBatchHandler<K, T> batchHandler) {
+    LOG.info("Creates a batching event processor with maxBatchSize = {}, maxBatchWait = {}, concurrency = {} and deduplication {}",
+      settings.maxBatchSize(), settings.maxBatchWait(), settings.concurrency(), deduplicator.isEnabled() ? "enabled" : "disabled");
+    KeyedLaneDispatcher dispatcher = new KeyedLaneDispatcher(settings.concurrency(), meterRegistry);
+    MessageAcknowledger acknowledger = new MessageAcknowledger();
+
+    return messages -> messages
+      .doOnNext(acknowledger::received)
+      .groupBy(dispatcher::dispatch)
+      .flatMap(lane -> lane
+        .bufferTimeout(settings.maxBatchSize(), settings.maxBatchWait(), true)
+        .concatMap(batch -> {
+          long startNanos = System.nanoTime();
+          return applyBatch(batch, identitySet(), acknowledger, deduplicator, resultPublisher, batchHandler)
+            .doFinally(signal -> dispatcher.applied(lane.key(), batch.size(), startNanos));
+        }), dispatcher.lanes())
+      .then();
+  }
+
+  // appliedSteps holds the events of the steps that a failed batch has already written, by identity so that it also
+  // works for events without an id and without an EventDeduplicator
+  private static <K, T> Mono<Void> applyBatch(
+    List<Message<Event<K, T>>> batch,
+    Set<Event<K, T>> appliedSteps,
+    MessageAcknowledger acknowledger,
+    EventDeduplicator deduplicator,
+    EventResultPublisher<K, ?> resultPublisher,
+    SteppedBatchHandler<K, T> batchHandler) {
+    List<String> eventIds = batch.stream().map(message -> message.getPayload().getEventId()).filter(Objects::nonNull).toList();
+
+    return deduplicator.findProcessed(eventIds)
+      .flatMap(processed -> {
+        List<Event<K, T>> events = unprocessedEvents(batch, processed, appliedSteps);
+        if(events.isEmpty()) {
+          return Mono.empty();
+        }
+        LOG.debug("Applies a batch of {} events", events.size());
+        Set<Event<K, T>> stepsOfThisBatch = identitySet();
+        return Mono.defer(() -> batchHandler.apply(events, step -> {
+            stepsOfThisBatch.addAll(step);
+            appliedSteps.addAll(step);
+            return deduplicator.markProcessed(eventIds(step));
+          }))
+          .then(Mono.defer(() -> deduplicator.markProcessed(eventIds(events.stream().filter(event -> !stepsOfThisBatch.contains(event)).toList()))));
+      })
+      .then(Mono.defer(() -> resultPublisher.publishApplied(batch.stream().map(Message::getPayload).toList())))
+      .then(Mono.fromRunnable(() -> batch.forEach(acknowledger::acknowledge)))
+      .onErrorResume(ex -> {
+        if(batch.size() == 1) {
+          resultPublisher.publishRejected(batch.get(0).getPayload(), ex);
+          return reject(batch.get(0), acknowledger, ex);
+        }
+        LOG.warn("Failed to apply a batch of {} events, applies them one by one: {}", batch.size(), ex.toString());
+        return Flux.fromIterable(batch)
+          .concatMap(message -> applyBatch(List.of(message), appliedSteps, acknowledger, deduplicator, resultPublisher, batchHandler))
+          .then();
+      })
+      .then();
+  }
+
+  // Skips the events that were processed before as well as repeated deliveries of the same event within the batch
+  private static <K, T> List<Event<K, T>> unprocessedEvents(List<Message<Event<K, T>>> batch, Set<String> processed, Set<Event<K, T>> appliedSteps) {
+    Set<String> seen = new HashSet<>(processed);
+    List<Event<K, T>> events = new ArrayList<>(batch.size());
+    for(Message<Event<K, T>> message : batch) {
+      Event<K, T> event = message.getPayload();
+      if(appliedSteps.contains(event)) {
+        LOG.info("Skips {} event {} for key {}, it was written by a step of the failed batch", event.getEventType(), event.getEventId(), event.getKey());
+        continue;
+      }
+      if(event.getEventId() != null && !seen.add(event.getEventId())) {
+        LOG.info("Skips {} event {} for key {}, it has already been processed", event.getEventType(), event.getEventId(), event.getKey());
+        continue;
+      }
+      events.add(event);
+    }
+    return events;
+  }
+
+  private static <K, T> List<String> eventIds(List<Event<K, T>> events) {
+    return events.stream().map(Event::getEventId).filter(Objects::nonNull).toList();
+  }
+
+  private static <E> Set<E> identitySet() {
+    return Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+  }
+
+  private static <K, T> Mono<Void> reject(Message<Event<K, T>> message, MessageAcknowledger acknowledger, Throwable ex) {
+    Event<K, T> event = message.getPayload();
+    LOG.error("Rejects a {} event for key {} that could not be applied", event.getEventType(), event.getKey(), ex);
+    acknowledger.reject(message);
+    return Mono.empty();
+  }
+}
@@ -0,0 +1,73 @@
+package se.david.util.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.event.Event;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Publishes the state of an entity after every change: an UPDATE event with the whole entity, or a DELETE event with
+// only its key. Other services can keep a copy of the entities from these events, like the order read model in
+// order-composite, without asking for them.
+//
+// Publishing is best effort, a failed send is logged and the copies catch up with the next change or rebuild.
+public final class EntityChangePublisher<K, D> {
+  private static final Logger LOG = LoggerFactory.getLogger(EntityChangePublisher.class);
+
+  private final Function<D, K> keyOf;
+  private final Predicate<Message<Event<K, D>>> sender;
+
+  public EntityChangePublisher(Function<D, K> keyOf, Predicate<Message<Event<K, D>>> sender) {
+    this.keyOf = keyOf;
+    this.sender = sender;
+  }
+
+  public void publishChanged(D entity) {
+    if(entity == null) {
+      return;
+    }
+    send(new Event<>(Event.Type.UPDATE, keyOf.apply(entity), entity));
+  }
+
+  public void publishDeleted(K key) {
+    D noData = null;
+    send(new Event<>(Event.Type.DELETE, key, noData));
+  }
+
+  // Publishes the current state of the changed keys, and a DELETE event for those that no longer exist
+  public Mono<Void> publishChanged(Collection<K> changedKeys, Flux<D> currentEntities) {
+    Set<K> missingKeys = new HashSet<>(changedKeys);
+    return currentEntities
+      .doOnNext(entity -> {
+        missingKeys.remove(keyOf.apply(entity));
+        publishChanged(entity);
+      })
+      .then(Mono.fromRunnable(() -> missingKeys.forEach(this::publishDeleted)))
+      .onErrorResume(ex -> {
+        LOG.warn("Failed to publish the changes of {} entities: {}", changedKeys.size(), ex.toString());
+        return Mono.empty();
+      })
+      .then();
+  }
+
+  private void send(Event<K, D> event) {
+    Message<Event<K, D>> message = MessageBuilder.withPayload(event)
+      .setHeader("partitionKey", event.getKey())
+      .build();
+    try {
+      if(!sender.test(message)) {
+        LOG.warn("Failed to publish a {} change event for key: {}", event.getEventType(), event.getKey());
+      }
+    } catch (RuntimeException ex) {
+      LOG.warn("Failed to publish a {} change event for key: {}: {}", event.getEventType(), event.getKey(), ex.toString());
+    }
+  }
+}
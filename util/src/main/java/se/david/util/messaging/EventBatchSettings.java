@@ -0,0 +1,12 @@
+package se.david.util.messaging;
+
+import java.time.Duration;
+
+// maxBatchSize and maxBatchWait bound each batch, concurrency is the number of partition key lanes applied in parallel
+public record EventBatchSettings(int maxBatchSize, Duration maxBatchWait, int concurrency) {
+  public EventBatchSettings {
+    if(maxBatchSize < 1 || concurrency < 1) {
+      throw new IllegalArgumentException("maxBatchSize and concurrency must be positive, got " + maxBatchSize + " and " + concurrency);
+    }
+  }
+}
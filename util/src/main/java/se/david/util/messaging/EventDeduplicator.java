@@ -0,0 +1,165 @@
+package se.david.util.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Recognizes redelivered events by their event id. The ids applied during the last window are kept in memory, at most
+// maxSize of them with the oldest evicted first, so a redelivery shortly after the first delivery, the common case
+// when a consumer restarts or a batch is retried, is answered without a database round trip. Only ids missing from
+// memory are looked up in the ProcessedEventStore.
+//
+// The ids are marked as processed after the batch is applied and before it is acknowledged, so a crash in between
+// still leads to one redelivery that is applied twice. A failure to record the ids is only logged, failing the batch
+// would make the processor apply the already applied events again.
+public final class EventDeduplicator {
+  private static final Logger LOG = LoggerFactory.getLogger(EventDeduplicator.class);
+  private static final EventDeduplicator DISABLED = new EventDeduplicator();
+
+  private final ProcessedEventStore store;
+  private final int maxSize;
+  private final long windowMillis;
+  // Event id -> the time it was marked as processed, in insertion order so the oldest entry comes first
+  private final LinkedHashMap<String, Long> recent;
+
+  private final Timer cacheTimer;
+  private final Timer storeTimer;
+  private final Counter checked;
+  private final Counter cacheHits;
+  private final Counter storeHits;
+
+  public EventDeduplicator(ProcessedEventStore store, int maxSize, Duration window, MeterRegistry meterRegistry) {
+    if(maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be at least 1, got " + maxSize);
+    }
+    if(window.isNegative() || window.isZero()) {
+      throw new IllegalArgumentException("window must be positive, got " + window);
+    }
+    this.store = store;
+    this.maxSize = maxSize;
+    this.windowMillis = window.toMillis();
+    this.recent = new LinkedHashMap<>(Math.min(maxSize, 1 << 16), 0.75f);
+
+    this.cacheTimer = Timer.builder("events.dedup.latency").tag("path", "cache").register(meterRegistry);
+    this.storeTimer = Timer.builder("events.dedup.latency").tag("path", "store").register(meterRegistry);
+    this.checked = Counter.builder("events.dedup.checked").register(meterRegistry);
+    this.cacheHits = Counter.builder("events.dedup.duplicates").tag("path", "cache").register(meterRegistry);
+    this.storeHits = Counter.builder("events.dedup.duplicates").tag("path", "store").register(meterRegistry);
+  }
+
+  private EventDeduplicator() {
+    this.store = null;
+    this.maxSize = 0;
+    this.windowMillis = 0;
+    this.recent = null;
+    this.cacheTimer = null;
+    this.storeTimer = null;
+    this.checked = null;
+    this.cacheHits = null;
+    this.storeHits = null;
+  }
+
+  // Lets every event through, for consumers whose events are idempotent anyway
+  public static EventDeduplicator disabled() {
+    return DISABLED;
+  }
+
+  public boolean isEnabled() {
+    return store != null;
+  }
+
+  // Returns the ids among eventIds that have already been processed
+  public Mono<Set<String>> findProcessed(Collection<String> eventIds) {
+    if(!isEnabled() || eventIds.isEmpty()) {
+      return Mono.just(Set.of());
+    }
+    long startNanos = System.nanoTime();
+    checked.increment(eventIds.size());
+
+    Set<String> processed = new HashSet<>();
+    List<String> unknown = new ArrayList<>();
+    synchronized(recent) {
+      expire(System.currentTimeMillis());
+      for(String eventId : eventIds) {
+        if(recent.containsKey(eventId)) {
+          processed.add(eventId);
+        } else {
+          unknown.add(eventId);
+        }
+      }
+    }
+    cacheHits.increment(processed.size());
+
+    if(unknown.isEmpty()) {
+      cacheTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      return Mono.just(processed);
+    }
+    return store.findProcessed(unknown)
+      .map(stored -> {
+        storeHits.increment(stored.size());
+        remember(stored);
+        processed.addAll(stored);
+        return processed;
+      })
+      .doFinally(signal -> storeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+  }
+
+  public Mono<Void> markProcessed(Collection<String> eventIds) {
+    if(!isEnabled() || eventIds.isEmpty()) {
+      return Mono.empty();
+    }
+    return store.markProcessed(eventIds)
+      .onErrorResume(ex -> {
+        LOG.warn("Failed to record {} processed event ids, only remembers them in memory: {}", eventIds.size(), ex.toString());
+        return Mono.empty();
+      })
+      .then(Mono.fromRunnable(() -> remember(eventIds)));
+  }
+
+  private void remember(Collection<String> eventIds) {
+    if(eventIds.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    synchronized(recent) {
+      for(String eventId : eventIds) {
+        // Re-inserted so it moves to the end of the eviction order
+        recent.remove(eventId);
+        recent.put(eventId, now);
+      }
+      Iterator<String> eldest = recent.keySet().iterator();
+      while(recent.size() > maxSize) {
+        eldest.next();
+        eldest.remove();
+      }
+      expire(now);
+    }
+  }
+
+  private void expire(long now) {
+    Iterator<Map.Entry<String, Long>> eldest = recent.entrySet().iterator();
+    while(eldest.hasNext() && now - eldest.next().getValue() > windowMillis) {
+      eldest.remove();
+    }
+  }
+
+  int cachedCount() {
+    synchronized(recent) {
+      return recent.size();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package se.david.util.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.david.api.event.Event;
+import se.david.api.event.EventResult;
+import se.david.api.exceptions.BadRequestException;
+import se.david.api.exceptions.EventProcessingException;
+import se.david.api.exceptions.InvalidInputException;
+import se.david.api.exceptions.InventoryOutOfStockException;
+import se.david.api.exceptions.NotFoundException;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Answers the events that carry a correlation id with an EventResult, so the sender gets the entity the event resulted
+// in without reading it back. After a batch is applied the resulting entities are loaded with one call for the keys of
+// all correlated events in the batch; a rejected event is answered with the status its exception maps to in the API.
+//
+// Publishing a result is best effort: a failure is logged and the sender runs into its timeout, but the batch is still
+// acknowledged since its events have been applied.
+public final class EventResultPublisher<K, R> {
+  private static final Logger LOG = LoggerFactory.getLogger(EventResultPublisher.class);
+  private static final EventResultPublisher<?, ?> DISABLED = new EventResultPublisher<>(null, null, null);
+
+  private final Function<Set<K>, Flux<R>> resultLoader;
+  private final Function<R, K> keyOf;
+  private final Consumer<EventResult> sender;
+
+  public EventResultPublisher(Function<Set<K>, Flux<R>> resultLoader, Function<R, K> keyOf, Consumer<EventResult> sender) {
+    this.resultLoader = resultLoader;
+    this.keyOf = keyOf;
+    this.sender = sender;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <K, R> EventResultPublisher<K, R> disabled() {
+    return (EventResultPublisher<K, R>) DISABLED;
+  }
+
+  public boolean isEnabled() {
+    return sender != null;
+  }
+
+  Mono<Void> publishApplied(List<? extends Event<K, ?>> events) {
+    if(!isEnabled()) {
+      return Mono.empty();
+    }
+    List<? extends Event<K, ?>> correlated = events.stream().filter(event -> event.getCorrelationId() != null).toList();
+    if(correlated.isEmpty()) {
+      return Mono.empty();
+    }
+    Set<K> keys = correlated.stream().map(Event::getKey).filter(Objects::nonNull).collect(Collectors.toSet());
+
+    return Flux.defer(() -> resultLoader.apply(keys))
+      .collectMap(keyOf)
+      .doOnNext(results -> correlated.forEach(event -> {
+        R result = event.getKey() == null ? null : results.get(event.getKey());
+        send(result != null
+          ? EventResult.success(event.getCorrelationId(), result)
+          : EventResult.failure(event.getCorrelationId(), 404, "No result found for key: " + event.getKey()));
+      }))
+      .onErrorResume(ex -> {
+        LOG.warn("Failed to load the results of {} correlated events: {}", correlated.size(), ex.toString());
+        return Mono.empty();
+      })
+      .then();
+  }
+
+  void publishRejected(Event<K, ?> event, Throwable ex) {
+    if(!isEnabled() || event.getCorrelationId() == null) {
+      return;
+    }
+    send(EventResult.failure(event.getCorrelationId(), statusOf(ex), ex.getMessage()));
+  }
+
+  private void send(EventResult result) {
+    try {
+      sender.accept(result);
+    } catch (RuntimeException ex) {
+      LOG.warn("Failed to publish the result for correlation id {}: {}", result.correlationId(), ex.toString());
+    }
+  }
+
+  // Mirrors GlobalControllerExceptionHandler
+  static int statusOf(Throwable ex) {
+    if(ex instanceof NotFoundException) {
+      return 404;
+    }
+    if(ex instanceof InventoryOutOfStockException) {
+      return 409;
+    }
+    if(ex instanceof InvalidInputException) {
+      return 422;
+    }
+    if(ex instanceof BadRequestException || ex instanceof EventProcessingException) {
+      return 400;
+    }
+    return 500;
+  }
+}
@@ -0,0 +1,64 @@
+package se.david.util.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import se.david.api.event.Event;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Spreads messages over a fixed number of lanes by the hash of their partitionKey header, the same key the producers
+// partition on, so every message for one productId or orderId lands in the same lane. Messages without the header
+// fall back to the key of the event. Per lane it exports the number of messages that are waiting or being applied
+// (events.lane.depth) and how long it takes to apply a batch (events.lane.latency).
+public class KeyedLaneDispatcher {
+  public static final String PARTITION_KEY_HEADER = "partitionKey";
+
+  private final int lanes;
+  private final AtomicInteger[] depths;
+  private final Timer[] latencies;
+
+  public KeyedLaneDispatcher(int lanes, MeterRegistry meterRegistry) {
+    this.lanes = lanes;
+    this.depths = new AtomicInteger[lanes];
+    this.latencies = new Timer[lanes];
+    for(int lane = 0; lane < lanes; lane++) {
+      String laneTag = Integer.toString(lane);
+      depths[lane] = new AtomicInteger();
+      Gauge.builder("events.lane.depth", depths[lane], AtomicInteger::get)
+        .description("Messages dispatched to the lane that are not applied yet")
+        .tag("lane", laneTag)
+        .register(meterRegistry);
+      latencies[lane] = Timer.builder("events.lane.latency")
+        .description("Time to apply one batch of the lane")
+        .tag("lane", laneTag)
+        .publishPercentiles(0.5, 0.99)
+        .register(meterRegistry);
+    }
+  }
+
+  public int lanes() {
+    return lanes;
+  }
+
+  // Returns the lane of the message and counts it as waiting in that lane
+  public int dispatch(Message<? extends Event<?, ?>> message) {
+    Object partitionKey = message.getHeaders().get(PARTITION_KEY_HEADER);
+    if(partitionKey == null) {
+      partitionKey = message.getPayload().getKey();
+    }
+    int hash = partitionKey instanceof byte[] bytes ? Arrays.hashCode(bytes) : Objects.hashCode(partitionKey);
+    int lane = Math.floorMod(hash, lanes);
+    depths[lane].incrementAndGet();
+    return lane;
+  }
+
+  public void applied(int lane, int messages, long startNanos) {
+    latencies[lane].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    depths[lane].addAndGet(-messages);
+  }
+}
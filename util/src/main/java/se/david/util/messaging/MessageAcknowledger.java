@@ -0,0 +1,123 @@
+package se.david.util.messaging;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Manual acknowledgement for messages from the Rabbit binder (acknowledgeMode=MANUAL) and the Kafka binder
+// (ackMode=MANUAL). Messages without the binder's acknowledgement headers, e.g. from the test binder, are left alone.
+//
+// Rabbit acknowledges every message on its own. Kafka commits an offset, which covers all earlier messages of the
+// partition, while the lanes finish the messages of a partition in any order. So a Kafka message is only acknowledged
+// once every message received before it from the same partition has been finished as well.
+final class MessageAcknowledger {
+  private static final Logger LOG = LoggerFactory.getLogger(MessageAcknowledger.class);
+
+  private final Map<String, PartitionOffsets> partitions = new ConcurrentHashMap<>();
+
+  // Called in the order the binder delivers the messages, before they are split into lanes
+  void received(Message<?> message) {
+    Acknowledgment acknowledgment = message.getHeaders().get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+    Long offset = message.getHeaders().get(KafkaHeaders.OFFSET, Long.class);
+    String partition = partition(message);
+    if(acknowledgment != null && offset != null && partition != null) {
+      partitions.computeIfAbsent(partition, key -> new PartitionOffsets()).received(offset, acknowledgment);
+    }
+  }
+
+  void acknowledge(Message<?> message) {
+    if(finishKafkaMessage(message)) {
+      return;
+    }
+
+    Channel channel = message.getHeaders().get(AmqpHeaders.CHANNEL, Channel.class);
+    Long deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+    if(channel != null && deliveryTag != null) {
+      try {
+        channel.basicAck(deliveryTag, false);
+      } catch (IOException e) {
+        // The broker redelivers the message, which is applied again
+        LOG.warn("Failed to acknowledge message {}: {}", deliveryTag, e.toString());
+      }
+    }
+  }
+
+  // Rabbit dead-letters a rejected message. Kafka has no dead-letter queue for manual acks, so there the failure is
+  // logged and the offset committed, otherwise the partition would be stuck redelivering the message.
+  void reject(Message<?> message) {
+    if(finishKafkaMessage(message)) {
+      return;
+    }
+
+    Channel channel = message.getHeaders().get(AmqpHeaders.CHANNEL, Channel.class);
+    Long deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+    if(channel != null && deliveryTag != null) {
+      try {
+        channel.basicNack(deliveryTag, false, false);
+      } catch (IOException e) {
+        LOG.warn("Failed to reject message {}: {}", deliveryTag, e.toString());
+      }
+    }
+  }
+
+  // Returns false for a message that is not from the Kafka binder
+  private boolean finishKafkaMessage(Message<?> message) {
+    Acknowledgment acknowledgment = message.getHeaders().get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+    if(acknowledgment == null) {
+      return false;
+    }
+
+    Long offset = message.getHeaders().get(KafkaHeaders.OFFSET, Long.class);
+    String partition = partition(message);
+    PartitionOffsets offsets = partition == null ? null : partitions.get(partition);
+    if(offset == null || offsets == null) {
+      acknowledgment.acknowledge();
+    } else {
+      offsets.finished(offset);
+    }
+    return true;
+  }
+
+  private static String partition(Message<?> message) {
+    String topic = message.getHeaders().get(KafkaHeaders.RECEIVED_TOPIC, String.class);
+    Integer partition = message.getHeaders().get(KafkaHeaders.RECEIVED_PARTITION, Integer.class);
+    return topic == null || partition == null ? null : topic + "-" + partition;
+  }
+
+  // The offsets of a partition that have been received but not acknowledged yet
+  private static final class PartitionOffsets {
+    private final TreeMap<Long, Acknowledgment> inFlight = new TreeMap<>();
+    private final Set<Long> finished = new HashSet<>();
+
+    synchronized void received(long offset, Acknowledgment acknowledgment) {
+      inFlight.put(offset, acknowledgment);
+    }
+
+    // Acknowledges the highest offset up to which every received message has been finished, which commits them all.
+    // Acknowledging under the lock keeps the commits of a partition in increasing order.
+    synchronized void finished(long offset) {
+      if(!inFlight.containsKey(offset)) {
+        return;
+      }
+      finished.add(offset);
+      Acknowledgment highest = null;
+      while(!inFlight.isEmpty() && finished.remove(inFlight.firstKey())) {
+        highest = inFlight.pollFirstEntry().getValue();
+      }
+      if(highest != null) {
+        highest.acknowledge();
+      }
+    }
+  }
+}
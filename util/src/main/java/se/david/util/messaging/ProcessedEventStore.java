@@ -0,0 +1,13 @@
+package se.david.util.messaging;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Set;
+
+// Durable record of the event ids a consumer has applied, implemented by each service on top of its own database
+public interface ProcessedEventStore {
+  Mono<Set<String>> findProcessed(Collection<String> eventIds);
+
+  Mono<Void> markProcessed(Collection<String> eventIds);
+}
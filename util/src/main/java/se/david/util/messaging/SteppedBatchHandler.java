@@ -0,0 +1,15 @@
+package se.david.util.messaging;
+
+import reactor.core.publisher.Mono;
+import se.david.api.event.Event;
+
+import java.util.List;
+import java.util.function.Function;
+
+// A batch handler that writes a batch in several steps that are not undone when a later step fails. After every step
+// it hands the events of that step to stepApplied and waits for it, so the BatchingEventProcessor does not apply them
+// a second time when the rest of the batch fails and is applied again event by event.
+@FunctionalInterface
+public interface SteppedBatchHandler<K, T> {
+  Mono<Void> apply(List<Event<K, T>> events, Function<List<Event<K, T>>, Mono<Void>> stepApplied);
+}
@@ -0,0 +1,32 @@
+package se.david.util.scheduler;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+// Builds the scheduler the services run their blocking JDBC calls on, selected by app.jdbcScheduler.mode:
+//   boundedElastic - a bounded elastic pool of platform threads with a bounded task queue (the default)
+//   virtual        - a virtual thread per call, gated by a semaphore sized to the connection pool
+public final class JdbcSchedulers {
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcSchedulers.class);
+  public static final String BOUNDED_ELASTIC = "boundedElastic";
+  public static final String VIRTUAL = "virtual";
+
+  private JdbcSchedulers() {
+  }
+
+  public static Scheduler create(String mode, int threadPoolSize, int taskQueueSize, int connectionPoolSize, MeterRegistry meterRegistry) {
+    if(VIRTUAL.equalsIgnoreCase(mode)) {
+      LOG.info("Creates a jdbcScheduler on virtual threads with max concurrency = {}", connectionPoolSize);
+      return Schedulers.fromExecutorService(new PermitGatedExecutorService("jdbc-virtual", connectionPoolSize, meterRegistry), "jdbc-virtual");
+    }
+    if(!BOUNDED_ELASTIC.equalsIgnoreCase(mode)) {
+      throw new IllegalArgumentException("Unknown jdbcScheduler mode: " + mode + ", expected " + BOUNDED_ELASTIC + " or " + VIRTUAL);
+    }
+
+    LOG.info("Creates a jdbcScheduler with thread pool size = {}", threadPoolSize);
+    return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "jdbc-pool");
+  }
+}
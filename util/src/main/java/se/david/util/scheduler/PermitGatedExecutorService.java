@@ -0,0 +1,145 @@
+package se.david.util.scheduler;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs every task on its own virtual thread, but lets at most maxConcurrency of them run at the same time.
+// Tasks over the limit park their virtual thread on the semaphore instead of being queued or rejected,
+// so the limit should match the number of connections the tasks compete for.
+public class PermitGatedExecutorService extends AbstractExecutorService {
+  private final ExecutorService delegate;
+  private final Semaphore permits;
+  private final int maxConcurrency;
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final Timer permitWaitTimer;
+
+  public PermitGatedExecutorService(String name, int maxConcurrency, MeterRegistry meterRegistry) {
+    this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    this.permits = new Semaphore(maxConcurrency, true);
+    this.maxConcurrency = maxConcurrency;
+
+    Gauge.builder("scheduler.permits.waiting", waiting, AtomicInteger::get)
+      .tag("name", name)
+      .description("Tasks waiting for a permit")
+      .register(meterRegistry);
+    Gauge.builder("scheduler.permits.acquired", this, PermitGatedExecutorService::getAcquiredPermits)
+      .tag("name", name)
+      .description("Permits currently held by running tasks")
+      .register(meterRegistry);
+    this.permitWaitTimer = Timer.builder("scheduler.permits.wait")
+      .tag("name", name)
+      .description("Time spent waiting for a permit")
+      .register(meterRegistry);
+  }
+
+  public int getWaitingTasks() {
+    return waiting.get();
+  }
+
+  public int getAcquiredPermits() {
+    return maxConcurrency - permits.availablePermits();
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+    return new GatedTask<>(Executors.callable(runnable, value));
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+    return new GatedTask<>(callable);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    delegate.execute(() -> runWithPermit(task));
+  }
+
+  private void runWithPermit(Runnable task) {
+    GatedTask<?> gatedTask = task instanceof GatedTask<?> submitted ? submitted : null;
+    long waitStart = System.nanoTime();
+    waiting.incrementAndGet();
+    try {
+      if(gatedTask != null) {
+        gatedTask.waitingThread = Thread.currentThread();
+        if(gatedTask.isCancelled()) {
+          return;
+        }
+      }
+      permits.acquire();
+    } catch (InterruptedException ex) {
+      // The task was cancelled or the executor shut down now while it waited, there is nothing to run
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      if(gatedTask != null) {
+        gatedTask.waitingThread = null;
+      }
+      waiting.decrementAndGet();
+      permitWaitTimer.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+    }
+
+    try {
+      task.run();
+    } finally {
+      permits.release();
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  // A FutureTask only interrupts the thread that runs it, which it knows once the task has its permit. Cancelling a
+  // task that still waits for its permit interrupts the wait as well, so it does not hold a virtual thread until then.
+  private static final class GatedTask<T> extends FutureTask<T> {
+    private volatile Thread waitingThread;
+
+    GatedTask(Callable<T> callable) {
+      super(callable);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      Thread waiter = waitingThread;
+      if(cancelled && waiter != null) {
+        waiter.interrupt();
+      }
+      return cancelled;
+    }
+  }
+}
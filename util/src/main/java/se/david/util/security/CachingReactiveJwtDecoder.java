@@ -0,0 +1,100 @@
+package se.david.util.security;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+// Keeps the Jwts that the delegate has verified, so a bearer token that is sent with many requests is parsed and its
+// signature verified once. An entry expires with the token's exp, and at the latest after maxTtl; the concurrent
+// requests with a token that is not cached wait for one verification, and a token that fails it is not cached.
+//
+// The cache is keyed by the SHA-256 digest of the token, so it does not hold the tokens themselves. The hit ratio is
+// in the cache.gets metrics of the cache "jwts", the verifications of the delegate in the jwt.verification timer.
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+  private static final Logger LOG = LoggerFactory.getLogger(CachingReactiveJwtDecoder.class);
+
+  private final ReactiveJwtDecoder delegate;
+  private final AsyncCache<String, Jwt> cache;
+  private final Timer validTimer;
+  private final Timer invalidTimer;
+
+  public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, MeterRegistry meterRegistry, long maxSize, Duration maxTtl) {
+    this(delegate, meterRegistry, maxSize, maxTtl, Clock.systemUTC(), Ticker.systemTicker());
+  }
+
+  CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate, MeterRegistry meterRegistry, long maxSize, Duration maxTtl, Clock clock, Ticker ticker) {
+    LOG.info("Creates a JWT decoder cache with maxSize = {} and maxTtl = {}", maxSize, maxTtl);
+    this.delegate = delegate;
+    this.cache = Caffeine.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfter(new UntilExpiresAt(clock, maxTtl))
+      .ticker(ticker)
+      .recordStats()
+      .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwts");
+    this.validTimer = Timer.builder("jwt.verification").tag("result", "valid").register(meterRegistry);
+    this.invalidTimer = Timer.builder("jwt.verification").tag("result", "invalid").register(meterRegistry);
+  }
+
+  @Override
+  public Mono<Jwt> decode(String token) {
+    // The future is shared by the requests with the same token, so one of them cancelling must not cancel it
+    return Mono.fromFuture(() -> cache.get(digest(token), (key, executor) -> verify(token).toFuture()), true);
+  }
+
+  private Mono<Jwt> verify(String token) {
+    return Mono.defer(() -> {
+      long startNanos = System.nanoTime();
+      return delegate.decode(token)
+        .doOnSuccess(jwt -> validTimer.record(Duration.ofNanos(System.nanoTime() - startNanos)))
+        .doOnError(ex -> invalidTimer.record(Duration.ofNanos(System.nanoTime() - startNanos)));
+    });
+  }
+
+  private static String digest(String token) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // A cached Jwt is not checked again, so it must be gone when the token expires
+  private record UntilExpiresAt(Clock clock, Duration maxTtl) implements Expiry<String, Jwt> {
+    @Override
+    public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+      if(jwt.getExpiresAt() == null) {
+        return maxTtl.toNanos();
+      }
+      Duration untilExpiry = Duration.between(clock.instant(), jwt.getExpiresAt());
+      return Math.max(0, Math.min(untilExpiry.toNanos(), maxTtl.toNanos()));
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, jwt, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package se.david.util.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The JWK set of the authorization server, fetched at the start and then every refreshInterval in the background, so
+// verifying a token only looks its key up in memory. A key that the authorization server publishes before it signs
+// with it is known before the first token arrives.
+//
+// A token with a key id that is not in the set, e.g. after the authorization server restarted with a new key, waits
+// for one fetch shared by all such tokens. The set is fetched for unknown keys at most once per minRefreshInterval,
+// so tokens with made up key ids cannot make every request call the authorization server.
+//
+// The URI of the set may be discovered from the issuer's metadata, see discoverJwkSetUri(). It is then looked up on the
+// first fetch and kept once it was found, so an authorization server that is not up yet does not stop the start.
+public class JwkSetRefresher implements SmartLifecycle {
+  private static final Logger LOG = LoggerFactory.getLogger(JwkSetRefresher.class);
+
+  private final WebClient webClient;
+  private final Mono<String> jwkSetUri;
+  private final Duration refreshInterval;
+  private final long minRefreshIntervalNanos;
+  private final AtomicReference<JWKSet> jwkSet = new AtomicReference<>(new JWKSet());
+  private Mono<JWKSet> inFlight;
+  private boolean fetchedForUnknownKey;
+  private long lastUnknownKeyFetchNanos;
+  private volatile Disposable refresher;
+
+  public JwkSetRefresher(WebClient webClient, String jwkSetUri, Duration refreshInterval, Duration minRefreshInterval) {
+    this(webClient, Mono.just(jwkSetUri), refreshInterval, minRefreshInterval);
+  }
+
+  public JwkSetRefresher(WebClient webClient, Mono<String> jwkSetUri, Duration refreshInterval, Duration minRefreshInterval) {
+    this.webClient = webClient;
+    this.jwkSetUri = jwkSetUri.cache(uri -> Duration.ofMillis(Long.MAX_VALUE), ex -> Duration.ZERO, () -> Duration.ZERO);
+    this.refreshInterval = refreshInterval;
+    this.minRefreshIntervalNanos = minRefreshInterval.toNanos();
+  }
+
+  // The JWK source of a NimbusReactiveJwtDecoder
+  public Flux<JWK> keys(SignedJWT jwt) {
+    JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+    List<JWK> keys = selector.select(jwkSet.get());
+    if(!keys.isEmpty()) {
+      return Flux.fromIterable(keys);
+    }
+    // When the authorization server cannot be reached the token has no key, and is rejected like a forged one
+    return refresh(false)
+      .onErrorResume(ex -> Mono.just(jwkSet.get()))
+      .flatMapIterable(selector::select);
+  }
+
+  @Override
+  public void start() {
+    LOG.info("Starts refreshing the JWK set every {}", refreshInterval);
+    refresher = Flux.interval(Duration.ZERO, refreshInterval)
+      .concatMap(tick -> refresh(true).onErrorResume(ex -> Mono.empty()))
+      .subscribe();
+  }
+
+  @Override
+  public void stop() {
+    refresher.dispose();
+    refresher = null;
+  }
+
+  @Override
+  public boolean isRunning() {
+    return refresher != null;
+  }
+
+  // Joins the fetch in flight, if there is one
+  synchronized Mono<JWKSet> refresh(boolean scheduled) {
+    if(inFlight != null) {
+      return inFlight;
+    }
+    if(!scheduled) {
+      if(fetchedForUnknownKey && System.nanoTime() - lastUnknownKeyFetchNanos < minRefreshIntervalNanos) {
+        return Mono.just(jwkSet.get());
+      }
+      fetchedForUnknownKey = true;
+      lastUnknownKeyFetchNanos = System.nanoTime();
+    }
+    inFlight = fetch()
+      .doFinally(signal -> {
+        synchronized(this) {
+          inFlight = null;
+        }
+      })
+      .cache();
+    return inFlight;
+  }
+
+  private Mono<JWKSet> fetch() {
+    return jwkSetUri
+      .doOnError(ex -> LOG.warn("Failed to find the URI of the JWK set: {}", ex.toString()))
+      .flatMap(uri -> webClient.get()
+        .uri(uri)
+        .retrieve()
+        .bodyToMono(String.class)
+        .<JWKSet>handle((body, sink) -> {
+          try {
+            sink.next(JWKSet.parse(body));
+          } catch (ParseException e) {
+            sink.error(new IllegalStateException("Invalid JWK set from " + uri, e));
+          }
+        })
+        .doOnNext(fetched -> {
+          LOG.debug("Fetched {} keys from {}", fetched.getKeys().size(), uri);
+          jwkSet.set(fetched);
+        })
+        .doOnError(ex -> LOG.warn("Failed to fetch the JWK set from {}: {}", uri, ex.toString())));
+  }
+
+  // The jwks_uri of the issuer's OpenID Connect discovery document, or of its OAuth 2.0 authorization server metadata
+  // (RFC 8414) for an issuer that is no OpenID provider, the same lookup as Spring's issuer-uri configuration does
+  public static Mono<String> discoverJwkSetUri(WebClient webClient, String issuerUri) {
+    URI issuer = URI.create(issuerUri);
+    String path = issuer.getPath() == null || issuer.getPath().equals("/") ? "" : issuer.getPath().replaceAll("/$", "");
+    String origin = issuer.getScheme() + "://" + issuer.getRawAuthority();
+    return jwkSetUriOf(webClient, origin + path + "/.well-known/openid-configuration")
+      .onErrorResume(ex -> jwkSetUriOf(webClient, origin + "/.well-known/openid-configuration" + path))
+      .onErrorResume(ex -> jwkSetUriOf(webClient, origin + "/.well-known/oauth-authorization-server" + path))
+      .doOnNext(uri -> LOG.info("Found the JWK set of {} at {}", issuerUri, uri));
+  }
+
+  private static Mono<String> jwkSetUriOf(WebClient webClient, String metadataUri) {
+    return webClient.get()
+      .uri(metadataUri)
+      .retrieve()
+      .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+      .flatMap(metadata -> metadata.get("jwks_uri") instanceof String uri
+        ? Mono.just(uri)
+        : Mono.error(new IllegalStateException("No jwks_uri in " + metadataUri)));
+  }
+}
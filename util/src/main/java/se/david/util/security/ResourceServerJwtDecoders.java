@@ -0,0 +1,47 @@
+package se.david.util.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+// The JWK set and the JwtDecoder of the gateway and the composite, which are resource servers of the same
+// authorization server. Built from the properties of the service:
+//
+//   spring.security.oauth2.resourceserver.jwt.issuer-uri   the issuer the tokens must have
+//   spring.security.oauth2.resourceserver.jwt.jwk-set-uri  where its keys are; found in the issuer's metadata if not set
+//   app.jwt.jwkRefreshIntervalMs, app.jwt.jwkMinRefreshIntervalMs, app.jwt.cacheMaxSize, app.jwt.cacheMaxTtlSeconds
+public final class ResourceServerJwtDecoders {
+  public static final String ISSUER_URI_PROPERTY = "spring.security.oauth2.resourceserver.jwt.issuer-uri";
+  public static final String JWK_SET_URI_PROPERTY = "spring.security.oauth2.resourceserver.jwt.jwk-set-uri";
+
+  private ResourceServerJwtDecoders() {
+  }
+
+  public static JwkSetRefresher jwkSetRefresher(PropertyResolver properties) {
+    WebClient webClient = WebClient.create();
+    String jwkSetUri = properties.getProperty(JWK_SET_URI_PROPERTY);
+    Mono<String> resolvedJwkSetUri = StringUtils.hasText(jwkSetUri)
+      ? Mono.just(jwkSetUri)
+      : JwkSetRefresher.discoverJwkSetUri(webClient, properties.getRequiredProperty(ISSUER_URI_PROPERTY));
+    return new JwkSetRefresher(webClient, resolvedJwkSetUri,
+      Duration.ofMillis(properties.getProperty("app.jwt.jwkRefreshIntervalMs", Long.class, 300_000L)),
+      Duration.ofMillis(properties.getProperty("app.jwt.jwkMinRefreshIntervalMs", Long.class, 5_000L)));
+  }
+
+  // Verifies the tokens with the keys of the JwkSetRefresher instead of fetching them on the request path, and
+  // caches the verified tokens
+  public static ReactiveJwtDecoder jwtDecoder(JwkSetRefresher jwkSetRefresher, MeterRegistry meterRegistry, PropertyResolver properties) {
+    NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSetRefresher::keys).build();
+    decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(properties.getRequiredProperty(ISSUER_URI_PROPERTY)));
+    return new CachingReactiveJwtDecoder(decoder, meterRegistry,
+      properties.getProperty("app.jwt.cacheMaxSize", Long.class, 10_000L),
+      Duration.ofSeconds(properties.getProperty("app.jwt.cacheMaxTtlSeconds", Long.class, 300L)));
+  }
+}
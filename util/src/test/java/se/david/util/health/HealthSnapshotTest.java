@@ -0,0 +1,114 @@
+package se.david.util.health;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HealthSnapshotTest {
+  private final AtomicInteger checks = new AtomicInteger();
+  private final MutableClock clock = new MutableClock();
+
+  @Test
+  @DisplayName("the health is answered from the last check, without calling the service")
+  void answersFromTheLastCheck() {
+    HealthSnapshot snapshot = snapshot(() -> Mono.fromSupplier(() -> {
+      checks.incrementAndGet();
+      return Health.up().build();
+    }));
+    assertEquals(Status.UNKNOWN, snapshot.health("product").getStatus());
+
+    StepVerifier.create(snapshot.refresh("product")).verifyComplete();
+    clock.advance(Duration.ofSeconds(3));
+    for(int i = 0; i < 100; i++) {
+      Health health = snapshot.health("product");
+      assertEquals(Status.UP, health.getStatus());
+      assertEquals(3000L, health.getDetails().get("ageMs"));
+    }
+    assertEquals(1, checks.get());
+  }
+
+  @Test
+  @DisplayName("a check that does not answer within the timeout is DOWN")
+  void slowCheckIsDown() {
+    HealthSnapshot snapshot = snapshot(Mono::never);
+
+    StepVerifier.create(snapshot.refresh("product")).verifyComplete();
+    assertEquals(Status.DOWN, snapshot.health("product").getStatus());
+  }
+
+  @Test
+  @DisplayName("a result older than maxAge is UNKNOWN")
+  void staleResultIsUnknown() {
+    HealthSnapshot snapshot = snapshot(() -> Mono.just(Health.up().build()));
+    StepVerifier.create(snapshot.refresh("product")).verifyComplete();
+
+    clock.advance(Duration.ofSeconds(31));
+    Health health = snapshot.health("product");
+    assertEquals(Status.UNKNOWN, health.getStatus());
+    assertEquals(31000L, health.getDetails().get("ageMs"));
+  }
+
+  @Test
+  @DisplayName("once started the services are checked in the background until stopped")
+  void refreshesInTheBackground() throws InterruptedException {
+    HealthSnapshot snapshot = new HealthSnapshot(Map.of("product", () -> Mono.fromSupplier(() -> {
+      checks.incrementAndGet();
+      return Health.up().build();
+    })), Duration.ofMillis(20), Duration.ofMillis(100), 0.2, Duration.ofSeconds(30));
+
+    snapshot.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while(checks.get() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    snapshot.stop();
+    assertTrue(checks.get() >= 3, "checked " + checks.get() + " times");
+    assertEquals(Status.UP, snapshot.health("product").getStatus());
+
+    int checksWhenStopped = checks.get();
+    Thread.sleep(100);
+    assertEquals(checksWhenStopped, checks.get());
+  }
+
+  private HealthSnapshot snapshot(Supplier<Mono<Health>> check) {
+    return new HealthSnapshot(Map.of("product", check), Duration.ofSeconds(10), Duration.ofMillis(100), 0.2, Duration.ofSeconds(30), clock);
+  }
+
+  private static final class MutableClock extends Clock {
+    private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package se.david.util.loadbalancer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.RetryableRequestContext;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.SimpleObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.LinkedMultiValueMap;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyAffinityLoadBalancerTest {
+  private static final String SERVICE_ID = "product";
+  private static final int KEYS = 2000;
+
+  private final List<ServiceInstance> instances = new ArrayList<>(List.of(instance("product-1"), instance("product-2"), instance("product-3"), instance("product-4")));
+  private final AtomicLong clock = new AtomicLong(1);
+  private final KeyAffinityLoadBalancer loadBalancer = new KeyAffinityLoadBalancer(
+    new SimpleObjectProvider<>(supplier()), SERVICE_ID, Duration.ofSeconds(10), Duration.ofSeconds(10), clock::get, new Random(42));
+
+  @Test
+  @DisplayName("the requests for an id always go to the same instance, and the ids are spread over all instances")
+  void sameIdSameInstance() {
+    Map<String, String> chosen = chooseAll();
+    for(int i = 0; i < 5; i++) {
+      assertEquals(chosen, chooseAll());
+    }
+    assertEquals(choose("/product/7"), choose("/product/7/details"));
+    for(ServiceInstance instance : instances) {
+      long count = chosen.values().stream().filter(instance.getInstanceId()::equals).count();
+      assertTrue(count > KEYS / instances.size() * 0.8, instance.getInstanceId() + " got " + count + " of " + KEYS + " ids");
+    }
+  }
+
+  @Test
+  @DisplayName("when an instance leaves only its ids move, and an instance that joins only takes ids over")
+  void membershipChangesMoveFewIds() {
+    Map<String, String> before = chooseAll();
+
+    instances.remove(1);
+    Map<String, String> afterLeave = chooseAll();
+    before.forEach((key, instanceId) -> {
+      if(!instanceId.equals("product-2")) {
+        assertEquals(instanceId, afterLeave.get(key), "id " + key + " moved");
+      }
+    });
+
+    instances.add(instance("product-5"));
+    Map<String, String> afterJoin = chooseAll();
+    long moved = 0;
+    for(Map.Entry<String, String> entry : afterLeave.entrySet()) {
+      String now = afterJoin.get(entry.getKey());
+      if(!now.equals(entry.getValue())) {
+        assertEquals("product-5", now);
+        moved++;
+      }
+    }
+    assertTrue(moved > KEYS / 4 * 0.8 && moved < KEYS / 4 * 1.2, "moved " + moved + " of " + KEYS + " ids");
+  }
+
+  @Test
+  @DisplayName("a retry and the requests after a failure go to the next instance, and back once the failure has cooled down")
+  void fallsBackToTheNextInstance() {
+    String first = choose("/product/42");
+    ServiceInstance firstInstance = instances.stream().filter(instance -> instance.getInstanceId().equals(first)).findFirst().orElseThrow();
+
+    DefaultRequest<Object> retry = new DefaultRequest<>(new RetryableRequestContext(firstInstance, requestData("/product/42")));
+    String next = loadBalancer.choose(retry).block().getServer().getInstanceId();
+    assertNotEquals(first, next);
+
+    DefaultRequest<Object> failing = request("/product/42");
+    Response<ServiceInstance> response = loadBalancer.choose(failing).block();
+    loadBalancer.onStartRequest(failing, response);
+    loadBalancer.onComplete(new CompletionContext<>(CompletionContext.Status.FAILED, new RuntimeException("connection refused"), failing, response));
+    assertEquals(next, choose("/product/42"));
+
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    assertEquals(first, choose("/product/42"));
+  }
+
+  @Test
+  @DisplayName("a request without an id is balanced by the power of two choices")
+  void requestWithoutIdIsBalanced() {
+    assertNotNull(choose("/product"));
+    assertNotNull(loadBalancer.choose(new DefaultRequest<>(new RequestDataContext())).block().getServer());
+  }
+
+  private Map<String, String> chooseAll() {
+    Map<String, String> chosen = new HashMap<>();
+    for(int id = 1; id <= KEYS; id++) {
+      chosen.put(String.valueOf(id), choose("/product/" + id));
+    }
+    return chosen;
+  }
+
+  private String choose(String path) {
+    return loadBalancer.choose(request(path)).block().getServer().getInstanceId();
+  }
+
+  private static DefaultRequest<Object> request(String path) {
+    return new DefaultRequest<>(new RequestDataContext(requestData(path)));
+  }
+
+  private static RequestData requestData(String path) {
+    return new RequestData(HttpMethod.GET, URI.create("http://" + SERVICE_ID + path), new HttpHeaders(), new LinkedMultiValueMap<>(), new HashMap<>());
+  }
+
+  private ServiceInstanceListSupplier supplier() {
+    return new ServiceInstanceListSupplier() {
+      @Override
+      public String getServiceId() {
+        return SERVICE_ID;
+      }
+
+      @Override
+      public Flux<List<ServiceInstance>> get() {
+        return Flux.defer(() -> Flux.just(List.copyOf(instances)));
+      }
+    };
+  }
+
+  private static ServiceInstance instance(String instanceId) {
+    return new DefaultServiceInstance(instanceId, SERVICE_ID, instanceId, 8080, false);
+  }
+}
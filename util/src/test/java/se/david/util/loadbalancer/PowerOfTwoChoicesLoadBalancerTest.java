@@ -0,0 +1,147 @@
+package se.david.util.loadbalancer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.SimpleObjectProvider;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Simulates a request every millisecond to three instances on a virtual clock. shipping-1 answers in 200 ms, like an
+// instance in a GC pause or overloaded, the others in 5 ms.
+class PowerOfTwoChoicesLoadBalancerTest {
+  private static final String SERVICE_ID = "shipping";
+  private static final String SLOW_INSTANCE = "shipping-1";
+  private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+  private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+  private final List<ServiceInstance> instances = List.of(instance(SLOW_INSTANCE), instance("shipping-2"), instance("shipping-3"));
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test
+  @DisplayName("the slow instance gets almost no requests, so the p99 latency is the fast instances' instead of the slow one's")
+  void slowInstanceDoesNotSetTheTailLatency() {
+    Simulation roundRobin = simulate(new RoundRobinLoadBalancer(new SimpleObjectProvider<>(supplier()), SERVICE_ID), null, 4000, Long.MAX_VALUE);
+    PowerOfTwoChoicesLoadBalancer powerOfTwoChoices = loadBalancer();
+    Simulation latencyAware = simulate(powerOfTwoChoices, powerOfTwoChoices, 4000, Long.MAX_VALUE);
+
+    assertEquals(SLOW_NANOS, roundRobin.p99());
+    assertEquals(FAST_NANOS, latencyAware.p99());
+    assertTrue(latencyAware.shareOfSlowInstance(0, 4000) < 0.01, "share of the slow instance: " + latencyAware.shareOfSlowInstance(0, 4000));
+  }
+
+  @Test
+  @DisplayName("an instance that was slow gets its share of the requests again once its latency has recovered")
+  void recoveredInstanceGetsRequestsAgain() {
+    PowerOfTwoChoicesLoadBalancer loadBalancer = loadBalancer();
+    Simulation simulation = simulate(loadBalancer, loadBalancer, 60_000, TimeUnit.SECONDS.toNanos(5));
+
+    assertTrue(simulation.shareOfSlowInstance(5_000, 15_000) < 0.01);
+    assertTrue(simulation.shareOfSlowInstance(50_000, 60_000) > 0.2, "share of the recovered instance: " + simulation.shareOfSlowInstance(50_000, 60_000));
+  }
+
+  @Test
+  @DisplayName("an instance that has not answered yet is not sent another request until it answers")
+  void unansweredInstanceGetsOneRequestAtATime() {
+    PowerOfTwoChoicesLoadBalancer loadBalancer = loadBalancer();
+    DefaultRequest<Object> firstRequest = new DefaultRequest<>(new RequestDataContext());
+    Response<ServiceInstance> first = loadBalancer.choose(firstRequest).block();
+    loadBalancer.onStartRequest(firstRequest, first);
+
+    for(int i = 0; i < 20; i++) {
+      ServiceInstance next = loadBalancer.choose(new DefaultRequest<>(new RequestDataContext())).block().getServer();
+      assertTrue(!next.getInstanceId().equals(first.getServer().getInstanceId()), "chose " + next.getInstanceId() + " again");
+    }
+  }
+
+  private PowerOfTwoChoicesLoadBalancer loadBalancer() {
+    return new PowerOfTwoChoicesLoadBalancer(new SimpleObjectProvider<>(supplier()), SERVICE_ID, Duration.ofSeconds(10), clock::get, new Random(42));
+  }
+
+  private Simulation simulate(ReactorServiceInstanceLoadBalancer loadBalancer, PowerOfTwoChoicesLoadBalancer lifecycle, int requests, long slowUntilNanos) {
+    PriorityQueue<InFlight> inFlight = new PriorityQueue<>(Comparator.comparingLong(InFlight::endNanos));
+    long[] latencies = new long[requests];
+    boolean[] slowInstance = new boolean[requests];
+
+    for(int i = 0; i < requests; i++) {
+      long now = TimeUnit.MILLISECONDS.toNanos(i);
+      while(!inFlight.isEmpty() && inFlight.peek().endNanos() <= now) {
+        InFlight done = inFlight.poll();
+        clock.set(done.endNanos());
+        if(lifecycle != null) {
+          lifecycle.onComplete(new CompletionContext<>(CompletionContext.Status.SUCCESS, done.request(), done.response()));
+        }
+      }
+
+      clock.set(now);
+      DefaultRequest<Object> request = new DefaultRequest<>(new RequestDataContext());
+      Response<ServiceInstance> response = loadBalancer.choose(request).block();
+      if(lifecycle != null) {
+        lifecycle.onStartRequest(request, response);
+      }
+      slowInstance[i] = response.getServer().getInstanceId().equals(SLOW_INSTANCE);
+      latencies[i] = slowInstance[i] && now < slowUntilNanos ? SLOW_NANOS : FAST_NANOS;
+      inFlight.add(new InFlight(now + latencies[i], request, response));
+    }
+    return new Simulation(latencies, slowInstance);
+  }
+
+  private ServiceInstanceListSupplier supplier() {
+    return new ServiceInstanceListSupplier() {
+      @Override
+      public String getServiceId() {
+        return SERVICE_ID;
+      }
+
+      @Override
+      public Flux<List<ServiceInstance>> get() {
+        return Flux.just(instances);
+      }
+    };
+  }
+
+  private static ServiceInstance instance(String instanceId) {
+    return new DefaultServiceInstance(instanceId, SERVICE_ID, instanceId, 8080, false);
+  }
+
+  private record InFlight(long endNanos, Request<Object> request, Response<ServiceInstance> response) {
+  }
+
+  private record Simulation(long[] latencies, boolean[] slowInstance) {
+    long p99() {
+      long[] sorted = latencies.clone();
+      Arrays.sort(sorted);
+      return sorted[(int) (sorted.length * 0.99) - 1];
+    }
+
+    double shareOfSlowInstance(int from, int to) {
+      int count = 0;
+      for(int i = from; i < to; i++) {
+        if(slowInstance[i]) {
+          count++;
+        }
+      }
+      return (double) count / (to - from);
+    }
+  }
+}
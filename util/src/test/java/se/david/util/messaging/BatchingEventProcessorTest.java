@@ -0,0 +1,229 @@
+package se.david.util.messaging;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.david.api.event.Event;
+import se.david.api.event.EventResult;
+import se.david.api.exceptions.InvalidInputException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class BatchingEventProcessorTest {
+
+  private final Channel channel = mock(Channel.class);
+  private final List<List<Integer>> appliedBatches = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  @DisplayName("events are applied in batches of at most maxBatchSize and every message is acknowledged afterwards")
+  void eventsAreAppliedInBatchesAndAcknowledged() throws Exception {
+    EventBatchSettings settings = new EventBatchSettings(10, Duration.ofMillis(50), 1);
+
+    StepVerifier.create(BatchingEventProcessor.<Integer, Integer>create(settings, new SimpleMeterRegistry(), this::record).apply(messages(25, 1)))
+      .verifyComplete();
+
+    assertEquals(List.of(10, 10, 5), appliedBatches.stream().map(List::size).toList());
+    for(long deliveryTag = 1; deliveryTag <= 25; deliveryTag++) {
+      verify(channel).basicAck(deliveryTag, false);
+    }
+  }
+
+  @Test
+  @DisplayName("events with the same key stay in order when the lanes run concurrently")
+  void eventsWithSameKeyStayInOrder() {
+    EventBatchSettings settings = new EventBatchSettings(4, Duration.ofMillis(10), 3);
+
+    StepVerifier.create(BatchingEventProcessor.<Integer, Integer>create(settings, new SimpleMeterRegistry(), this::record).apply(messages(60, 5)))
+      .verifyComplete();
+
+    // The data of event n is n and its key n % 5, so every key must see its data in increasing order
+    List<Integer> applied = appliedBatches.stream().flatMap(List::stream).toList();
+    assertEquals(60, applied.size());
+    for(int key = 0; key < 5; key++) {
+      int finalKey = key;
+      List<Integer> sameKey = applied.stream().filter(data -> data % 5 == finalKey).toList();
+      assertEquals(sameKey.stream().sorted().toList(), sameKey);
+    }
+  }
+
+  @Test
+  @DisplayName("a failing batch is applied again event by event and only the failing event is rejected")
+  void failingEventIsRejectedAlone() throws Exception {
+    EventBatchSettings settings = new EventBatchSettings(10, Duration.ofMillis(50), 1);
+
+    StepVerifier.create(BatchingEventProcessor.<Integer, Integer>create(settings, new SimpleMeterRegistry(), events -> {
+        if(events.stream().anyMatch(event -> event.getData() == 3)) {
+          return Mono.error(new IllegalStateException("event 3 cannot be applied"));
+        }
+        return record(events);
+      }).apply(messages(5, 1)))
+      .verifyComplete();
+
+    assertEquals(List.of(List.of(1), List.of(2), List.of(4), List.of(5)), appliedBatches);
+    verify(channel).basicNack(3L, false, false);
+    verify(channel, never()).basicAck(3L, false);
+    verify(channel).basicAck(5L, false);
+  }
+
+  @Test
+  @DisplayName("the written steps of a failing batch are acknowledged without being applied again")
+  void writtenStepsAreNotAppliedAgain() throws Exception {
+    EventBatchSettings settings = new EventBatchSettings(10, Duration.ofMillis(50), 1);
+    // Writes the events two by two and fails on the step with event 3
+    SteppedBatchHandler<Integer, Integer> batchHandler = (events, stepApplied) -> Flux.fromIterable(events)
+      .bufferUntil(event -> event.getData() % 2 == 0)
+      .concatMap(step -> {
+        if(step.stream().anyMatch(event -> event.getData() == 3)) {
+          return Mono.<Void>error(new IllegalStateException("event 3 cannot be applied"));
+        }
+        return record(step).then(Mono.defer(() -> stepApplied.apply(step)));
+      })
+      .then();
+
+    StepVerifier.create(BatchingEventProcessor.create(settings, new SimpleMeterRegistry(), EventDeduplicator.disabled(), EventResultPublisher.disabled(), batchHandler)
+        .apply(messages(4, 1)))
+      .verifyComplete();
+
+    assertEquals(List.of(List.of(1, 2), List.of(4)), appliedBatches);
+    verify(channel).basicAck(1L, false);
+    verify(channel).basicAck(2L, false);
+    verify(channel).basicNack(3L, false, false);
+    verify(channel).basicAck(4L, false);
+  }
+
+  @Test
+  @DisplayName("a message is not acknowledged before its batch has been applied")
+  void messageIsNotAcknowledgedBeforeBatchIsApplied() throws Exception {
+    EventBatchSettings settings = new EventBatchSettings(10, Duration.ofMillis(10), 1);
+
+    StepVerifier.create(BatchingEventProcessor.<Integer, Integer>create(settings, new SimpleMeterRegistry(), events -> Mono.never())
+        .apply(messages(3, 1)))
+      .expectSubscription()
+      .expectNoEvent(Duration.ofMillis(200))
+      .thenCancel()
+      .verify();
+
+    verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    assertTrue(appliedBatches.isEmpty());
+  }
+
+  @Test
+  @DisplayName("a Kafka message is acknowledged only once the earlier messages of its partition are done")
+  void kafkaOffsetIsCommittedOnlyUpToTheFirstPendingMessage() {
+    EventBatchSettings settings = new EventBatchSettings(1, Duration.ofMillis(10), 2);
+    List<Long> acknowledgedOffsets = Collections.synchronizedList(new ArrayList<>());
+
+    // Offsets 10 and 12 have the key 0 and a slow lane, offsets 11 and 13 the key 1 and a fast one. Event 12 fails.
+    Flux<Message<Event<Integer, Integer>>> deliveries = Flux.range(10, 4)
+      .map(offset -> kafkaMessage(new Event<>(Event.Type.UPDATE, offset % 2, offset), offset, acknowledgedOffsets));
+
+    StepVerifier.create(BatchingEventProcessor.<Integer, Integer>create(settings, new SimpleMeterRegistry(), events -> {
+        if(events.get(0).getKey() == 1) {
+          return record(events);
+        }
+        return Mono.delay(Duration.ofMillis(200)).then(events.get(0).getData() == 12
+          ? Mono.error(new IllegalStateException("event 12 cannot be applied"))
+          : record(events));
+      }).apply(deliveries))
+      .verifyComplete();
+
+    // Acknowledging offset 11 before 10 was applied would have committed 10 as well
+    assertEquals(List.of(11L, 13L), acknowledgedOffsets);
+    assertEquals(List.of(List.of(11), List.of(13), List.of(10)), appliedBatches);
+  }
+
+  @Test
+  @DisplayName("a redelivered event is acknowledged without being applied again")
+  void redeliveredEventIsNotAppliedAgain() throws Exception {
+    EventBatchSettings settings = new EventBatchSettings(10, Duration.ofMillis(50), 1);
+    EventDeduplicator deduplicator = new EventDeduplicator(new InMemoryProcessedEventStore(), 100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    Event<Integer, Integer> event = new Event<>(Event.Type.UPDATE, 1, 1);
+
+    // The second delivery arrives in the same batch, the third in a later one
+    Flux<Message<Event<Integer, Integer>>> deliveries = Flux.concat(
+      Flux.just(message(event, 1), message(event, 2)),
+      Mono.delay(Duration.ofMillis(200)).map(tick -> message(event, 3)));
+
+    StepVerifier.create(BatchingEventProcessor.<Integer, Integer>create(settings, new SimpleMeterRegistry(), deduplicator, this::record).apply(deliveries))
+      .verifyComplete();
+
+    assertEquals(List.of(List.of(1)), appliedBatches);
+    for(long deliveryTag = 1; deliveryTag <= 3; deliveryTag++) {
+      verify(channel).basicAck(deliveryTag, false);
+    }
+  }
+
+  @Test
+  @DisplayName("correlated events are answered with their result once applied and with the status of their error once rejected")
+  void correlatedEventsAreAnswered() {
+    EventBatchSettings settings = new EventBatchSettings(10, Duration.ofMillis(50), 1);
+    List<EventResult> results = Collections.synchronizedList(new ArrayList<>());
+    // The result of a key is the key itself
+    EventResultPublisher<Integer, Integer> resultPublisher = new EventResultPublisher<>(Flux::fromIterable, key -> key, results::add);
+
+    Flux<Message<Event<Integer, Integer>>> deliveries = Flux.just(
+      message(new Event<>(Event.Type.UPDATE, 1, 1, "first"), 1),
+      message(new Event<>(Event.Type.UPDATE, 2, 3, "second"), 2),
+      message(new Event<>(Event.Type.UPDATE, 4, 4), 3));
+
+    StepVerifier.create(BatchingEventProcessor.<Integer, Integer>create(settings, new SimpleMeterRegistry(), EventDeduplicator.disabled(), resultPublisher, events -> {
+        if(events.stream().anyMatch(event -> event.getData() == 3)) {
+          return Mono.error(new InvalidInputException("event 3 is invalid"));
+        }
+        return record(events);
+      }).apply(deliveries))
+      .verifyComplete();
+
+    assertEquals(List.of(
+      EventResult.success("first", 1),
+      EventResult.failure("second", 422, "event 3 is invalid")), results);
+  }
+
+  private Mono<Void> record(List<Event<Integer, Integer>> events) {
+    return Mono.fromRunnable(() -> appliedBatches.add(events.stream().map(Event::getData).toList()));
+  }
+
+  // Event n (1-based) has the data n, the key n % keys and the Rabbit delivery tag n
+  private Flux<Message<Event<Integer, Integer>>> messages(int count, int keys) {
+    return Flux.fromStream(IntStream.rangeClosed(1, count).boxed())
+      .map(n -> message(new Event<>(Event.Type.UPDATE, n % keys, n), n));
+  }
+
+  private Message<Event<Integer, Integer>> kafkaMessage(Event<Integer, Integer> event, long offset, List<Long> acknowledgedOffsets) {
+    Acknowledgment acknowledgment = () -> acknowledgedOffsets.add(offset);
+    return MessageBuilder.withPayload(event)
+      .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+      .setHeader(KafkaHeaders.RECEIVED_TOPIC, "events")
+      .setHeader(KafkaHeaders.RECEIVED_PARTITION, 0)
+      .setHeader(KafkaHeaders.OFFSET, offset)
+      .build();
+  }
+
+  private Message<Event<Integer, Integer>> message(Event<Integer, Integer> event, long deliveryTag) {
+    return MessageBuilder.withPayload(event)
+      .setHeader(AmqpHeaders.CHANNEL, channel)
+      .setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+      .build();
+  }
+}
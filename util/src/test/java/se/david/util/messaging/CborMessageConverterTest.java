@@ -0,0 +1,80 @@
+package se.david.util.messaging;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import se.david.api.core.inventory.dto.InventoryStockAdjustmentRequestDto;
+import se.david.api.event.Event;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CborMessageConverterTest {
+  private static final Type REDUCE_STOCKS_TYPE = new TypeReference<Event<Integer, InventoryStockAdjustmentRequestDto>>() {
+  }.getType();
+
+  private final CborMessageConverter converter = new CborMessageConverter();
+
+  @Test
+  @DisplayName("an event written as CBOR is read back with its generic payload type")
+  void eventRoundTrip() {
+    Event<Integer, InventoryStockAdjustmentRequestDto> event = reduceStocks(3);
+
+    Message<?> message = converter.toMessage(event, headers(CborMessageConverter.APPLICATION_CBOR.toString()));
+    assertNotNull(message);
+    assertTrue(message.getPayload() instanceof byte[]);
+
+    @SuppressWarnings("unchecked")
+    Event<Integer, InventoryStockAdjustmentRequestDto> read =
+      (Event<Integer, InventoryStockAdjustmentRequestDto>) converter.fromMessage(message, Event.class, REDUCE_STOCKS_TYPE);
+
+    assertNotNull(read);
+    assertEquals(event.getEventId(), read.getEventId());
+    assertEquals(Event.Type.REDUCE_STOCKS, read.getEventType());
+    assertEquals(event.getDataList(), read.getDataList());
+    assertEquals(event.getEventCreatedAt().toInstant(), read.getEventCreatedAt().toInstant());
+  }
+
+  @Test
+  @DisplayName("a CBOR event is smaller than the same event as JSON")
+  void cborIsSmallerThanJson() throws Exception {
+    ObjectMapper json = JsonMapper.builder().findAndAddModules().build();
+    Event<Integer, InventoryStockAdjustmentRequestDto> event = reduceStocks(50);
+
+    byte[] cbor = converter.getObjectMapper().writeValueAsBytes(event);
+    assertTrue(cbor.length < json.writeValueAsBytes(event).length);
+  }
+
+  @Test
+  @DisplayName("messages without a CBOR contentType are left to the other converters")
+  void otherContentTypesAreNotConverted() throws Exception {
+    byte[] payload = converter.getObjectMapper().writeValueAsBytes(reduceStocks(1));
+
+    assertNull(converter.fromMessage(MessageBuilder.withPayload(payload).build(), Event.class));
+    assertNull(converter.fromMessage(MessageBuilder.withPayload(payload)
+      .setHeader(MessageHeaders.CONTENT_TYPE, "application/json").build(), Event.class));
+  }
+
+  private Event<Integer, InventoryStockAdjustmentRequestDto> reduceStocks(int items) {
+    List<InventoryStockAdjustmentRequestDto> reductions = IntStream.rangeClosed(1, items)
+      .mapToObj(productId -> new InventoryStockAdjustmentRequestDto(productId, 2))
+      .toList();
+    return new Event<>(Event.Type.REDUCE_STOCKS, null, reductions);
+  }
+
+  private MessageHeaders headers(String contentType) {
+    return new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, contentType));
+  }
+}
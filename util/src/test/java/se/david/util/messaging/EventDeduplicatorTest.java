@@ -0,0 +1,122 @@
+package se.david.util.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventDeduplicatorTest {
+
+  private final InMemoryProcessedEventStore store = new InMemoryProcessedEventStore();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  @DisplayName("recently processed ids are recognized without a lookup in the store")
+  void recentIdsAreAnsweredFromMemory() {
+    EventDeduplicator deduplicator = new EventDeduplicator(store, 100, Duration.ofMinutes(1), meterRegistry);
+
+    StepVerifier.create(deduplicator.markProcessed(List.of("a", "b"))).verifyComplete();
+    StepVerifier.create(deduplicator.findProcessed(List.of("a", "b")))
+      .expectNext(Set.of("a", "b"))
+      .verifyComplete();
+
+    assertEquals(0, store.lookups());
+    assertEquals(2, meterRegistry.get("events.dedup.duplicates").tag("path", "cache").counter().count());
+  }
+
+  @Test
+  @DisplayName("ids that are not in memory are looked up in the store")
+  void unknownIdsAreLookedUpInStore() {
+    EventDeduplicator deduplicator = new EventDeduplicator(store, 100, Duration.ofMinutes(1), meterRegistry);
+    StepVerifier.create(store.markProcessed(List.of("a"))).verifyComplete();
+
+    StepVerifier.create(deduplicator.findProcessed(List.of("a", "b")))
+      .expectNext(Set.of("a"))
+      .verifyComplete();
+    assertEquals(1, store.lookups());
+
+    // The id found in the store is remembered, so the next lookup is answered from memory
+    StepVerifier.create(deduplicator.findProcessed(List.of("a")))
+      .expectNext(Set.of("a"))
+      .verifyComplete();
+    assertEquals(1, store.lookups());
+  }
+
+  @Test
+  @DisplayName("the oldest ids are evicted once more than maxSize ids are remembered")
+  void oldestIdsAreEvicted() {
+    EventDeduplicator deduplicator = new EventDeduplicator(store, 2, Duration.ofMinutes(1), meterRegistry);
+
+    StepVerifier.create(deduplicator.markProcessed(List.of("a", "b", "c"))).verifyComplete();
+    assertEquals(2, deduplicator.cachedCount());
+
+    // "a" was evicted from memory but is still known to the store
+    StepVerifier.create(deduplicator.findProcessed(List.of("a", "c")))
+      .expectNext(Set.of("a", "c"))
+      .verifyComplete();
+    assertEquals(1, store.lookups());
+  }
+
+  @Test
+  @DisplayName("ids older than the window are forgotten")
+  void idsOlderThanWindowAreForgotten() throws Exception {
+    EventDeduplicator deduplicator = new EventDeduplicator(store, 100, Duration.ofMillis(50), meterRegistry);
+
+    StepVerifier.create(deduplicator.markProcessed(List.of("a"))).verifyComplete();
+    Thread.sleep(100);
+
+    StepVerifier.create(deduplicator.findProcessed(List.of("a")))
+      .expectNext(Set.of("a"))
+      .verifyComplete();
+    assertEquals(1, store.lookups());
+  }
+
+  @Test
+  @DisplayName("a failure to record the ids does not fail the batch and the ids are still remembered in memory")
+  void storeFailureOnMarkIsTolerated() {
+    ProcessedEventStore failingStore = new ProcessedEventStore() {
+      @Override
+      public Mono<Set<String>> findProcessed(Collection<String> eventIds) {
+        return Mono.error(new IllegalStateException("database is down"));
+      }
+
+      @Override
+      public Mono<Void> markProcessed(Collection<String> eventIds) {
+        return Mono.error(new IllegalStateException("database is down"));
+      }
+    };
+    EventDeduplicator deduplicator = new EventDeduplicator(failingStore, 100, Duration.ofMinutes(1), meterRegistry);
+
+    StepVerifier.create(deduplicator.markProcessed(List.of("a"))).verifyComplete();
+    StepVerifier.create(deduplicator.findProcessed(List.of("a")))
+      .expectNext(Set.of("a"))
+      .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("a disabled deduplicator reports nothing as processed")
+  void disabledDeduplicatorLetsEverythingThrough() {
+    EventDeduplicator deduplicator = EventDeduplicator.disabled();
+
+    StepVerifier.create(deduplicator.markProcessed(List.of("a"))).verifyComplete();
+    StepVerifier.create(deduplicator.findProcessed(List.of("a")))
+      .assertNext(processed -> assertTrue(processed.isEmpty()))
+      .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("maxSize must be at least 1")
+  void maxSizeMustBePositive() {
+    assertThrows(IllegalArgumentException.class, () -> new EventDeduplicator(store, 0, Duration.ofMinutes(1), meterRegistry));
+  }
+}
@@ -0,0 +1,32 @@
+package se.david.util.messaging;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// ProcessedEventStore for the tests, counts its lookups so the tests can tell whether the database would be queried
+class InMemoryProcessedEventStore implements ProcessedEventStore {
+  private final Set<String> processed = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger lookups = new AtomicInteger();
+
+  @Override
+  public Mono<Set<String>> findProcessed(Collection<String> eventIds) {
+    return Mono.fromSupplier(() -> {
+      lookups.incrementAndGet();
+      return eventIds.stream().filter(processed::contains).collect(Collectors.toSet());
+    });
+  }
+
+  @Override
+  public Mono<Void> markProcessed(Collection<String> eventIds) {
+    return Mono.fromRunnable(() -> processed.addAll(eventIds));
+  }
+
+  int lookups() {
+    return lookups.get();
+  }
+}
@@ -0,0 +1,54 @@
+package se.david.util.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import se.david.api.event.Event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeyedLaneDispatcherTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final KeyedLaneDispatcher dispatcher = new KeyedLaneDispatcher(4, meterRegistry);
+
+  @Test
+  @DisplayName("the partitionKey header decides the lane, and the event key is used when the header is missing")
+  void partitionKeyHeaderDecidesLane() {
+    assertEquals(1, dispatcher.dispatch(message(100, 5)));
+    assertEquals(2, dispatcher.dispatch(message(102, null)));
+    assertEquals(3, dispatcher.dispatch(message(7, 7)));
+    assertEquals(1, dispatcher.dispatch(message(100, 5)));
+  }
+
+  @Test
+  @DisplayName("the lane depth counts the dispatched messages until their batch is applied, and every batch is timed")
+  void laneDepthAndLatencyAreExported() {
+    long startNanos = System.nanoTime();
+    dispatcher.dispatch(message(1, 1));
+    dispatcher.dispatch(message(5, 5));
+    dispatcher.dispatch(message(2, 2));
+
+    assertEquals(2.0, depth("1"));
+    assertEquals(1.0, depth("2"));
+
+    dispatcher.applied(1, 2, startNanos);
+
+    assertEquals(0.0, depth("1"));
+    assertEquals(1.0, depth("2"));
+    assertEquals(1, meterRegistry.get("events.lane.latency").tag("lane", "1").timer().count());
+    assertEquals(0, meterRegistry.get("events.lane.latency").tag("lane", "2").timer().count());
+  }
+
+  private double depth(String lane) {
+    return meterRegistry.get("events.lane.depth").tag("lane", lane).gauge().value();
+  }
+
+  private Message<Event<Integer, String>> message(Integer eventKey, Integer partitionKey) {
+    return MessageBuilder.withPayload(new Event<>(Event.Type.UPDATE, eventKey, "data"))
+      .setHeader(KeyedLaneDispatcher.PARTITION_KEY_HEADER, partitionKey)
+      .build();
+  }
+}
@@ -0,0 +1,86 @@
+package se.david.util.scheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs a burst of simulated blocking JDBC calls on the two jdbcScheduler modes with the service defaults: 10 threads
+// with 100 queued tasks each, against a pool of 10 connections. JdbcSchedulerBenchmark compares their performance.
+class JdbcSchedulersTest {
+  private static final int THREAD_POOL_SIZE = 10;
+  private static final int TASK_QUEUE_SIZE = 100;
+  private static final int CONNECTION_POOL_SIZE = 10;
+  private static final int BURST_SIZE = 1500;
+  private static final Duration QUERY_TIME = Duration.ofMillis(10);
+
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  @Test
+  @DisplayName("virtual mode runs a burst larger than the bounded elastic queue without rejecting any call")
+  void virtualModeAbsorbsBurst() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    Scheduler scheduler = JdbcSchedulers.create(JdbcSchedulers.VIRTUAL, THREAD_POOL_SIZE, TASK_QUEUE_SIZE, CONNECTION_POOL_SIZE, meterRegistry);
+
+    try {
+      runBurst(scheduler);
+
+      assertTrue(maxRunning.get() <= CONNECTION_POOL_SIZE, "max concurrent calls was " + maxRunning.get());
+      assertEquals(0.0, meterRegistry.get("scheduler.permits.waiting").gauge().value());
+      assertTrue(meterRegistry.get("scheduler.permits.acquired").gauge().value() <= CONNECTION_POOL_SIZE);
+      assertEquals(BURST_SIZE, meterRegistry.get("scheduler.permits.wait").timer().count());
+    } finally {
+      scheduler.dispose();
+    }
+  }
+
+  @Test
+  @DisplayName("boundedElastic mode rejects the calls of a burst that do not fit in its task queues")
+  void boundedElasticModeRejectsBurst() {
+    Scheduler scheduler = JdbcSchedulers.create(JdbcSchedulers.BOUNDED_ELASTIC, THREAD_POOL_SIZE, TASK_QUEUE_SIZE, CONNECTION_POOL_SIZE, new SimpleMeterRegistry());
+
+    try {
+      assertThrows(RejectedExecutionException.class, () -> runBurst(scheduler));
+      assertTrue(maxRunning.get() <= THREAD_POOL_SIZE, "max concurrent calls was " + maxRunning.get());
+    } finally {
+      scheduler.dispose();
+    }
+  }
+
+  @Test
+  @DisplayName("An unknown mode is rejected at startup")
+  void unknownModeIsRejected() {
+    assertThrows(IllegalArgumentException.class,
+      () -> JdbcSchedulers.create("forkJoin", THREAD_POOL_SIZE, TASK_QUEUE_SIZE, CONNECTION_POOL_SIZE, new SimpleMeterRegistry()));
+  }
+
+  private void runBurst(Scheduler scheduler) {
+    Long completed = Flux.range(0, BURST_SIZE)
+      .flatMap(i -> Mono.fromCallable(this::simulateQuery).subscribeOn(scheduler), BURST_SIZE)
+      .count()
+      .block(Duration.ofSeconds(30));
+
+    assertEquals(BURST_SIZE, completed);
+  }
+
+  private int simulateQuery() throws InterruptedException {
+    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+    try {
+      Thread.sleep(QUERY_TIME);
+      return 1;
+    } finally {
+      running.decrementAndGet();
+    }
+  }
+}
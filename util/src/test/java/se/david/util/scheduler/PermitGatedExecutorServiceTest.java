@@ -0,0 +1,46 @@
+package se.david.util.scheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PermitGatedExecutorServiceTest {
+
+  @Test
+  @DisplayName("a task that is cancelled while it waits for a permit stops waiting and never runs")
+  void cancelledTaskStopsWaitingForPermit() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    PermitGatedExecutorService executor = new PermitGatedExecutorService("test", 1, meterRegistry);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicBoolean waitingTaskRan = new AtomicBoolean();
+
+    try {
+      Future<?> running = executor.submit(() -> {
+        release.await();
+        return null;
+      });
+      Future<?> waiting = executor.submit(() -> waitingTaskRan.set(true));
+      await().until(() -> executor.getWaitingTasks() == 1);
+
+      assertTrue(waiting.cancel(true));
+      await().until(() -> executor.getWaitingTasks() == 0);
+      assertEquals(1, executor.getAcquiredPermits());
+
+      release.countDown();
+      running.get();
+      await().until(() -> executor.getAcquiredPermits() == 0);
+      assertFalse(waitingTaskRan.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package se.david.util.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CachingReactiveJwtDecoderTest {
+  private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final AtomicInteger verifications = new AtomicInteger();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  @DisplayName("a token is verified once and then answered from the cache")
+  void verifiesATokenOnce() {
+    CachingReactiveJwtDecoder decoder = decoder(token -> Mono.just(jwt(token, Duration.ofHours(1))));
+
+    for(int i = 0; i < 10; i++) {
+      StepVerifier.create(decoder.decode("token-1")).expectNextMatches(jwt -> jwt.getTokenValue().equals("token-1")).verifyComplete();
+    }
+    StepVerifier.create(decoder.decode("token-2")).expectNextCount(1).verifyComplete();
+
+    assertEquals(2, verifications.get());
+    assertEquals(9, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    assertEquals(2, meterRegistry.get("jwt.verification").tag("result", "valid").timer().count());
+  }
+
+  @Test
+  @DisplayName("a cached token is verified again when it has expired, and at the latest after maxTtl")
+  void honorsTheExpiry() {
+    CachingReactiveJwtDecoder decoder = decoder(token -> Mono.just(jwt(token, token.equals("short") ? Duration.ofSeconds(30) : Duration.ofHours(1))));
+    decoder.decode("short").block();
+    decoder.decode("long").block();
+
+    advance(Duration.ofSeconds(31));
+    decoder.decode("short").block();
+    decoder.decode("long").block();
+    assertEquals(3, verifications.get());
+
+    advance(Duration.ofMinutes(5));
+    decoder.decode("long").block();
+    assertEquals(4, verifications.get());
+  }
+
+  @Test
+  @DisplayName("a token that fails the verification is not cached")
+  void doesNotCacheInvalidTokens() {
+    CachingReactiveJwtDecoder decoder = decoder(token -> Mono.error(new BadJwtException("Invalid signature")));
+
+    StepVerifier.create(decoder.decode("forged")).expectError(BadJwtException.class).verify();
+    StepVerifier.create(decoder.decode("forged")).expectError(BadJwtException.class).verify();
+
+    assertEquals(2, verifications.get());
+    assertEquals(2, meterRegistry.get("jwt.verification").tag("result", "invalid").timer().count());
+  }
+
+  @Test
+  @DisplayName("concurrent requests with the same token wait for one verification")
+  void sharesAVerificationInProgress() {
+    Sinks.One<Jwt> verified = Sinks.one();
+    CachingReactiveJwtDecoder decoder = decoder(token -> verified.asMono());
+
+    Mono<Jwt> first = decoder.decode("token-1").cache();
+    Mono<Jwt> second = decoder.decode("token-1").cache();
+    first.subscribe();
+    second.subscribe();
+    verified.tryEmitValue(jwt("token-1", Duration.ofHours(1)));
+
+    StepVerifier.create(first).expectNextCount(1).verifyComplete();
+    StepVerifier.create(second).expectNextCount(1).verifyComplete();
+    assertEquals(1, verifications.get());
+  }
+
+  private CachingReactiveJwtDecoder decoder(Function<String, Mono<Jwt>> verification) {
+    return new CachingReactiveJwtDecoder(token -> {
+      verifications.incrementAndGet();
+      return verification.apply(token);
+    }, meterRegistry, 100, Duration.ofMinutes(5), clock(), nanos::get);
+  }
+
+  private Jwt jwt(String token, Duration validity) {
+    Instant now = START.plusNanos(nanos.get());
+    return Jwt.withTokenValue(token)
+      .header("alg", "RS256")
+      .subject("user")
+      .issuedAt(now)
+      .expiresAt(now.plus(validity))
+      .build();
+  }
+
+  private void advance(Duration duration) {
+    nanos.addAndGet(duration.toNanos());
+  }
+
+  private Clock clock() {
+    return new Clock() {
+      @Override
+      public ZoneId getZone() {
+        return ZoneOffset.UTC;
+      }
+
+      @Override
+      public Clock withZone(ZoneId zone) {
+        return this;
+      }
+
+      @Override
+      public Instant instant() {
+        return START.plusNanos(nanos.get());
+      }
+    };
+  }
+}
@@ -0,0 +1,127 @@
+package se.david.util.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JwkSetRefresherTest {
+  private final AtomicInteger fetches = new AtomicInteger();
+  private final AtomicReference<JWKSet> published = new AtomicReference<>();
+  private final JwkSetRefresher refresher = new JwkSetRefresher(
+    WebClient.builder().exchangeFunction(request -> {
+      fetches.incrementAndGet();
+      return Mono.just(ClientResponse.create(HttpStatus.OK)
+        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .body(published.get().toString(true))
+        .build());
+    }).build(),
+    "http://auth-server:9999/oauth2/jwks",
+    Duration.ofMinutes(5),
+    Duration.ofMinutes(1));
+
+  @Test
+  @DisplayName("the key of a token is looked up in the fetched set, without calling the authorization server")
+  void knownKeyIsAnsweredFromMemory() throws JOSEException {
+    RSAKey key = key("key-1");
+    published.set(new JWKSet(key.toPublicJWK()));
+    refresher.refresh(true).block();
+
+    for(int i = 0; i < 10; i++) {
+      StepVerifier.create(refresher.keys(token("key-1"))).expectNextMatches(jwk -> jwk.getKeyID().equals("key-1")).verifyComplete();
+    }
+    assertEquals(1, fetches.get());
+  }
+
+  @Test
+  @DisplayName("tokens with a new key share one fetch, and unknown keys do not fetch again within minRefreshInterval")
+  void newKeyIsFetchedOnce() throws JOSEException {
+    published.set(new JWKSet(key("key-1").toPublicJWK()));
+    refresher.refresh(true).block();
+
+    // The authorization server restarted with a new key
+    published.set(new JWKSet(key("key-2").toPublicJWK()));
+    List<List<JWK>> keys = Flux.range(0, 10)
+      .flatMap(i -> refresher.keys(token("key-2")).collectList())
+      .collectList()
+      .block();
+    keys.forEach(found -> assertEquals("key-2", found.get(0).getKeyID()));
+    assertEquals(2, fetches.get());
+
+    StepVerifier.create(refresher.keys(token("made-up"))).verifyComplete();
+    assertEquals(2, fetches.get());
+  }
+
+  @Test
+  @DisplayName("the JWK set URI is discovered from the issuer once and the keys are fetched from it")
+  void jwkSetUriIsDiscoveredOnce() throws JOSEException {
+    AtomicInteger discoveries = new AtomicInteger();
+    published.set(new JWKSet(key("key-1").toPublicJWK()));
+    WebClient webClient = WebClient.builder().exchangeFunction(request -> switch(request.url().getPath()) {
+      case "/.well-known/openid-configuration" -> {
+        discoveries.incrementAndGet();
+        yield Mono.just(json("{\"issuer\":\"http://auth-server:9999\",\"jwks_uri\":\"http://auth-server:9999/keys\"}"));
+      }
+      case "/keys" -> Mono.just(json(published.get().toString(true)));
+      default -> Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+    }).build();
+    JwkSetRefresher discovering = new JwkSetRefresher(webClient, JwkSetRefresher.discoverJwkSetUri(webClient, "http://auth-server:9999"),
+      Duration.ofMinutes(5), Duration.ofMinutes(1));
+
+    discovering.refresh(true).block();
+    discovering.refresh(true).block();
+
+    StepVerifier.create(discovering.keys(token("key-1"))).expectNextMatches(jwk -> jwk.getKeyID().equals("key-1")).verifyComplete();
+    assertEquals(1, discoveries.get());
+  }
+
+  @Test
+  @DisplayName("an issuer without OpenID Connect discovery is looked up in its OAuth 2.0 authorization server metadata")
+  void jwkSetUriIsDiscoveredFromAuthorizationServerMetadata() {
+    WebClient webClient = WebClient.builder().exchangeFunction(request ->
+      request.url().getPath().equals("/.well-known/oauth-authorization-server/tenant")
+        ? Mono.just(json("{\"jwks_uri\":\"http://auth-server:9999/tenant/keys\"}"))
+        : Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build())).build();
+
+    StepVerifier.create(JwkSetRefresher.discoverJwkSetUri(webClient, "http://auth-server:9999/tenant/"))
+      .expectNext("http://auth-server:9999/tenant/keys")
+      .verifyComplete();
+  }
+
+  private static ClientResponse json(String body) {
+    return ClientResponse.create(HttpStatus.OK)
+      .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+      .body(body)
+      .build();
+  }
+
+  private static RSAKey key(String keyId) throws JOSEException {
+    return new RSAKeyGenerator(2048).keyID(keyId).generate();
+  }
+
+  private static SignedJWT token(String keyId) {
+    return new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).build(), new JWTClaimsSet.Builder().subject("user").build());
+  }
+}